@@ -28,7 +28,11 @@ import org.cloudbus.cloudsim.Log;
 import org.cloudbus.cloudsim.Pe;
 import org.cloudbus.cloudsim.Storage;
 import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.FutureQueue;
 import org.cloudbus.cloudsim.preemption.*;
+import org.cloudbus.cloudsim.preemption.datastore.BufferedTaskResultSink;
+import org.cloudbus.cloudsim.preemption.datastore.DataStoreWriter;
+import org.cloudbus.cloudsim.preemption.datastore.TaskDataStore;
 import org.cloudbus.cloudsim.preemption.policies.preemption.FCFSBasedPreemptionPolicy;
 import org.cloudbus.cloudsim.preemption.policies.preemption.PreemptionPolicy;
 import org.cloudbus.cloudsim.preemption.policies.preemption.VmAvailabilityBasedPreemptionPolicy;
@@ -72,7 +76,13 @@ public class CloudSimExampleGoogleTrace {
             boolean trace_flag = false; // mean trace events
 
             // Initialize the CloudSim library
-            CloudSim.init(num_user, calendar, trace_flag);
+            if (properties.getProperty("future_queue_class") != null) {
+                Log.printLine("Using future event queue " + properties.getProperty("future_queue_class"));
+                FutureQueue futureQueue = (FutureQueue) Class.forName(properties.getProperty("future_queue_class")).newInstance();
+                CloudSim.init(num_user, calendar, trace_flag, futureQueue);
+            } else {
+                CloudSim.init(num_user, calendar, trace_flag);
+            }
 
             // Second step: Create Datacenters
             // Datacenters are the resource providers in CloudSim. We need at
@@ -82,6 +92,13 @@ public class CloudSimExampleGoogleTrace {
 
             TraceDatacenterBroker broker = createGoogleTraceBroker(
                     "Google_Broker_0", properties);
+
+            // all the output is written behind the simulation by one thread
+            DataStoreWriter dataStoreWriter = new DataStoreWriter("output-writer",
+                    DataStoreWriter.getQueueCapacity(properties));
+            datacenter0.setDataStoreWriter(dataStoreWriter);
+            broker.setResultSink(new BufferedTaskResultSink(new TaskDataStore(properties),
+                    BufferedTaskResultSink.getBatchSize(properties), dataStoreWriter));
 //			int brokerId = broker.getId();
 //
 //			readDB(traceDatabaseURL);
@@ -106,6 +123,9 @@ public class CloudSimExampleGoogleTrace {
             System.out.println("DatacenterInfo Entries: " + datacenterInfo.size());
             datacenterInfo.clear();
 
+            dataStoreWriter.close();
+            dataStoreWriter.printMetrics();
+
 
             Log.printLine("Execution Time "
                     + (((System.currentTimeMillis() - now) / 1000) / 60)
@@ -210,14 +230,32 @@ public class CloudSimExampleGoogleTrace {
         }
     }
 
-    private static PreemptiveDatacenter createGoogleDatacenter(String name,
+    public static PreemptiveDatacenter createGoogleDatacenter(String name,
                                                                Properties properties) throws Exception {
 
         int numberOfHosts = Integer.parseInt(properties
                 .getProperty("number_of_hosts"));
         double totalMipsCapacity = Double.parseDouble(properties
                 .getProperty("total_cpu_capacity"));
-        double mipsPerHost = totalMipsCapacity / numberOfHosts;
+
+        return createGoogleDatacenter(name, properties, 0, numberOfHosts, totalMipsCapacity);
+    }
+
+    /**
+     * Creates a datacenter with some of the hosts, e.g. a cell, each one with the capacity of the
+     * hosts of the whole datacenter.
+     *
+     * @param name the name of the datacenter
+     * @param properties the simulation properties
+     * @param firstHostId the id of the first host of the datacenter
+     * @param numberOfHosts the number of hosts of the datacenter
+     * @param totalMipsCapacity the capacity of the hosts of the datacenter
+     */
+    public static PreemptiveDatacenter createGoogleDatacenter(String name, Properties properties,
+                                                               int firstHostId, int numberOfHosts, double totalMipsCapacity) throws Exception {
+
+        double mipsPerHost = Double.parseDouble(properties.getProperty("total_cpu_capacity"))
+                / Integer.parseInt(properties.getProperty("number_of_hosts"));
 
         Log.printLine("Creating a datacenter with " + totalMipsCapacity
                 + " total capacity and " + numberOfHosts
@@ -226,7 +264,7 @@ public class CloudSimExampleGoogleTrace {
         
         List<PreemptiveHost> hostList = new ArrayList<PreemptiveHost>();
 
-        for (int hostId = 0; hostId < numberOfHosts; hostId++) {
+        for (int hostId = firstHostId; hostId < firstHostId + numberOfHosts; hostId++) {
         	PreemptionPolicy preemptionPolicy; 
         	if (properties.getProperty("preemption_policy_class") != null) {
         		Log.printLine("Creating a hosts with preemption policy " + properties.getProperty("preemption_policy_class"));
@@ -0,0 +1,127 @@
+/*
+ * Title:        CloudSim Toolkit
+ * Description:  CloudSim (Cloud Simulation) Toolkit for Modeling and Simulation
+ *               of Clouds
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2009, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.examples.benchmark;
+
+import java.util.Random;
+
+import org.cloudbus.cloudsim.core.CalendarFutureQueue;
+import org.cloudbus.cloudsim.core.FutureQueue;
+import org.cloudbus.cloudsim.core.HeapFutureQueue;
+import org.cloudbus.cloudsim.core.LadderFutureQueue;
+import org.cloudbus.cloudsim.core.SimEvent;
+import org.cloudbus.cloudsim.core.TreeSetFutureQueue;
+
+/**
+ * Measures the throughput of the {@link FutureQueue} implementations with the classic "hold"
+ * model: the queue is filled with N pending events and then each operation polls the next event
+ * and schedules a new one some random time after it, which keeps N events pending, as a trace
+ * replay does. Event times are rounded to milliseconds, like trace timestamps, so many events
+ * share the same time and the serial ordering is exercised too.
+ * <p>
+ * Usage: <code>FutureQueueBenchmark [pendingEvents,...] [holdOperations]</code>. The defaults are
+ * 1M, 10M and 50M pending events and 5M hold operations. With 50M pending events the TreeSet
+ * queue needs a heap of about 8 GB (e.g., <code>-Xmx10g</code>).
+ * <p>
+ * The checksum printed for each queue must be the same for all of them at a given size, as they
+ * must deliver the events in the same order.
+ */
+public class FutureQueueBenchmark {
+
+	private static final long SEED = 42;
+
+	private static final int DEFAULT_HOLD_OPERATIONS = 5000000;
+
+	private static final int[] DEFAULT_PENDING_EVENTS = { 1000000, 10000000, 50000000 };
+
+	private static final String[] QUEUES = { "TreeSet", "BinaryHeap", "4-aryHeap", "Calendar", "Ladder" };
+
+	public static void main(String[] args) {
+		int[] sizes = DEFAULT_PENDING_EVENTS;
+		int holdOperations = DEFAULT_HOLD_OPERATIONS;
+		if (args.length > 0) {
+			String[] values = args[0].split(",");
+			sizes = new int[values.length];
+			for (int i = 0; i < values.length; i++) {
+				sizes[i] = Integer.parseInt(values[i].trim());
+			}
+		}
+		if (args.length > 1) {
+			holdOperations = Integer.parseInt(args[1]);
+		}
+
+		// warming up the JIT
+		for (String queue : QUEUES) {
+			run(createQueue(queue), 100000, 1000000);
+		}
+
+		System.out.println(String.format("%-12s %12s %16s %20s", "queue", "pending", "events/sec", "checksum"));
+		for (int size : sizes) {
+			for (String queue : QUEUES) {
+				System.gc();
+				long[] result = run(createQueue(queue), size, holdOperations);
+				double eventsPerSecond = holdOperations / (result[0] / 1e9);
+				System.out.println(String.format("%-12s %12d %16.0f %20d", queue, size, eventsPerSecond, result[1]));
+			}
+		}
+	}
+
+	private static FutureQueue createQueue(String name) {
+		if (name.equals("TreeSet")) {
+			return new TreeSetFutureQueue();
+		} else if (name.equals("BinaryHeap")) {
+			return new HeapFutureQueue(2);
+		} else if (name.equals("4-aryHeap")) {
+			return new HeapFutureQueue(4);
+		} else if (name.equals("Calendar")) {
+			return new CalendarFutureQueue();
+		} else if (name.equals("Ladder")) {
+			return new LadderFutureQueue();
+		}
+		throw new IllegalArgumentException("Unknown future queue: " + name);
+	}
+
+	/**
+	 * Fills the queue and runs the hold operations.
+	 *
+	 * @return the elapsed time of the hold operations, in nanoseconds, and the checksum of the
+	 *         delivered events
+	 */
+	private static long[] run(FutureQueue queue, int pendingEvents, int holdOperations) {
+		Random random = new Random(SEED);
+		for (int i = 0; i < pendingEvents; i++) {
+			queue.addEvent(newEvent(nextTime(0, random), i));
+		}
+
+		long checksum = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < holdOperations; i++) {
+			SimEvent event = queue.poll();
+			checksum = 31 * checksum + event.serial;
+			queue.addEvent(newEvent(nextTime(event.eventTime(), random), event.getTag()));
+		}
+		long elapsed = System.nanoTime() - start;
+
+		queue.clear();
+		return new long[] { elapsed, checksum };
+	}
+
+	private static SimEvent newEvent(double time, int tag) {
+		return new SimEvent(SimEvent.SEND, time, 0, 0, tag, null);
+	}
+
+	/**
+	 * Returns the given time plus an exponentially distributed delay with mean 1, rounded to
+	 * milliseconds as trace timestamps are.
+	 */
+	private static double nextTime(double time, Random random) {
+		return Math.floor((time - Math.log(1 - random.nextDouble())) * 1000) / 1000;
+	}
+
+}
@@ -0,0 +1,211 @@
+/*
+ * Title:        CloudSim Toolkit
+ * Description:  CloudSim (Cloud Simulation) Toolkit for Modeling and Simulation
+ *               of Clouds
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2009, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.examples.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.cloudbus.cloudsim.Log;
+import org.cloudbus.cloudsim.Pe;
+import org.cloudbus.cloudsim.preemption.PreemptableVm;
+import org.cloudbus.cloudsim.preemption.PreemptiveHost;
+import org.cloudbus.cloudsim.preemption.VmSchedulerMipsBased;
+import org.cloudbus.cloudsim.preemption.policies.preemption.FCFSBasedPreemptionPolicy;
+import org.cloudbus.cloudsim.preemption.policies.preemption.PreemptionPolicy;
+import org.cloudbus.cloudsim.preemption.policies.vmallocation.HostCapacityIndex;
+import org.cloudbus.cloudsim.preemption.util.PreemptiveHostComparator;
+import org.cloudbus.cloudsim.provisioners.PeProvisionerSimple;
+
+/**
+ * Measures the host selection of the worst fit allocation policies: VMs of random priorities are
+ * allocated to the host with the most MIPS available for their priority, and random VMs are
+ * deallocated, updating the hosts after each change. It is done both with the sorted sets of
+ * hosts used by the policies before, which remove and insert a host in the set of each priority,
+ * and with the {@link HostCapacityIndex}. Only the time spent selecting and updating the hosts
+ * is measured, not the one of creating and destroying the VMs. Both structures select the same
+ * hosts, which is checked.
+ * <p>
+ * Usage: <code>HostCapacityIndexBenchmark [numberOfHosts,...]</code>. The defaults are 12.5K, 50K
+ * and 200K hosts.
+ */
+public class HostCapacityIndexBenchmark {
+
+	private static final int NUMBER_OF_PRIORITIES = 3;
+
+	private static final double HOST_CAPACITY = 1;
+
+	/** The number of allocations and deallocations for each number of hosts. */
+	private static final int OPERATIONS = 200000;
+
+	private static final int[] DEFAULT_NUMBERS_OF_HOSTS = { 12500, 50000, 200000 };
+
+	public static void main(String[] args) {
+		int[] numbersOfHosts = DEFAULT_NUMBERS_OF_HOSTS;
+		if (args.length > 0) {
+			String[] values = args[0].split(",");
+			numbersOfHosts = new int[values.length];
+			for (int i = 0; i < values.length; i++) {
+				numbersOfHosts[i] = Integer.parseInt(values[i].trim());
+			}
+		}
+
+		Log.disable();
+
+		// warming up the JIT
+		run(1000, true);
+		run(1000, false);
+
+		System.out.println(String.format("%-12s %12s %16s", "structure", "hosts", "ns/operation"));
+		for (int numberOfHosts : numbersOfHosts) {
+			Result sortedSets = run(numberOfHosts, true);
+			Result index = run(numberOfHosts, false);
+			System.out.println(String.format("%-12s %12d %16.1f", "sorted sets", numberOfHosts, sortedSets.nanosPerOperation));
+			System.out.println(String.format("%-12s %12d %16.1f", "index", numberOfHosts, index.nanosPerOperation));
+			if (sortedSets.selectedHostsHash != index.selectedHostsHash) {
+				System.out.println("The structures selected different hosts.");
+			}
+		}
+	}
+
+	private static class Result {
+		double nanosPerOperation;
+		long selectedHostsHash;
+	}
+
+	/** The host selection of one of the structures. */
+	private interface HostSelection {
+
+		PreemptiveHost select(int priority);
+
+		void beforeChange(PreemptiveHost host);
+
+		void afterChange(PreemptiveHost host);
+	}
+
+	private static Result run(int numberOfHosts, boolean sortedSets) {
+		Properties properties = new Properties();
+		properties.setProperty(PreemptionPolicy.NUMBER_OF_PRIORITIES_PROP, String.valueOf(NUMBER_OF_PRIORITIES));
+
+		List<PreemptiveHost> hosts = new ArrayList<PreemptiveHost>(numberOfHosts);
+		for (int id = 0; id < numberOfHosts; id++) {
+			List<Pe> peList = new ArrayList<Pe>();
+			peList.add(new Pe(0, new PeProvisionerSimple(HOST_CAPACITY)));
+			hosts.add(new PreemptiveHost(id, peList, new VmSchedulerMipsBased(peList),
+					new FCFSBasedPreemptionPolicy(properties)));
+		}
+
+		HostSelection selection = sortedSets ? createSortedSets(hosts) : createIndex(hosts);
+		Random random = new Random(0);
+		List<PreemptableVm> runningVms = new ArrayList<PreemptableVm>();
+		Result result = new Result();
+
+		long elapsed = 0;
+		for (int vmId = 0; vmId < OPERATIONS; vmId++) {
+			if (runningVms.isEmpty() || random.nextInt(10) < 6) {
+				int priority = random.nextInt(NUMBER_OF_PRIORITIES);
+				PreemptableVm vm = new PreemptableVm(vmId, 0, (1 + random.nextInt(100)) / 1000.0, 0, 0, priority, 0);
+
+				long start = System.nanoTime();
+				PreemptiveHost host = selection.select(priority);
+				elapsed += System.nanoTime() - start;
+
+				if (host != null && host.isSuitableForVm(vm) && host.getAvailableMips() >= vm.getMips()) {
+					elapsed += change(selection, host, vm, true);
+					runningVms.add(vm);
+					result.selectedHostsHash = 31 * result.selectedHostsHash + host.getId();
+				}
+			} else {
+				PreemptableVm vm = runningVms.remove(random.nextInt(runningVms.size()));
+				elapsed += change(selection, (PreemptiveHost) vm.getHost(), vm, false);
+			}
+		}
+		result.nanosPerOperation = (double) elapsed / OPERATIONS;
+		return result;
+	}
+
+	/**
+	 * Creates or destroys a VM in a host, updating the structure.
+	 *
+	 * @return the time spent updating the structure, in nanoseconds
+	 */
+	private static long change(HostSelection selection, PreemptiveHost host, PreemptableVm vm, boolean create) {
+		long start = System.nanoTime();
+		selection.beforeChange(host);
+		long elapsed = System.nanoTime() - start;
+
+		if (create) {
+			host.vmCreate(vm);
+		} else {
+			host.vmDestroy(vm);
+		}
+
+		start = System.nanoTime();
+		selection.afterChange(host);
+		return elapsed + System.nanoTime() - start;
+	}
+
+	private static HostSelection createSortedSets(List<PreemptiveHost> hosts) {
+		final List<SortedSet<PreemptiveHost>> priorityToSortedHost = new ArrayList<SortedSet<PreemptiveHost>>();
+		for (int priority = 0; priority < NUMBER_OF_PRIORITIES; priority++) {
+			SortedSet<PreemptiveHost> sortedHosts = new TreeSet<PreemptiveHost>(new PreemptiveHostComparator(priority));
+			sortedHosts.addAll(hosts);
+			priorityToSortedHost.add(sortedHosts);
+		}
+
+		return new HostSelection() {
+
+			@Override
+			public PreemptiveHost select(int priority) {
+				return priorityToSortedHost.get(priority).first();
+			}
+
+			@Override
+			public void beforeChange(PreemptiveHost host) {
+				for (SortedSet<PreemptiveHost> sortedHosts : priorityToSortedHost) {
+					sortedHosts.remove(host);
+				}
+			}
+
+			@Override
+			public void afterChange(PreemptiveHost host) {
+				for (SortedSet<PreemptiveHost> sortedHosts : priorityToSortedHost) {
+					sortedHosts.add(host);
+				}
+			}
+		};
+	}
+
+	private static HostSelection createIndex(List<PreemptiveHost> hosts) {
+		final HostCapacityIndex index = new HostCapacityIndex(hosts, NUMBER_OF_PRIORITIES,
+				HostCapacityIndex.AVAILABLE_MIPS);
+
+		return new HostSelection() {
+
+			@Override
+			public PreemptiveHost select(int priority) {
+				return index.worstFit(priority);
+			}
+
+			@Override
+			public void beforeChange(PreemptiveHost host) {
+			}
+
+			@Override
+			public void afterChange(PreemptiveHost host) {
+				index.update(host);
+			}
+		};
+	}
+
+}
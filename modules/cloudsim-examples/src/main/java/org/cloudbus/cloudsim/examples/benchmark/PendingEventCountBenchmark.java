@@ -0,0 +1,113 @@
+/*
+ * Title:        CloudSim Toolkit
+ * Description:  CloudSim (Cloud Simulation) Toolkit for Modeling and Simulation
+ *               of Clouds
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2009, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.examples.benchmark;
+
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.CloudSimTags;
+import org.cloudbus.cloudsim.core.DeferredQueue;
+import org.cloudbus.cloudsim.core.SimEvent;
+import org.cloudbus.cloudsim.core.predicates.Predicate;
+
+/**
+ * Measures the destroy-heavy path of the preemptive datacenter: many VMs finish at the same time,
+ * so the datacenter mailbox holds a burst of <code>VM_DESTROY_ACK</code> events and, after each
+ * one is processed, the datacenter checks whether another destroy event is waiting before trying
+ * to allocate its waiting queue. The check is done both with the former predicate scan and with
+ * the per-tag counters.
+ * <p>
+ * Usage: <code>PendingEventCountBenchmark [burstSize,...]</code>. The defaults are 1K, 10K and
+ * 100K simultaneous destroy events.
+ */
+public class PendingEventCountBenchmark {
+
+	private static final int DATACENTER_ID = 3;
+
+	private static final int BROKER_ID = 4;
+
+	/** The number of destroy events processed (and checks done) for each burst. */
+	private static final int PROCESSED_EVENTS = 10000;
+
+	private static final int[] DEFAULT_BURST_SIZES = { 1000, 10000, 100000 };
+
+	/** The predicate used by the datacenter before the counters existed. */
+	private static final Predicate DESTROY_PREDICATE = new Predicate() {
+
+		@Override
+		public boolean match(SimEvent event) {
+			return ((event.getTag() == CloudSimTags.VM_DESTROY_ACK) || (event
+					.getTag() == CloudSimTags.VM_DESTROY));
+		}
+	};
+
+	public static void main(String[] args) {
+		int[] sizes = DEFAULT_BURST_SIZES;
+		if (args.length > 0) {
+			String[] values = args[0].split(",");
+			sizes = new int[values.length];
+			for (int i = 0; i < values.length; i++) {
+				sizes[i] = Integer.parseInt(values[i].trim());
+			}
+		}
+
+		// warming up the JIT
+		run(1000, true);
+		run(1000, false);
+
+		System.out.println(String.format("%-12s %12s %16s", "check", "burst", "ns/check"));
+		for (int size : sizes) {
+			System.out.println(String.format("%-12s %12d %16.1f", "predicate", size, run(size, true)));
+			System.out.println(String.format("%-12s %12d %16.1f", "counter", size, run(size, false)));
+		}
+	}
+
+	/**
+	 * Fills the datacenter mailbox with a burst of destroy events, mixed with some events of other
+	 * entities and tags, and processes them one by one checking for more destroy events.
+	 *
+	 * @return the average time of a check, in nanoseconds
+	 */
+	private static double run(int burstSize, boolean predicate) {
+		DeferredQueue deferred = new DeferredQueue();
+		for (int i = 0; i < burstSize; i++) {
+			deferred.addEvent(new SimEvent(SimEvent.SEND, 100, DATACENTER_ID, DATACENTER_ID,
+					CloudSimTags.VM_DESTROY_ACK, null));
+			if (i % 10 == 0) {
+				deferred.addEvent(new SimEvent(SimEvent.SEND, 100, DATACENTER_ID, BROKER_ID,
+						CloudSimTags.VM_DESTROY_ACK, null));
+				deferred.addEvent(new SimEvent(SimEvent.SEND, 100, BROKER_ID, DATACENTER_ID,
+						CloudSimTags.VM_CREATE, null));
+			}
+		}
+
+		int processed = Math.min(burstSize, PROCESSED_EVENTS);
+		int destroyEventsLeft = 0;
+		long elapsed = 0;
+		for (int i = 0; i < processed; i++) {
+			deferred.select(DATACENTER_ID, CloudSim.SIM_ANY);
+
+			long start = System.nanoTime();
+			boolean nextEventIsDestroy;
+			if (predicate) {
+				nextEventIsDestroy = deferred.count(DATACENTER_ID, DESTROY_PREDICATE) > 0;
+			} else {
+				nextEventIsDestroy = deferred.count(DATACENTER_ID, CloudSimTags.VM_DESTROY_ACK) > 0
+						|| deferred.count(DATACENTER_ID, CloudSimTags.VM_DESTROY) > 0;
+			}
+			elapsed += System.nanoTime() - start;
+			destroyEventsLeft += nextEventIsDestroy ? 1 : 0;
+		}
+
+		if (destroyEventsLeft == 0) {
+			System.out.println("No destroy events were found.");
+		}
+		return (double) elapsed / processed;
+	}
+
+}
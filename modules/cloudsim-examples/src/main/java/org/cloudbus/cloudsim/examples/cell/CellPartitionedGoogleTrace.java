@@ -0,0 +1,298 @@
+/*
+ * Title:        CloudSim Toolkit
+ * Description:  CloudSim (Cloud Simulation) Toolkit for Modeling and Simulation
+ *               of Clouds
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2009, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.examples.cell;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.cloudbus.cloudsim.Log;
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.FutureQueue;
+import org.cloudbus.cloudsim.core.SimulationContext;
+import org.cloudbus.cloudsim.examples.CloudSimExampleGoogleTrace;
+import org.cloudbus.cloudsim.preemption.PreemptiveDatacenter;
+import org.cloudbus.cloudsim.preemption.TraceDatacenterBroker;
+import org.cloudbus.cloudsim.preemption.datastore.BufferedTaskResultSink;
+import org.cloudbus.cloudsim.preemption.datastore.DataStoreWriter;
+import org.cloudbus.cloudsim.preemption.datastore.DatacenterUsageDataStore;
+import org.cloudbus.cloudsim.preemption.datastore.PrefetchingTraceSource;
+import org.cloudbus.cloudsim.preemption.datastore.RoutedTraceSource;
+import org.cloudbus.cloudsim.preemption.datastore.TaskDataStore;
+import org.cloudbus.cloudsim.preemption.datastore.TraceSource;
+import org.cloudbus.cloudsim.preemption.policies.routing.CellRoutingPolicy;
+import org.cloudbus.cloudsim.preemption.policies.routing.RoundRobinCellRoutingPolicy;
+
+/**
+ * Runs the Google trace experiment of {@link CloudSimExampleGoogleTrace} with the hosts
+ * partitioned in cells. Each cell is a {@link PreemptiveDatacenter} with its own hosts, allocation
+ * policy, admission controller and waiting queue, and a {@link CellRoutingPolicy} chooses the cell
+ * of each task when it is loaded.
+ * <p>
+ * The cells are simulated either in a single simulation, with one broker routing the tasks, or at
+ * the same time, each one on its own thread, in its own {@link SimulationContext}, with a broker
+ * reading the tasks routed to it from a {@link RoutedTraceSource}. Since the routing does not depend
+ * on the state of the cells, both give the same output, although the rows are written in another
+ * order.
+ * <p>
+ * Usage: <code>CellPartitionedGoogleTrace &lt;properties&gt;</code>. Besides the properties of the
+ * experiment, the file may set:
+ * <ul>
+ * <li>{@value #NUMBER_OF_CELLS_PROP}: the number of cells, by default 1. The hosts are split in
+ * consecutive ranges whose sizes differ by at most one host;
+ * <li>{@value #CELL_ROUTING_POLICY_CLASS_PROP}: the routing policy, built with the capacity of each
+ * cell, by default {@link RoundRobinCellRoutingPolicy};
+ * <li>{@value #PARALLEL_CELLS_PROP}: whether the cells are simulated at the same time,
+ * <code>yes</code> (the default) or <code>no</code>.
+ * </ul>
+ * All the cells write to the same output databases, by one thread, except for the datacenter
+ * summaries, which are kept by time: with more than one cell, the summary of each cell goes to the
+ * database of {@link DatacenterUsageDataStore#DATABASE_URL_PROP} with <code>-cell-&lt;index&gt;</code>
+ * before the extension of the file. Checkpoints are not supported
+ * with more than one cell. The logging of CloudSim is disabled when the cells are simulated at the
+ * same time, since they would write to the same log.
+ */
+public class CellPartitionedGoogleTrace {
+
+	public static final String NUMBER_OF_CELLS_PROP = "number_of_cells";
+
+	public static final String CELL_ROUTING_POLICY_CLASS_PROP = "cell_routing_policy_class";
+
+	public static final String PARALLEL_CELLS_PROP = "parallel_cells";
+
+	private final Properties properties;
+
+	/** The id of the first host of each cell, and the number of hosts after the last one. */
+	private final int[] firstHostIds;
+
+	private final double[] capacities;
+
+	public CellPartitionedGoogleTrace(Properties properties) {
+		int numberOfCells = properties.getProperty(NUMBER_OF_CELLS_PROP) == null ? 1 : Integer
+				.parseInt(properties.getProperty(NUMBER_OF_CELLS_PROP));
+		int numberOfHosts = Integer.parseInt(properties.getProperty("number_of_hosts"));
+		if (numberOfCells <= 0 || numberOfCells > numberOfHosts) {
+			throw new IllegalArgumentException(NUMBER_OF_CELLS_PROP + " must be from 1 to the number of hosts, "
+					+ numberOfHosts + ".");
+		}
+		if (numberOfCells > 1 && "yes".equals(properties.getProperty("make_checkpoint"))) {
+			throw new IllegalArgumentException("Checkpoints are not supported with more than one cell.");
+		}
+
+		this.properties = properties;
+		this.firstHostIds = new int[numberOfCells + 1];
+		this.capacities = new double[numberOfCells];
+		double totalMipsCapacity = Double.parseDouble(properties.getProperty("total_cpu_capacity"));
+		for (int cell = 0; cell <= numberOfCells; cell++) {
+			firstHostIds[cell] = (int) ((long) numberOfHosts * cell / numberOfCells);
+		}
+		for (int cell = 0; cell < numberOfCells; cell++) {
+			int hosts = firstHostIds[cell + 1] - firstHostIds[cell];
+			capacities[cell] = hosts == numberOfHosts ? totalMipsCapacity : totalMipsCapacity / numberOfHosts
+					* hosts;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.out.println("Usage: CellPartitionedGoogleTrace <properties>");
+			return;
+		}
+		Properties properties = new Properties();
+		InputStream input = new FileInputStream(args[0]);
+		try {
+			properties.load(input);
+		} finally {
+			input.close();
+		}
+
+		boolean parallel = !"no".equals(properties.getProperty(PARALLEL_CELLS_PROP));
+		if (parallel || "no".equals(properties.getProperty("logging"))) {
+			Log.disable();
+		}
+
+		CellPartitionedGoogleTrace experiment = new CellPartitionedGoogleTrace(properties);
+		System.out.println("Simulating " + experiment.getNumberOfCells() + " cells "
+				+ (parallel ? "at the same time" : "in a single simulation") + " ...");
+
+		long start = System.currentTimeMillis();
+		int tasks = parallel ? experiment.runParallel() : experiment.runSequential();
+		System.out.println(tasks + " tasks finished in " + (System.currentTimeMillis() - start) / 1000d
+				+ " seconds.");
+		System.exit(0);
+	}
+
+	public int getNumberOfCells() {
+		return capacities.length;
+	}
+
+	/**
+	 * Simulates all the cells in a single simulation, bound to the calling thread.
+	 *
+	 * @return the number of tasks stored
+	 */
+	public int runSequential() throws Exception {
+		init();
+		List<PreemptiveDatacenter> cells = new ArrayList<PreemptiveDatacenter>();
+		for (int cell = 0; cell < getNumberOfCells(); cell++) {
+			cells.add(createCell(cell));
+		}
+		TraceDatacenterBroker broker = new TraceDatacenterBroker("Google_Broker_0", properties);
+		broker.setCellRoutingPolicy(createRoutingPolicy());
+
+		DataStoreWriter dataStoreWriter = new DataStoreWriter("output-writer",
+				DataStoreWriter.getQueueCapacity(properties));
+		for (PreemptiveDatacenter cell : cells) {
+			cell.setDataStoreWriter(dataStoreWriter);
+		}
+		broker.setResultSink(new BufferedTaskResultSink(new TaskDataStore(properties), BufferedTaskResultSink
+				.getBatchSize(properties), dataStoreWriter));
+
+		CloudSim.startSimulation();
+		int tasks = broker.getStoredTasks().size();
+		CloudSim.stopSimulation();
+
+		dataStoreWriter.close();
+		dataStoreWriter.printMetrics();
+		return tasks;
+	}
+
+	/**
+	 * Simulates each cell on its own thread, in its own simulation context, the cells reading the
+	 * tasks routed to them from the same trace.
+	 *
+	 * @return the number of tasks stored
+	 */
+	public int runParallel() throws Exception {
+		TraceSource trace = TraceDatacenterBroker.createTraceSource(properties);
+		final RoutedTraceSource routedTrace = new RoutedTraceSource(trace, createRoutingPolicy());
+		DataStoreWriter dataStoreWriter = new DataStoreWriter("output-writer",
+				DataStoreWriter.getQueueCapacity(properties));
+
+		// the entities of each cell are created in its context, which is bound to its thread later
+		final List<SimulationContext> contexts = new ArrayList<SimulationContext>();
+		List<TraceDatacenterBroker> brokers = new ArrayList<TraceDatacenterBroker>();
+		for (int cell = 0; cell < getNumberOfCells(); cell++) {
+			SimulationContext context = new SimulationContext();
+			CloudSim.setContext(context);
+			try {
+				init();
+				createCell(cell).setDataStoreWriter(dataStoreWriter);
+				TraceDatacenterBroker broker = new TraceDatacenterBroker("Google_Broker_" + cell, properties,
+						routedTrace.getCellSource(cell));
+				broker.setResultSink(new BufferedTaskResultSink(new TaskDataStore(properties),
+						BufferedTaskResultSink.getBatchSize(properties), dataStoreWriter));
+				brokers.add(broker);
+			} finally {
+				CloudSim.setContext(null);
+			}
+			contexts.add(context);
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(getNumberOfCells());
+		try {
+			List<Future<Void>> runs = new ArrayList<Future<Void>>();
+			for (int cell = 0; cell < getNumberOfCells(); cell++) {
+				final int runCell = cell;
+				final SimulationContext context = contexts.get(cell);
+				runs.add(executor.submit(new Callable<Void>() {
+
+					@Override
+					public Void call() {
+						CloudSim.setContext(context);
+						try {
+							CloudSim.startSimulation();
+							CloudSim.stopSimulation();
+							return null;
+						} finally {
+							// the other cells do not wait for a cell that failed
+							routedTrace.finish(runCell);
+							CloudSim.setContext(null);
+						}
+					}
+				}));
+			}
+			for (Future<Void> run : runs) {
+				try {
+					run.get();
+				} catch (ExecutionException e) {
+					throw new IllegalStateException("A cell failed: " + e.getCause(), e.getCause());
+				}
+			}
+		} finally {
+			executor.shutdown();
+			if (trace instanceof PrefetchingTraceSource) {
+				((PrefetchingTraceSource) trace).close();
+			}
+		}
+
+		routedTrace.printMetrics();
+		int tasks = brokers.get(0).getStoredTasks().size();
+		dataStoreWriter.close();
+		dataStoreWriter.printMetrics();
+		return tasks;
+	}
+
+	private void init() throws Exception {
+		if (properties.getProperty("future_queue_class") != null) {
+			FutureQueue futureQueue = (FutureQueue) Class.forName(properties.getProperty("future_queue_class"))
+					.newInstance();
+			CloudSim.init(1, Calendar.getInstance(), false, futureQueue);
+		} else {
+			CloudSim.init(1, Calendar.getInstance(), false);
+		}
+	}
+
+	private PreemptiveDatacenter createCell(int cell) throws Exception {
+		Properties cellProperties = properties;
+		String datacenterDatabaseURL = properties.getProperty(DatacenterUsageDataStore.DATABASE_URL_PROP);
+		if (getNumberOfCells() > 1 && datacenterDatabaseURL != null) {
+			cellProperties = new Properties();
+			cellProperties.putAll(properties);
+			cellProperties.setProperty(DatacenterUsageDataStore.DATABASE_URL_PROP,
+					getCellDatabaseURL(datacenterDatabaseURL, cell));
+		}
+
+		PreemptiveDatacenter datacenter = CloudSimExampleGoogleTrace.createGoogleDatacenter("cell-" + cell,
+				cellProperties, firstHostIds[cell], firstHostIds[cell + 1] - firstHostIds[cell], capacities[cell]);
+		if (datacenter == null) {
+			throw new IllegalArgumentException("The datacenter of cell " + cell + " could not be created.");
+		}
+		return datacenter;
+	}
+
+	/**
+	 * Gets the database of a cell, the given one with <code>-cell-&lt;index&gt;</code> before the
+	 * extension of the file.
+	 */
+	static String getCellDatabaseURL(String databaseURL, int cell) {
+		int extension = databaseURL.lastIndexOf('.');
+		if (extension <= databaseURL.lastIndexOf('/') || extension <= databaseURL.lastIndexOf(':')) {
+			return databaseURL + "-cell-" + cell;
+		}
+		return databaseURL.substring(0, extension) + "-cell-" + cell + databaseURL.substring(extension);
+	}
+
+	private CellRoutingPolicy createRoutingPolicy() throws Exception {
+		if (properties.getProperty(CELL_ROUTING_POLICY_CLASS_PROP) == null) {
+			return new RoundRobinCellRoutingPolicy(capacities);
+		}
+		return (CellRoutingPolicy) Class.forName(properties.getProperty(CELL_ROUTING_POLICY_CLASS_PROP))
+				.getConstructor(double[].class).newInstance((Object) capacities);
+	}
+}
@@ -0,0 +1,282 @@
+/*
+ * Title:        CloudSim Toolkit
+ * Description:  CloudSim (Cloud Simulation) Toolkit for Modeling and Simulation
+ *               of Clouds
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2009, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.examples.shard;
+
+import gnu.trove.map.hash.TIntDoubleHashMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Locale;
+
+import org.cloudbus.cloudsim.preemption.PreemptableVm;
+import org.cloudbus.cloudsim.preemption.TaskState;
+import org.cloudbus.cloudsim.preemption.datastore.DatacenterSnapshot;
+import org.cloudbus.cloudsim.preemption.util.PriorityResources;
+
+/**
+ * How far the state a shard of a {@link ShardedGoogleTraceReplay} reached at its start, after
+ * warming up from an empty datacenter, is from the state its predecessor handed over at the same
+ * time. The boundary states are compared by:
+ * <ul>
+ * <li>the overlap of the running and of the waiting VMs, i.e. the VMs in both states over the VMs
+ * in either of them;
+ * <li>the fraction of the VMs running in both states that run on the same host;
+ * <li>the fraction of the VMs in both states that have run for as long;
+ * <li>the difference of the admitted requests, over the admitted requests handed over.
+ * </ul>
+ * If the shard is run again from the state handed over, the tasks each run finished in the shard
+ * are compared as well.
+ */
+public class BoundaryDivergence {
+
+	private final int shard;
+
+	private final double time;
+
+	private final int runningSpeculative;
+
+	private final int runningExact;
+
+	private final int waitingSpeculative;
+
+	private final int waitingExact;
+
+	private final double runningOverlap;
+
+	private final double waitingOverlap;
+
+	private final double sameHost;
+
+	private final double sameProgress;
+
+	private final double admittedDifference;
+
+	private boolean rerun;
+
+	private int tasksSpeculative = -1;
+
+	private int tasksExact = -1;
+
+	private int tasksMatching = -1;
+
+	private double meanFinishTimeDifference = Double.NaN;
+
+	private BoundaryDivergence(int shard, double time, int runningSpeculative, int runningExact,
+			int waitingSpeculative, int waitingExact, double runningOverlap, double waitingOverlap,
+			double sameHost, double sameProgress, double admittedDifference) {
+		this.shard = shard;
+		this.time = time;
+		this.runningSpeculative = runningSpeculative;
+		this.runningExact = runningExact;
+		this.waitingSpeculative = waitingSpeculative;
+		this.waitingExact = waitingExact;
+		this.runningOverlap = runningOverlap;
+		this.waitingOverlap = waitingOverlap;
+		this.sameHost = sameHost;
+		this.sameProgress = sameProgress;
+		this.admittedDifference = admittedDifference;
+	}
+
+	/**
+	 * Compares the states of a shard boundary.
+	 *
+	 * @param shard the shard starting at the boundary
+	 * @param speculative the state reached by the shard after warming up
+	 * @param exact the state handed over by the shard before
+	 * @return the divergence
+	 */
+	public static BoundaryDivergence compare(int shard, DatacenterSnapshot speculative, DatacenterSnapshot exact) {
+		if (speculative.getTime() != exact.getTime()) {
+			throw new IllegalArgumentException("The snapshots were made at " + speculative.getTime() + " and "
+					+ exact.getTime() + ".");
+		}
+		double time = exact.getTime();
+		List<PreemptableVm> runningVms = exact.getRunningVms();
+		List<PreemptableVm> waitingVms = exact.getWaitingVms();
+
+		// the host of each VM running in the exact state, and how long each VM in it has run
+		TIntIntHashMap hosts = new TIntIntHashMap(runningVms.size());
+		TIntDoubleHashMap runningProgress = new TIntDoubleHashMap(runningVms.size());
+		for (PreemptableVm vm : runningVms) {
+			hosts.put(vm.getId(), vm.getLastHostId());
+			runningProgress.put(vm.getId(), vm.getActualRuntime(time));
+		}
+		TIntDoubleHashMap waitingProgress = new TIntDoubleHashMap(waitingVms.size());
+		for (PreemptableVm vm : waitingVms) {
+			waitingProgress.put(vm.getId(), vm.getActualRuntime(time));
+		}
+
+		int commonRunning = 0;
+		int onSameHost = 0;
+		int withSameProgress = 0;
+		for (PreemptableVm vm : speculative.getRunningVms()) {
+			if (hosts.containsKey(vm.getId())) {
+				commonRunning++;
+				if (hosts.get(vm.getId()) == vm.getLastHostId()) {
+					onSameHost++;
+				}
+				if (runningProgress.get(vm.getId()) == vm.getActualRuntime(time)) {
+					withSameProgress++;
+				}
+			}
+		}
+		int commonWaiting = 0;
+		for (PreemptableVm vm : speculative.getWaitingVms()) {
+			if (waitingProgress.containsKey(vm.getId())) {
+				commonWaiting++;
+				if (waitingProgress.get(vm.getId()) == vm.getActualRuntime(time)) {
+					withSameProgress++;
+				}
+			}
+		}
+
+		PriorityResources speculativeAdmitted = speculative.getAdmittedRequests();
+		PriorityResources exactAdmitted = exact.getAdmittedRequests();
+		double difference = 0;
+		double admitted = 0;
+		for (int priority = 0; priority < exactAdmitted.getNumberOfPriorities(); priority++) {
+			difference += Math.abs(speculativeAdmitted.get(priority) - exactAdmitted.get(priority));
+			admitted += exactAdmitted.get(priority);
+		}
+
+		int runningSpeculative = speculative.getNumberOfRunningVms();
+		int waitingSpeculative = speculative.getNumberOfWaitingVms();
+		return new BoundaryDivergence(shard, time, runningSpeculative, runningVms.size(), waitingSpeculative,
+				waitingVms.size(), overlap(commonRunning, runningSpeculative, runningVms.size()), overlap(
+						commonWaiting, waitingSpeculative, waitingVms.size()), fraction(onSameHost, commonRunning),
+				fraction(withSameProgress, commonRunning + commonWaiting), admitted > 0 ? difference / admitted
+						: (difference > 0 ? 1 : 0));
+	}
+
+	private static double overlap(int common, int speculative, int exact) {
+		return fraction(common, speculative + exact - common);
+	}
+
+	private static double fraction(int part, int total) {
+		return total == 0 ? 1 : (double) part / total;
+	}
+
+	/**
+	 * Compares the tasks finished in the shard by the run from the warmed up state and by the run
+	 * from the state handed over.
+	 *
+	 * @param speculativeTasks the tasks finished in the shard by the run from the warmed up state
+	 * @param exactTasks the tasks finished in the shard by the run from the state handed over
+	 */
+	public void setResults(List<TaskState> speculativeTasks, List<TaskState> exactTasks) {
+		TIntDoubleHashMap finishTimes = new TIntDoubleHashMap(exactTasks.size());
+		for (TaskState task : exactTasks) {
+			finishTimes.put(task.getTaskId(), task.getFinishTime());
+		}
+
+		int common = 0;
+		int matching = 0;
+		double difference = 0;
+		for (TaskState task : speculativeTasks) {
+			if (finishTimes.containsKey(task.getTaskId())) {
+				common++;
+				double taskDifference = Math.abs(finishTimes.get(task.getTaskId()) - task.getFinishTime());
+				if (taskDifference == 0) {
+					matching++;
+				}
+				difference += taskDifference;
+			}
+		}
+		this.rerun = true;
+		this.tasksSpeculative = speculativeTasks.size();
+		this.tasksExact = exactTasks.size();
+		this.tasksMatching = matching;
+		this.meanFinishTimeDifference = common == 0 ? Double.NaN : difference / common;
+	}
+
+	/**
+	 * Gets how far the boundary states are, from 0 if they have the same VMs, running on the same
+	 * hosts for as long and with the same admitted requests, to 1.
+	 *
+	 * @return the largest of the distances compared
+	 */
+	public double getDivergence() {
+		return Math.max(Math.max(1 - runningOverlap, 1 - waitingOverlap),
+				Math.max(Math.max(1 - sameHost, 1 - sameProgress), Math.min(1, admittedDifference)));
+	}
+
+	/**
+	 * Prints a table of divergences, tab separated, with one line per boundary.
+	 *
+	 * @param divergences the divergences
+	 * @param out the output
+	 */
+	public static void printTable(List<BoundaryDivergence> divergences, PrintStream out) {
+		out.println("shard\ttime\tdivergence\trunning_speculative\trunning_exact\trunning_overlap"
+				+ "\twaiting_speculative\twaiting_exact\twaiting_overlap\tsame_host\tsame_progress"
+				+ "\tadmitted_difference\trerun\ttasks_speculative\ttasks_exact\ttasks_matching"
+				+ "\tmean_finish_time_difference");
+		for (BoundaryDivergence divergence : divergences) {
+			out.println(divergence.shard + "\t" + divergence.time + "\t" + format(divergence.getDivergence()) + "\t"
+					+ divergence.runningSpeculative + "\t" + divergence.runningExact + "\t"
+					+ format(divergence.runningOverlap) + "\t" + divergence.waitingSpeculative + "\t"
+					+ divergence.waitingExact + "\t" + format(divergence.waitingOverlap) + "\t"
+					+ format(divergence.sameHost) + "\t" + format(divergence.sameProgress) + "\t"
+					+ format(divergence.admittedDifference) + "\t" + (divergence.rerun ? "yes" : "no") + "\t"
+					+ format(divergence.tasksSpeculative) + "\t" + format(divergence.tasksExact) + "\t"
+					+ format(divergence.tasksMatching) + "\t" + format(divergence.meanFinishTimeDifference));
+		}
+	}
+
+	private static String format(double value) {
+		return Double.isNaN(value) ? "-" : String.format(Locale.US, "%.4f", value);
+	}
+
+	private static String format(int value) {
+		return value < 0 ? "-" : String.valueOf(value);
+	}
+
+	public int getShard() {
+		return shard;
+	}
+
+	public double getTime() {
+		return time;
+	}
+
+	public double getRunningOverlap() {
+		return runningOverlap;
+	}
+
+	public double getWaitingOverlap() {
+		return waitingOverlap;
+	}
+
+	public double getSameHost() {
+		return sameHost;
+	}
+
+	public double getSameProgress() {
+		return sameProgress;
+	}
+
+	public double getAdmittedDifference() {
+		return admittedDifference;
+	}
+
+	public boolean isRerun() {
+		return rerun;
+	}
+
+	public int getTasksMatching() {
+		return tasksMatching;
+	}
+
+	public double getMeanFinishTimeDifference() {
+		return meanFinishTimeDifference;
+	}
+
+}
@@ -0,0 +1,548 @@
+/*
+ * Title:        CloudSim Toolkit
+ * Description:  CloudSim (Cloud Simulation) Toolkit for Modeling and Simulation
+ *               of Clouds
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2009, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.examples.shard;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.cloudbus.cloudsim.Log;
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.FutureQueue;
+import org.cloudbus.cloudsim.core.SimulationContext;
+import org.cloudbus.cloudsim.examples.CloudSimExampleGoogleTrace;
+import org.cloudbus.cloudsim.preemption.DatacenterInfo;
+import org.cloudbus.cloudsim.preemption.PreemptiveDatacenter;
+import org.cloudbus.cloudsim.preemption.TaskState;
+import org.cloudbus.cloudsim.preemption.TraceDatacenterBroker;
+import org.cloudbus.cloudsim.preemption.UsageEntry;
+import org.cloudbus.cloudsim.preemption.datastore.DatacenterSnapshot;
+import org.cloudbus.cloudsim.preemption.datastore.DatacenterUsageDataStore;
+import org.cloudbus.cloudsim.preemption.datastore.HostUsageDataStore;
+import org.cloudbus.cloudsim.preemption.datastore.InputTraceDataStore;
+import org.cloudbus.cloudsim.preemption.datastore.PreemptableVmDataStore;
+import org.cloudbus.cloudsim.preemption.datastore.PreloadedInputTrace;
+import org.cloudbus.cloudsim.preemption.datastore.TaskDataStore;
+import org.cloudbus.cloudsim.preemption.policies.preemption.PreemptionPolicy;
+import org.cloudbus.cloudsim.preemption.util.PriorityResources;
+
+/**
+ * Runs the Google trace experiment of {@link CloudSimExampleGoogleTrace} split in time shards run
+ * at the same time, each one in its own {@link SimulationContext}, and merges their output
+ * databases into one.
+ * <p>
+ * The first shard starts from the beginning of the trace. Each of the others starts from an empty
+ * datacenter some time before its start, the warm-up, so it reaches an approximate state by the
+ * time it starts. Every run makes binary checkpoints (see {@link DatacenterSnapshot}) at the shard
+ * boundaries. Once the run of a shard is done, the state its successor reached at the boundary is
+ * compared with the one the shard handed over, and the successor is run again from the checkpoint
+ * handed over if they diverge, which makes it exact as well. The divergences are written to the
+ * <code>divergence.tsv</code> table.
+ * <p>
+ * Usage: <code>ShardedGoogleTraceReplay &lt;properties&gt;</code>. Besides the properties of the
+ * experiment, where <code>end_of_simulation_time</code> must be set, the file may set:
+ * <ul>
+ * <li>{@value #NUMBER_OF_SHARDS_PROP}: the number of shards, by default the number of threads;
+ * <li>{@value #WARMUP_SIZE_PROP}: the warm-up of the shards, by default the size of a shard;
+ * <li>{@value #RERUN_PROP}: when the shards are run again, <code>divergent</code> (the default),
+ * <code>always</code> or <code>never</code>;
+ * <li>{@value #DIVERGENCE_TOLERANCE_PROP}: the largest {@link BoundaryDivergence#getDivergence()}
+ * for which a shard is not run again, by default 0;
+ * <li>{@value #THREADS_PROP}: the number of concurrent runs from warmed up states, by default the
+ * number of processors;
+ * <li>{@value #OUTPUT_DIR_PROP}: the directory of the output databases, by default
+ * <code>shard-output</code>.
+ * </ul>
+ * The shard boundaries and the warm-up are rounded up to whole task loading intervals. The input
+ * trace is read only once, so it must be a trace database. The logging of CloudSim is disabled,
+ * since the runs would write to the same log.
+ */
+public class ShardedGoogleTraceReplay {
+
+	public static final String NUMBER_OF_SHARDS_PROP = "number_of_shards";
+
+	public static final String WARMUP_SIZE_PROP = "shard_warmup_size";
+
+	public static final String RERUN_PROP = "shard_rerun";
+
+	public static final String DIVERGENCE_TOLERANCE_PROP = "shard_divergence_tolerance";
+
+	public static final String THREADS_PROP = "threads";
+
+	public static final String OUTPUT_DIR_PROP = "output_dir";
+
+	private static final String DEFAULT_OUTPUT_DIR = "shard-output";
+
+	private static final int DEFAULT_NUMBER_OF_PRIORITIES = 3;
+
+	/** The number of rows moved at a time while merging. */
+	private static final int MERGE_BATCH_SIZE = 10000;
+
+	/** When the shards are run again from the checkpoint handed over by their predecessor. */
+	public enum Rerun {
+		DIVERGENT, ALWAYS, NEVER
+	}
+
+	/** A run of a shard, from a warmed up state or from the state handed over. */
+	static class ShardRun {
+
+		private final int shard;
+
+		private final boolean exact;
+
+		private final Properties properties;
+
+		ShardRun(int shard, boolean exact, Properties properties) {
+			this.shard = shard;
+			this.exact = exact;
+			this.properties = properties;
+		}
+
+		/**
+		 * Gets the checkpoint made by this run at a time.
+		 */
+		File getCheckpoint(long time) {
+			return DatacenterSnapshot.getCheckpointFile(properties, time);
+		}
+	}
+
+	private final Properties baseProperties;
+
+	private final PreloadedInputTrace trace;
+
+	private final File outputDir;
+
+	private final long endTime;
+
+	private final long shardSize;
+
+	private final long warmupSize;
+
+	private final int numberOfShards;
+
+	private final Rerun rerun;
+
+	private final double divergenceTolerance;
+
+	/** The run each shard keeps its output from, once the shards are run. */
+	private ShardRun[] finalRuns;
+
+	public ShardedGoogleTraceReplay(Properties baseProperties, PreloadedInputTrace trace, File outputDir,
+			int numberOfShards) {
+		if (baseProperties.getProperty("end_of_simulation_time") == null) {
+			throw new IllegalArgumentException("end_of_simulation_time must be set to split the trace in shards.");
+		}
+		if (numberOfShards <= 0) {
+			throw new IllegalArgumentException(NUMBER_OF_SHARDS_PROP + " must be a positive integer.");
+		}
+		this.baseProperties = baseProperties;
+		this.trace = trace;
+		this.outputDir = outputDir;
+		this.endTime = Long.parseLong(baseProperties.getProperty("end_of_simulation_time"));
+
+		long loadingIntervalSize = getLoadingIntervalSize(baseProperties);
+		this.shardSize = roundUp((endTime + numberOfShards - 1) / numberOfShards, loadingIntervalSize);
+		this.numberOfShards = (int) ((endTime + shardSize - 1) / shardSize);
+		this.warmupSize = baseProperties.getProperty(WARMUP_SIZE_PROP) == null ? shardSize : roundUp(
+				Long.parseLong(baseProperties.getProperty(WARMUP_SIZE_PROP)), loadingIntervalSize);
+
+		String rerun = baseProperties.getProperty(RERUN_PROP);
+		try {
+			this.rerun = rerun == null ? Rerun.DIVERGENT : Rerun.valueOf(rerun.trim().toUpperCase());
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException(RERUN_PROP + " must be divergent, always or never.");
+		}
+		this.divergenceTolerance = baseProperties.getProperty(DIVERGENCE_TOLERANCE_PROP) == null ? 0 : Double
+				.parseDouble(baseProperties.getProperty(DIVERGENCE_TOLERANCE_PROP));
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.out.println("Usage: ShardedGoogleTraceReplay <properties>");
+			return;
+		}
+		Properties properties = new Properties();
+		InputStream input = new FileInputStream(args[0]);
+		try {
+			properties.load(input);
+		} finally {
+			input.close();
+		}
+
+		int threads = properties.getProperty(THREADS_PROP) == null ? Runtime.getRuntime().availableProcessors()
+				: Integer.parseInt(properties.getProperty(THREADS_PROP));
+		int numberOfShards = properties.getProperty(NUMBER_OF_SHARDS_PROP) == null ? threads : Integer
+				.parseInt(properties.getProperty(NUMBER_OF_SHARDS_PROP));
+		File outputDir = new File(properties.getProperty(OUTPUT_DIR_PROP, DEFAULT_OUTPUT_DIR));
+		if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+			throw new IOException("Could not create the output directory " + outputDir);
+		}
+
+		String databaseURL = properties.getProperty(InputTraceDataStore.DATABASE_URL_PROP);
+		System.out.println("Reading the input trace " + databaseURL + " ...");
+		PreloadedInputTrace trace = PreloadedInputTrace.load(databaseURL);
+
+		Log.disable();
+		ShardedGoogleTraceReplay replay = new ShardedGoogleTraceReplay(properties, trace, outputDir, numberOfShards);
+		long start = System.currentTimeMillis();
+		List<BoundaryDivergence> divergences = replay.runAll(threads);
+		System.out.println("The shards were run in " + (System.currentTimeMillis() - start) / 1000d + " seconds.");
+
+		replay.merge();
+
+		PrintStream table = new PrintStream(new File(outputDir, "divergence.tsv"));
+		try {
+			BoundaryDivergence.printTable(divergences, table);
+		} finally {
+			table.close();
+		}
+		BoundaryDivergence.printTable(divergences, System.out);
+	}
+
+	/**
+	 * Runs the shards from warmed up states on a pool of threads and, in the calling thread, runs
+	 * them again from the states handed over as needed, in order.
+	 *
+	 * @param threads the number of concurrent runs from warmed up states
+	 * @return the divergence at each boundary
+	 */
+	public List<BoundaryDivergence> runAll(int threads) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<ShardRun>> speculativeRuns = new ArrayList<Future<ShardRun>>();
+			for (int shard = 0; shard < numberOfShards; shard++) {
+				final ShardRun run = createSpeculativeRun(shard);
+				speculativeRuns.add(executor.submit(new Callable<ShardRun>() {
+
+					@Override
+					public ShardRun call() throws Exception {
+						return runIsolated(run);
+					}
+				}));
+			}
+
+			finalRuns = new ShardRun[numberOfShards];
+			List<BoundaryDivergence> divergences = new ArrayList<BoundaryDivergence>();
+			for (int shard = 0; shard < numberOfShards; shard++) {
+				ShardRun speculative = get(speculativeRuns.get(shard));
+				System.out.println("Shard " + shard + " was run from " + (speculative.exact ? "the start." : "a warmed up state."));
+				if (speculative.exact) {
+					finalRuns[shard] = speculative;
+					continue;
+				}
+
+				long start = getShardStart(shard);
+				File handedOver = finalRuns[shard - 1].getCheckpoint(start);
+				BoundaryDivergence divergence = BoundaryDivergence.compare(shard,
+						DatacenterSnapshot.read(speculative.getCheckpoint(start)), DatacenterSnapshot.read(handedOver));
+				divergences.add(divergence);
+
+				if (rerun == Rerun.ALWAYS
+						|| (rerun == Rerun.DIVERGENT && divergence.getDivergence() > divergenceTolerance)) {
+					System.out.println("Shard " + shard + " diverged by " + divergence.getDivergence()
+							+ ", running it again from " + handedOver + " ...");
+					ShardRun exact = runIsolated(createExactRun(shard, handedOver));
+					divergence.setResults(getFinishedTasks(speculative), getFinishedTasks(exact));
+					finalRuns[shard] = exact;
+				} else {
+					finalRuns[shard] = speculative;
+				}
+			}
+			return divergences;
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static ShardRun get(Future<ShardRun> future) throws Exception {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+		}
+	}
+
+	/**
+	 * Creates the run of a shard from a state reached after warming up from an empty datacenter,
+	 * or from the start if the warm-up would start before it.
+	 */
+	ShardRun createSpeculativeRun(int shard) throws IOException {
+		long warmupStart = getShardStart(shard) - warmupSize;
+		if (warmupStart <= 0) {
+			return new ShardRun(shard, true, getRunProperties(shard, "shard-" + shard));
+		}
+
+		String name = "shard-" + shard + "-speculative";
+		Properties properties = getRunProperties(shard, name);
+
+		// an empty datacenter that starts loading the trace at the start of the warm-up
+		File emptySnapshot = new File(outputDir, name + "-warmup-start");
+		DatacenterSnapshot snapshot = new DatacenterSnapshot(warmupStart, getNumberOfPriorities(properties));
+		snapshot.setAdmittedRequests(new PriorityResources(getNumberOfPriorities(properties)));
+		snapshot.setBrokerState((int) (warmupStart / getLoadingIntervalSize(properties)),
+				getTasksSubmittedBefore(properties, warmupStart), 0, 0, warmupStart);
+		snapshot.write(emptySnapshot);
+
+		properties.setProperty("init_from_checkpoint", "yes");
+		properties.setProperty(DatacenterSnapshot.SNAPSHOT_FILE_PROP, emptySnapshot.getPath());
+		return new ShardRun(shard, false, properties);
+	}
+
+	/**
+	 * Creates the run of a shard from the checkpoint handed over by the shard before.
+	 */
+	ShardRun createExactRun(int shard, File handedOver) {
+		Properties properties = getRunProperties(shard, "shard-" + shard);
+		properties.setProperty("init_from_checkpoint", "yes");
+		properties.setProperty(DatacenterSnapshot.SNAPSHOT_FILE_PROP, handedOver.getPath());
+		return new ShardRun(shard, true, properties);
+	}
+
+	/**
+	 * Gets the properties of a run of a shard: the base properties with its own output databases,
+	 * binary checkpoints at the shard boundaries and its end.
+	 */
+	Properties getRunProperties(int shard, String name) {
+		Properties properties = new Properties();
+		properties.putAll(baseProperties);
+
+		String prefix = new File(outputDir, name).getPath();
+		properties.setProperty(TaskDataStore.DATABASE_URL_PROP, "jdbc:sqlite:" + prefix + "-tasks.sqlite3");
+		properties.setProperty(HostUsageDataStore.DATABASE_URL_PROP, "jdbc:sqlite:" + prefix
+				+ "-utilization.sqlite3");
+		properties.setProperty(DatacenterUsageDataStore.DATABASE_URL_PROP, "jdbc:sqlite:" + prefix
+				+ "-datacenter.sqlite3");
+		// the databases of an earlier replay would be appended to
+		for (String suffix : new String[] { "-tasks.sqlite3", "-utilization.sqlite3", "-datacenter.sqlite3" }) {
+			new File(prefix + suffix).delete();
+		}
+
+		File checkpointDir = new File(prefix + "-checkpoints");
+		checkpointDir.mkdirs();
+		properties.setProperty(PreemptableVmDataStore.CHECKPOINT_DIR_PROP, checkpointDir.getPath() + File.separator);
+		properties.setProperty("make_checkpoint", "yes");
+		properties.setProperty(DatacenterSnapshot.CHECKPOINT_FORMAT_PROP, "binary");
+		// the checkpoints of a run from a warm-up or from a boundary fall on the boundaries
+		properties.setProperty("checkpoint_interval_size", String.valueOf(gcd(shardSize, warmupSize)));
+		properties.remove(DatacenterSnapshot.SNAPSHOT_FILE_PROP);
+		properties.remove("init_from_checkpoint");
+
+		if (shard < numberOfShards - 1) {
+			// one time unit after the boundary, so the checkpoint at it is made before the running
+			// VMs are finished
+			properties.setProperty("end_of_simulation_time", String.valueOf(getShardStart(shard + 1) + 1));
+		}
+		return properties;
+	}
+
+	/**
+	 * Runs a shard in a new simulation context bound to the current thread.
+	 *
+	 * @param run the run
+	 * @return the run, once it is done
+	 */
+	ShardRun runIsolated(ShardRun run) throws Exception {
+		CloudSim.setContext(new SimulationContext());
+		try {
+			simulate(run.properties);
+			return run;
+		} finally {
+			CloudSim.setContext(null);
+		}
+	}
+
+	private void simulate(Properties properties) throws Exception {
+		if (properties.getProperty("future_queue_class") != null) {
+			FutureQueue futureQueue = (FutureQueue) Class.forName(properties.getProperty("future_queue_class"))
+					.newInstance();
+			CloudSim.init(1, Calendar.getInstance(), false, futureQueue);
+		} else {
+			CloudSim.init(1, Calendar.getInstance(), false);
+		}
+
+		PreemptiveDatacenter datacenter = CloudSimExampleGoogleTrace.createGoogleDatacenter("cloud-0", properties);
+		if (datacenter == null) {
+			throw new IllegalArgumentException("The datacenter could not be created.");
+		}
+		new TraceDatacenterBroker("Google_Broker_0", properties, new InputTraceDataStore(properties, trace));
+
+		CloudSim.startSimulation();
+		CloudSim.stopSimulation();
+	}
+
+	/**
+	 * Merges the output databases of the shards, taking from each one the rows of the time it
+	 * covers, into the <code>merged-*</code> databases of the output directory.
+	 */
+	public void merge() throws Exception {
+		Properties properties = new Properties();
+		String prefix = new File(outputDir, "merged").getPath();
+		properties.setProperty(TaskDataStore.DATABASE_URL_PROP, "jdbc:sqlite:" + prefix + "-tasks.sqlite3");
+		properties.setProperty(HostUsageDataStore.DATABASE_URL_PROP, "jdbc:sqlite:" + prefix
+				+ "-utilization.sqlite3");
+		properties.setProperty(DatacenterUsageDataStore.DATABASE_URL_PROP, "jdbc:sqlite:" + prefix
+				+ "-datacenter.sqlite3");
+		for (String suffix : new String[] { "-tasks.sqlite3", "-utilization.sqlite3", "-datacenter.sqlite3" }) {
+			new File(prefix + suffix).delete();
+		}
+
+		TaskDataStore tasks = new TaskDataStore(properties);
+		HostUsageDataStore usage = new HostUsageDataStore(properties);
+		DatacenterUsageDataStore datacenterUsage = new DatacenterUsageDataStore(properties);
+		try {
+			for (ShardRun run : finalRuns) {
+				List<TaskState> finishedTasks = getFinishedTasks(run);
+				for (int i = 0; i < finishedTasks.size(); i += MERGE_BATCH_SIZE) {
+					tasks.addTaskList(finishedTasks.subList(i, Math.min(i + MERGE_BATCH_SIZE, finishedTasks.size())));
+				}
+				mergeUsage(run, usage);
+				mergeDatacenterUsage(run, datacenterUsage);
+				System.out.println("Shard " + run.shard + " merged: " + finishedTasks.size() + " tasks.");
+			}
+		} finally {
+			tasks.close();
+			usage.close();
+			datacenterUsage.close();
+		}
+	}
+
+	/**
+	 * Gets the tasks a run finished in the time of its shard.
+	 */
+	private List<TaskState> getFinishedTasks(ShardRun run) {
+		TaskDataStore dataStore = new TaskDataStore(run.properties);
+		try {
+			List<TaskState> finishedTasks = new ArrayList<TaskState>();
+			for (TaskState task : dataStore.getAllTasks()) {
+				if (isInShard(run.shard, task.getFinishTime())) {
+					finishedTasks.add(task);
+				}
+			}
+			return finishedTasks;
+		} finally {
+			dataStore.close();
+		}
+	}
+
+	private void mergeUsage(ShardRun run, HostUsageDataStore output) throws Exception {
+		HostUsageDataStore input = new HostUsageDataStore(run.properties);
+		try {
+			// the usage is read one task loading interval at a time
+			long intervalSize = getLoadingIntervalSize(run.properties);
+			double start = getShardStart(run.shard);
+			double end = run.shard < numberOfShards - 1 ? getShardStart(run.shard + 1) + 1 : Double.POSITIVE_INFINITY;
+			int intervalIndex = (int) (start / intervalSize);
+			List<UsageEntry> entries = input.getUsageEntryInterval(intervalIndex, intervalSize, start, end);
+			while (entries != null && intervalIndex * (double) intervalSize < end) {
+				List<UsageEntry> shardEntries = new ArrayList<UsageEntry>(entries.size());
+				for (UsageEntry entry : entries) {
+					if (isInShardUsage(run.shard, entry.getTime())) {
+						shardEntries.add(entry);
+					}
+				}
+				output.addUsageEntries(shardEntries);
+				entries = input.getUsageEntryInterval(++intervalIndex, intervalSize, start, end);
+			}
+		} finally {
+			input.close();
+		}
+	}
+
+	private void mergeDatacenterUsage(ShardRun run, DatacenterUsageDataStore output) {
+		DatacenterUsageDataStore input = new DatacenterUsageDataStore(run.properties);
+		try {
+			List<DatacenterInfo> shardInfo = new ArrayList<DatacenterInfo>();
+			for (DatacenterInfo info : input.getAllDatacenterInfo()) {
+				if (isInShardUsage(run.shard, info.getTime())) {
+					shardInfo.add(info);
+				}
+			}
+			output.addDatacenterInfo(shardInfo);
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Tells whether a task finished at a time is taken from the run of a shard.
+	 */
+	private boolean isInShard(int shard, double time) {
+		return time >= getShardStart(shard) && (shard == numberOfShards - 1 || time < getShardStart(shard + 1));
+	}
+
+	/**
+	 * Tells whether the usage at a time is taken from the run of a shard. The usage at a boundary
+	 * is taken from the shard before, which went on past it, as a run from a checkpoint records
+	 * the usage of every host when it starts and collects the datacenter usage only afterwards.
+	 */
+	private boolean isInShardUsage(int shard, double time) {
+		return (shard == 0 || time > getShardStart(shard))
+				&& (shard == numberOfShards - 1 || time <= getShardStart(shard + 1));
+	}
+
+	public long getShardStart(int shard) {
+		return shard * shardSize;
+	}
+
+	public int getNumberOfShards() {
+		return numberOfShards;
+	}
+
+	public long getShardSize() {
+		return shardSize;
+	}
+
+	public long getWarmupSize() {
+		return warmupSize;
+	}
+
+	/**
+	 * Gets the number of tasks of the trace loaded before a time, which is the id of the last one.
+	 */
+	private int getTasksSubmittedBefore(Properties properties, long time) {
+		InputTraceDataStore dataStore = new InputTraceDataStore(properties, trace);
+		double minTime = dataStore.getMinInterestedTime();
+		double maxTime = Math.min(time, dataStore.getMaxInterestedTime());
+		return maxTime <= minTime ? 0 : trace.firstAtOrAfter(maxTime) - trace.firstAtOrAfter(minTime);
+	}
+
+	private static long getLoadingIntervalSize(Properties properties) {
+		String value = properties.getProperty("loading_interval_size");
+		if (value == null) {
+			throw new IllegalArgumentException("loading_interval_size must be set to split the trace in shards.");
+		}
+		return Long.parseLong(value);
+	}
+
+	private static int getNumberOfPriorities(Properties properties) {
+		String value = properties.getProperty(PreemptionPolicy.NUMBER_OF_PRIORITIES_PROP);
+		return value == null ? DEFAULT_NUMBER_OF_PRIORITIES : Integer.parseInt(value);
+	}
+
+	private static long roundUp(long value, long multiple) {
+		return Math.max(1, (value + multiple - 1) / multiple) * multiple;
+	}
+
+	private static long gcd(long a, long b) {
+		return b == 0 ? a : gcd(b, a % b);
+	}
+
+}
@@ -0,0 +1,257 @@
+/*
+ * Title:        CloudSim Toolkit
+ * Description:  CloudSim (Cloud Simulation) Toolkit for Modeling and Simulation
+ *               of Clouds
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2009, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.examples.sweep;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.cloudbus.cloudsim.Log;
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.FutureQueue;
+import org.cloudbus.cloudsim.core.SimulationContext;
+import org.cloudbus.cloudsim.examples.CloudSimExampleGoogleTrace;
+import org.cloudbus.cloudsim.preemption.PreemptiveDatacenter;
+import org.cloudbus.cloudsim.preemption.TaskState;
+import org.cloudbus.cloudsim.preemption.TraceDatacenterBroker;
+import org.cloudbus.cloudsim.preemption.datastore.DatacenterUsageDataStore;
+import org.cloudbus.cloudsim.preemption.datastore.HostUsageDataStore;
+import org.cloudbus.cloudsim.preemption.datastore.InputTraceDataStore;
+import org.cloudbus.cloudsim.preemption.datastore.PreemptableVmDataStore;
+import org.cloudbus.cloudsim.preemption.datastore.PreloadedInputTrace;
+import org.cloudbus.cloudsim.preemption.datastore.TaskDataStore;
+import org.cloudbus.cloudsim.preemption.policies.preemption.PreemptionPolicy;
+import org.cloudbus.cloudsim.preemption.policies.preemption.VmAvailabilityBasedPreemptionPolicy;
+
+/**
+ * Runs the Google trace experiment of {@link CloudSimExampleGoogleTrace} for every configuration of
+ * a {@link ParameterSweep}, several at a time in the same JVM. Each run has its own
+ * {@link SimulationContext} and its own output databases, while the input trace is read only once
+ * and shared by all runs. A summary table with one line per run is written at the end.
+ * <p>
+ * Usage: <code>GoogleTraceSweepRunner &lt;base properties&gt; &lt;sweep properties&gt;</code>.
+ * Besides the sweep entries, the sweep properties file may set:
+ * <ul>
+ * <li><code>threads</code>: the number of concurrent runs, by default the number of processors;
+ * <li><code>output_dir</code>: the directory of the output databases and of the
+ * <code>summary.tsv</code> table, by default <code>sweep-output</code>.
+ * </ul>
+ * The logging of CloudSim is disabled, since the runs would write to the same log.
+ */
+public class GoogleTraceSweepRunner {
+
+	public static final String THREADS_PROP = "threads";
+
+	public static final String OUTPUT_DIR_PROP = "output_dir";
+
+	private static final String DEFAULT_OUTPUT_DIR = "sweep-output";
+
+	private static final int DEFAULT_NUMBER_OF_PRIORITIES = 3;
+
+	/** The traces already read, by database URL. */
+	private final Map<String, PreloadedInputTrace> traces = new HashMap<String, PreloadedInputTrace>();
+
+	private final Properties baseProperties;
+
+	private final File outputDir;
+
+	public GoogleTraceSweepRunner(Properties baseProperties, File outputDir) {
+		this.baseProperties = baseProperties;
+		this.outputDir = outputDir;
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.out.println("Usage: GoogleTraceSweepRunner <base properties> <sweep properties>");
+			return;
+		}
+		Properties base = load(args[0]);
+		Properties spec = load(args[1]);
+
+		int threads = spec.getProperty(THREADS_PROP) == null ? Runtime.getRuntime().availableProcessors()
+				: Integer.parseInt(spec.getProperty(THREADS_PROP));
+		File outputDir = new File(spec.getProperty(OUTPUT_DIR_PROP, DEFAULT_OUTPUT_DIR));
+		if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+			throw new IOException("Could not create the output directory " + outputDir);
+		}
+
+		List<ParameterSweep.Run> runs = ParameterSweep.expand(spec);
+		System.out.println("Running " + runs.size() + " configurations with " + threads + " threads ...");
+
+		Log.disable();
+		List<RunSummary> summaries = new GoogleTraceSweepRunner(base, outputDir).runAll(runs, threads);
+
+		PrintStream table = new PrintStream(new File(outputDir, "summary.tsv"));
+		try {
+			RunSummary.printTable(summaries, table);
+		} finally {
+			table.close();
+		}
+		RunSummary.printTable(summaries, System.out);
+	}
+
+	private static Properties load(String fileName) throws IOException {
+		Properties properties = new Properties();
+		InputStream input = new FileInputStream(fileName);
+		try {
+			properties.load(input);
+		} finally {
+			input.close();
+		}
+		return properties;
+	}
+
+	/**
+	 * Runs the configurations on a pool of threads.
+	 * 
+	 * @param runs the configurations
+	 * @param threads the number of concurrent runs
+	 * @return the summaries of the runs, in the order of the configurations
+	 */
+	public List<RunSummary> runAll(List<ParameterSweep.Run> runs, int threads) throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<RunSummary>> futures = new ArrayList<Future<RunSummary>>();
+			for (final ParameterSweep.Run run : runs) {
+				futures.add(executor.submit(new Callable<RunSummary>() {
+
+					@Override
+					public RunSummary call() {
+						return runIsolated(run);
+					}
+				}));
+			}
+
+			List<RunSummary> summaries = new ArrayList<RunSummary>();
+			for (int i = 0; i < runs.size(); i++) {
+				try {
+					summaries.add(futures.get(i).get());
+				} catch (ExecutionException e) {
+					summaries.add(RunSummary.failed(runs.get(i), e.getCause()));
+				}
+				System.out.println(summaries.get(i).getName() + " finished: " + summaries.get(i).getStatus());
+			}
+			return summaries;
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Runs a configuration in a new simulation context bound to the current thread.
+	 * 
+	 * @param run the configuration
+	 * @return the summary of the run
+	 */
+	public RunSummary runIsolated(ParameterSweep.Run run) {
+		CloudSim.setContext(new SimulationContext());
+		try {
+			return simulate(run);
+		} catch (Throwable e) {
+			return RunSummary.failed(run, e);
+		} finally {
+			CloudSim.setContext(null);
+		}
+	}
+
+	private RunSummary simulate(ParameterSweep.Run run) throws Exception {
+		long start = System.currentTimeMillis();
+		Properties properties = getRunProperties(run);
+
+		if (properties.getProperty("future_queue_class") != null) {
+			FutureQueue futureQueue = (FutureQueue) Class.forName(properties.getProperty("future_queue_class"))
+					.newInstance();
+			CloudSim.init(1, Calendar.getInstance(), false, futureQueue);
+		} else {
+			CloudSim.init(1, Calendar.getInstance(), false);
+		}
+
+		PreemptiveDatacenter datacenter = CloudSimExampleGoogleTrace.createGoogleDatacenter("cloud-0", properties);
+		if (datacenter == null) {
+			throw new IllegalArgumentException("The datacenter could not be created.");
+		}
+		TraceDatacenterBroker broker = new TraceDatacenterBroker("Google_Broker_0", properties,
+				new InputTraceDataStore(properties,
+						getTrace(properties.getProperty(InputTraceDataStore.DATABASE_URL_PROP))));
+
+		CloudSim.startSimulation();
+		List<TaskState> tasks = broker.getStoredTasks();
+		CloudSim.stopSimulation();
+
+		return RunSummary.completed(run, tasks, getNumberOfPriorities(properties),
+				VmAvailabilityBasedPreemptionPolicy.getSLOAvailabilityTargets(properties),
+				(System.currentTimeMillis() - start) / 1000d);
+	}
+
+	/**
+	 * Gets the properties of a run: the base properties with the overrides of the run and its own
+	 * output databases.
+	 * 
+	 * @param run the run
+	 * @return the properties
+	 */
+	Properties getRunProperties(ParameterSweep.Run run) {
+		Properties properties = new Properties();
+		properties.putAll(baseProperties);
+		properties.putAll(run.getOverrides());
+
+		String prefix = new File(outputDir, run.getName()).getPath();
+		properties.setProperty(TaskDataStore.DATABASE_URL_PROP, "jdbc:sqlite:" + prefix + "-tasks.sqlite3");
+		properties.setProperty(HostUsageDataStore.DATABASE_URL_PROP, "jdbc:sqlite:" + prefix
+				+ "-utilization.sqlite3");
+		properties.setProperty(DatacenterUsageDataStore.DATABASE_URL_PROP, "jdbc:sqlite:" + prefix
+				+ "-datacenter.sqlite3");
+		if (properties.getProperty(PreemptableVmDataStore.CHECKPOINT_DIR_PROP) != null) {
+			File checkpointDir = new File(prefix + "-checkpoints");
+			checkpointDir.mkdirs();
+			properties.setProperty(PreemptableVmDataStore.CHECKPOINT_DIR_PROP, checkpointDir.getPath() + File.separator);
+		}
+		return properties;
+	}
+
+	/**
+	 * Gets a trace, reading it the first time it is requested.
+	 * 
+	 * @param databaseURL the URL of the trace database
+	 * @return the trace
+	 */
+	private PreloadedInputTrace getTrace(String databaseURL) throws Exception {
+		synchronized (traces) {
+			PreloadedInputTrace trace = traces.get(databaseURL);
+			if (trace == null) {
+				System.out.println("Reading the input trace " + databaseURL + " ...");
+				trace = PreloadedInputTrace.load(databaseURL);
+				System.out.println(trace.size() + " tasks read, using about "
+						+ trace.getMemoryEstimate() / (1024 * 1024) + " MB of memory.");
+				traces.put(databaseURL, trace);
+			}
+			return trace;
+		}
+	}
+
+	private static int getNumberOfPriorities(Properties properties) {
+		String value = properties.getProperty(PreemptionPolicy.NUMBER_OF_PRIORITIES_PROP);
+		return value == null ? DEFAULT_NUMBER_OF_PRIORITIES : Integer.parseInt(value);
+	}
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Title:        CloudSim Toolkit
+ * Description:  CloudSim (Cloud Simulation) Toolkit for Modeling and Simulation
+ *               of Clouds
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2009, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.examples.sweep;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * The runs of a parameter sweep, described by a properties file with two kinds of entries:
+ * <ul>
+ * <li><code>sweep.&lt;property&gt;=value1,value2,...</code> gives the values of a property, and the
+ * runs are all combinations of the values of these properties;
+ * <li><code>run.&lt;name&gt;.&lt;property&gt;=value</code> gives an explicitly listed configuration,
+ * which is combined with every combination of the swept values.
+ * </ul>
+ * For example, two preemption policies swept over two listed host counts give four runs.
+ */
+public class ParameterSweep {
+
+	public static final String SWEEP_PREFIX = "sweep.";
+
+	public static final String RUN_PREFIX = "run.";
+
+	/** A run of the sweep: the properties it overrides in the base configuration. */
+	public static class Run {
+
+		private final String name;
+
+		private final Properties overrides;
+
+		Run(String name, Properties overrides) {
+			this.name = name;
+			this.overrides = overrides;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public Properties getOverrides() {
+			return overrides;
+		}
+
+		/**
+		 * Describes the overrides as <code>property=value</code> pairs, sorted by property.
+		 * 
+		 * @return the description
+		 */
+		public String describe() {
+			StringBuilder description = new StringBuilder();
+			for (Map.Entry<Object, Object> entry : new TreeMap<Object, Object>(overrides).entrySet()) {
+				if (description.length() > 0) {
+					description.append(' ');
+				}
+				description.append(entry.getKey()).append('=').append(entry.getValue());
+			}
+			return description.toString();
+		}
+	}
+
+	private ParameterSweep() {
+	}
+
+	/**
+	 * Expands a sweep description into its runs, in a deterministic order.
+	 * 
+	 * @param spec the sweep description
+	 * @return the runs
+	 */
+	public static List<Run> expand(Properties spec) {
+		TreeMap<String, String[]> grid = new TreeMap<String, String[]>();
+		TreeMap<String, Properties> listed = new TreeMap<String, Properties>();
+
+		for (String key : spec.stringPropertyNames()) {
+			String value = spec.getProperty(key).trim();
+			if (key.startsWith(SWEEP_PREFIX)) {
+				String[] values = value.split(",");
+				for (int i = 0; i < values.length; i++) {
+					values[i] = values[i].trim();
+				}
+				grid.put(key.substring(SWEEP_PREFIX.length()), values);
+			} else if (key.startsWith(RUN_PREFIX)) {
+				int separator = key.indexOf('.', RUN_PREFIX.length());
+				if (separator < 0) {
+					throw new IllegalArgumentException("The run entry " + key
+							+ " must be in the form run.<name>.<property>.");
+				}
+				String name = key.substring(RUN_PREFIX.length(), separator);
+				if (!listed.containsKey(name)) {
+					listed.put(name, new Properties());
+				}
+				listed.get(name).setProperty(key.substring(separator + 1), value);
+			}
+		}
+		if (listed.isEmpty()) {
+			listed.put("", new Properties());
+		}
+
+		List<Run> runs = new ArrayList<Run>();
+		List<String> properties = new ArrayList<String>(grid.keySet());
+		int[] position = new int[properties.size()];
+		for (Map.Entry<String, Properties> entry : listed.entrySet()) {
+			Arrays.fill(position, 0);
+			do {
+				Properties overrides = new Properties();
+				overrides.putAll(entry.getValue());
+				for (int i = 0; i < position.length; i++) {
+					overrides.setProperty(properties.get(i), grid.get(properties.get(i))[position[i]]);
+				}
+				String name = String.format("run-%03d", runs.size() + 1);
+				if (!entry.getKey().isEmpty()) {
+					name += "-" + entry.getKey();
+				}
+				runs.add(new Run(name, overrides));
+			} while (next(position, properties, grid));
+		}
+		return runs;
+	}
+
+	/** Advances to the next combination of values, returning false after the last one. */
+	private static boolean next(int[] position, List<String> properties, Map<String, String[]> grid) {
+		for (int i = position.length - 1; i >= 0; i--) {
+			position[i]++;
+			if (position[i] < grid.get(properties.get(i)).length) {
+				return true;
+			}
+			position[i] = 0;
+		}
+		return false;
+	}
+
+}
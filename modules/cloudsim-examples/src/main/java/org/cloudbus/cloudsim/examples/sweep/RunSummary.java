@@ -0,0 +1,190 @@
+/*
+ * Title:        CloudSim Toolkit
+ * Description:  CloudSim (Cloud Simulation) Toolkit for Modeling and Simulation
+ *               of Clouds
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2009, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.examples.sweep;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.cloudbus.cloudsim.preemption.TaskState;
+
+/**
+ * The results of a run of a {@link ParameterSweep}: the number of tasks, their mean availability
+ * and the fraction of them that met their SLO availability target, by priority, besides the total
+ * numbers of preemptions and migrations.
+ */
+public class RunSummary {
+
+	private final String name;
+
+	private final String overrides;
+
+	private final String status;
+
+	private final double wallTime;
+
+	private final int[] tasks;
+
+	private final double[] meanAvailability;
+
+	/** The fraction of tasks meeting their SLO target, or NaN if the target is not set. */
+	private final double[] sloFulfillment;
+
+	private final long preemptions;
+
+	private final long migrations;
+
+	private RunSummary(ParameterSweep.Run run, String status, double wallTime, int priorities) {
+		this.name = run.getName();
+		this.overrides = run.describe();
+		this.status = status;
+		this.wallTime = wallTime;
+		this.tasks = new int[priorities];
+		this.meanAvailability = new double[priorities];
+		this.sloFulfillment = new double[priorities];
+		this.preemptions = 0;
+		this.migrations = 0;
+	}
+
+	private RunSummary(ParameterSweep.Run run, double wallTime, int[] tasks, double[] meanAvailability,
+			double[] sloFulfillment, long preemptions, long migrations) {
+		this.name = run.getName();
+		this.overrides = run.describe();
+		this.status = "ok";
+		this.wallTime = wallTime;
+		this.tasks = tasks;
+		this.meanAvailability = meanAvailability;
+		this.sloFulfillment = sloFulfillment;
+		this.preemptions = preemptions;
+		this.migrations = migrations;
+	}
+
+	/**
+	 * Summarizes the tasks of a run.
+	 * 
+	 * @param run the run
+	 * @param taskStates the stored tasks
+	 * @param priorities the number of priorities
+	 * @param sloTargets the SLO availability target by priority
+	 * @param wallTime the wall clock time of the run, in seconds
+	 * @return the summary
+	 */
+	public static RunSummary completed(ParameterSweep.Run run, List<TaskState> taskStates, int priorities,
+			Map<Integer, Double> sloTargets, double wallTime) {
+		int[] tasks = new int[priorities];
+		double[] availability = new double[priorities];
+		double[] fulfillment = new double[priorities];
+		long preemptions = 0;
+		long migrations = 0;
+
+		for (TaskState task : taskStates) {
+			int priority = task.getPriority();
+			double taskAvailability = task.getRuntime() / (task.getFinishTime() - task.getSubmitTime());
+			tasks[priority]++;
+			availability[priority] += taskAvailability;
+			Double target = sloTargets.get(priority);
+			if (target != null && taskAvailability >= target) {
+				fulfillment[priority]++;
+			}
+			preemptions += task.getNumberOfPreemptions();
+			migrations += task.getNumberOfMigrations();
+		}
+		for (int priority = 0; priority < priorities; priority++) {
+			availability[priority] /= tasks[priority];
+			fulfillment[priority] = sloTargets.containsKey(priority) ? fulfillment[priority] / tasks[priority]
+					: Double.NaN;
+		}
+		return new RunSummary(run, wallTime, tasks, availability, fulfillment, preemptions, migrations);
+	}
+
+	/**
+	 * Creates the summary of a run that did not finish.
+	 * 
+	 * @param run the run
+	 * @param cause the error that stopped the run
+	 * @return the summary
+	 */
+	public static RunSummary failed(ParameterSweep.Run run, Throwable cause) {
+		return new RunSummary(run, "failed: " + cause, Double.NaN, 0);
+	}
+
+	/**
+	 * Prints a table of summaries, tab separated, with one line per run.
+	 * 
+	 * @param summaries the summaries
+	 * @param out the output
+	 */
+	public static void printTable(List<RunSummary> summaries, PrintStream out) {
+		int priorities = 0;
+		for (RunSummary summary : summaries) {
+			priorities = Math.max(priorities, summary.tasks.length);
+		}
+
+		StringBuilder header = new StringBuilder("run\tstatus\twall_seconds");
+		for (int priority = 0; priority < priorities; priority++) {
+			header.append("\ttasks_p").append(priority).append("\tavailability_p").append(priority)
+					.append("\tslo_fulfillment_p").append(priority);
+		}
+		header.append("\tpreemptions\tmigrations\toverrides");
+		out.println(header);
+
+		for (RunSummary summary : summaries) {
+			StringBuilder line = new StringBuilder();
+			line.append(summary.name).append('\t').append(summary.status).append('\t')
+					.append(format(summary.wallTime));
+			for (int priority = 0; priority < priorities; priority++) {
+				if (priority < summary.tasks.length) {
+					line.append('\t').append(summary.tasks[priority]).append('\t')
+							.append(format(summary.meanAvailability[priority])).append('\t')
+							.append(format(summary.sloFulfillment[priority]));
+				} else {
+					line.append("\t-\t-\t-");
+				}
+			}
+			line.append('\t').append(summary.preemptions).append('\t').append(summary.migrations).append('\t')
+					.append(summary.overrides);
+			out.println(line);
+		}
+	}
+
+	private static String format(double value) {
+		return Double.isNaN(value) ? "-" : String.format(Locale.US, "%.4f", value);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getStatus() {
+		return status;
+	}
+
+	public int getTasks(int priority) {
+		return tasks[priority];
+	}
+
+	public double getMeanAvailability(int priority) {
+		return meanAvailability[priority];
+	}
+
+	public double getSloFulfillment(int priority) {
+		return sloFulfillment[priority];
+	}
+
+	public long getPreemptions() {
+		return preemptions;
+	}
+
+	public long getMigrations() {
+		return migrations;
+	}
+
+}
@@ -13,6 +13,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 
+import org.cloudbus.cloudsim.core.CloudSim;
 import org.cloudbus.cloudsim.network.DelayMatrix_Float;
 import org.cloudbus.cloudsim.network.GraphReaderBrite;
 import org.cloudbus.cloudsim.network.TopologicalGraph;
@@ -30,44 +31,44 @@ import org.cloudbus.cloudsim.network.TopologicalNode;
  * Nevertheless, each CloudSim entity must be mapped to one (and only one) BRITE node to allow
  * proper work of the network simulation. Each BRITE node can be mapped to only one entity at a
  * time.
+ * <p/>
+ * The topology is kept by the {@link org.cloudbus.cloudsim.core.SimulationContext} of the
+ * simulation, so simulations running concurrently have independent topologies. The static methods
+ * of this class act on the topology of the current context.
  * 
  * @author Rodrigo N. Calheiros
  * @author Anton Beloglazov
  * @since CloudSim Toolkit 1.0
- * 
- * @todo The class only have static methods, that indicates it doesn't have to be instantiated.
- * In fact, it doesn't appear it is being instantiated anywhere.
- * A private default constructor would be created to avoid instantiation.
  */
 public class NetworkTopology {
         /**
          * The BRITE id to use for the next node to be created in the network.
          */
-	protected static int nextIdx = 0;
+	protected int nextIdx = 0;
 
-	private static boolean networkEnabled = false;
+	private boolean networkEnabled = false;
 
         /**
          * A matrix containing the delay between every pair of nodes in the network.
          */
-	protected static DelayMatrix_Float delayMatrix = null;
+	protected DelayMatrix_Float delayMatrix = null;
 
         /**
          * A matrix containing the bandwidth between every pair of nodes in the network.
          */
-	protected static double[][] bwMatrix = null;
+	protected double[][] bwMatrix = null;
 
         /**
          * The Topological Graph of the network.
          */
-	protected static TopologicalGraph graph = null;
+	protected TopologicalGraph graph = null;
 
 	/**
          * The map between CloudSim entities and BRITE entities.
          * Each key is a CloudSim entity ID and each value the corresponding
          * BRITE entity ID.
          */
-        protected static Map<Integer, Integer> map = null;
+        protected Map<Integer, Integer> map = null;
 
 	/**
 	 * Creates the network topology if the file exists and can be successfully parsed. File is
@@ -79,14 +80,15 @@ public class NetworkTopology {
 	 */
 	public static void buildNetworkTopology(String fileName) {
 		Log.printConcatLine("Topology file: ", fileName);
+		NetworkTopology topology = current();
 
 		// try to find the file
 		GraphReaderBrite reader = new GraphReaderBrite();
 
 		try {
-			graph = reader.readGraphFile(fileName);
-			map = new HashMap<Integer, Integer>();
-			generateMatrices();
+			topology.graph = reader.readGraphFile(fileName);
+			topology.map = new HashMap<Integer, Integer>();
+			topology.generateMatrices();
 		} catch (IOException e) {
 			// problem with the file. Does not simulate network
 			Log.printLine("Problem in processing BRITE file. Network simulation is disabled. Error: "
@@ -98,7 +100,7 @@ public class NetworkTopology {
 	/**
 	 * Generates the matrices used internally to set latency and bandwidth between elements.
 	 */
-	private static void generateMatrices() {
+	private void generateMatrices() {
 		// creates the delay matrix
 		delayMatrix = new DelayMatrix_Float(graph, false);
 
@@ -122,6 +124,19 @@ public class NetworkTopology {
 	 * @post $none
 	 */
 	public static void addLink(int srcId, int destId, double bw, double lat) {
+		current().addLinkToTopology(srcId, destId, bw, lat);
+	}
+
+	/**
+	 * Adds a new link in this network topology.
+	 * 
+	 * @param srcId ID of the CloudSim entity that represents the link's source node
+	 * @param destId ID of the CloudSim entity that represents the link's destination node
+	 * @param bw Link's bandwidth
+	 * @param lat link's latency
+	 * @see #addLink(int, int, double, double)
+	 */
+	private void addLinkToTopology(int srcId, int destId, double bw, double lat) {
 
 		if (graph == null) {
 			graph = new TopologicalGraph();
@@ -194,12 +209,13 @@ public class NetworkTopology {
 	 * @post $none
 	 */
 	public static void mapNode(int cloudSimEntityID, int briteID) {
-		if (networkEnabled) {
+		NetworkTopology topology = current();
+		if (topology.networkEnabled) {
 			try {
 				// this CloudSim entity was already mapped?
-				if (!map.containsKey(cloudSimEntityID)) {
-					if (!map.containsValue(briteID)) { // this BRITE node was already mapped?
-						map.put(cloudSimEntityID, briteID);
+				if (!topology.map.containsKey(cloudSimEntityID)) {
+					if (!topology.map.containsValue(briteID)) { // this BRITE node was already mapped?
+						topology.map.put(cloudSimEntityID, briteID);
 					} else {
 						Log.printConcatLine("Error in network mapping. BRITE node ", briteID, " already in use.");
 					}
@@ -222,9 +238,10 @@ public class NetworkTopology {
 	 * @post $none
 	 */
 	public static void unmapNode(int cloudSimEntityID) {
-		if (networkEnabled) {
+		NetworkTopology topology = current();
+		if (topology.networkEnabled) {
 			try {
-				map.remove(cloudSimEntityID);
+				topology.map.remove(cloudSimEntityID);
 			} catch (Exception e) {
 				Log.printConcatLine("Error in network unmapping. CloudSim node: ", cloudSimEntityID);
 			}
@@ -242,10 +259,11 @@ public class NetworkTopology {
 	 * @post $none
 	 */
 	public static double getDelay(int srcID, int destID) {
-		if (networkEnabled) {
+		NetworkTopology topology = current();
+		if (topology.networkEnabled) {
 			try {
 				// add the network latency
-				double delay = delayMatrix.getDelay(map.get(srcID), map.get(destID));
+				double delay = topology.delayMatrix.getDelay(topology.map.get(srcID), topology.map.get(destID));
 
 				return delay;
 			} catch (Exception e) {
@@ -265,7 +283,16 @@ public class NetworkTopology {
 	 * @post $none
 	 */
 	public static boolean isNetworkEnabled() {
-		return networkEnabled;
+		return current().networkEnabled;
+	}
+
+	/**
+	 * Gets the network topology of the current simulation context.
+	 * 
+	 * @return the network topology
+	 */
+	private static NetworkTopology current() {
+		return CloudSim.getContext().getNetworkTopology();
 	}
 
 }
@@ -81,7 +81,7 @@ public class Vm {
          * time, he/she doesn't have to iterate over the entire list
          * to find the desired entry.
          */
-	private final List<VmStateHistoryEntry> stateHistory = new LinkedList<VmStateHistoryEntry>();
+	private List<VmStateHistoryEntry> stateHistory;
 
 	/**
 	 * Creates a new Vm object.
@@ -118,7 +118,6 @@ public class Vm {
 			CloudletScheduler cloudletScheduler) {
 		setId(id);
 		setUserId(userId);
-		setUid(getUid(userId, id));
 		setMips(mips);
 		setNumberOfPes(numberOfPes);
 		setRam(ram);
@@ -252,11 +251,15 @@ public class Vm {
 	}
 
 	/**
-	 * Gets unique string identifier of the VM.
+	 * Gets unique string identifier of the VM. It is only made when first asked for, as many VMs
+	 * never need it.
 	 * 
 	 * @return string uid
 	 */
 	public String getUid() {
+		if (uid == null) {
+			uid = getUid(getUserId(), getId());
+		}
 		return uid;
 	}
 
@@ -579,11 +582,15 @@ public class Vm {
 	}
 
 	/**
-	 * Gets the state history.
+	 * Gets the state history. The list is only made when first asked for, as many VMs never
+	 * record their history.
 	 * 
 	 * @return the state history
 	 */
 	public List<VmStateHistoryEntry> getStateHistory() {
+		if (stateHistory == null) {
+			stateHistory = new LinkedList<VmStateHistoryEntry>();
+		}
 		return stateHistory;
 	}
 
@@ -0,0 +1,89 @@
+/*
+ * Title:        CloudSim Toolkit
+ * Description:  CloudSim (Cloud Simulation) Toolkit for Modeling and Simulation of Clouds
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2009-2012, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.core;
+
+import java.util.Collection;
+
+/**
+ * Base class for {@link FutureQueue} implementations. It assigns the
+ * {@link SimEvent#serial serial} of the added events, so subclasses only need to keep the events
+ * ordered by <tt>(time, serial)</tt> and, for equal keys, by insertion order.
+ *
+ * @since CloudSim Toolkit 4.0
+ */
+public abstract class AbstractFutureQueue implements FutureQueue {
+
+	/**
+	 * A incremental number used for {@link SimEvent#serial} event attribute. It starts at 1, as 0
+	 * is the serial of the events added first.
+	 */
+	private long serial = 1;
+
+	@Override
+	public void addEvent(SimEvent newEvent) {
+		newEvent.setSerial(serial++);
+		insert(newEvent);
+	}
+
+	@Override
+	public void addEvent(SimEvent newEvent, long serial) {
+		newEvent.setSerial(serial);
+		insert(newEvent);
+	}
+
+	@Override
+	public void addEventFirst(SimEvent newEvent) {
+		newEvent.setSerial(0);
+		insert(newEvent);
+	}
+
+	@Override
+	public long reserveSerials(int count) {
+		long first = serial;
+		serial += count;
+		return first;
+	}
+
+	@Override
+	public boolean removeAll(Collection<SimEvent> events) {
+		boolean changed = false;
+		for (SimEvent event : events) {
+			changed |= remove(event);
+		}
+		return changed;
+	}
+
+	/**
+	 * Inserts an event whose serial was already set. Events with the same time and serial must
+	 * be delivered in the order they were inserted.
+	 *
+	 * @param event the event
+	 */
+	protected abstract void insert(SimEvent event);
+
+	/**
+	 * Compares two events by time and then by serial, the order used by every future queue.
+	 *
+	 * @param e1 an event
+	 * @param e2 another event
+	 * @return a negative integer, zero, or a positive integer as the first event must be delivered
+	 *         before, at the same position or after the second one
+	 */
+	protected static int compare(SimEvent e1, SimEvent e2) {
+		double t1 = e1.eventTime();
+		double t2 = e2.eventTime();
+		if (t1 < t2) {
+			return -1;
+		} else if (t1 > t2) {
+			return 1;
+		}
+		return Long.compare(e1.serial, e2.serial);
+	}
+
+}
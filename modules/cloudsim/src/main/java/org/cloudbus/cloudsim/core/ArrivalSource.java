@@ -0,0 +1,49 @@
+/*
+ * Title:        CloudSim Toolkit
+ * Description:  CloudSim (Cloud Simulation) Toolkit for Modeling and Simulation of Clouds
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2009-2012, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.core;
+
+/**
+ * A sorted cursor over events whose times are known in advance, such as the arrivals of the
+ * requests read from a trace. Instead of adding one event per arrival to the
+ * {@link FutureQueue}, an entity gives the cursor to the simulation, which merges it with the
+ * future queue by time and takes the data of an arrival only when the arrival is the next event
+ * to be delivered. The data of the arrivals not reached yet is never created, and the future
+ * queue only holds the other events.
+ * <p>
+ * The arrivals must be given in non decreasing order of time, and their times can not be before
+ * the simulation time when the cursor is given to the simulation.
+ *
+ * @since CloudSim Toolkit 4.0
+ * @see SimulationContext#sendArrivals(int, int, int, ArrivalSource)
+ */
+public interface ArrivalSource {
+
+	/**
+	 * Gets the number of arrivals not taken yet.
+	 *
+	 * @return the number of remaining arrivals
+	 */
+	int remaining();
+
+	/**
+	 * Gets the time of the next arrival, without taking it. It is only called when there are
+	 * remaining arrivals.
+	 *
+	 * @return the time of the next arrival
+	 */
+	double nextTime();
+
+	/**
+	 * Takes the next arrival, creating the data of its event. It is only called when there are
+	 * remaining arrivals.
+	 *
+	 * @return the data of the event of the arrival
+	 */
+	Object next();
+}
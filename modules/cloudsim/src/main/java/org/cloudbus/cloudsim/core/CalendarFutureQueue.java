@@ -0,0 +1,377 @@
+/*
+ * Title:        CloudSim Toolkit
+ * Description:  CloudSim (Cloud Simulation) Toolkit for Modeling and Simulation of Clouds
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2009-2012, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A {@link FutureQueue} implemented as a calendar queue (R. Brown, "Calendar queues: a fast O(1)
+ * priority queue implementation for the simulation event set problem", CACM 1988). Events are
+ * hashed by time into an array of "day" buckets, each one kept sorted, and the queue walks the
+ * days of the current "year" when looking for the next event. The number of days doubles or
+ * halves as the queue grows or shrinks, and the day width is estimated again from the earliest
+ * events at each resize, so adding and polling are O(1) on average when event times are not too
+ * skewed.
+ * <p>
+ * Many events at times that are almost, but not exactly, equal end up in the same day and make
+ * adding events O(n). When event times are not rounded, a {@link LadderFutureQueue} is safer.
+ * <p>
+ * Removing an arbitrary event is O(n) in the worst case, as it is only used when cancelling events.
+ * The iterator does not follow the delivering order.
+ *
+ * @since CloudSim Toolkit 4.0
+ * @see FutureQueue
+ */
+public class CalendarFutureQueue extends AbstractFutureQueue {
+
+	private static final int MIN_BUCKETS = 2;
+
+	/** The minimum number of earliest events used to estimate the day width. */
+	private static final int WIDTH_SAMPLE_SIZE = 25;
+
+	private static final double DEFAULT_WIDTH = 1.0;
+
+	/** An event and its ordering keys, chained in a day bucket. */
+	private static final class Node {
+		final SimEvent event;
+		final double time;
+		final long serial;
+		final long sequence;
+		/** The absolute day of the event, i.e., floor(time / width). */
+		long day;
+		Node next;
+
+		Node(SimEvent event, long sequence) {
+			this.event = event;
+			this.time = event.eventTime();
+			this.serial = event.serial;
+			this.sequence = sequence;
+		}
+
+		boolean before(Node other) {
+			if (time != other.time) {
+				return time < other.time;
+			}
+			if (serial != other.serial) {
+				return serial < other.serial;
+			}
+			return sequence < other.sequence;
+		}
+	}
+
+	private Node[] buckets;
+
+	/** The last node of each bucket, as most events are added after the others of their day. */
+	private Node[] tails;
+
+	private double width;
+
+	/** The absolute day the search for the next event starts from. */
+	private long currentDay;
+
+	private int size;
+
+	private long nextSequence;
+
+	/**
+	 * Creates a calendar future queue.
+	 */
+	public CalendarFutureQueue() {
+		buckets = new Node[MIN_BUCKETS];
+		tails = new Node[MIN_BUCKETS];
+		width = DEFAULT_WIDTH;
+		currentDay = Long.MAX_VALUE;
+	}
+
+	@Override
+	protected void insert(SimEvent event) {
+		Node node = new Node(event, nextSequence++);
+		link(node);
+		size++;
+		if (size > 2 * buckets.length) {
+			resize(2 * buckets.length);
+		}
+	}
+
+	@Override
+	public SimEvent peek() {
+		int bucket = locateHead();
+		return bucket < 0 ? null : buckets[bucket].event;
+	}
+
+	@Override
+	public SimEvent poll() {
+		int bucket = locateHead();
+		if (bucket < 0) {
+			return null;
+		}
+		Node head = buckets[bucket];
+		buckets[bucket] = head.next;
+		if (head.next == null) {
+			tails[bucket] = null;
+		}
+		size--;
+		if (size < buckets.length / 2 && buckets.length > MIN_BUCKETS) {
+			resize(buckets.length / 2);
+		}
+		return head.event;
+	}
+
+	@Override
+	public boolean remove(SimEvent event) {
+		int bucket = bucketOf(day(event.eventTime()));
+		if (unlink(bucket, event, true)) {
+			return true;
+		}
+		for (int i = 0; i < buckets.length; i++) {
+			if (unlink(i, event, false)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void clear() {
+		buckets = new Node[MIN_BUCKETS];
+		tails = new Node[MIN_BUCKETS];
+		width = DEFAULT_WIDTH;
+		currentDay = Long.MAX_VALUE;
+		size = 0;
+	}
+
+	/**
+	 * Returns an iterator over a snapshot of the queue. Calling {@link Iterator#remove()} removes
+	 * the last returned event from the queue.
+	 */
+	@Override
+	public Iterator<SimEvent> iterator() {
+		final List<SimEvent> snapshot = new ArrayList<SimEvent>(size);
+		for (Node bucket : buckets) {
+			for (Node node = bucket; node != null; node = node.next) {
+				snapshot.add(node.event);
+			}
+		}
+		return new Iterator<SimEvent>() {
+
+			private final Iterator<SimEvent> it = snapshot.iterator();
+
+			private SimEvent last;
+
+			@Override
+			public boolean hasNext() {
+				return it.hasNext();
+			}
+
+			@Override
+			public SimEvent next() {
+				last = it.next();
+				return last;
+			}
+
+			@Override
+			public void remove() {
+				if (last == null) {
+					throw new IllegalStateException();
+				}
+				CalendarFutureQueue.this.remove(last);
+				last = null;
+			}
+		};
+	}
+
+	/**
+	 * Finds the bucket holding the next event and moves the current day to it.
+	 *
+	 * @return the bucket index or -1 if the queue is empty
+	 */
+	private int locateHead() {
+		if (size == 0) {
+			return -1;
+		}
+		long day = currentDay;
+		for (int i = 0; i < buckets.length; i++, day++) {
+			int bucket = bucketOf(day);
+			Node head = buckets[bucket];
+			if (head != null && head.day <= day) {
+				currentDay = day;
+				return bucket;
+			}
+		}
+
+		// nothing in the current year, the next event is the earliest bucket head
+		Node earliest = null;
+		int earliestBucket = -1;
+		for (int i = 0; i < buckets.length; i++) {
+			Node head = buckets[i];
+			if (head != null && (earliest == null || head.before(earliest))) {
+				earliest = head;
+				earliestBucket = i;
+			}
+		}
+		currentDay = earliest.day;
+		return earliestBucket;
+	}
+
+	private void link(Node node) {
+		node.day = day(node.time);
+		if (node.day < currentDay) {
+			currentDay = node.day;
+		}
+		int bucket = bucketOf(node.day);
+		Node current = buckets[bucket];
+		if (current == null) {
+			buckets[bucket] = node;
+			tails[bucket] = node;
+			return;
+		}
+		if (!node.before(tails[bucket])) {
+			tails[bucket].next = node;
+			tails[bucket] = node;
+			return;
+		}
+		if (node.before(current)) {
+			node.next = current;
+			buckets[bucket] = node;
+			return;
+		}
+		while (!node.before(current.next)) {
+			current = current.next;
+		}
+		node.next = current.next;
+		current.next = node;
+	}
+
+	private boolean unlink(int bucket, SimEvent event, boolean identity) {
+		Node previous = null;
+		for (Node node = buckets[bucket]; node != null; previous = node, node = node.next) {
+			if (identity ? node.event == event : node.event.equals(event)) {
+				if (previous == null) {
+					buckets[bucket] = node.next;
+				} else {
+					previous.next = node.next;
+				}
+				if (node.next == null) {
+					tails[bucket] = previous;
+				}
+				size--;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void resize(int newLength) {
+		Node[] oldBuckets = buckets;
+		double newWidth = estimateWidth();
+
+		buckets = new Node[newLength];
+		tails = new Node[newLength];
+		width = newWidth;
+		currentDay = Long.MAX_VALUE;
+		for (Node bucket : oldBuckets) {
+			Node node = bucket;
+			while (node != null) {
+				Node next = node.next;
+				node.next = null;
+				link(node);
+				node = next;
+			}
+		}
+	}
+
+	/**
+	 * Estimates the day width as three times the average separation of the earliest events, as
+	 * suggested by Brown. Events having the same time cannot be split over several days, so when
+	 * there are many of them the width is half the smallest separation between distinct times
+	 * instead, which puts each distinct time in its own day even under rounding.
+	 */
+	private double estimateWidth() {
+		WidthSample sample = new WidthSample();
+		long day = currentDay;
+		for (int i = 0; i < buckets.length && !sample.isFull(); i++, day++) {
+			for (Node node = buckets[bucketOf(day)]; node != null && !sample.isFull(); node = node.next) {
+				if (node.day == day) {
+					sample.add(node.time);
+				} else if (node.day > day) {
+					break;
+				}
+			}
+		}
+
+		if (!sample.isFull()) {
+			// the current year has too few events, so falls back to sorting all of them
+			double[] times = new double[size];
+			int n = 0;
+			for (Node bucket : buckets) {
+				for (Node node = bucket; node != null; node = node.next) {
+					times[n++] = node.time;
+				}
+			}
+			Arrays.sort(times);
+			sample = new WidthSample();
+			for (int i = 0; i < n && !sample.isFull(); i++) {
+				sample.add(times[i]);
+			}
+		}
+
+		double newWidth = sample.width();
+		return newWidth > 0 && !Double.isInfinite(newWidth) ? newWidth : width;
+	}
+
+	/** The earliest event times, added in delivering order, used to estimate the day width. */
+	private static final class WidthSample {
+		private int events;
+		private int distinctTimes;
+		private double first;
+		private double last;
+		private double smallestSeparation = Double.POSITIVE_INFINITY;
+
+		void add(double time) {
+			if (events == 0) {
+				first = time;
+				distinctTimes = 1;
+			} else if (time != last) {
+				smallestSeparation = Math.min(smallestSeparation, time - last);
+				distinctTimes++;
+			}
+			last = time;
+			events++;
+		}
+
+		boolean isFull() {
+			return events >= WIDTH_SAMPLE_SIZE && distinctTimes >= 2;
+		}
+
+		double width() {
+			if (distinctTimes < 2) {
+				return 0;
+			}
+			double width = 3 * (last - first) / (events - 1);
+			return width < smallestSeparation ? smallestSeparation / 2 : width;
+		}
+	}
+
+	private long day(double time) {
+		return (long) Math.floor(time / width);
+	}
+
+	private int bucketOf(long day) {
+		return (int) Math.floorMod(day, (long) buckets.length);
+	}
+
+}
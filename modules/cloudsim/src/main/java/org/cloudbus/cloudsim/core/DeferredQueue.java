@@ -8,12 +8,26 @@
 
 package org.cloudbus.cloudsim.core;
 
-import java.util.*;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.cloudbus.cloudsim.core.predicates.Predicate;
+import org.cloudbus.cloudsim.core.predicates.PredicateAny;
+import org.cloudbus.cloudsim.core.predicates.PredicateType;
 
 /**
- * This class implements the deferred event queue used by {@link CloudSim}. 
- * The event queue uses a linked list to store the events.
- * 
+ * This class implements the deferred event queue used by {@link CloudSim}.
+ * The events are kept in one mailbox per destination entity, so looking up the events of an
+ * entity does not touch the events sent to the other ones. Each mailbox is a linked list in
+ * temporal order and, once the entity looks events up by tag with a {@link PredicateType},
+ * it also keeps one list per tag, so these lookups only touch the events having the
+ * requested tags. The events are also counted by destination and tag, so counting them takes
+ * constant time.
+ *
  * @author Marcos Dias de Assuncao
  * @since CloudSim Toolkit 1.0
  * @see CloudSim
@@ -21,65 +35,428 @@ import java.util.*;
  */
 public class DeferredQueue {
 
-	/** The list of events. */
-	private final List<SimEvent> list = new LinkedList<SimEvent>();
+	/** An event chained in its mailbox and, if the mailbox is indexed, in its tag list. */
+	private static final class Node {
+		final SimEvent event;
+		final double time;
+		final int tag;
+		/** The insertion order, which breaks ties between events with the same time. */
+		final long sequence;
+		Node previous;
+		Node next;
+		Node previousWithTag;
+		Node nextWithTag;
+
+		Node(SimEvent event, long sequence) {
+			this.event = event;
+			this.time = event.eventTime();
+			this.tag = event.getTag();
+			this.sequence = sequence;
+		}
+
+		boolean before(Node other) {
+			return time < other.time || (time == other.time && sequence < other.sequence);
+		}
+	}
+
+	/** The events of a mailbox having a given tag, in temporal order. */
+	private static final class TagList {
+		Node head;
+		Node tail;
+	}
+
+	/** The events sent to an entity. */
+	private static final class Mailbox {
+		Node head;
+		Node tail;
+		int size;
+
+		/** The events by tag, or <code>null</code> if the mailbox is not indexed yet. */
+		TIntObjectHashMap<TagList> tags;
+
+		void add(Node node) {
+			// The event has to be inserted as the last of all events
+			// with the same event_time(). Yes, this matters.
+			if (tail == null || node.time >= tail.time) {
+				node.previous = tail;
+				if (tail == null) {
+					head = node;
+				} else {
+					tail.next = node;
+				}
+				tail = node;
+			} else {
+				Node current = head;
+				while (current.time <= node.time) {
+					current = current.next;
+				}
+				node.next = current;
+				node.previous = current.previous;
+				if (current.previous == null) {
+					head = node;
+				} else {
+					current.previous.next = node;
+				}
+				current.previous = node;
+			}
+			size++;
+
+			if (tags != null) {
+				index(node);
+			}
+		}
+
+		void remove(Node node) {
+			if (node.previous == null) {
+				head = node.next;
+			} else {
+				node.previous.next = node.next;
+			}
+			if (node.next == null) {
+				tail = node.previous;
+			} else {
+				node.next.previous = node.previous;
+			}
+			size--;
+
+			if (tags != null) {
+				TagList list = tags.get(node.tag);
+				if (node.previousWithTag == null) {
+					list.head = node.nextWithTag;
+				} else {
+					node.previousWithTag.nextWithTag = node.nextWithTag;
+				}
+				if (node.nextWithTag == null) {
+					list.tail = node.previousWithTag;
+				} else {
+					node.nextWithTag.previousWithTag = node.previousWithTag;
+				}
+			}
+		}
+
+		/**
+		 * Returns the tag index, building it the first time the mailbox is looked up by tag.
+		 */
+		TIntObjectHashMap<TagList> tags() {
+			if (tags == null) {
+				tags = new TIntObjectHashMap<TagList>();
+				for (Node node = head; node != null; node = node.next) {
+					index(node);
+				}
+			}
+			return tags;
+		}
+
+		private void index(Node node) {
+			TagList list = tags.get(node.tag);
+			if (list == null) {
+				list = new TagList();
+				tags.put(node.tag, list);
+			}
+
+			// most events are appended; otherwise the event goes after the last one before it
+			Node previous = list.tail;
+			while (previous != null && node.before(previous)) {
+				previous = previous.previousWithTag;
+			}
+
+			node.previousWithTag = previous;
+			node.nextWithTag = previous == null ? list.head : previous.nextWithTag;
+			if (previous == null) {
+				list.head = node;
+			} else {
+				previous.nextWithTag = node;
+			}
+			if (node.nextWithTag == null) {
+				list.tail = node;
+			} else {
+				node.nextWithTag.previousWithTag = node;
+			}
+		}
+	}
+
+	private static final Mailbox EMPTY_MAILBOX = new Mailbox();
+
+	/** The mailboxes, indexed by the id of their destination entity. */
+	private Mailbox[] mailboxes = new Mailbox[16];
+
+	/** The number of events in the queue. */
+	private int size;
+
+	/** The number of events ever added to the queue. */
+	private long sequence;
 
-	/** The max time that an added event is scheduled. */
-	private double maxTime = -1;
+	/** The number of events in the queue by destination and tag. */
+	private final TagCounters tagCounters = new TagCounters();
 
 	/**
 	 * Adds a new event to the queue. Adding a new event to the queue preserves the temporal order
-	 * of the events.
-	 * 
+	 * of the events sent to the same entity.
+	 *
 	 * @param newEvent The event to be added to the queue.
 	 */
 	public void addEvent(SimEvent newEvent) {
-		// The event has to be inserted as the last of all events
-		// with the same event_time(). Yes, this matters.
-		double eventTime = newEvent.eventTime();
-		if (eventTime >= maxTime) {
-			list.add(newEvent);
-			maxTime = eventTime;
-			return;
+		int destination = newEvent.getDestination();
+		if (destination < 0) {
+			throw new IllegalArgumentException("Attempt to defer an event to a null entity detected.");
+		}
+		if (destination >= mailboxes.length) {
+			mailboxes = Arrays.copyOf(mailboxes, Math.max(destination + 1, 2 * mailboxes.length));
+		}
+		Mailbox mailbox = mailboxes[destination];
+		if (mailbox == null) {
+			mailbox = new Mailbox();
+			mailboxes[destination] = mailbox;
+		}
+		mailbox.add(new Node(newEvent, sequence++));
+		tagCounters.increment(destination, newEvent.getTag());
+		size++;
+	}
+
+	/**
+	 * Counts the events sent to an entity that have a given tag, in constant time.
+	 *
+	 * @param destination the id of the entity
+	 * @param tag the tag
+	 * @return the number of events
+	 */
+	public int count(int destination, int tag) {
+		return tagCounters.get(destination, tag);
+	}
+
+	/**
+	 * Counts the events sent to an entity that match a predicate.
+	 *
+	 * @param destination the id of the entity
+	 * @param p the predicate
+	 * @return the number of matching events
+	 */
+	public int count(int destination, Predicate p) {
+		Mailbox mailbox = mailbox(destination);
+		if (mailbox.size == 0) {
+			return 0;
+		}
+		if (p.getClass() == PredicateAny.class) {
+			return mailbox.size;
+		}
+		if (p.getClass() == PredicateType.class) {
+			PredicateType type = (PredicateType) p;
+			int count = 0;
+			for (int i = 0; i < type.getNumberOfTags(); i++) {
+				if (!isRepeated(type, i)) {
+					count += tagCounters.get(destination, type.getTag(i));
+				}
+			}
+			return count;
 		}
 
-		ListIterator<SimEvent> iterator = list.listIterator();
-		SimEvent event;
-		while (iterator.hasNext()) {
-			event = iterator.next();
-			if (event.eventTime() > eventTime) {
-				iterator.previous();
-				iterator.add(newEvent);
-				return;
+		int count = 0;
+		for (Node node = mailbox.head; node != null; node = node.next) {
+			if (p.match(node.event)) {
+				count++;
 			}
 		}
+		return count;
+	}
+
+	/**
+	 * Finds the first event sent to an entity that matches a predicate.
+	 *
+	 * @param destination the id of the entity
+	 * @param p the predicate
+	 * @return the event or <code>null</code> if no event matches
+	 */
+	public SimEvent findFirst(int destination, Predicate p) {
+		Node node = first(mailbox(destination), p);
+		return node == null ? null : node.event;
+	}
+
+	/**
+	 * Removes the first event sent to an entity that matches a predicate.
+	 *
+	 * @param destination the id of the entity
+	 * @param p the predicate
+	 * @return the removed event or <code>null</code> if no event matches
+	 */
+	public SimEvent select(int destination, Predicate p) {
+		Mailbox mailbox = mailbox(destination);
+		Node node = first(mailbox, p);
+		if (node == null) {
+			return null;
+		}
+		mailbox.remove(node);
+		tagCounters.decrement(destination, node.tag);
+		size--;
+		return node.event;
+	}
+
+	/**
+	 * Removes all events sent to an entity, keeping their temporal order.
+	 *
+	 * @param destination the id of the entity
+	 * @param events the list the removed events are appended to
+	 * @return the number of removed events
+	 */
+	public int selectAll(int destination, List<SimEvent> events) {
+		Mailbox mailbox = mailbox(destination);
+		if (mailbox.size == 0) {
+			return 0;
+		}
+		int removed = mailbox.size;
+		for (Node node = mailbox.head; node != null; node = node.next) {
+			events.add(node.event);
+			tagCounters.decrement(destination, node.tag);
+		}
+		mailbox.head = null;
+		mailbox.tail = null;
+		mailbox.size = 0;
+		if (mailbox.tags != null) {
+			mailbox.tags.clear();
+		}
+		size -= removed;
+		return removed;
+	}
 
-		list.add(newEvent);
+	/**
+	 * Checks whether the last event queued for the destination of a given event is equivalent to
+	 * it, that is, an event with the same time, source, destination, tag and data. An equivalent
+	 * event followed by any other event of the destination does not count, since the destination
+	 * has to see the other event between them.
+	 *
+	 * @param event the event
+	 * @return <code>true</code> if the last event of the destination is equivalent
+	 */
+	public boolean isLastEquivalent(SimEvent event) {
+		Mailbox mailbox = mailbox(event.getDestination());
+		Node last = mailbox.tail;
+		return last != null && last.time == event.eventTime() && last.event.getTag() == event.getTag()
+				&& last.event.getSource() == event.getSource() && equals(last.event.getData(), event.getData());
 	}
 
 	/**
-	 * Returns an iterator to the events in the queue.
-	 * 
+	 * Returns an iterator to the events in the queue, grouped by destination entity and in
+	 * temporal order for each entity.
+	 *
 	 * @return the iterator
 	 */
 	public Iterator<SimEvent> iterator() {
-		return list.iterator();
+		return new Iterator<SimEvent>() {
+
+			private int destination = -1;
+
+			private Node next;
+
+			private Node last;
+
+			private int lastDestination;
+
+			{
+				advance();
+			}
+
+			private void advance() {
+				while (next == null && ++destination < mailboxes.length) {
+					if (mailboxes[destination] != null) {
+						next = mailboxes[destination].head;
+					}
+				}
+			}
+
+			@Override
+			public boolean hasNext() {
+				return next != null;
+			}
+
+			@Override
+			public SimEvent next() {
+				if (next == null) {
+					throw new NoSuchElementException();
+				}
+				last = next;
+				lastDestination = destination;
+				next = next.next;
+				advance();
+				return last.event;
+			}
+
+			@Override
+			public void remove() {
+				if (last == null) {
+					throw new IllegalStateException();
+				}
+				mailboxes[lastDestination].remove(last);
+				tagCounters.decrement(lastDestination, last.tag);
+				size--;
+				last = null;
+			}
+		};
 	}
 
 	/**
 	 * Returns the size of this event queue.
-	 * 
+	 *
 	 * @return the number of events in the queue.
 	 */
 	public int size() {
-		return list.size();
+		return size;
 	}
 
 	/**
 	 * Clears the queue.
 	 */
 	public void clear() {
-		list.clear();
+		Arrays.fill(mailboxes, null);
+		tagCounters.clear();
+		size = 0;
+	}
+
+	private Mailbox mailbox(int destination) {
+		if (destination < 0 || destination >= mailboxes.length || mailboxes[destination] == null) {
+			return EMPTY_MAILBOX;
+		}
+		return mailboxes[destination];
+	}
+
+	private static Node first(Mailbox mailbox, Predicate p) {
+		if (mailbox.size == 0) {
+			return null;
+		}
+		if (p.getClass() == PredicateAny.class) {
+			return mailbox.head;
+		}
+		if (p.getClass() == PredicateType.class) {
+			// the first event is the earliest head of the tag lists
+			TIntObjectHashMap<TagList> index = mailbox.tags();
+			PredicateType type = (PredicateType) p;
+			Node first = null;
+			for (int i = 0; i < type.getNumberOfTags(); i++) {
+				TagList list = index.get(type.getTag(i));
+				if (list != null && list.head != null && (first == null || list.head.before(first))) {
+					first = list.head;
+				}
+			}
+			return first;
+		}
+
+		for (Node node = mailbox.head; node != null; node = node.next) {
+			if (p.match(node.event)) {
+				return node;
+			}
+		}
+		return null;
+	}
+
+	private static boolean equals(Object data, Object other) {
+		return data == null ? other == null : data.equals(other);
+	}
+
+	private static boolean isRepeated(PredicateType type, int index) {
+		for (int i = 0; i < index; i++) {
+			if (type.getTag(i) == type.getTag(index)) {
+				return true;
+			}
+		}
+		return false;
 	}
 
-}
\ No newline at end of file
+}
@@ -8,105 +8,111 @@
 
 package org.cloudbus.cloudsim.core;
 
-import java.util.*;
+import java.util.Collection;
+import java.util.Iterator;
 
 /**
- * This class implements the future event queue used by {@link CloudSim}. 
- * The event queue uses a {@link TreeSet} in order to store the events.
- * 
+ * The future event queue used by {@link CloudSim}. Events are kept ordered by their
+ * {@link SimEvent#eventTime() time} and, for events scheduled to the same time, by their
+ * {@link SimEvent#serial serial}. Events having the same time and serial are delivered in the
+ * order they were added to the queue.
+ * <p>
+ * The implementation used by a simulation can be chosen through
+ * {@link CloudSim#init(int, java.util.Calendar, boolean, FutureQueue)}. When none is given,
+ * a {@link TreeSetFutureQueue} is used.
+ *
  * @author Marcos Dias de Assuncao
  * @since CloudSim Toolkit 1.0
- * @see Simulation
- * @see java.util.TreeSet
- * 
- * @todo It would be used a common interface for queues
- * such as this one and {@link DeferredQueue}
+ * @see TreeSetFutureQueue
+ * @see HeapFutureQueue
+ * @see CalendarFutureQueue
+ * @see LadderFutureQueue
  */
-public class FutureQueue {
-
-	/** The sorted set of events. */
-	private final TreeSet<SimEvent> sortedSet = new TreeSet<>();
-
-	/** A incremental number used for {@link SimEvent#serial} event attribute.
-         */
-	private long serial = 0;
+public interface FutureQueue {
 
 	/**
 	 * Adds a new event to the queue. Adding a new event to the queue preserves the temporal order of
 	 * the events in the queue.
-	 * 
+	 *
 	 * @param newEvent The event to be put in the queue.
 	 */
-	public void addEvent(SimEvent newEvent) {
-		newEvent.setSerial(serial++);
-		sortedSet.add(newEvent);
-	}
+	void addEvent(SimEvent newEvent);
 
-	public void addEvent(SimEvent newEvent, long serial) {
-		newEvent.setSerial(serial);
-		sortedSet.add(newEvent);
-	}
+	/**
+	 * Adds a new event to the queue using the given serial instead of the next one generated by
+	 * the queue. It allows an event to be placed before (or after) other events scheduled to the
+	 * same time.
+	 *
+	 * @param newEvent The event to be put in the queue.
+	 * @param serial the serial of the event
+	 */
+	void addEvent(SimEvent newEvent, long serial);
 
 	/**
 	 * Adds a new event to the head of the queue.
-	 * 
+	 *
 	 * @param newEvent The event to be put in the queue.
 	 */
-	public void addEventFirst(SimEvent newEvent) {
-		newEvent.setSerial(0);
-		sortedSet.add(newEvent);
-	}
+	void addEventFirst(SimEvent newEvent);
 
 	/**
-	 * Returns an iterator to the queue.
-	 * 
+	 * Reserves a block of consecutive serials, as if that many events were added to the queue
+	 * now. The events added later with the reserved serials are delivered, among the events
+	 * scheduled to the same time, where they would be if they had been added now.
+	 *
+	 * @param count the number of serials
+	 * @return the first serial of the block
+	 * @see #addEvent(SimEvent, long)
+	 */
+	long reserveSerials(int count);
+
+	/**
+	 * Returns an iterator to the queue. The iteration order is only guaranteed to be the
+	 * delivering order by implementations that state it.
+	 *
 	 * @return the iterator
 	 */
-	public Iterator<SimEvent> iterator() {
-		return sortedSet.iterator();
-	}
+	Iterator<SimEvent> iterator();
 
 	/**
 	 * Returns the size of this event queue.
-	 * 
+	 *
 	 * @return the size
 	 */
-	public int size() {
-		return sortedSet.size();
-	}
+	int size();
 
 	/**
 	 * Removes the event from the queue.
-	 * 
+	 *
 	 * @param event the event
 	 * @return true, if successful
 	 */
-	public boolean remove(SimEvent event) {
-		return sortedSet.remove(event);
-	}
+	boolean remove(SimEvent event);
 
 	/**
 	 * Removes all the events from the queue.
-	 * 
+	 *
 	 * @param events the events
 	 * @return true, if successful
 	 */
-	public boolean removeAll(Collection<SimEvent> events) {
-		return sortedSet.removeAll(events);
-	}
+	boolean removeAll(Collection<SimEvent> events);
 
 	/**
 	 * Clears the queue.
 	 */
-	public void clear() {
-		sortedSet.clear();
-	}
+	void clear();
 
-	public SimEvent peek(){
-		return sortedSet.first();
-	}
+	/**
+	 * Returns the next event to be delivered, without removing it.
+	 *
+	 * @return the head of the queue
+	 */
+	SimEvent peek();
 
-	public SimEvent poll(){
-		return sortedSet.pollFirst();
-	}
-}
\ No newline at end of file
+	/**
+	 * Removes and returns the next event to be delivered.
+	 *
+	 * @return the head of the queue or <tt>null</tt> if the queue is empty
+	 */
+	SimEvent poll();
+}
@@ -0,0 +1,274 @@
+/*
+ * Title:        CloudSim Toolkit
+ * Description:  CloudSim (Cloud Simulation) Toolkit for Modeling and Simulation of Clouds
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2009-2012, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.core;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A {@link FutureQueue} backed by an implicit d-ary min-heap. The ordering keys (time, serial and
+ * insertion sequence) are kept in primitive arrays parallel to the event array, so sifting does
+ * not dereference the events. Adding and polling are O(log n) and allocation free once the arrays
+ * have grown. A 4-ary heap (the default) usually beats the binary one because it is shallower and
+ * the children of a node share a cache line.
+ * <p>
+ * Removing an arbitrary event is O(n), as it is only used when cancelling events. The iterator
+ * does not follow the delivering order.
+ *
+ * @since CloudSim Toolkit 4.0
+ * @see FutureQueue
+ */
+public class HeapFutureQueue extends AbstractFutureQueue {
+
+	/** The default arity of the heap. */
+	public static final int DEFAULT_ARITY = 4;
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	/** The number of children of each node. */
+	private final int arity;
+
+	private SimEvent[] events;
+	private double[] times;
+	private long[] serials;
+
+	/** Insertion sequence of each event, used to break ties between equal (time, serial). */
+	private long[] sequences;
+
+	private int size;
+
+	private long nextSequence;
+
+	/**
+	 * Creates a 4-ary heap future queue.
+	 */
+	public HeapFutureQueue() {
+		this(DEFAULT_ARITY);
+	}
+
+	/**
+	 * Creates a heap future queue.
+	 *
+	 * @param arity the number of children of each node; 2 gives a binary heap
+	 */
+	public HeapFutureQueue(int arity) {
+		if (arity < 2) {
+			throw new IllegalArgumentException("The heap arity must be at least 2, but is: " + arity);
+		}
+		this.arity = arity;
+		events = new SimEvent[INITIAL_CAPACITY];
+		times = new double[INITIAL_CAPACITY];
+		serials = new long[INITIAL_CAPACITY];
+		sequences = new long[INITIAL_CAPACITY];
+	}
+
+	@Override
+	protected void insert(SimEvent event) {
+		if (size == events.length) {
+			grow();
+		}
+		int index = size++;
+		events[index] = event;
+		times[index] = event.eventTime();
+		serials[index] = event.serial;
+		sequences[index] = nextSequence++;
+		siftUp(index);
+	}
+
+	@Override
+	public SimEvent peek() {
+		return size == 0 ? null : events[0];
+	}
+
+	@Override
+	public SimEvent poll() {
+		if (size == 0) {
+			return null;
+		}
+		SimEvent head = events[0];
+		removeAt(0);
+		return head;
+	}
+
+	@Override
+	public boolean remove(SimEvent event) {
+		for (int i = 0; i < size; i++) {
+			if (events[i] == event) {
+				removeAt(i);
+				return true;
+			}
+		}
+		for (int i = 0; i < size; i++) {
+			if (events[i].equals(event)) {
+				removeAt(i);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(events, 0, size, null);
+		size = 0;
+	}
+
+	/**
+	 * Returns an iterator over a snapshot of the queue. Calling {@link Iterator#remove()} removes
+	 * the last returned event from the queue.
+	 */
+	@Override
+	public Iterator<SimEvent> iterator() {
+		final SimEvent[] snapshot = Arrays.copyOf(events, size);
+		return new Iterator<SimEvent>() {
+
+			private int next = 0;
+
+			private SimEvent last;
+
+			@Override
+			public boolean hasNext() {
+				return next < snapshot.length;
+			}
+
+			@Override
+			public SimEvent next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				last = snapshot[next++];
+				return last;
+			}
+
+			@Override
+			public void remove() {
+				if (last == null) {
+					throw new IllegalStateException();
+				}
+				HeapFutureQueue.this.remove(last);
+				last = null;
+			}
+		};
+	}
+
+	private void removeAt(int index) {
+		int lastIndex = --size;
+		if (index != lastIndex) {
+			SimEvent moved = events[lastIndex];
+			move(lastIndex, index);
+			events[lastIndex] = null;
+			siftDown(index);
+			if (events[index] == moved) {
+				siftUp(index);
+			}
+		} else {
+			events[lastIndex] = null;
+		}
+	}
+
+	private void siftUp(int index) {
+		SimEvent event = events[index];
+		double time = times[index];
+		long serial = serials[index];
+		long sequence = sequences[index];
+
+		while (index > 0) {
+			int parent = (index - 1) / arity;
+			if (!less(time, serial, sequence, parent)) {
+				break;
+			}
+			move(parent, index);
+			index = parent;
+		}
+		set(index, event, time, serial, sequence);
+	}
+
+	private void siftDown(int index) {
+		SimEvent event = events[index];
+		double time = times[index];
+		long serial = serials[index];
+		long sequence = sequences[index];
+
+		while (true) {
+			int firstChild = index * arity + 1;
+			if (firstChild >= size) {
+				break;
+			}
+			int lastChild = Math.min(firstChild + arity, size);
+			int smallest = firstChild;
+			for (int child = firstChild + 1; child < lastChild; child++) {
+				if (less(child, smallest)) {
+					smallest = child;
+				}
+			}
+			if (!less(smallest, time, serial, sequence)) {
+				break;
+			}
+			move(smallest, index);
+			index = smallest;
+		}
+		set(index, event, time, serial, sequence);
+	}
+
+	private boolean less(double time, long serial, long sequence, int index) {
+		if (time != times[index]) {
+			return time < times[index];
+		}
+		if (serial != serials[index]) {
+			return serial < serials[index];
+		}
+		return sequence < sequences[index];
+	}
+
+	private boolean less(int index, double time, long serial, long sequence) {
+		if (times[index] != time) {
+			return times[index] < time;
+		}
+		if (serials[index] != serial) {
+			return serials[index] < serial;
+		}
+		return sequences[index] < sequence;
+	}
+
+	private boolean less(int i, int j) {
+		return less(i, times[j], serials[j], sequences[j]);
+	}
+
+	private void move(int from, int to) {
+		events[to] = events[from];
+		times[to] = times[from];
+		serials[to] = serials[from];
+		sequences[to] = sequences[from];
+	}
+
+	private void set(int index, SimEvent event, double time, long serial, long sequence) {
+		events[index] = event;
+		times[index] = time;
+		serials[index] = serial;
+		sequences[index] = sequence;
+	}
+
+	private void grow() {
+		int capacity = events.length << 1;
+		if (capacity < 0) {
+			throw new IllegalStateException("The future queue is too large.");
+		}
+		events = Arrays.copyOf(events, capacity);
+		times = Arrays.copyOf(times, capacity);
+		serials = Arrays.copyOf(serials, capacity);
+		sequences = Arrays.copyOf(sequences, capacity);
+	}
+
+}
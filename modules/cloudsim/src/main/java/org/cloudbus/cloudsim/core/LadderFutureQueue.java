@@ -0,0 +1,408 @@
+/*
+ * Title:        CloudSim Toolkit
+ * Description:  CloudSim (Cloud Simulation) Toolkit for Modeling and Simulation of Clouds
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2009-2012, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A {@link FutureQueue} implemented as a ladder queue (W. T. Tang, R. S. M. Goh and I. L.-J. Thng,
+ * "Ladder queue: An O(1) priority queue structure for large-scale discrete event simulation",
+ * ACM TOMACS 2005). Far future events are appended, unsorted, to the <i>top</i> list. When the
+ * near future runs out, the top list is spread over the buckets of a <i>rung</i>; crowded buckets
+ * are spread again over a finer rung, and only small buckets are sorted into the <i>bottom</i>
+ * list, which the events are polled from. Adding and polling are O(1) amortized and, unlike a
+ * {@link CalendarFutureQueue}, the queue never needs to be resized.
+ * <p>
+ * Removing an arbitrary event is O(n), as it is only used when cancelling events. The iterator
+ * does not follow the delivering order.
+ *
+ * @since CloudSim Toolkit 4.0
+ * @see FutureQueue
+ */
+public class LadderFutureQueue extends AbstractFutureQueue {
+
+	/** The maximum number of rungs. */
+	private static final int MAX_RUNGS = 8;
+
+	/** Buckets with more events than this are spread over a new rung instead of being sorted. */
+	private static final int THRESHOLD = 50;
+
+	/** An event and its ordering keys, chained in the top list or in a rung bucket. */
+	private static final class Node {
+		final SimEvent event;
+		final double time;
+		final long serial;
+		final long sequence;
+		Node next;
+
+		Node(SimEvent event, long sequence) {
+			this.event = event;
+			this.time = event.eventTime();
+			this.serial = event.serial;
+			this.sequence = sequence;
+		}
+	}
+
+	/** Orders the nodes by time, serial and insertion sequence, from the last to the first one. */
+	private static final Comparator<Node> REVERSE_ORDER = new Comparator<Node>() {
+
+		@Override
+		public int compare(Node n1, Node n2) {
+			if (n1.time != n2.time) {
+				return n1.time < n2.time ? 1 : -1;
+			}
+			if (n1.serial != n2.serial) {
+				return n1.serial < n2.serial ? 1 : -1;
+			}
+			return Long.compare(n2.sequence, n1.sequence);
+		}
+	};
+
+	/** A rung of buckets of equal width. Buckets before {@link #current} were already consumed. */
+	private static final class Rung {
+		final double start;
+		final double width;
+		final Node[] buckets;
+		final int[] counts;
+		int current;
+
+		Rung(double start, double width, int length) {
+			this.start = start;
+			this.width = width;
+			this.buckets = new Node[length];
+			this.counts = new int[length];
+		}
+
+		/**
+		 * Returns the bucket of a time. It is a non-decreasing function of the time, which keeps
+		 * the buckets consistent with each other even under rounding.
+		 */
+		int bucketOf(double time) {
+			double index = Math.floor((time - start) / width);
+			if (index <= 0) {
+				return 0;
+			}
+			return index >= buckets.length - 1 ? buckets.length - 1 : (int) index;
+		}
+
+		void add(int bucket, Node node) {
+			node.next = buckets[bucket];
+			buckets[bucket] = node;
+			counts[bucket]++;
+		}
+	}
+
+	private Node top;
+
+	private int topCount;
+
+	/** Only events later than this time are appended to the top list. */
+	private double topStart = Double.NEGATIVE_INFINITY;
+
+	private double topMin;
+
+	private double topMax;
+
+	private final Rung[] rungs = new Rung[MAX_RUNGS];
+
+	private int rungCount;
+
+	/** The sorted bottom list, from the last to the first event, so polling removes its tail. */
+	private final List<Node> bottom = new ArrayList<Node>();
+
+	private int size;
+
+	private long nextSequence;
+
+	@Override
+	protected void insert(SimEvent event) {
+		Node node = new Node(event, nextSequence++);
+		size++;
+
+		if (node.time > topStart) {
+			appendToTop(node);
+			return;
+		}
+		for (int i = 0; i < rungCount; i++) {
+			Rung rung = rungs[i];
+			int bucket = rung.bucketOf(node.time);
+			if (bucket >= rung.current) {
+				rung.add(bucket, node);
+				return;
+			}
+		}
+		addToBottom(node);
+	}
+
+	@Override
+	public SimEvent peek() {
+		if (bottom.isEmpty() && !refillBottom()) {
+			return null;
+		}
+		return bottom.get(bottom.size() - 1).event;
+	}
+
+	@Override
+	public SimEvent poll() {
+		if (bottom.isEmpty() && !refillBottom()) {
+			return null;
+		}
+		size--;
+		return bottom.remove(bottom.size() - 1).event;
+	}
+
+	@Override
+	public boolean remove(SimEvent event) {
+		for (int i = 0; i < bottom.size(); i++) {
+			if (bottom.get(i).event == event) {
+				bottom.remove(i);
+				size--;
+				return true;
+			}
+		}
+		Node previous = null;
+		for (Node node = top; node != null; previous = node, node = node.next) {
+			if (node.event == event) {
+				if (previous == null) {
+					top = node.next;
+				} else {
+					previous.next = node.next;
+				}
+				topCount--;
+				size--;
+				return true;
+			}
+		}
+		for (int r = 0; r < rungCount; r++) {
+			Rung rung = rungs[r];
+			for (int b = rung.current; b < rung.buckets.length; b++) {
+				previous = null;
+				for (Node node = rung.buckets[b]; node != null; previous = node, node = node.next) {
+					if (node.event == event) {
+						if (previous == null) {
+							rung.buckets[b] = node.next;
+						} else {
+							previous.next = node.next;
+						}
+						rung.counts[b]--;
+						size--;
+						return true;
+					}
+				}
+			}
+		}
+
+		// the event may be a different but equal instance
+		for (SimEvent queued : snapshot()) {
+			if (queued != event && queued.equals(event)) {
+				return remove(queued);
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void clear() {
+		top = null;
+		topCount = 0;
+		topStart = Double.NEGATIVE_INFINITY;
+		Arrays.fill(rungs, null);
+		rungCount = 0;
+		bottom.clear();
+		size = 0;
+	}
+
+	/**
+	 * Returns an iterator over a snapshot of the queue. Calling {@link Iterator#remove()} removes
+	 * the last returned event from the queue.
+	 */
+	@Override
+	public Iterator<SimEvent> iterator() {
+		final Iterator<SimEvent> it = snapshot().iterator();
+		return new Iterator<SimEvent>() {
+
+			private SimEvent last;
+
+			@Override
+			public boolean hasNext() {
+				return it.hasNext();
+			}
+
+			@Override
+			public SimEvent next() {
+				last = it.next();
+				return last;
+			}
+
+			@Override
+			public void remove() {
+				if (last == null) {
+					throw new IllegalStateException();
+				}
+				LadderFutureQueue.this.remove(last);
+				last = null;
+			}
+		};
+	}
+
+	private List<SimEvent> snapshot() {
+		List<SimEvent> events = new ArrayList<SimEvent>(size);
+		for (int i = bottom.size() - 1; i >= 0; i--) {
+			events.add(bottom.get(i).event);
+		}
+		for (int r = rungCount - 1; r >= 0; r--) {
+			Rung rung = rungs[r];
+			for (int b = rung.current; b < rung.buckets.length; b++) {
+				for (Node node = rung.buckets[b]; node != null; node = node.next) {
+					events.add(node.event);
+				}
+			}
+		}
+		for (Node node = top; node != null; node = node.next) {
+			events.add(node.event);
+		}
+		return events;
+	}
+
+	private void appendToTop(Node node) {
+		if (topCount == 0) {
+			topMin = node.time;
+			topMax = node.time;
+		} else {
+			topMin = Math.min(topMin, node.time);
+			topMax = Math.max(topMax, node.time);
+		}
+		node.next = top;
+		top = node;
+		topCount++;
+	}
+
+	private void addToBottom(Node node) {
+		int low = 0;
+		int high = bottom.size();
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (REVERSE_ORDER.compare(bottom.get(middle), node) < 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		bottom.add(low, node);
+	}
+
+	/**
+	 * Moves the next events to the bottom list, spreading the top list and crowded buckets over
+	 * new rungs as needed.
+	 *
+	 * @return <code>false</code> if the queue is empty
+	 */
+	private boolean refillBottom() {
+		while (true) {
+			if (rungCount == 0) {
+				if (topCount == 0) {
+					return false;
+				}
+				Node events = top;
+				int count = topCount;
+				double min = topMin;
+				double max = topMax;
+				top = null;
+				topCount = 0;
+				topStart = max;
+				if (!spread(events, count, min, max)) {
+					return true;
+				}
+				continue;
+			}
+
+			Rung rung = rungs[rungCount - 1];
+			while (rung.current < rung.buckets.length && rung.buckets[rung.current] == null) {
+				rung.current++;
+			}
+			if (rung.current == rung.buckets.length) {
+				rungs[--rungCount] = null;
+				continue;
+			}
+
+			int bucket = rung.current++;
+			Node events = rung.buckets[bucket];
+			int count = rung.counts[bucket];
+			rung.buckets[bucket] = null;
+			rung.counts[bucket] = 0;
+			if (count <= THRESHOLD || rungCount == MAX_RUNGS) {
+				sortIntoBottom(events, count);
+				return true;
+			}
+
+			double min = Double.POSITIVE_INFINITY;
+			double max = Double.NEGATIVE_INFINITY;
+			for (Node node = events; node != null; node = node.next) {
+				min = Math.min(min, node.time);
+				max = Math.max(max, node.time);
+			}
+			if (!spread(events, count, min, max)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Spreads events over a new rung, or sorts them into the bottom list when they all have the
+	 * same time or no finer rung can be created.
+	 *
+	 * @return <code>true</code> if a rung was created
+	 */
+	private boolean spread(Node events, int count, double min, double max) {
+		double width = (max - min) / count;
+		if (!(width > 0) || Double.isInfinite(width) || min + width == min) {
+			sortIntoBottom(events, count);
+			return false;
+		}
+		Rung rung = new Rung(min, width, count + 1);
+		Node node = events;
+		while (node != null) {
+			Node next = node.next;
+			rung.add(rung.bucketOf(node.time), node);
+			node = next;
+		}
+		rungs[rungCount++] = rung;
+		return true;
+	}
+
+	private void sortIntoBottom(Node events, int count) {
+		Node[] nodes = new Node[count];
+		int n = 0;
+		Node node = events;
+		while (node != null) {
+			Node next = node.next;
+			node.next = null;
+			nodes[n++] = node;
+			node = next;
+		}
+		Arrays.sort(nodes, REVERSE_ORDER);
+		if (bottom.isEmpty()) {
+			bottom.addAll(Arrays.asList(nodes));
+		} else {
+			for (Node sorted : nodes) {
+				addToBottom(sorted);
+			}
+		}
+	}
+
+}
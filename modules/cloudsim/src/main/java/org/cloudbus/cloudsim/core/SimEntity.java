@@ -8,6 +8,11 @@
 
 package org.cloudbus.cloudsim.core;
 
+import gnu.trove.set.hash.TIntHashSet;
+
+import java.util.ArrayList;
+import java.util.List;
+
 import org.cloudbus.cloudsim.Log;
 import org.cloudbus.cloudsim.NetworkTopology;
 import org.cloudbus.cloudsim.core.predicates.Predicate;
@@ -46,6 +51,15 @@ public abstract class SimEntity implements Cloneable {
 	/** The entity's current state. */
 	private int state;
 
+	/** The simulation context the entity belongs to. */
+	private final SimulationContext context;
+
+	/** Whether the entity gets all its events of an instant in a single call. */
+	private boolean batchDispatch;
+
+	/** The tags whose equivalent events, delivered at the same time, are processed only once. */
+	private TIntHashSet coalescibleTags;
+
 	/**
 	 * Creates a new entity.
 	 * 
@@ -58,7 +72,18 @@ public abstract class SimEntity implements Cloneable {
 		this.name = name;
 		id = -1;
 		state = RUNNABLE;
-		CloudSim.addEntity(this);
+		context = CloudSim.getContext();
+		context.addEntity(this);
+	}
+
+	/**
+	 * Gets the simulation context the entity belongs to, that is, the context bound to the
+	 * thread that created it.
+	 * 
+	 * @return the simulation context
+	 */
+	public SimulationContext getContext() {
+		return context;
 	}
 
 	/**
@@ -91,10 +116,10 @@ public abstract class SimEntity implements Cloneable {
 	 * @param data The data to be sent with the event.
 	 */
 	public void schedule(int dest, double delay, int tag, Object data) {
-		if (!CloudSim.running()) {
+		if (!context.running()) {
 			return;
 		}
-		CloudSim.send(id, dest, delay, tag, data);
+		context.send(id, dest, delay, tag, data);
 	}
 
 	/**
@@ -119,7 +144,7 @@ public abstract class SimEntity implements Cloneable {
 	 * @param data The data to be sent with the event.
 	 */
 	public void schedule(String dest, double delay, int tag, Object data) {
-		schedule(CloudSim.getEntityId(dest), delay, tag, data);
+		schedule(context.getEntityId(dest), delay, tag, data);
 	}
 
 	/**
@@ -166,7 +191,7 @@ public abstract class SimEntity implements Cloneable {
 	 * @param data The data to be sent with the event.
 	 */
 	public void scheduleNow(String dest, int tag, Object data) {
-		schedule(CloudSim.getEntityId(dest), 0, tag, data);
+		schedule(context.getEntityId(dest), 0, tag, data);
 	}
 
 	/**
@@ -191,10 +216,10 @@ public abstract class SimEntity implements Cloneable {
 	 * @param data The data to be sent with the event.
 	 */
 	public void scheduleFirst(int dest, double delay, int tag, Object data) {
-		if (!CloudSim.running()) {
+		if (!context.running()) {
 			return;
 		}
-		CloudSim.sendFirst(id, dest, delay, tag, data);
+		context.sendFirst(id, dest, delay, tag, data);
 	}
 
 	/**
@@ -219,7 +244,7 @@ public abstract class SimEntity implements Cloneable {
 	 * @param data The data to be sent with the event.
 	 */
 	public void scheduleFirst(String dest, double delay, int tag, Object data) {
-		scheduleFirst(CloudSim.getEntityId(dest), delay, tag, data);
+		scheduleFirst(context.getEntityId(dest), delay, tag, data);
 	}
 
 	/**
@@ -269,7 +294,7 @@ public abstract class SimEntity implements Cloneable {
 	 * @param data The data to be sent with the event.
 	 */
 	public void scheduleFirstNow(String dest, int tag, Object data) {
-		scheduleFirst(CloudSim.getEntityId(dest), 0, tag, data);
+		scheduleFirst(context.getEntityId(dest), 0, tag, data);
 	}
 
 	/**
@@ -292,10 +317,10 @@ public abstract class SimEntity implements Cloneable {
 		if (delay < 0) {
 			throw new IllegalArgumentException("Negative delay supplied.");
 		}
-		if (!CloudSim.running()) {
+		if (!context.running()) {
 			return;
 		}
-		CloudSim.pause(id, delay);
+		context.pause(id, delay);
 	}
 
 	/**
@@ -305,7 +330,7 @@ public abstract class SimEntity implements Cloneable {
 	 * @return The count of matching events
 	 */
 	public int numEventsWaiting(Predicate p) {
-		return CloudSim.waiting(id, p);
+		return context.waiting(id, p);
 	}
 
 	/**
@@ -314,7 +339,29 @@ public abstract class SimEntity implements Cloneable {
 	 * @return The count of events
 	 */
 	public int numEventsWaiting() {
-		return CloudSim.waiting(id, CloudSim.SIM_ANY);
+		return context.waiting(id, CloudSim.SIM_ANY);
+	}
+
+	/**
+	 * Counts how many events with a given tag were sent to the entity and not processed yet, either
+	 * in the future or in the deferred queue. It takes constant time.
+	 * 
+	 * @param tag the event tag
+	 * @return The count of pending events
+	 */
+	public int countPending(int tag) {
+		return context.countPending(id, tag);
+	}
+
+	/**
+	 * Counts how many events with a given tag are waiting in the entity's deferred queue. It takes
+	 * constant time, unlike {@link #numEventsWaiting(Predicate)}.
+	 * 
+	 * @param tag the event tag
+	 * @return The count of matching events
+	 */
+	public int countDeferred(int tag) {
+		return context.countDeferred(id, tag);
 	}
 
 	/**
@@ -324,11 +371,11 @@ public abstract class SimEntity implements Cloneable {
 	 * @return the simulation event
 	 */
 	public SimEvent selectEvent(Predicate p) {
-		if (!CloudSim.running()) {
+		if (!context.running()) {
 			return null;
 		}
 
-		return CloudSim.select(id, p);
+		return context.select(id, p);
 	}
 
 	/**
@@ -338,11 +385,11 @@ public abstract class SimEntity implements Cloneable {
 	 * @return The number of events cancelled (0 or 1)
 	 */
 	public SimEvent cancelEvent(Predicate p) {
-		if (!CloudSim.running()) {
+		if (!context.running()) {
 			return null;
 		}
 
-		return CloudSim.cancel(id, p);
+		return context.cancel(id, p);
 	}
 
 	/**
@@ -353,7 +400,7 @@ public abstract class SimEntity implements Cloneable {
 	 * @return the simulation event
 	 */
 	public SimEvent getNextEvent(Predicate p) {
-		if (!CloudSim.running()) {
+		if (!context.running()) {
 			return null;
 		}
 		if (numEventsWaiting(p) > 0) {
@@ -369,11 +416,11 @@ public abstract class SimEntity implements Cloneable {
 	 * @param p The predicate to match
 	 */
 	public void waitForEvent(Predicate p) {
-		if (!CloudSim.running()) {
+		if (!context.running()) {
 			return;
 		}
 
-		CloudSim.wait(id, p);
+		context.wait(id, p);
 		state = WAITING;
 	}
 
@@ -405,6 +452,27 @@ public abstract class SimEntity implements Cloneable {
 	 */
 	public abstract void processEvent(SimEvent ev);
 
+	/**
+	 * Processes all events delivered to the entity up to the current simulation time, in the
+	 * order they would be processed one by one. This method is invoked instead of
+	 * {@link #processEvent(SimEvent)} when batch dispatch is enabled, so entities can handle
+	 * a whole instant at once, e.g. updating their state only after the last event.
+	 * The default implementation processes the events one by one and, if the entity stops being
+	 * runnable, puts the remaining events back into its deferred queue.
+	 * 
+	 * @param events the events, in temporal order
+	 * @see #setBatchDispatch(boolean)
+	 */
+	protected void processEvents(List<SimEvent> events) {
+		for (int i = 0; i < events.size(); i++) {
+			processEvent(events.get(i));
+			if (state != RUNNABLE) {
+				context.restoreDeferred(events.subList(i + 1, events.size()));
+				return;
+			}
+		}
+	}
+
 	/**
          * Shuts down the entity.
 	 * This method is invoked by the {@link CloudSim} before the simulation finishes. If you want
@@ -420,6 +488,11 @@ public abstract class SimEntity implements Cloneable {
          * @see #processEvent(org.cloudbus.cloudsim.core.SimEvent) 
          */
 	public void run() {
+		if (batchDispatch) {
+			runBatch();
+			return;
+		}
+
 		SimEvent ev = evbuf != null ? evbuf : getNextEvent();
 
 		while (ev != null) {
@@ -434,6 +507,71 @@ public abstract class SimEntity implements Cloneable {
 		evbuf = null;
 	}
 
+	/**
+	 * Hands all deferred events of the entity to {@link #processEvents(List)} in a single call.
+	 */
+	private void runBatch() {
+		List<SimEvent> events = new ArrayList<SimEvent>();
+		if (evbuf != null) {
+			events.add(evbuf);
+			evbuf = null;
+		}
+		if (context.running()) {
+			context.selectAll(id, events);
+		}
+		if (!events.isEmpty()) {
+			processEvents(events);
+		}
+	}
+
+	/**
+	 * Checks whether the entity gets all its deferred events in a single call to
+	 * {@link #processEvents(List)}.
+	 * 
+	 * @return <code>true</code> if batch dispatch is enabled
+	 */
+	public boolean isBatchDispatch() {
+		return batchDispatch;
+	}
+
+	/**
+	 * Enables or disables batch dispatch. When enabled, the events delivered to the entity are
+	 * handed to {@link #processEvents(List)} all at once instead of one by one to
+	 * {@link #processEvent(SimEvent)}. It is disabled by default.
+	 * 
+	 * @param batchDispatch <code>true</code> to enable batch dispatch
+	 */
+	protected void setBatchDispatch(boolean batchDispatch) {
+		this.batchDispatch = batchDispatch;
+	}
+
+	/**
+	 * Declares a tag as coalescible. When an event with a coalescible tag is delivered to the
+	 * entity right after an event with the same time, source, tag and data, which is still the
+	 * last one waiting in its deferred queue, the new event is discarded. Duplicates with other
+	 * events of the entity between them are all kept. It is meant for periodic events the
+	 * entity sends to itself, whose duplicates at the same time would only repeat the same work.
+	 * 
+	 * @param tag the event tag
+	 */
+	protected void addCoalescibleTag(int tag) {
+		if (coalescibleTags == null) {
+			coalescibleTags = new TIntHashSet();
+		}
+		coalescibleTags.add(tag);
+	}
+
+	/**
+	 * Checks whether a tag is coalescible.
+	 * 
+	 * @param tag the event tag
+	 * @return <code>true</code> if duplicate events with this tag are discarded
+	 * @see #addCoalescibleTag(int)
+	 */
+	public boolean isCoalescible(int tag) {
+		return coalescibleTags != null && coalescibleTags.contains(tag);
+	}
+
 	/**
 	 * Gets a clone of the entity. This is used when independent replications have been specified as
 	 * an output analysis method. Clones or backups of the entities are made in the beginning of the
@@ -448,6 +586,9 @@ public abstract class SimEntity implements Cloneable {
 		SimEntity copy = (SimEntity) super.clone();
 		copy.setName(name);
 		copy.setEventBuffer(null);
+		if (coalescibleTags != null) {
+			copy.coalescibleTags = new TIntHashSet(coalescibleTags);
+		}
 		return copy;
 	}
 
@@ -596,7 +737,7 @@ public abstract class SimEntity implements Cloneable {
 	 * @post $none
 	 */
 	protected void send(String entityName, double delay, int cloudSimTag, Object data) {
-		send(CloudSim.getEntityId(entityName), delay, cloudSimTag, data);
+		send(context.getEntityId(entityName), delay, cloudSimTag, data);
 	}
 
 	/**
@@ -655,7 +796,7 @@ public abstract class SimEntity implements Cloneable {
 	 * @post $none
 	 */
 	protected void sendNow(String entityName, int cloudSimTag, Object data) {
-		send(CloudSim.getEntityId(entityName), 0, cloudSimTag, data);
+		send(context.getEntityId(entityName), 0, cloudSimTag, data);
 	}
 
 	/**
@@ -671,6 +812,46 @@ public abstract class SimEntity implements Cloneable {
 		send(entityName, 0, cloudSimTag, null);
 	}
 
+	/**
+	 * Sends the events of the arrivals given by a source to another entity, with a tag
+	 * representing the event type. Each event is only created when it is the next one to be
+	 * delivered, as described in {@link SimulationContext#sendArrivals(int, int, int, ArrivalSource)}.
+	 * The network delay is not added to the arrivals.
+	 * 
+	 * @param entityId the id number of the destination entity
+	 * @param cloudSimTag an user-defined number representing the type of the events
+	 * @param source the arrivals
+	 * @pre entityID > 0
+	 * @pre source != null
+	 * @post $none
+	 */
+	protected void sendArrivals(int entityId, int cloudSimTag, ArrivalSource source) {
+		if (entityId < 0 || !context.running()) {
+			return;
+		}
+		context.sendArrivals(id, entityId, cloudSimTag, source);
+	}
+
+	/**
+	 * Sends the events of the arrivals given by a source to another entity, with a tag
+	 * representing the event type and priority in the queue, as described in
+	 * {@link SimulationContext#sendArrivalsFirst(int, int, int, ArrivalSource)}. The network
+	 * delay is not added to the arrivals.
+	 * 
+	 * @param entityId the id number of the destination entity
+	 * @param cloudSimTag an user-defined number representing the type of the events
+	 * @param source the arrivals
+	 * @pre entityID > 0
+	 * @pre source != null
+	 * @post $none
+	 */
+	protected void sendArrivalsFirst(int entityId, int cloudSimTag, ArrivalSource source) {
+		if (entityId < 0 || !context.running()) {
+			return;
+		}
+		context.sendArrivalsFirst(id, entityId, cloudSimTag, source);
+	}
+
 	/**
 	 * Gets the network delay associated to the sent of a message from a given source to a given
 	 * destination.
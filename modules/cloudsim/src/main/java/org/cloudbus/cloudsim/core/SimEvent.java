@@ -76,8 +76,17 @@ public class SimEvent implements Cloneable, Comparable<SimEvent> {
 		data = null;
 	}
 
-	// ------------------- PACKAGE LEVEL METHODS --------------------------
-	SimEvent(int evtype, double time, int src, int dest, int tag, Object edata) {
+	/**
+	 * Creates an event.
+	 * 
+	 * @param evtype the event type, such as {@link #SEND}
+	 * @param time the time the event must be delivered at
+	 * @param src the id of the entity that scheduled the event
+	 * @param dest the id of the entity the event is sent to
+	 * @param tag the event tag
+	 * @param edata the event data
+	 */
+	public SimEvent(int evtype, double time, int src, int dest, int tag, Object edata) {
 		etype = evtype;
 		this.time = time;
 		entSrc = src;
@@ -86,6 +95,7 @@ public class SimEvent implements Cloneable, Comparable<SimEvent> {
 		data = edata;
 	}
 
+	// ------------------- PACKAGE LEVEL METHODS --------------------------
 	SimEvent(int evtype, double time, int src) {
 		etype = evtype;
 		this.time = time;
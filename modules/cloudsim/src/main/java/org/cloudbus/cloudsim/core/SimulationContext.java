@@ -0,0 +1,1250 @@
+/*
+ * Title:        CloudSim Toolkit
+ * Description:  CloudSim (Cloud Simulation) Toolkit for Modeling and Simulation of Clouds
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2009-2012, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.core;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.cloudbus.cloudsim.Log;
+import org.cloudbus.cloudsim.NetworkTopology;
+import org.cloudbus.cloudsim.core.predicates.Predicate;
+
+/**
+ * The state of one simulation: its clock, its future and deferred event queues and the registry
+ * of its entities. The static methods of {@link CloudSim} act on the context bound to the calling
+ * thread, or on a default context if none is bound, and every entity keeps the context that was
+ * current when it was created. Hence several simulations can run concurrently in one JVM, each
+ * one in its own thread bound to its own context with {@link CloudSim#setContext(SimulationContext)}.
+ * <p>
+ * A context is not thread safe: it must only be used by the thread running its simulation.
+ * 
+ * @since CloudSim Toolkit 4.0
+ * @see CloudSim
+ */
+public class SimulationContext {
+
+	/** The id of CIS entity. */
+	private int cisId = -1;
+
+	/** The id of CloudSimShutdown entity. */
+	@SuppressWarnings("unused")
+	private int shutdownId = -1;
+
+	/** The CIS object. */
+	private CloudInformationService cis = null;
+
+	/** The Constant NOT_FOUND. */
+	private static final int NOT_FOUND = -1;
+
+	/** The trace flag. */
+	@SuppressWarnings("unused")
+	private boolean traceFlag = false;
+
+	/** The calendar. */
+	private Calendar calendar = null;
+
+	/** The termination time. */
+	private double terminateAt = -1;
+
+	/** The minimal time between events. Events within shorter periods after the last event are discarded. */
+	private double minTimeBetweenEvents = 0.1;
+
+	/** The network topology of the simulation, which is kept when it is initialised again. */
+	private final NetworkTopology networkTopology = new NetworkTopology();
+	
+	/**
+	 * Initialises all the common attributes.
+	 * 
+	 * @param _calendar the _calendar
+	 * @param _traceFlag the _trace flag
+	 * @param numUser number of users
+	 * @throws Exception This happens when creating this entity before initialising CloudSim package
+	 *             or this entity name is <tt>null</tt> or empty
+	 * @pre $none
+	 * @post $none
+	 */
+	private void initCommonVariable(Calendar _calendar, boolean _traceFlag, int numUser)
+			throws Exception {
+		initialize();
+		// NOTE: the order for the below 3 lines are important
+		traceFlag = _traceFlag;
+
+		// Set the current Wall clock time as the starting time of
+		// simulation
+		if (_calendar == null) {
+			calendar = Calendar.getInstance();
+		} else {
+			calendar = _calendar;
+		}
+
+		// creates a CloudSimShutdown object
+		CloudSimShutdown shutdown = new CloudSimShutdown("CloudSimShutdown", numUser);
+		shutdownId = shutdown.getId();
+	}
+
+	/**
+	 * Initialises CloudSim parameters. This method should be called before creating any entities.
+	 * <p>
+	 * Inside this method, it will create the following CloudSim entities:
+	 * <ul>
+	 * <li>CloudInformationService.
+	 * <li>CloudSimShutdown
+	 * </ul>
+	 * <p>
+	 * 
+	 * @param numUser the number of User Entities created. This parameters indicates that
+	 *            {@link gridsim.CloudSimShutdown} first waits for all user entities's
+	 *            END_OF_SIMULATION signal before issuing terminate signal to other entities
+	 * @param cal starting time for this simulation. If it is <tt>null</tt>, then the time will be
+	 *            taken from <tt>Calendar.getInstance()</tt>
+	 * @param traceFlag <tt>true</tt> if CloudSim trace need to be written
+	 * @see gridsim.CloudSimShutdown
+	 * @see CloudInformationService.CloudInformationService
+	 * @pre numUser >= 0
+	 * @post $none
+	 */
+	public void init(int numUser, Calendar cal, boolean traceFlag) {
+		// the entities created here register themselves in the context of the current thread
+		if (CloudSim.getContext() != this) {
+			throw new IllegalStateException("The simulation context must be bound to the current thread.");
+		}
+		try {
+			initCommonVariable(cal, traceFlag, numUser);
+
+			// create a GIS object
+			cis = new CloudInformationService("CloudInformationService");
+
+			// set all the above entity IDs
+			cisId = cis.getId();
+		} catch (IllegalArgumentException s) {
+			Log.printLine("CloudSim.init(): The simulation has been terminated due to an unexpected error");
+			Log.printLine(s.getMessage());
+		} catch (Exception e) {
+			Log.printLine("CloudSim.init(): The simulation has been terminated due to an unexpected error");
+			Log.printLine(e.getMessage());
+		}
+	}
+
+	/**
+	 * Initialises CloudSim parameters. This method should be called before creating any entities.
+	 * <p>
+	 * Inside this method, it will create the following CloudSim entities:
+	 * <ul>
+	 * <li>CloudInformationService.
+	 * <li>CloudSimShutdown
+	 * </ul>
+	 * <p>
+	 * 
+	 * @param numUser the number of User Entities created. This parameters indicates that
+	 *            {@link gridsim.CloudSimShutdown} first waits for all user entities's
+	 *            END_OF_SIMULATION signal before issuing terminate signal to other entities
+	 * @param cal starting time for this simulation. If it is <tt>null</tt>, then the time will be
+	 *            taken from <tt>Calendar.getInstance()</tt>
+	 * @param traceFlag <tt>true</tt> if CloudSim trace need to be written
+	 * @param periodBetweenEvents - the minimal period between events. Events within shorter periods
+	 * after the last event are discarded.
+	 * @see gridsim.CloudSimShutdown
+	 * @see CloudInformationService.CloudInformationService
+	 * @pre numUser >= 0
+	 * @post $none
+	 */
+	public void init(int numUser, Calendar cal, boolean traceFlag, double periodBetweenEvents) {
+	    if (periodBetweenEvents <= 0) {
+		throw new IllegalArgumentException("The minimal time between events should be positive, but is:" + periodBetweenEvents);
+	    }
+	    
+	    init(numUser, cal, traceFlag);
+	    minTimeBetweenEvents = periodBetweenEvents;
+	}
+
+	/**
+	 * Initialises CloudSim parameters using the given future event queue. This method should be
+	 * called before creating any entities.
+	 * 
+	 * @param numUser the number of User Entities created
+	 * @param cal starting time for this simulation. If it is <tt>null</tt>, then the time will be
+	 *            taken from <tt>Calendar.getInstance()</tt>
+	 * @param traceFlag <tt>true</tt> if CloudSim trace need to be written
+	 * @param futureQueue the empty queue that will hold the future events, such as a
+	 *            {@link HeapFutureQueue} or a {@link LadderFutureQueue} for simulations with
+	 *            millions of pending events
+	 * @see #init(int, Calendar, boolean)
+	 * @pre numUser >= 0
+	 * @post $none
+	 */
+	public void init(int numUser, Calendar cal, boolean traceFlag, FutureQueue futureQueue) {
+		if (futureQueue == null) {
+			throw new IllegalArgumentException("The future event queue must not be null.");
+		}
+
+		init(numUser, cal, traceFlag);
+		SimEvent event;
+		while ((event = future.poll()) != null) {
+			futureQueue.addEvent(event, event.serial);
+		}
+		future = futureQueue;
+	}
+	
+	
+	
+	/**
+	 * Starts the execution of CloudSim simulation. It waits for complete execution of all entities,
+	 * i.e. until all entities threads reach non-RUNNABLE state or there are no more events in the
+	 * future event queue.
+	 * <p>
+	 * <b>Note</b>: This method should be called after all the entities have been setup and added.
+	 * 
+	 * @return the last clock time
+	 * @throws NullPointerException This happens when creating this entity before initialising
+	 *             CloudSim package or this entity name is <tt>null</tt> or empty.
+	 * @see gridsim.CloudSim#init(int, Calendar, boolean)
+	 * @pre $none
+	 * @post $none
+	 */
+	public double startSimulation() throws NullPointerException {
+		Log.printConcatLine("Starting CloudSim version ", CloudSim.CLOUDSIM_VERSION_STRING);
+		try {
+			double clock = run();
+
+			// reset all variables
+			cisId = -1;
+			shutdownId = -1;
+			cis = null;
+			calendar = null;
+			traceFlag = false;
+
+			return clock;
+		} catch (IllegalArgumentException e) {
+			e.printStackTrace();
+			throw new NullPointerException("CloudSim.startCloudSimulation() :"
+					+ " Error - you haven't initialized CloudSim.");
+		}
+	}
+
+	/**
+	 * Stops Cloud Simulation (based on {@link Simulation#runStop()}). This should be only called if
+	 * any of the user defined entities <b>explicitly</b> want to terminate simulation during
+	 * execution.
+	 * 
+	 * @throws NullPointerException This happens when creating this entity before initialising
+	 *             CloudSim package or this entity name is <tt>null</tt> or empty
+	 * @see gridsim.CloudSim#init(int, Calendar, boolean)
+	 * @see Simulation#runStop()
+	 * @pre $none
+	 * @post $none
+	 */
+	public void stopSimulation() throws NullPointerException {
+		try {
+			runStop();
+		} catch (IllegalArgumentException e) {
+			throw new NullPointerException("CloudSim.stopCloudSimulation() : "
+					+ "Error - can't stop Cloud Simulation.");
+		}
+	}
+
+	/**
+	 * This method is called if one wants to terminate the simulation.
+	 * 
+	 * @return true, if successful; false otherwise.
+	 */
+	public boolean terminateSimulation() {
+		running = false;
+		printMessage("Simulation: Reached termination time.");
+		return true;
+	}
+
+	/**
+	 * This method is called if one wants to terminate the simulation at a given time.
+	 * 
+	 * @param time the time at which the simulation has to be terminated
+	 * @return true, if successful otherwise.
+	 */
+	public boolean terminateSimulation(double time) {
+		if (time <= clock) {
+			return false;
+		} else {
+			terminateAt = time;
+		}
+		return true;
+	}
+
+	
+	/**
+	 * Returns the minimum time between events. Events within shorter periods after the last event are discarded. 
+	 * @return the minimum time between events.
+	 */
+	public double getMinTimeBetweenEvents() {
+	    return minTimeBetweenEvents;
+	}
+
+	/**
+	 * Gets the network topology of the simulation.
+	 * 
+	 * @return the network topology
+	 */
+	public NetworkTopology getNetworkTopology() {
+		return networkTopology;
+	}
+
+	/**
+	 * Gets a new copy of initial simulation Calendar.
+	 * 
+	 * @return a new copy of Calendar object or if CloudSim hasn't been initialized
+	 * @see gridsim.CloudSim#init(int, Calendar, boolean, String[], String[], String)
+	 * @see gridsim.CloudSim#init(int, Calendar, boolean)
+	 * @pre $none
+	 * @post $none
+	 */
+	public Calendar getSimulationCalendar() {
+		// make a new copy
+		Calendar clone = calendar;
+		if (calendar != null) {
+			clone = (Calendar) calendar.clone();
+		}
+
+		return clone;
+	}
+
+	/**
+	 * Gets the entity ID of <tt>CloudInformationService</tt>.
+	 * 
+	 * @return the Entity ID or if it is not found
+	 * @pre $none
+	 * @post $result >= -1
+	 */
+	public int getCloudInfoServiceEntityId() {
+		return cisId;
+	}
+
+	/**
+	 * Sends a request to Cloud Information Service (CIS) entity to get the list of all Cloud
+	 * hostList.
+	 * 
+	 * @return A List containing CloudResource ID (as an Integer object) or if a CIS entity hasn't
+	 *         been created before
+	 * @pre $none
+	 * @post $none
+	 */
+	public List<Integer> getCloudResourceList() {
+		if (cis == null) {
+			return null;
+		}
+
+		return cis.getList();
+	}
+
+	// ======== SIMULATION METHODS ===============//
+
+	/** The entities. */
+	private List<SimEntity> entities;
+
+	/** The future event queue. */
+	protected FutureQueue future;
+
+	/** The deferred event queue. */
+	protected DeferredQueue deferred;
+
+	/** The arrival sources merged with the future event queue, by their next arrival. */
+	private PriorityQueue<ArrivalCursor> arrivals;
+
+	/**
+	 * The number of events in the future event queue by destination and tag, counting the
+	 * arrivals not taken yet.
+	 */
+	private TagCounters futureTagCounters;
+
+	/** 
+         * The current simulation clock.
+         */
+	private double clock;
+
+	/** Flag for checking if the simulation is running. */
+	private boolean running;
+
+	/** The entities by name. */
+	private Map<String, SimEntity> entitiesByName;
+
+	// The predicates used in entity wait methods
+	/** The wait predicates. */
+	private Map<Integer, Predicate> waitPredicates;
+
+	/** The paused. */
+	private boolean paused = false;
+
+	/** The pause at. */
+	private long pauseAt = -1;
+
+	/** The abrupt terminate. */
+	private boolean abruptTerminate = false;
+
+	/**
+	 * Initialise the simulation for stand alone simulations. This function should be called at the
+	 * start of the simulation.
+	 */
+	protected void initialize() {
+		Log.printLine("Initialising...");
+		entities = new ArrayList<SimEntity>();
+		entitiesByName = new LinkedHashMap<String, SimEntity>();
+		future = new TreeSetFutureQueue();
+		deferred = new DeferredQueue();
+		arrivals = new PriorityQueue<ArrivalCursor>();
+		futureTagCounters = new TagCounters();
+		waitPredicates = new HashMap<Integer, Predicate>();
+		clock = 0;
+		running = false;
+		abruptTerminate = false;
+	}
+
+	// Public access methods
+
+	/**
+	 * Get the current simulation time.
+	 * 
+	 * @return the simulation time
+	 */
+	public double clock() {
+		return clock;
+	}
+
+	/**
+	 * Get the current number of entities in the simulation.
+	 * 
+	 * @return The number of entities
+	 */
+	public int getNumEntities() {
+		return entities.size();
+	}
+
+	/**
+	 * Get the entity with a given id.
+	 * 
+	 * @param id the entity's unique id number
+	 * @return The entity, or if it could not be found
+	 */
+	public SimEntity getEntity(int id) {
+		return entities.get(id);
+	}
+
+	/**
+	 * Get the entity with a given name.
+	 * 
+	 * @param name The entity's name
+	 * @return The entity
+	 */
+	public SimEntity getEntity(String name) {
+		return entitiesByName.get(name);
+	}
+
+	/**
+	 * Get the id of an entity with a given name.
+	 * 
+	 * @param name The entity's name
+	 * @return The entity's unique id number
+	 */
+	public int getEntityId(String name) {
+		SimEntity obj = entitiesByName.get(name);
+		if (obj == null) {
+			return NOT_FOUND;
+		} else {
+			return obj.getId();
+		}
+	}
+
+	/**
+	 * Gets name of the entity given its entity ID.
+	 * 
+	 * @param entityID the entity ID
+	 * @return the Entity name or if this object does not have one
+	 * @pre entityID > 0
+	 * @post $none
+	 */
+	public String getEntityName(int entityID) {
+		try {
+			return getEntity(entityID).getName();
+		} catch (IllegalArgumentException e) {
+			return null;
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Gets name of the entity given its entity ID.
+	 * 
+	 * @param entityID the entity ID
+	 * @return the Entity name or if this object does not have one
+	 * @pre entityID > 0
+	 * @post $none
+	 */
+	public String getEntityName(Integer entityID) {
+		if (entityID != null) {
+			return getEntityName(entityID.intValue());
+		}
+		return null;
+	}
+
+	/**
+	 * Returns a list of entities created for the simulation.
+	 * 
+	 * @return the entity iterator
+	 */
+	public List<SimEntity> getEntityList() {
+		// create a new list to prevent the user from changing
+		// the list of entities used by Simulation
+		List<SimEntity> list = new LinkedList<SimEntity>();
+		list.addAll(entities);
+		return list;
+	}
+
+	// Public update methods
+
+	/**
+	 * Add a new entity to the simulation. This is present for compatibility with existing
+	 * simulations since entities are automatically added to the simulation upon instantiation.
+	 * 
+	 * @param e The new entity
+	 */
+	public void addEntity(SimEntity e) {
+		SimEvent evt;
+		if (running) {
+			// Post an event to make this entity
+			evt = new SimEvent(SimEvent.CREATE, clock, 1, 0, 0, e);
+			future.addEvent(evt);
+		}
+		if (e.getId() == -1) { // Only add once!
+			int id = entities.size();
+			e.setId(id);
+			entities.add(e);
+			entitiesByName.put(e.getName(), e);
+		}
+	}
+
+	/**
+	 * Internal method used to add a new entity to the simulation when the simulation is running. It
+	 * should <b>not</b> be called from user simulations.
+	 * 
+	 * @param e The new entity
+	 */
+	protected void addEntityDynamically(SimEntity e) {
+		if (e == null) {
+			throw new IllegalArgumentException("Adding null entity.");
+		} else {
+			printMessage("Adding: " + e.getName());
+		}
+		e.startEntity();
+	}
+
+	/**
+	 * Internal method used to run one tick of the simulation. This method should <b>not</b> be
+	 * called in simulations.
+	 * 
+	 * @return true, if successful otherwise
+         * @todo If the method shouldn't be called by the user,
+         * it should be protected in any way, such as changing
+         * its visibility to package.
+	 */
+	public boolean runClockTick() {
+		SimEntity ent;
+		boolean queue_empty;
+		
+		int entities_size = entities.size();
+
+		for (int i = 0; i < entities_size; i++) {
+			ent = entities.get(i);
+			if (ent.getState() == SimEntity.RUNNABLE) {
+				ent.run();
+			}
+		}
+
+		// If there are more future events then deal with them
+		if (hasFutureEvents()) {
+
+			queue_empty = false;
+			double firstTime = nextFutureTime();
+
+			// Check if next events are at same time...
+			boolean trymore = true;
+			while (trymore) {
+				if (nextFutureTime() == firstTime) {
+					SimEvent next = pollFuture();
+					uncountFuture(next);
+					processEvent(next);
+					trymore = hasFutureEvents();
+				} else {
+					trymore = false;
+				}
+			}
+
+		} else {
+			queue_empty = true;
+			running = false;
+			printMessage("Simulation: No more future events");
+		}
+
+		return queue_empty;
+	}
+
+	/**
+	 * Internal method used to stop the simulation. This method should <b>not</b> be used directly.
+	 */
+	public void runStop() {
+		printMessage("Simulation completed.");
+	}
+
+	/**
+	 * Used to hold an entity for some time.
+	 * 
+	 * @param src the src
+	 * @param delay the delay
+	 */
+	public void hold(int src, long delay) {
+		SimEvent e = new SimEvent(SimEvent.HOLD_DONE, clock + delay, src);
+		future.addEvent(e);
+		entities.get(src).setState(SimEntity.HOLDING);
+	}
+
+	/**
+	 * Used to pause an entity for some time.
+	 * 
+	 * @param src the src
+	 * @param delay the delay
+	 */
+	public void pause(int src, double delay) {
+		SimEvent e = new SimEvent(SimEvent.HOLD_DONE, clock + delay, src);
+		future.addEvent(e);
+		entities.get(src).setState(SimEntity.HOLDING);
+	}
+
+	/**
+	 * Used to send an event from one entity to another.
+	 * 
+	 * @param src the src
+	 * @param dest the dest
+	 * @param delay the delay
+	 * @param tag the tag
+	 * @param data the data
+	 */
+	public void send(int src, int dest, double delay, int tag, Object data) {
+		if (delay < 0) {
+			throw new IllegalArgumentException("Send delay can't be negative.");
+		}
+
+		SimEvent e = new SimEvent(SimEvent.SEND, clock + delay, src, dest, tag, data);
+		future.addEvent(e);
+		futureTagCounters.increment(dest, tag);
+	}
+	
+	
+	/**
+	 * TODO This method helps in creation of different priorities of events
+	 * 
+	 * @param src
+	 * @param dest
+	 * @param delay
+	 * @param tag
+	 * @param data
+	 * @param eventSerial
+	 */
+	public void send(int src, int dest, double delay, int tag, Object data, long eventSerial) {
+		if (delay < 0) {
+			throw new IllegalArgumentException("Send delay can't be negative.");
+		}
+
+		SimEvent e = new SimEvent(SimEvent.SEND, clock + delay, src, dest, tag, data);
+		e.setSerial(eventSerial);
+		future.addEvent(e, eventSerial);
+		futureTagCounters.increment(dest, tag);
+	}
+
+	/**
+	 * Used to send the events of the arrivals given by a source from one entity to another. The
+	 * events are delivered at the times of the arrivals and, among the events scheduled to the
+	 * same time, where they would be if they had all been sent now, but each one is only created
+	 * when it is the next event to be delivered. They can not be cancelled.
+	 * 
+	 * @param src the src
+	 * @param dest the dest
+	 * @param tag the tag of the events
+	 * @param source the arrivals, whose times can not be before the current time
+	 */
+	public void sendArrivals(int src, int dest, int tag, ArrivalSource source) {
+		addArrivals(src, dest, tag, source, false);
+	}
+
+	/**
+	 * Used to send the events of the arrivals given by a source from one entity to another, with
+	 * priority in the queue. As with {@link #sendArrivals(int, int, int, ArrivalSource)}, each
+	 * event is only created when it is the next event to be delivered, but it is delivered before
+	 * the events scheduled to the same time, as if it had been sent by
+	 * {@link #sendFirst(int, int, double, int, Object)}.
+	 * 
+	 * @param src the src
+	 * @param dest the dest
+	 * @param tag the tag of the events
+	 * @param source the arrivals, whose times can not be before the current time
+	 */
+	public void sendArrivalsFirst(int src, int dest, int tag, ArrivalSource source) {
+		addArrivals(src, dest, tag, source, true);
+	}
+
+	private void addArrivals(int src, int dest, int tag, ArrivalSource source, boolean first) {
+		int count = source.remaining();
+		if (count == 0) {
+			return;
+		}
+		if (source.nextTime() < clock) {
+			throw new IllegalArgumentException("Arrival time can't be in the past.");
+		}
+
+		long firstSerial = first ? 0 : future.reserveSerials(count);
+		arrivals.add(new ArrivalCursor(src, dest, tag, source, firstSerial, first));
+		futureTagCounters.increment(dest, tag, count);
+	}
+
+	/**
+	 * Used to send an event from one entity to another, with priority in the queue.
+	 * 
+	 * @param src the src
+	 * @param dest the dest
+	 * @param delay the delay
+	 * @param tag the tag
+	 * @param data the data
+	 */
+	public void sendFirst(int src, int dest, double delay, int tag, Object data) {
+		if (delay < 0) {
+			throw new IllegalArgumentException("Send delay can't be negative.");
+		}
+
+		SimEvent e = new SimEvent(SimEvent.SEND, clock + delay, src, dest, tag, data);
+		future.addEventFirst(e);
+		futureTagCounters.increment(dest, tag);
+	}
+
+	/**
+	 * Sets an entity's state to be waiting. The predicate used to wait for an event is now passed
+	 * to Sim_system. Only events that satisfy the predicate will be passed to the entity. This is
+	 * done to avoid unnecessary context switches.
+	 * 
+	 * @param src the src
+	 * @param p the p
+	 */
+	public void wait(int src, Predicate p) {
+			entities.get(src).setState(SimEntity.WAITING);
+		if (p != CloudSim.SIM_ANY) {
+			// If a predicate has been used store it in order to check it
+			waitPredicates.put(src, p);
+		}
+	}
+
+	/**
+	 * Checks if events for a specific entity are present in the deferred event queue.
+	 * 
+	 * @param d the d
+	 * @param p the p
+	 * @return the int
+	 */
+	public int waiting(int d, Predicate p) {
+		return deferred.count(d, p);
+	}
+
+	/**
+	 * Counts the events with a given tag sent to an entity that were not processed yet, that is,
+	 * the events in the future and in the deferred queues. It takes constant time.
+	 * 
+	 * @param d the id of the destination entity
+	 * @param tag the event tag
+	 * @return the number of pending events
+	 */
+	public int countPending(int d, int tag) {
+		return futureTagCounters.get(d, tag) + deferred.count(d, tag);
+	}
+
+	/**
+	 * Counts the events with a given tag in the deferred queue of an entity, that is, the events
+	 * already delivered that the entity did not process yet. It takes constant time and gives
+	 * the same result as {@link #waiting(int, Predicate)} with a
+	 * {@link org.cloudbus.cloudsim.core.predicates.PredicateType}.
+	 * 
+	 * @param d the id of the destination entity
+	 * @param tag the event tag
+	 * @return the number of deferred events
+	 */
+	public int countDeferred(int d, int tag) {
+		return deferred.count(d, tag);
+	}
+
+	/**
+	 * Updates the counters of the future events after an event leaves the future queue.
+	 * 
+	 * @param e the event
+	 */
+	private void uncountFuture(SimEvent e) {
+		if (e.getType() == SimEvent.SEND) {
+			futureTagCounters.decrement(e.getDestination(), e.getTag());
+		}
+	}
+
+	/**
+	 * Selects an event matching a predicate.
+	 * 
+	 * @param src the src
+	 * @param p the p
+	 * @return the sim event or <tt>null</tt> if no deferred event matches
+	 */
+	public SimEvent select(int src, Predicate p) {
+		return deferred.select(src, p);
+	}
+
+	/**
+	 * Selects all deferred events of an entity, in the order they would be selected one by one.
+	 * 
+	 * @param src the id of the entity
+	 * @param events the list the selected events are appended to
+	 * @return the number of selected events
+	 */
+	public int selectAll(int src, List<SimEvent> events) {
+		return deferred.selectAll(src, events);
+	}
+
+	/**
+	 * Puts events selected by an entity back into its deferred queue, in the given order.
+	 * 
+	 * @param events the events
+	 */
+	void restoreDeferred(List<SimEvent> events) {
+		for (SimEvent event : events) {
+			deferred.addEvent(event);
+		}
+	}
+
+	/**
+	 * Find first deferred event matching a predicate.
+	 * 
+	 * @param src the src
+	 * @param p the p
+	 * @return the sim event or <tt>null</tt> if no deferred event matches
+	 */
+	public SimEvent findFirstDeferred(int src, Predicate p) {
+		return deferred.findFirst(src, p);
+	}
+
+	/**
+	 * Removes an event from the event queue.
+	 * 
+	 * @param src the src
+	 * @param p the p
+	 * @return the sim event
+	 */
+	public SimEvent cancel(int src, Predicate p) {
+		// the iterator of some future queues is not ordered, so looks for the earliest event
+		SimEvent ev = null;
+		Iterator<SimEvent> iter = future.iterator();
+		while (iter.hasNext()) {
+			SimEvent next = iter.next();
+			if (next.getSource() == src && p.match(next) && (ev == null || next.compareTo(ev) < 0)) {
+				ev = next;
+			}
+		}
+
+		if (ev != null) {
+			future.remove(ev);
+			uncountFuture(ev);
+		}
+		return ev;
+	}
+
+	/**
+	 * Removes all events that match a given predicate from the future event queue returns true if
+	 * at least one event has been cancelled; false otherwise.
+	 * 
+	 * @param src the src
+	 * @param p the p
+	 * @return true, if successful
+	 */
+	public boolean cancelAll(int src, Predicate p) {
+		SimEvent ev = null;
+		int previousSize = future.size();
+		Iterator<SimEvent> iter = future.iterator();
+		while (iter.hasNext()) {
+			ev = iter.next();
+			if (ev.getSource() == src && p.match(ev)) {
+				iter.remove();
+				uncountFuture(ev);
+			}
+		}
+		return previousSize < future.size();
+	}
+
+	//
+	// Private internal methods
+	//
+
+	/**
+	 * An arrival source being merged with the future event queue, with the serial reserved for its
+	 * next arrival, or 0 for all of them if they are sent first.
+	 */
+	private static final class ArrivalCursor implements Comparable<ArrivalCursor> {
+
+		final int src;
+
+		final int dest;
+
+		final int tag;
+
+		final ArrivalSource source;
+
+		double nextTime;
+
+		long nextSerial;
+
+		final boolean first;
+
+		ArrivalCursor(int src, int dest, int tag, ArrivalSource source, long firstSerial, boolean first) {
+			this.src = src;
+			this.dest = dest;
+			this.tag = tag;
+			this.source = source;
+			this.nextTime = source.nextTime();
+			this.nextSerial = firstSerial;
+			this.first = first;
+		}
+
+		@Override
+		public int compareTo(ArrivalCursor other) {
+			if (nextTime != other.nextTime) {
+				return nextTime < other.nextTime ? -1 : 1;
+			}
+			return Long.compare(nextSerial, other.nextSerial);
+		}
+	}
+
+	/**
+	 * Checks if there are events in the future event queue or arrivals not taken yet.
+	 */
+	private boolean hasFutureEvents() {
+		return future.size() > 0 || !arrivals.isEmpty();
+	}
+
+	/**
+	 * Gets the time of the next future event or arrival. There must be one.
+	 */
+	private double nextFutureTime() {
+		if (arrivals.isEmpty()) {
+			return future.peek().eventTime();
+		}
+		double arrivalTime = arrivals.peek().nextTime;
+		return future.size() > 0 ? Math.min(future.peek().eventTime(), arrivalTime) : arrivalTime;
+	}
+
+	/**
+	 * Removes the next event from the future event queue or, if the next arrival comes before it,
+	 * creates the event of the arrival. There must be one.
+	 */
+	private SimEvent pollFuture() {
+		ArrivalCursor cursor = arrivals.peek();
+		if (cursor != null) {
+			SimEvent first = future.peek();
+			if (first == null || cursor.nextTime < first.eventTime()
+					|| (cursor.nextTime == first.eventTime() && cursor.nextSerial < first.serial)) {
+				return pollArrival();
+			}
+		}
+		return future.poll();
+	}
+
+	/**
+	 * Creates the event of the next arrival and moves its source on.
+	 */
+	private SimEvent pollArrival() {
+		ArrivalCursor cursor = arrivals.poll();
+		SimEvent e = new SimEvent(SimEvent.SEND, cursor.nextTime, cursor.src, cursor.dest, cursor.tag,
+				cursor.source.next());
+		e.setSerial(cursor.nextSerial);
+
+		if (cursor.source.remaining() > 0) {
+			double nextTime = cursor.source.nextTime();
+			if (nextTime < cursor.nextTime) {
+				throw new IllegalArgumentException("Arrivals out of time order detected.");
+			}
+			cursor.nextTime = nextTime;
+			if (!cursor.first) {
+				cursor.nextSerial++;
+			}
+			arrivals.add(cursor);
+		}
+		return e;
+	}
+
+	private int numberOfEventsPerClock = 0;
+	private double lastClock = -1;
+	
+	/**
+	 * Processes an event.
+	 * 
+	 * @param e the e
+	 */
+	private void processEvent(SimEvent e) {
+		int dest, src;
+		SimEntity dest_ent;
+		// Update the system's clock
+		if (e.eventTime() < clock) {
+			throw new IllegalArgumentException("Past event detected.");
+		}
+		clock = e.eventTime();
+		
+		// TODO remove
+//		if (lastClock != clock) {
+//			Date date = new Date(System.currentTimeMillis());
+//			System.out.println(lastClock + ":" +  new SimpleDateFormat("d MMM yyyy HH:mm:ss:SSS").format(date) + ":" + numberOfEventsPerClock);
+//			lastClock = clock;
+//			numberOfEventsPerClock = 1;
+//		} else {
+//			numberOfEventsPerClock++;
+//		}
+
+		// Ok now process it
+		switch (e.getType()) {
+			case SimEvent.ENULL:
+				throw new IllegalArgumentException("Event has a null type.");
+
+			case SimEvent.CREATE:
+				SimEntity newe = (SimEntity) e.getData();
+				addEntityDynamically(newe);
+				break;
+
+			case SimEvent.SEND:
+				// Check for matching wait
+				dest = e.getDestination();
+				if (dest < 0) {
+					throw new IllegalArgumentException("Attempt to send to a null entity detected.");
+				} else {
+					int tag = e.getTag();
+					dest_ent = entities.get(dest);
+					if (dest_ent.getState() == SimEntity.WAITING) {
+						Integer destObj = Integer.valueOf(dest);
+						Predicate p = waitPredicates.get(destObj);
+						if ((p == null) || (tag == 9999) || (p.match(e))) {
+							dest_ent.setEventBuffer((SimEvent) e.clone());
+							dest_ent.setState(SimEntity.RUNNABLE);
+							waitPredicates.remove(destObj);
+						} else {
+							defer(dest_ent, e);
+						}
+					} else {
+						defer(dest_ent, e);
+					}
+				}
+				break;
+
+			case SimEvent.HOLD_DONE:
+				src = e.getSource();
+				if (src < 0) {
+					throw new IllegalArgumentException("Null entity holding.");
+				} else {
+					entities.get(src).setState(SimEntity.RUNNABLE);
+				}
+				break;
+
+			default:
+				break;
+		}
+	}
+
+	/**
+	 * Adds an event to the deferred queue, unless its tag is coalescible for the destination
+	 * entity and the last event waiting for the entity is an equivalent one.
+	 * 
+	 * @param dest_ent the destination entity
+	 * @param e the event
+	 * @see SimEntity#addCoalescibleTag(int)
+	 */
+	private void defer(SimEntity dest_ent, SimEvent e) {
+		if (dest_ent.isCoalescible(e.getTag()) && deferred.isLastEquivalent(e)) {
+			return;
+		}
+		deferred.addEvent(e);
+	}
+
+	/**
+	 * Internal method used to start the simulation. This method should <b>not</b> be used by user
+	 * simulations.
+	 */
+	public void runStart() {
+		running = true;
+		// Start all the entities
+		for (SimEntity ent : entities) {
+			ent.startEntity();
+		}
+
+		printMessage("Entities started.");
+	}
+
+	/**
+	 * Check if the simulation is still running. This method should be used by entities to check if
+	 * they should continue executing.
+	 * 
+	 * @return if the simulation is still running, otherwise
+	 */
+	public boolean running() {
+		return running;
+	}
+
+	/**
+	 * This method is called if one wants to pause the simulation.
+	 * 
+	 * @return true, if successful otherwise.
+	 */
+	public boolean pauseSimulation() {
+		paused = true;
+		return paused;
+	}
+
+	/**
+	 * This method is called if one wants to pause the simulation at a given time.
+	 * 
+	 * @param time the time at which the simulation has to be paused
+	 * @return true, if successful otherwise.
+	 */
+	public boolean pauseSimulation(long time) {
+		if (time <= clock) {
+			return false;
+		} else {
+			pauseAt = time;
+		}
+		return true;
+	}
+
+	/**
+	 * This method is called if one wants to resume the simulation that has previously been paused.
+	 * 
+	 * @return if the simulation has been restarted or or otherwise.
+	 */
+	public boolean resumeSimulation() {
+		paused = false;
+
+		if (pauseAt <= clock) {
+			pauseAt = -1;
+		}
+
+		return !paused;
+	}
+
+	/**
+	 * Start the simulation running. This should be called after all the entities have been setup
+	 * and added, and their ports linked.
+	 * 
+	 * @return the last clock value
+	 */
+	public double run() {
+		if (!running) {
+			runStart();
+		}
+		while (true) {
+			if (runClockTick() || abruptTerminate) {
+				break;
+			}
+
+			// this block allows termination of simulation at a specific time
+			if (terminateAt > 0.0 && clock >= terminateAt) {
+				terminateSimulation();
+				clock = terminateAt;
+				break;
+			}
+
+			if (pauseAt != -1
+					&& ((hasFutureEvents() && clock <= pauseAt && pauseAt <= nextFutureTime()) || !hasFutureEvents() && pauseAt <= clock)) {
+				pauseSimulation();
+				clock = pauseAt;
+			}
+
+			while (paused) {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+
+		double clock = clock();
+
+		finishSimulation();
+		runStop();
+
+		return clock;
+	}
+
+	/**
+	 * Internal method that allows the entities to terminate. This method should <b>not</b> be used
+	 * in user simulations.
+	 */
+	public void finishSimulation() {
+		// Allow all entities to exit their body method
+		if (!abruptTerminate) {
+			for (SimEntity ent : entities) {
+				if (ent.getState() != SimEntity.FINISHED) {
+					ent.run();
+				}
+			}
+		}
+
+		for (SimEntity ent : entities) {
+			ent.shutdownEntity();
+		}
+
+		// reset all variables
+		// Private data members
+		entities = null;
+		entitiesByName = null;
+		future = null;
+		deferred = null;
+		arrivals = null;
+		futureTagCounters = null;
+		clock = 0L;
+		running = false;
+
+		waitPredicates = null;
+		paused = false;
+		pauseAt = -1;
+		abruptTerminate = false;
+	}
+
+	/**
+	 * Abruptally terminate.
+	 */
+	public void abruptallyTerminate() {
+		abruptTerminate = true;
+	}
+
+	/**
+	 * Prints a message about the progress of the simulation.
+	 * 
+	 * @param message the message
+	 */
+	private void printMessage(String message) {
+		Log.printLine(message);
+	}
+
+	/**
+	 * Checks if is paused.
+	 * 
+	 * @return true, if is paused
+	 */
+	public boolean isPaused() {
+		return paused;
+	}
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Title:        CloudSim Toolkit
+ * Description:  CloudSim (Cloud Simulation) Toolkit for Modeling and Simulation of Clouds
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2009-2012, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.core;
+
+import gnu.trove.map.hash.TIntIntHashMap;
+
+import java.util.Arrays;
+
+/**
+ * Counts events by destination entity and tag, so the number of pending events having a given
+ * tag can be read in constant time instead of scanning an event queue with a predicate.
+ *
+ * @since CloudSim Toolkit 4.0
+ * @see CloudSim#countPending(int, int)
+ */
+final class TagCounters {
+
+	/** The counters of each entity by tag, indexed by the entity id. */
+	private TIntIntHashMap[] counters = new TIntIntHashMap[16];
+
+	/**
+	 * Counts one more event. Events without a destination are ignored.
+	 *
+	 * @param entity the id of the destination entity
+	 * @param tag the event tag
+	 */
+	void increment(int entity, int tag) {
+		increment(entity, tag, 1);
+	}
+
+	/**
+	 * Counts a number of events more. Events without a destination are ignored.
+	 *
+	 * @param entity the id of the destination entity
+	 * @param tag the event tag
+	 * @param count the number of events
+	 */
+	void increment(int entity, int tag, int count) {
+		if (entity < 0) {
+			return;
+		}
+		if (entity >= counters.length) {
+			counters = Arrays.copyOf(counters, Math.max(entity + 1, 2 * counters.length));
+		}
+		if (counters[entity] == null) {
+			counters[entity] = new TIntIntHashMap();
+		}
+		counters[entity].adjustOrPutValue(tag, count, count);
+	}
+
+	/**
+	 * Counts one event less. Events without a destination are ignored.
+	 *
+	 * @param entity the id of the destination entity
+	 * @param tag the event tag
+	 */
+	void decrement(int entity, int tag) {
+		if (entity < 0 || entity >= counters.length || counters[entity] == null) {
+			return;
+		}
+		if (counters[entity].adjustOrPutValue(tag, -1, 0) <= 0) {
+			counters[entity].remove(tag);
+		}
+	}
+
+	/**
+	 * Gets the number of events sent to an entity with a given tag.
+	 *
+	 * @param entity the id of the destination entity
+	 * @param tag the event tag
+	 * @return the number of events
+	 */
+	int get(int entity, int tag) {
+		if (entity < 0 || entity >= counters.length || counters[entity] == null) {
+			return 0;
+		}
+		return counters[entity].get(tag);
+	}
+
+	/**
+	 * Resets all counters.
+	 */
+	void clear() {
+		Arrays.fill(counters, null);
+	}
+
+}
@@ -0,0 +1,67 @@
+/*
+ * Title:        CloudSim Toolkit
+ * Description:  CloudSim (Cloud Simulation) Toolkit for Modeling and Simulation of Clouds
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2009-2012, The University of Melbourne, Australia
+ */
+
+package org.cloudbus.cloudsim.core;
+
+import java.util.*;
+
+/**
+ * This class implements the future event queue used by {@link CloudSim}.
+ * The event queue uses a {@link TreeSet} in order to store the events. It is the default
+ * {@link FutureQueue} and its iterator returns the events in delivering order.
+ *
+ * @author Marcos Dias de Assuncao
+ * @since CloudSim Toolkit 1.0
+ * @see Simulation
+ * @see java.util.TreeSet
+ */
+public class TreeSetFutureQueue extends AbstractFutureQueue {
+
+	/** The sorted set of events. */
+	private final TreeSet<SimEvent> sortedSet = new TreeSet<>();
+
+	@Override
+	protected void insert(SimEvent newEvent) {
+		sortedSet.add(newEvent);
+	}
+
+	@Override
+	public Iterator<SimEvent> iterator() {
+		return sortedSet.iterator();
+	}
+
+	@Override
+	public int size() {
+		return sortedSet.size();
+	}
+
+	@Override
+	public boolean remove(SimEvent event) {
+		return sortedSet.remove(event);
+	}
+
+	@Override
+	public boolean removeAll(Collection<SimEvent> events) {
+		return sortedSet.removeAll(events);
+	}
+
+	@Override
+	public void clear() {
+		sortedSet.clear();
+	}
+
+	@Override
+	public SimEvent peek(){
+		return sortedSet.isEmpty() ? null : sortedSet.first();
+	}
+
+	@Override
+	public SimEvent poll(){
+		return sortedSet.pollFirst();
+	}
+}
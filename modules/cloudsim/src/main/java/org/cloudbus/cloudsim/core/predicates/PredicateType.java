@@ -59,4 +59,32 @@ public class PredicateType extends Predicate {
 		return false;
 	}
 
+	/**
+	 * Gets the tags selected by this predicate.
+	 * 
+	 * @return a copy of the {@link #tags}
+	 */
+	public int[] getTags() {
+		return tags.clone();
+	}
+
+	/**
+	 * Gets the number of tags selected by this predicate.
+	 * 
+	 * @return the number of {@link #tags}
+	 */
+	public int getNumberOfTags() {
+		return tags.length;
+	}
+
+	/**
+	 * Gets one of the tags selected by this predicate, without copying the {@link #tags}.
+	 * 
+	 * @param index the index of the tag, from 0 to {@link #getNumberOfTags()} - 1
+	 * @return the tag
+	 */
+	public int getTag(int index) {
+		return tags[index];
+	}
+
 }
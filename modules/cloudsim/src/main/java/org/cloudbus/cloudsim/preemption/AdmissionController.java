@@ -1,11 +1,11 @@
 package org.cloudbus.cloudsim.preemption;
 
-import java.util.Map;
+import org.cloudbus.cloudsim.preemption.util.PriorityResources;
 
 public interface AdmissionController {
 	
-	public void calculateQuota(Map<Integer, Double> admittedRequests);
+	public void calculateQuota(PriorityResources admittedRequests);
 	
-	public boolean accept(PreemptableVm vm, Map<Integer, Double> admittedRequests);
+	public boolean accept(PreemptableVm vm, PriorityResources admittedRequests);
 
 }
@@ -1,19 +1,22 @@
 package org.cloudbus.cloudsim.preemption;
 
+import java.util.Arrays;
+
+/**
+ * The VMs running and waiting in a datacenter at a time, and the resources they request, for
+ * each priority. The getters for priorities 0, 1 and 2 give 0 for a priority the info does not
+ * have.
+ */
 public class DatacenterInfo {
 
 	private double time;
 	private int vmsRunning;
-	private int vmsRunningP0;
-	private int vmsRunningP1;
-	private int vmsRunningP2;
 	private int vmsForScheduling;
-	private int vmsForSchedulingP0;
-	private int vmsForSchedulingP1;
-	private int vmsForSchedulingP2;
-	private double resourcesRunningP0, resourcesRunningP1, resourcesRunningP2;
-	private double resourcesWaitingP0, resourcesWaitingP1, resourcesWaitingP2;
-	
+	private int[] vmsRunningByPriority;
+	private double[] resourcesRunning;
+	private int[] vmsForSchedulingByPriority;
+	private double[] resourcesWaiting;
+
 	public DatacenterInfo(double time, int vmsRunning, int vmsRunningP0,
 			int vmsRunningP1, int vmsRunningP2, int vmsForScheduling,
 			int vmsForSchedulingP0, int vmsForSchedulingP1,
@@ -21,86 +24,117 @@ public class DatacenterInfo {
 		this(time, vmsRunning, vmsRunningP0, 0, vmsRunningP1, 0, vmsRunningP2, 0,
 				vmsForScheduling, vmsForSchedulingP0, 0, vmsForSchedulingP1, 0, vmsForSchedulingP2, 0);
 	}
-	
+
 	public DatacenterInfo(double time, int vmsRunning, int vmsRunningP0, double resourcesRunningP0,
-			int vmsRunningP1, double resourcesRunningP1, int vmsRunningP2, double resourcesRunningP2, 
+			int vmsRunningP1, double resourcesRunningP1, int vmsRunningP2, double resourcesRunningP2,
 			int vmsForScheduling, int vmsForSchedulingP0, double resourcesWaitingP0, int vmsForSchedulingP1,
 			double resourcesWaitingP1, int vmsForSchedulingP2, double resourcesWaitingP2) {
+		this(time, vmsRunning, new int[] { vmsRunningP0, vmsRunningP1, vmsRunningP2 }, new double[] {
+				resourcesRunningP0, resourcesRunningP1, resourcesRunningP2 }, vmsForScheduling, new int[] {
+				vmsForSchedulingP0, vmsForSchedulingP1, vmsForSchedulingP2 }, new double[] { resourcesWaitingP0,
+				resourcesWaitingP1, resourcesWaitingP2 });
+	}
+
+	/**
+	 * Creates the info of any number of priorities, given by the length of the arrays, which are
+	 * indexed by priority and kept by the info.
+	 */
+	public DatacenterInfo(double time, int vmsRunning, int[] vmsRunningByPriority, double[] resourcesRunning,
+			int vmsForScheduling, int[] vmsForSchedulingByPriority, double[] resourcesWaiting) {
+		int numberOfPriorities = vmsRunningByPriority.length;
+		if (resourcesRunning.length != numberOfPriorities
+				|| vmsForSchedulingByPriority.length != numberOfPriorities
+				|| resourcesWaiting.length != numberOfPriorities) {
+			throw new IllegalArgumentException("The datacenter info must have the same number of priorities for "
+					+ "the VMs running and waiting and their resources.");
+		}
 		this.time = time;
 		this.vmsRunning = vmsRunning;
-		this.vmsRunningP0 = vmsRunningP0;
-		this.resourcesRunningP0 = resourcesRunningP0;
-		this.vmsRunningP1 = vmsRunningP1;
-		this.resourcesRunningP1 = resourcesRunningP1;
-		this.vmsRunningP2 = vmsRunningP2;
-		this.resourcesRunningP2 = resourcesRunningP2;
+		this.vmsRunningByPriority = vmsRunningByPriority;
+		this.resourcesRunning = resourcesRunning;
 		this.vmsForScheduling = vmsForScheduling;
-		this.vmsForSchedulingP0 = vmsForSchedulingP0;
-		this.resourcesWaitingP0 = resourcesWaitingP0;
-		this.vmsForSchedulingP1 = vmsForSchedulingP1;
-		this.resourcesWaitingP1 = resourcesWaitingP1;
-		this.vmsForSchedulingP2 = vmsForSchedulingP2;
-		this.resourcesWaitingP2 = resourcesWaitingP2;
-	}
-	
+		this.vmsForSchedulingByPriority = vmsForSchedulingByPriority;
+		this.resourcesWaiting = resourcesWaiting;
+	}
+
 	public double getTime() {
 		return time;
 	}
 
+	public int getNumberOfPriorities() {
+		return vmsRunningByPriority.length;
+	}
+
 	public int getVmsRunning() {
 		return vmsRunning;
 	}
 
+	public int getVmsRunning(int priority) {
+		return priority < vmsRunningByPriority.length ? vmsRunningByPriority[priority] : 0;
+	}
+
+	public double getResourcesRunning(int priority) {
+		return priority < resourcesRunning.length ? resourcesRunning[priority] : 0;
+	}
+
+	public int getVmsForScheduling() {
+		return vmsForScheduling;
+	}
+
+	public int getVmsForScheduling(int priority) {
+		return priority < vmsForSchedulingByPriority.length ? vmsForSchedulingByPriority[priority] : 0;
+	}
+
+	public double getResourcesWaiting(int priority) {
+		return priority < resourcesWaiting.length ? resourcesWaiting[priority] : 0;
+	}
+
 	public int getVmsRunningP0() {
-		return vmsRunningP0;
+		return getVmsRunning(0);
 	}
 
 	public int getVmsRunningP1() {
-		return vmsRunningP1;
+		return getVmsRunning(1);
 	}
 
 	public int getVmsRunningP2() {
-		return vmsRunningP2;
-	}
-
-	public int getVmsForScheduling() {
-		return vmsForScheduling;
+		return getVmsRunning(2);
 	}
 
 	public int getVmsForSchedulingP0() {
-		return vmsForSchedulingP0;
+		return getVmsForScheduling(0);
 	}
 
 	public int getVmsForSchedulingP1() {
-		return vmsForSchedulingP1;
+		return getVmsForScheduling(1);
 	}
 
 	public int getVmsForSchedulingP2() {
-		return vmsForSchedulingP2;
+		return getVmsForScheduling(2);
 	}
 
 	public double getResourcesRunningP0() {
-		return resourcesRunningP0;
+		return getResourcesRunning(0);
 	}
 
 	public double getResourcesRunningP1() {
-		return resourcesRunningP1;
+		return getResourcesRunning(1);
 	}
 
 	public double getResourcesRunningP2() {
-		return resourcesRunningP2;
+		return getResourcesRunning(2);
 	}
 
 	public double getResourcesWaitingP0() {
-		return resourcesWaitingP0;
+		return getResourcesWaiting(0);
 	}
 
 	public double getResourcesWaitingP1() {
-		return resourcesWaitingP1;
+		return getResourcesWaiting(1);
 	}
 
 	public double getResourcesWaitingP2() {
-		return resourcesWaitingP2;
+		return getResourcesWaiting(2);
 	}
 
 	@Override
@@ -112,18 +146,10 @@ public class DatacenterInfo {
 
 		if (Double.compare(that.time, time) != 0) return false;
 		if (vmsRunning != that.vmsRunning) return false;
-		if (vmsRunningP0 != that.vmsRunningP0) return false;
-		if (resourcesRunningP0 != that.getResourcesRunningP0()) return false;
-		if (vmsRunningP1 != that.vmsRunningP1) return false;
-		if (resourcesRunningP1 != that.getResourcesRunningP1()) return false;
-		if (vmsRunningP2 != that.vmsRunningP2) return false;
-		if (resourcesRunningP2 != that.getResourcesRunningP2()) return false;
 		if (vmsForScheduling != that.vmsForScheduling) return false;
-		if (vmsForSchedulingP0 != that.vmsForSchedulingP0) return false;
-		if (resourcesWaitingP0 != that.getResourcesWaitingP0()) return false;
-		if (vmsForSchedulingP1 != that.vmsForSchedulingP1) return false;
-		if (resourcesWaitingP1 != that.getResourcesWaitingP1()) return false;
-		if (resourcesWaitingP2 != that.getResourcesWaitingP2()) return false;
-		return vmsForSchedulingP2 == that.vmsForSchedulingP2;
+		if (!Arrays.equals(vmsRunningByPriority, that.vmsRunningByPriority)) return false;
+		if (!Arrays.equals(resourcesRunning, that.resourcesRunning)) return false;
+		if (!Arrays.equals(vmsForSchedulingByPriority, that.vmsForSchedulingByPriority)) return false;
+		return Arrays.equals(resourcesWaiting, that.resourcesWaiting);
 	}
 }
@@ -1,11 +1,11 @@
 package org.cloudbus.cloudsim.preemption;
 
-import java.util.HashMap;
 import java.util.Map;
 
 import gnu.trove.map.hash.THashMap;
 import org.cloudbus.cloudsim.core.CloudSim;
-import org.cloudbus.cloudsim.preemption.util.DecimalUtil;
+import org.cloudbus.cloudsim.preemption.util.PriorityResources;
+import org.cloudbus.cloudsim.preemption.util.ResourceUnits;
 
 /**
  * Created by Alessandro Lia Fook Santos on 08/02/17.
@@ -14,8 +14,8 @@ public class GreedyQuotaAdmissionController implements AdmissionController {
 
 
 	private double datacenterCapacity;
-    private Map<Integer, Double> sloTargets;
-    private Map<Integer, Double> priorityToQuotas;
+    private double[] sloTargets;
+    private PriorityResources priorityToQuotas;
     private double confidanceFactor;
 
     public GreedyQuotaAdmissionController(double datacenterCapacity, Map<Integer, Double> sloTargets,
@@ -27,26 +27,22 @@ public class GreedyQuotaAdmissionController implements AdmissionController {
     }
 
     @Override
-    public void calculateQuota(Map<Integer, Double> admittedRequests) {
+    public void calculateQuota(PriorityResources admittedRequests) {
 
-            for (Integer priority : getSloTargets().keySet()) {
+            for (int priority = 0; priority < sloTargets.length; priority++) {
 
-                double greaterPrioritiesResources = 0d;
-
-                for (int i = 0; i < priority; i++) {
-                    greaterPrioritiesResources += admittedRequests.get(i);
-                }
+                double greaterPrioritiesResources = admittedRequests.getUpTo(priority - 1);
 
                 double classCapacity = getDatacenterCapacity() - greaterPrioritiesResources;
-                double classQuota = (classCapacity / getSloTargets().get(priority)) * getConfidanceFactor();
+                double classQuota = (classCapacity / sloTargets[priority]) * getConfidanceFactor();
 
-                getPriorityToQuotas().put(priority, DecimalUtil.format(classQuota));
+                getPriorityToQuotas().set(priority, classQuota);
             }
 
     }
 
     @Override
-    public boolean accept(PreemptableVm vm, Map<Integer, Double> admittedRequests) {
+    public boolean accept(PreemptableVm vm, PriorityResources admittedRequests) {
         double currentQuota = getPriorityToQuotas().get(vm.getPriority());
 
         if (admittedRequests.get(vm.getPriority()) + vm.getMips() <= currentQuota) {
@@ -55,7 +51,7 @@ public class GreedyQuotaAdmissionController implements AdmissionController {
         return false;
     }
 
-    public Map<Integer, Double> getPriorityToQuotas() {
+    public PriorityResources getPriorityToQuotas() {
         return priorityToQuotas;
     }
 
@@ -69,11 +65,25 @@ public class GreedyQuotaAdmissionController implements AdmissionController {
     }
 
     public Map<Integer, Double> getSloTargets() {
-        return sloTargets;
+        Map<Integer, Double> priorityToSloTarget = new THashMap<Integer, Double>();
+        for (int priority = 0; priority < sloTargets.length; priority++) {
+            priorityToSloTarget.put(priority, sloTargets[priority]);
+        }
+        return priorityToSloTarget;
     }
 
     public void setSloTargets(Map<Integer, Double> sloTargets) {
-        this.sloTargets = sloTargets;
+        if (sloTargets == null || sloTargets.isEmpty()) {
+            throw new IllegalArgumentException("The SLO targets can not be null or empty.");
+        }
+        this.sloTargets = new double[sloTargets.size()];
+        for (int priority = 0; priority < this.sloTargets.length; priority++) {
+            Double sloTarget = sloTargets.get(priority);
+            if (sloTarget == null) {
+                throw new IllegalArgumentException("There is not SLO target for priority " + priority + ".");
+            }
+            this.sloTargets[priority] = sloTarget;
+        }
     }
 
     public double getConfidanceFactor() {
@@ -86,15 +96,8 @@ public class GreedyQuotaAdmissionController implements AdmissionController {
 
     public void initializeQuotas() {
 
-        Map<Integer, Double> admittedRequests = new THashMap<Integer, Double>();
-
-        priorityToQuotas = new THashMap<Integer, Double>();
-        
-        for (Integer priority : getSloTargets().keySet()) {
-            admittedRequests.put(priority, 0d);
-            getPriorityToQuotas().put(priority, 0d);
-        }
+        priorityToQuotas = new PriorityResources(sloTargets.length);
 
-        calculateQuota(admittedRequests);
+        calculateQuota(new PriorityResources(sloTargets.length));
     }
 }
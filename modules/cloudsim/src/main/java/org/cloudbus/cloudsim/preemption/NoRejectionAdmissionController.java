@@ -1,17 +1,17 @@
 package org.cloudbus.cloudsim.preemption;
 
-import java.util.Map;
+import org.cloudbus.cloudsim.preemption.util.PriorityResources;
 
 public class NoRejectionAdmissionController implements AdmissionController {
 
 	@Override
-	public void calculateQuota(Map<Integer, Double> admittedRequests) {
+	public void calculateQuota(PriorityResources admittedRequests) {
 
 	}
 
 	@Override
 	public boolean accept(PreemptableVm vm,
-			Map<Integer, Double> admittedRequests) {
+			PriorityResources admittedRequests) {
 		return true;
 	}
 
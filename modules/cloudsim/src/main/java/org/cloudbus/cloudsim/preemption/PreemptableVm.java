@@ -1,9 +1,17 @@
 package org.cloudbus.cloudsim.preemption;
 
-import org.cloudbus.cloudsim.CloudletSchedulerTimeShared;
+import java.util.ArrayList;
+import java.util.List;
+
 import org.cloudbus.cloudsim.Vm;
 import org.cloudbus.cloudsim.core.CloudSim;
 
+/**
+ * A VM running one task of a trace. The task is modelled by the VM itself, so it runs no
+ * cloudlets and has no {@link org.cloudbus.cloudsim.CloudletScheduler}: what the VM requests is
+ * what it asked for when being instantiated, and nothing after that, as a VM whose scheduler has
+ * no cloudlets.
+ */
 public class PreemptableVm extends Vm implements Comparable<PreemptableVm> {
 
 	public static final int NOT_EXECUTING_TIME = -1;
@@ -23,8 +31,7 @@ public class PreemptableVm extends Vm implements Comparable<PreemptableVm> {
 	private int lastHostId;
 	public PreemptableVm(int id, int userId, double cpuReq, double memReq,
 			double submitTime, int priority, double runtime) {
-		super(id, userId, cpuReq, 1, (int) memReq, 0, 0, "default",
-				new CloudletSchedulerTimeShared());
+		super(id, userId, cpuReq, 1, (int) memReq, 0, 0, "default", null);
 
 		setSubmitTime(submitTime);
 		setPriority(priority);
@@ -38,6 +45,37 @@ public class PreemptableVm extends Vm implements Comparable<PreemptableVm> {
 		actualRuntime = 0;
 	}
 
+	@Override
+	public double updateVmProcessing(double currentTime, List<Double> mipsShare) {
+		return 0.0;
+	}
+
+	@Override
+	public List<Double> getCurrentRequestedMips() {
+		List<Double> currentRequestedMips = new ArrayList<Double>(getNumberOfPes());
+		if (isBeingInstantiated()) {
+			for (int i = 0; i < getNumberOfPes(); i++) {
+				currentRequestedMips.add(getMips());
+			}
+		}
+		return currentRequestedMips;
+	}
+
+	@Override
+	public long getCurrentRequestedBw() {
+		return isBeingInstantiated() ? getBw() : 0;
+	}
+
+	@Override
+	public int getCurrentRequestedRam() {
+		return isBeingInstantiated() ? getRam() : 0;
+	}
+
+	@Override
+	public double getTotalUtilizationOfCpu(double time) {
+		return 0;
+	}
+
 	@Override
 	public int compareTo(PreemptableVm otherVm) {
 		if (getPriority() < otherVm.getPriority()) {
@@ -9,20 +9,19 @@ package org.cloudbus.cloudsim.preemption;
 
 import gnu.trove.map.hash.THashMap;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
-import java.util.SortedSet;
-import java.util.TimerTask;
-import java.util.TreeSet;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.cloudbus.cloudsim.Datacenter;
 import org.cloudbus.cloudsim.DatacenterCharacteristics;
@@ -30,17 +29,21 @@ import org.cloudbus.cloudsim.Host;
 import org.cloudbus.cloudsim.Log;
 import org.cloudbus.cloudsim.Storage;
 import org.cloudbus.cloudsim.VmAllocationPolicy;
+import org.cloudbus.cloudsim.core.ArrivalSource;
 import org.cloudbus.cloudsim.core.CloudSim;
 import org.cloudbus.cloudsim.core.CloudSimTags;
+import org.cloudbus.cloudsim.core.SimEntity;
 import org.cloudbus.cloudsim.core.SimEvent;
-import org.cloudbus.cloudsim.core.predicates.Predicate;
+import org.cloudbus.cloudsim.preemption.datastore.DataStoreWriter;
+import org.cloudbus.cloudsim.preemption.datastore.DatacenterSnapshot;
 import org.cloudbus.cloudsim.preemption.datastore.DatacenterUsageDataStore;
+import org.cloudbus.cloudsim.preemption.datastore.HostUsageBuffer;
 import org.cloudbus.cloudsim.preemption.datastore.HostUsageDataStore;
 import org.cloudbus.cloudsim.preemption.datastore.PreemptableVmDataStore;
 import org.cloudbus.cloudsim.preemption.policies.preemption.VmAvailabilityBasedPreemptionPolicy;
+import org.cloudbus.cloudsim.preemption.policies.preemption.PreemptionPolicy;
 import org.cloudbus.cloudsim.preemption.policies.vmallocation.PreemptableVmAllocationPolicy;
-import org.cloudbus.cloudsim.preemption.util.PriorityAndAvailabilityBasedVmComparator;
-import org.cloudbus.cloudsim.preemption.util.PriorityAndTTVBasedPreemptableVmComparator;
+import org.cloudbus.cloudsim.preemption.util.PriorityResources;
 
 /**
  * TODO
@@ -77,14 +80,24 @@ public class PreemptiveDatacenter extends Datacenter {
 	
 	SimulationTimeUtil simulationTimeUtil = new SimulationTimeUtil();
 
-	private SortedSet<PreemptableVm> vmsRunning = new TreeSet<PreemptableVm>();
-	private SortedSet<PreemptableVm> vmsForScheduling = new TreeSet<PreemptableVm>();
+	private RunningVmSet vmsRunning = new RunningVmSet();
+	private WaitingQueue vmsForScheduling = new WaitingQueue();
+	private WaitingQueue.Order waitingQueueOrder;
 	private List<DatacenterInfo> datacenterInfo;
+
+	/** The datacenter info the writer could not store, to be tried again at the next store. */
+	private final ConcurrentLinkedQueue<List<DatacenterInfo>> failedDatacenterInfo = new ConcurrentLinkedQueue<List<DatacenterInfo>>();
 	private boolean tryAllocateWaitingQueue;
 	
 	// data stores
 	private HostUsageDataStore hostUsageDataStore;
 	private DatacenterUsageDataStore datacenterDataStore;
+
+	/** Writes to the data stores behind the simulation; created when first needed. */
+	private DataStoreWriter dataStoreWriter;
+
+	/** Whether the writer was created by this datacenter, which then closes it. */
+	private boolean ownsDataStoreWriter;
 	
 	private double hostUsageStoringIntervalSize;
 	private double datacenterCollectInfoIntervalSize;
@@ -97,11 +110,10 @@ public class PreemptiveDatacenter extends Datacenter {
 	private boolean makeCheckpoint = false;
 	private boolean calculateQuotaEventTrigged = false;
 	private Properties properties;
-	private static double lastProcessTime;
+	private double lastProcessTime;
 	private AdmissionController admController;
-	private Map<Integer, Double> admittedRequests;
-	
-	private ScheduledExecutorService executor = Executors.newScheduledThreadPool(1);
+	private PriorityResources admittedRequests;
+	private UsageSeries.Resolution usageResolution;
 	
 	public PreemptiveDatacenter(
 			String name,
@@ -124,17 +136,28 @@ public class PreemptiveDatacenter extends Datacenter {
 		this.datacenterDataStore = new DatacenterUsageDataStore(properties);
 		this.properties = properties;
 		this.admController = admController;
-		this.admittedRequests = new THashMap<Integer, Double>();
 		this.tryAllocateWaitingQueue = false;
+
+		// duplicate periodic ticks at the same time would only repeat the same pass
+		addCoalescibleTag(TRY_TO_ALLOCATE_WAITING_QUEUE_EVENT);
+		addCoalescibleTag(COLLECT_DATACENTER_INFO_EVENT);
 	
+		int numberOfPriorities = PreemptionPolicy.DEFAULT_NUMBER_OF_PRIORITIES;
 		if (properties.getProperty("number_of_priorities") != null) {
-			int numberOfPriorities = Integer.parseInt(properties.getProperty("number_of_priorities"));
+			numberOfPriorities = Integer.parseInt(properties.getProperty("number_of_priorities"));
 			if (numberOfPriorities <= 0) {
 				throw new IllegalArgumentException("The number of priorities must be a positive integer.");
 			}
-			
-			for (int priority = 0; priority < numberOfPriorities; priority++) {
-				admittedRequests.put(priority, 0d);
+		}
+		this.admittedRequests = new PriorityResources(numberOfPriorities);
+
+		this.usageResolution = UsageSeries.getResolution(properties);
+		if (usageResolution != UsageSeries.Resolution.CHANGE) {
+			double resolutionInterval = UsageSeries.getResolutionInterval(properties);
+			for (Host host : getHostList()) {
+				PreemptiveHost gHost = (PreemptiveHost) host;
+				gHost.setUsageSeries(new UsageSeries(gHost.getNumberOfPriorities(), usageResolution,
+						resolutionInterval));
 			}
 		}
 
@@ -197,15 +220,6 @@ public class PreemptiveDatacenter extends Datacenter {
 				setUpdateQuotaIntervalSize(updateQuotaIntervalSize);
 			}
 		}
-		
-		executor.scheduleAtFixedRate(new TimerTask() {
-			@Override
-			public void run() {
-				storeHostUtilization(false);
-				
-			}
-		}, hostUsageStoringIntervalSize, hostUsageStoringIntervalSize, TimeUnit.MINUTES);
-        
 	}
 
 	private void setCalculateQuotaEventTrigged(boolean option) {
@@ -223,8 +237,13 @@ public class PreemptiveDatacenter extends Datacenter {
 		switch (ev.getTag()) {
 
 			case INITIALIZE_FROM_CHECKPOINT_EVENT:
-				PreemptableVmDataStore vmDataStore = new PreemptableVmDataStore(properties);
-				initializeFromCheckpoint(vmDataStore);
+				if (ev.getData() instanceof DatacenterSnapshot) {
+					initializeFromSnapshot((DatacenterSnapshot) ev.getData());
+				} else {
+					PreemptableVmDataStore vmDataStore = new PreemptableVmDataStore(properties);
+					initializeFromCheckpoint(vmDataStore);
+					vmDataStore.close();
+				}
 				break;
 
 			case SCHEDULE_DATACENTER_EVENTS_EVENT:
@@ -257,10 +276,12 @@ public class PreemptiveDatacenter extends Datacenter {
 				
 			case CloudSimTags.END_OF_SIMULATION:
 				collectDatacenterInfo(true);
-				terminateSimulation();
+				terminateSimulation(ev.getSource());
 				storeHostUtilization(true);
 				storeDatacenterInfo(true);
-				executor.shutdown();
+				// the output is complete when the simulation ends
+				getDataStoreWriter().flush();
+				storeFailedDatacenterInfo();
 				break;
 	
 			// other unknown tags are processed by this method
@@ -319,7 +340,7 @@ public class PreemptiveDatacenter extends Datacenter {
 			getVmsForScheduling().addAll(waitingVms);
 			
 			for (PreemptableVm vm : waitingVms) {
-				getAdmittedRequests().put(vm.getPriority(), admittedRequests.get(vm.getPriority()) + vm.getMips());
+				getAdmittedRequests().add(vm.getPriority(), vm.getMips());
 			}
 			
 			for (PreemptableVm vm: runningVms){
@@ -345,7 +366,7 @@ public class PreemptiveDatacenter extends Datacenter {
 
 				host.updateUsage(simulationTimeUtil.clock());
 				
-				getAdmittedRequests().put(vm.getPriority(), admittedRequests.get(vm.getPriority()) + vm.getMips());
+				getAdmittedRequests().add(vm.getPriority(), vm.getMips());
 
 				getVmsRunning().add(vm);
 
@@ -355,6 +376,111 @@ public class PreemptiveDatacenter extends Datacenter {
 
 	}
 
+	/**
+	 * Restores the state of the datacenter from a binary checkpoint, at the time it was made. The
+	 * running VMs of each host are placed on it at once, the destroy events of all of them are
+	 * given to the simulation as a single cursor and the waiting queue, the admitted resources
+	 * and the quotas are loaded as they were.
+	 * 
+	 * @param snapshot the snapshot
+	 */
+	protected void initializeFromSnapshot(DatacenterSnapshot snapshot) {
+		double now = simulationTimeUtil.clock();
+		Log.printConcatLine(now, ": Initializing datacenter from snapshot with ",
+				snapshot.getNumberOfRunningVms(), " running VMs and ",
+				snapshot.getNumberOfWaitingVms(), " waiting VMs.");
+
+		if (snapshot.getNumberOfPriorities() != getAdmittedRequests().getNumberOfPriorities()) {
+			throw new IllegalArgumentException("The snapshot has " + snapshot.getNumberOfPriorities()
+					+ " priorities, but the datacenter has " + getAdmittedRequests().getNumberOfPriorities() + ".");
+		}
+
+		Map<Integer, PreemptiveHost> mapOfHosts = generateMapOfHosts();
+		Map<PreemptiveHost, List<PreemptableVm>> hostToVms = new THashMap<PreemptiveHost, List<PreemptableVm>>();
+		final List<PreemptableVm> runningVms = snapshot.getRunningVms();
+		for (PreemptableVm vm : runningVms) {
+			PreemptiveHost host = mapOfHosts.get(vm.getLastHostId());
+			if (host == null) {
+				throw new SimulationException("There is no host " + vm.getLastHostId()
+						+ " for VM #" + vm.getId() + " in the snapshot.");
+			}
+			List<PreemptableVm> vms = hostToVms.get(host);
+			if (vms == null) {
+				vms = new ArrayList<PreemptableVm>();
+				hostToVms.put(host, vms);
+			}
+			vm.setStartExec(now);
+			vms.add(vm);
+		}
+
+		for (Map.Entry<PreemptiveHost, List<PreemptableVm>> entry : hostToVms.entrySet()) {
+			PreemptiveHost host = entry.getKey();
+			if (!getVmAllocationPolicy().allocateHostForVms(entry.getValue(), host)) {
+				throw new SimulationException("Error allocating VMs to host " + host.getId()
+						+ " while initializing from a snapshot.");
+			}
+			host.updateUsage(now);
+		}
+		getVmsRunning().addAll(runningVms);
+		getVmsForScheduling().addAll(snapshot.getWaitingVms());
+
+		PriorityResources admittedRequests = snapshot.getAdmittedRequests();
+		for (int priority = 0; priority < admittedRequests.getNumberOfPriorities(); priority++) {
+			getAdmittedRequests().set(priority, admittedRequests.get(priority));
+		}
+		PriorityResources quotas = snapshot.getQuotas();
+		if (quotas != null && getAdmController() instanceof GreedyQuotaAdmissionController) {
+			PriorityResources priorityToQuotas = ((GreedyQuotaAdmissionController) getAdmController())
+					.getPriorityToQuotas();
+			for (int priority = 0; priority < quotas.getNumberOfPriorities(); priority++) {
+				priorityToQuotas.set(priority, quotas.get(priority));
+			}
+		}
+
+		// the destroy events in the order they happen, instead of one by one in the future queue,
+		// sent first as the ones of the VMs allocated during the simulation are
+		Collections.sort(runningVms, new Comparator<PreemptableVm>() {
+
+			@Override
+			public int compare(PreemptableVm vm1, PreemptableVm vm2) {
+				return Double.compare(getDestroyTime(vm1), getDestroyTime(vm2));
+			}
+		});
+		// the times are read now, as the VMs may be preempted before their destroy events
+		final double[] destroyTimes = new double[runningVms.size()];
+		for (int i = 0; i < destroyTimes.length; i++) {
+			destroyTimes[i] = getDestroyTime(runningVms.get(i));
+		}
+		sendArrivalsFirst(getId(), CloudSimTags.VM_DESTROY_ACK, new ArrivalSource() {
+
+			private int next;
+
+			@Override
+			public int remaining() {
+				return destroyTimes.length - next;
+			}
+
+			@Override
+			public double nextTime() {
+				return destroyTimes[next];
+			}
+
+			@Override
+			public Object next() {
+				return runningVms.get(next++);
+			}
+		});
+
+		sendNow(getId(), SCHEDULE_DATACENTER_EVENTS_EVENT);
+	}
+
+	/**
+	 * Gets the time a VM allocated now reaches its runtime.
+	 */
+	private static double getDestroyTime(PreemptableVm vm) {
+		return vm.getStartExec() + Math.max(0, vm.getRuntime() - vm.getActualRuntime(vm.getStartExec()));
+	}
+
 	private Map<Integer, PreemptiveHost> generateMapOfHosts(){
 		List<PreemptiveHost> hostList = getHostList();
 		Map<Integer, PreemptiveHost> mapOfHosts = new THashMap<>();
@@ -369,26 +495,14 @@ public class PreemptiveDatacenter extends Datacenter {
 
 
 	private void makeCheckpoint() {
-		ScheduledExecutorService executor = Executors.newScheduledThreadPool(1);
-		executor.execute(new Runnable() {
-			
-			@Override
-			public void run() {
-				Log.printConcatLine(simulationTimeUtil.clock(), ": Building datacenter checkpoint.");
-				
-				PreemptableVmDataStore vmDataStore = new PreemptableVmDataStore(properties, simulationTimeUtil.clock());
-				
-				if (!vmDataStore.addWaitingVms(new TreeSet<PreemptableVm>(getVmsForScheduling()))) {
-					Log.printConcatLine(simulationTimeUtil.clock(),
-							": There was an error while making checkpoint of vms for scheduling.");
-				}
-				
-				if (!vmDataStore.addRunningVms(new TreeSet<PreemptableVm>(getVmsRunning()))) {
-					Log.printConcatLine(simulationTimeUtil.clock(),
-							": There was an error while making checkpoint of vms running.");	
-				}
-			}
-		});
+		final double time = simulationTimeUtil.clock();
+		Log.printConcatLine(time, ": Building datacenter checkpoint.");
+
+		if (DatacenterSnapshot.isBinaryFormat(properties)) {
+			makeSnapshot(time);
+		} else {
+			makeVmCheckpoint(time);
+		}
 		 
 		//scheduling next checkpoint event
 		if (!getVmsRunning().isEmpty() || !getVmsForScheduling().isEmpty()) {
@@ -400,12 +514,76 @@ public class PreemptiveDatacenter extends Datacenter {
 		}		
 	}
 
+	/**
+	 * Writes the state of the datacenter and of the broker submitting to it into a binary
+	 * checkpoint. The state is read now and the file is written behind the simulation.
+	 */
+	private void makeSnapshot(final double time) {
+		final DatacenterSnapshot snapshot = new DatacenterSnapshot(time,
+				getAdmittedRequests().getNumberOfPriorities());
+		snapshot.setAdmittedRequests(getAdmittedRequests());
+		if (getAdmController() instanceof GreedyQuotaAdmissionController) {
+			snapshot.setQuotas(((GreedyQuotaAdmissionController) getAdmController()).getPriorityToQuotas());
+		}
+		snapshot.addRunningVms(getVmsRunning());
+		snapshot.addWaitingVms(getVmsForScheduling());
+
+		// as the broker, the simulation has only one
+		for (SimEntity entity : getContext().getEntityList()) {
+			if (entity instanceof TraceDatacenterBroker) {
+				((TraceDatacenterBroker) entity).snapshot(snapshot);
+				break;
+			}
+		}
+
+		final File file = DatacenterSnapshot.getCheckpointFile(properties, time);
+		getDataStoreWriter().submit(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					snapshot.write(file);
+				} catch (IOException e) {
+					Log.printConcatLine(time, ": There was an error while writing the snapshot ",
+							file, ": ", e.getMessage());
+				}
+			}
+		});
+	}
+
+	private void makeVmCheckpoint(final double time) {
+		// the vms keep changing while the checkpoint is written
+		final List<PreemptableVmDataStore.VmSnapshot> waitingVms = PreemptableVmDataStore
+				.snapshot(getVmsForScheduling(), false, time);
+		final List<PreemptableVmDataStore.VmSnapshot> runningVms = PreemptableVmDataStore
+				.snapshot(getVmsRunning(), true, time);
+
+		getDataStoreWriter().submit(new Runnable() {
+
+			@Override
+			public void run() {
+				PreemptableVmDataStore vmDataStore = new PreemptableVmDataStore(properties, time);
+
+				if (!vmDataStore.addVmSnapshots(waitingVms)) {
+					Log.printConcatLine(time,
+							": There was an error while making checkpoint of vms for scheduling.");
+				}
+
+				if (!vmDataStore.addVmSnapshots(runningVms)) {
+					Log.printConcatLine(time,
+							": There was an error while making checkpoint of vms running.");
+				}
+				vmDataStore.close();
+			}
+		});
+	}
+
 	private void scheduleDatacenterEvents() {
 		Log.printConcatLine(simulationTimeUtil.clock(), ": Scheduling the first datacenter events.");
 
-//		// creating the first utilization store event
-//		send(getId(), getHostUsageStoringIntervalSize(),
-//				PreemptiveDatacenter.STORE_HOST_UTILIZATION_EVENT);
+		// creating the first utilization store event
+		send(getId(), getHostUsageStoringIntervalSize(),
+				PreemptiveDatacenter.STORE_HOST_UTILIZATION_EVENT);
 
 		// creating the first update quota event
 		if (getCalculateQuotaEventTrigged()) {
@@ -430,12 +608,19 @@ public class PreemptiveDatacenter extends Datacenter {
 		}
 	}
 
-	private void terminateSimulation() {
+	/**
+	 * Finishes the VMs and tells the end of the simulation to their brokers and to the entity that
+	 * scheduled it, which may have no VMs left, e.g. after the trace is over.
+	 */
+	private void terminateSimulation(int requesterId) {
 		Log.printConcatLine(simulationTimeUtil.clock(),
 				": Finishing all VMs (", getVmsRunning().size(),
 				" running and ", getVmsForScheduling().size(), " waiting).");
 
 		Set<Integer> brokerIds = new HashSet<Integer>();
+		if (requesterId != getId()) {
+			brokerIds.add(requesterId);
+		}
 		
 		// terminating Vms running
 		for (PreemptableVm vmRunning : getVmsRunning()) {
@@ -479,62 +664,23 @@ public class PreemptiveDatacenter extends Datacenter {
 	private void collectDatacenterInfo(boolean endOfSimulation) {
 		Log.printConcatLine(simulationTimeUtil.clock(), ": Collecting datacenter info.");
 
-		int vmsRunningP0 = 0;
-		int vmsRunningP1 = 0;
-		int vmsRunningP2 = 0;
-		double resourcesRunningP0 = 0;
-		double resourcesRunningP1 = 0;
-		double resourcesRunningP2 = 0;
-		int vmsRunning = getVmsRunning().size();
-		int vmsForScheduling = getVmsForScheduling().size();
-		
-		for (PreemptableVm vm : getVmsRunning()) {
-			if (vm.getPriority() == 0) {
-				vmsRunningP0++;
-				resourcesRunningP0 += vm.getMips();
-			} else if (vm.getPriority() == 1) {
-				vmsRunningP1++;
-				resourcesRunningP1 += vm.getMips();
-			} else if (vm.getPriority() == 2) {
-				vmsRunningP2++;
-				resourcesRunningP2 += vm.getMips();
-			} else {
-				System.out.println("#VMs with invalid priority "
-						+ vm.getPriority());
-			}
-		}
-		
-		int vmsForSchedulingP0 = 0;
-		int vmsForSchedulingP1 = 0;
-		int vmsForSchedulingP2 = 0;
-		double resourcesWaitingP0 = 0;
-		double resourcesWaitingP1 = 0;
-		double resourcesWaitingP2 = 0;
-		
-		for (PreemptableVm vm : getVmsForScheduling()) {
-			if (vm.getPriority() == 0) {
-				vmsForSchedulingP0++;
-				resourcesWaitingP0 += vm.getMips();
-			} else if (vm.getPriority() == 1) {
-				vmsForSchedulingP1++;
-				resourcesWaitingP1 += vm.getMips();
-			} else if (vm.getPriority() == 2) {
-				vmsForSchedulingP2++;
-				resourcesWaitingP2 += vm.getMips();
-			} else {
-				System.out.println("#VMs with invalid priority "
-						+ vm.getPriority());
-			}
+		// the VMs of each priority are counted as they are added and removed
+		int numberOfPriorities = admittedRequests.getNumberOfPriorities();
+		int[] vmsRunning = new int[numberOfPriorities];
+		double[] resourcesRunning = new double[numberOfPriorities];
+		int[] vmsForScheduling = new int[numberOfPriorities];
+		double[] resourcesWaiting = new double[numberOfPriorities];
+		for (int priority = 0; priority < numberOfPriorities; priority++) {
+			vmsRunning[priority] = getVmsRunning().size(priority);
+			resourcesRunning[priority] = getVmsRunning().getMips(priority);
+			vmsForScheduling[priority] = getVmsForScheduling().size(priority);
+			resourcesWaiting[priority] = getVmsForScheduling().getMips(priority);
 		}
 
 		getDatacenterInfo().add(
-				new DatacenterInfo(simulationTimeUtil.clock(), vmsRunning,
-						vmsRunningP0, resourcesRunningP0, vmsRunningP1,
-						resourcesRunningP1, vmsRunningP2, resourcesRunningP2,
-						vmsForScheduling, vmsForSchedulingP0,
-						resourcesWaitingP0, vmsForSchedulingP1,
-						resourcesWaitingP1, vmsForSchedulingP2,
-						resourcesWaitingP2));
+				new DatacenterInfo(simulationTimeUtil.clock(), getVmsRunning().size(),
+						vmsRunning, resourcesRunning, getVmsForScheduling().size(),
+						vmsForScheduling, resourcesWaiting));
 
 		// creating next event if the are more vms to be concluded
 		if ((!getVmsRunning().isEmpty() || !getVmsForScheduling().isEmpty()) && !endOfSimulation) {
@@ -548,9 +694,25 @@ public class PreemptiveDatacenter extends Datacenter {
 	}
 	
 	private void storeDatacenterInfo(boolean endOfSimulation) {
-		if (datacenterDataStore.addDatacenterInfo(getDatacenterInfo())) {
-			getDatacenterInfo().clear();
+		final List<DatacenterInfo> toStore = new ArrayList<DatacenterInfo>();
+		List<DatacenterInfo> failed;
+		while ((failed = failedDatacenterInfo.poll()) != null) {
+			toStore.addAll(failed);
 		}
+		toStore.addAll(getDatacenterInfo());
+		getDatacenterInfo().clear();
+		final DatacenterUsageDataStore datacenterDataStore = this.datacenterDataStore;
+		getDataStoreWriter().submit(new Runnable() {
+
+			@Override
+			public void run() {
+				if (!datacenterDataStore.addDatacenterInfo(toStore)) {
+					Log.printLine("There was an error while storing " + toStore.size()
+							+ " datacenter info entries, they will be tried again.");
+					failedDatacenterInfo.add(toStore);
+				}
+			}
+		});
 
 		// creating next event if the are more vms to be concluded
 		if ((!getVmsRunning().isEmpty() || !getVmsForScheduling().isEmpty()) && !endOfSimulation) {
@@ -562,32 +724,57 @@ public class PreemptiveDatacenter extends Datacenter {
 		}		
 	}
 
+	/**
+	 * Stores the datacenter info the writer could not store once the last writes are done, as no
+	 * later store will try it again, and logs the number of entries lost if it fails again.
+	 */
+	private void storeFailedDatacenterInfo() {
+		List<DatacenterInfo> toStore = new ArrayList<DatacenterInfo>();
+		List<DatacenterInfo> failed;
+		while ((failed = failedDatacenterInfo.poll()) != null) {
+			toStore.addAll(failed);
+		}
+		if (!toStore.isEmpty() && !datacenterDataStore.addDatacenterInfo(toStore)) {
+			Log.printConcatLine(simulationTimeUtil.clock(), ": Error - ", toStore.size(),
+					" datacenter info entries could not be stored and were lost.");
+		}
+	}
+
 	private void storeHostUtilization(boolean endOfSimulation) {
 		Log.printConcatLine(simulationTimeUtil.clock(), ": Storing host usage into database.");
 
-		List<UsageEntry> usageEntries = new LinkedList<UsageEntry>();
+		final HostUsageBuffer usage = new HostUsageBuffer(getHostList().size() * admittedRequests.getNumberOfPriorities(),
+				usageResolution == UsageSeries.Resolution.STATS);
 		
 		for (Host host : getHostList()) {
 
 			PreemptiveHost gHost = (PreemptiveHost) host;
-			usageEntries.addAll(gHost.getUsageEntries(this.simulationTimeUtil.clock()));
+			gHost.drainUsage(this.simulationTimeUtil.clock(), endOfSimulation, usage);
 		}
 		
-		Log.printConcatLine(simulationTimeUtil.clock(), ":", usageEntries.size()," will be stored into database now.");
+		Log.printConcatLine(simulationTimeUtil.clock(), ":", usage.size()," will be stored into database now.");
 		
-		hostUsageDataStore.addUsageEntries(usageEntries);
+		final HostUsageDataStore hostUsageDataStore = this.hostUsageDataStore;
+		getDataStoreWriter().submit(new Runnable() {
+
+			@Override
+			public void run() {
+				hostUsageDataStore.addUsage(usage);
+			}
+		});
 		
 		// creating next event if the are more vms to be concluded
-//		if ((!getVmsRunning().isEmpty() || !getVmsForScheduling().isEmpty()) && !endOfSimulation) {
-//			Log.printConcatLine(simulationTimeUtil.clock(),
-//					": Scheduling next store host utilization event in be in ",
-//					getHostUsageStoringIntervalSize(), " time units.");
-//			send(getId(), getHostUsageStoringIntervalSize(),
-//					STORE_HOST_UTILIZATION_EVENT);
-//		}
+		if ((!getVmsRunning().isEmpty() || !getVmsForScheduling().isEmpty()) && !endOfSimulation) {
+			Log.printConcatLine(simulationTimeUtil.clock(),
+					": Scheduling next store host utilization event in be in ",
+					getHostUsageStoringIntervalSize(), " time units.");
+			send(getId(), getHostUsageStoringIntervalSize(),
+					STORE_HOST_UTILIZATION_EVENT);
+		}
 	}
 	
 	public List<UsageEntry> getHostUtilizationEntries() {
+		getDataStoreWriter().flush();
 		return hostUsageDataStore.getAllUsageEntries();
 	}
 
@@ -612,6 +799,12 @@ public class PreemptiveDatacenter extends Datacenter {
 
 		PreemptableVm vm = (PreemptableVm) ev.getData();
 
+		// the VMs of each priority are counted up to the number of priorities of the datacenter
+		if (vm.getPriority() < 0 || vm.getPriority() >= getAdmittedRequests().getNumberOfPriorities()) {
+			throw new IllegalArgumentException("The priority " + vm.getPriority() + " of VM #" + vm.getId()
+					+ " is not between 0 and " + (getAdmittedRequests().getNumberOfPriorities() - 1) + ".");
+		}
+
 		if (!getCalculateQuotaEventTrigged()) {
 			getAdmController().calculateQuota(getAdmittedRequests());
 		}
@@ -619,9 +812,7 @@ public class PreemptiveDatacenter extends Datacenter {
 		if (admController.accept(vm, getAdmittedRequests())) {
 
 			// updating the admitted requests for specific priority
-			int priority = vm.getPriority();
-			double currentAdmitted = admittedRequests.get(vm.getPriority());
-			getAdmittedRequests().put(priority, currentAdmitted + vm.getMips());
+			getAdmittedRequests().add(vm.getPriority(), vm.getMips());
 
 			allocateHostForVm(ack, vm, null, false);
 		} else {
@@ -820,9 +1011,7 @@ public class PreemptiveDatacenter extends Datacenter {
 				host.updateUsage(simulationTimeUtil.clock());
 				
 				// updating the admitted resources
-				getAdmittedRequests().put(
-						vm.getPriority(),
-						getAdmittedRequests().get(vm.getPriority())	- vm.getMips());
+				getAdmittedRequests().add(vm.getPriority(), -vm.getMips());
 			} else {
 				Log.printConcatLine(simulationTimeUtil.clock(), ": VM #",
 						vm.getId(), " was terminated previously.");
@@ -840,14 +1029,7 @@ public class PreemptiveDatacenter extends Datacenter {
 	}
 
 	private boolean nextEventIsDestroy() {
-		if (numEventsWaiting(new Predicate() {
-			
-			@Override
-			public boolean match(SimEvent event) {
-				return ((event.getTag() == CloudSimTags.VM_DESTROY_ACK) || (event
-						.getTag() == CloudSimTags.VM_DESTROY));
-			}
-		}) > 0) {
+		if (countDeferred(CloudSimTags.VM_DESTROY_ACK) > 0 || countDeferred(CloudSimTags.VM_DESTROY) > 0) {
 			Log.printConcatLine(simulationTimeUtil.clock(), ": Is destroy the next event ?", true);
 			return true;
 		}
@@ -858,10 +1040,63 @@ public class PreemptiveDatacenter extends Datacenter {
 	private void allocatingWaitingQueue() {	
 		Log.printConcatLine(simulationTimeUtil.clock(), ": Trying to allocate the VMs in waiting queue.");
 
+		if (firstProcessNow()) {
+			Log.printConcatLine(simulationTimeUtil.clock(),
+					": Time passed out. Pre processing and updating last process time to ", simulationTimeUtil.clock());
+			lastProcessTime = simulationTimeUtil.clock();
+			getVmAllocationPolicy().preProcess();
+		}
+
 		boolean isBackfilling = false;
-		
-		ArrayList<PreemptableVm> waitingQueue = new ArrayList<PreemptableVm>(getVmsForScheduling());
-		
+
+		WaitingQueue waitingQueue = getVmsForScheduling();
+		WaitingQueue.Order order = getWaitingQueueOrder();
+
+		/*
+		 * The VMs added during this pass, as the preempted ones, are only tried
+		 * in the next pass. A priority is skipped when none of its VMs fits in
+		 * any host, as all of them would stay waiting.
+		 */
+		long insertionMark = waitingQueue.getInsertionMark();
+		int numberOfPriorities = waitingQueue.getNumberOfPriorities();
+		for (int priority = 0; priority < numberOfPriorities; priority++) {
+			if (waitingQueue.size(priority) == 0) {
+				continue;
+			}
+
+			double minMips = waitingQueue.getMinMips(priority);
+			if (getVmAllocationPolicy().getMaxSuitableMips(priority) < minMips) {
+				Log.printConcatLine(simulationTimeUtil.clock(), ": There is not resource to allocate any VM of priority ",
+						priority, " now, they will be tryed in the future.");
+				isBackfilling = true;
+				continue;
+			}
+
+			Iterator<PreemptableVm> vms = waitingQueue.iterator(priority, order, simulationTimeUtil.clock(),
+					insertionMark);
+			while (vms.hasNext()) {
+				double maxSuitableMips = getVmAllocationPolicy().getMaxSuitableMips(priority);
+				if (maxSuitableMips < minMips) {
+					isBackfilling = true;
+					break;
+				}
+
+				PreemptableVm currentVm = vms.next();
+				if (currentVm.getMips() > maxSuitableMips) {
+					isBackfilling = true;
+				} else if (!allocateHostForVm(false, currentVm, null, isBackfilling)) {
+					isBackfilling = true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the order the VMs of each priority in the waiting queue are tried,
+	 * given by the preemption policy, or <code>null</code> for the order of
+	 * submission.
+	 */
+	private WaitingQueue.Order getWaitingQueueOrder() {
 		// TODO Think better about how to configure it
 		String preemptionPolicyClass = properties
 				.getProperty("preemption_policy_class");
@@ -872,9 +1107,25 @@ public class PreemptiveDatacenter extends Datacenter {
 			Log.printConcatLine(simulationTimeUtil.clock(),
 					": Sorting the waiting queue based on priority + current availability.");
 
-			Collections.sort(waitingQueue,
-					new PriorityAndAvailabilityBasedVmComparator(
-							simulationTimeUtil));
+			if (waitingQueueOrder == null) {
+				waitingQueueOrder = new WaitingQueue.Order() {
+
+					@Override
+					public double getKey(PreemptableVm vm, double time) {
+						return vm.getCurrentAvailability(time);
+					}
+
+					@Override
+					public double getTieKey(PreemptableVm vm) {
+						return vm.getSubmitTime();
+					}
+
+					@Override
+					public boolean isTimeInvariant() {
+						return false;
+					}
+				};
+			}
 		} else if (preemptionPolicyClass != null
 				&& "org.cloudbus.cloudsim.preemption.policies.preemption.TTVBasedPreemptionPolicy"
 						.equals(preemptionPolicyClass)) {
@@ -882,23 +1133,40 @@ public class PreemptiveDatacenter extends Datacenter {
 			Log.printConcatLine(simulationTimeUtil.clock(),
 					": Sorting the waiting queue based on priority + TTV.");
 
-			Map<Integer, Double> sloTargets = VmAvailabilityBasedPreemptionPolicy
-					.getSLOAvailabilityTargets(properties);
-			
-			Collections.sort(waitingQueue, new PriorityAndTTVBasedPreemptableVmComparator(sloTargets, simulationTimeUtil));
-		}
-		for (PreemptableVm currentVm : waitingQueue) {
-				if (!allocateHostForVm(false, currentVm, null, isBackfilling)) {
-					isBackfilling = true;
-				}
+			if (waitingQueueOrder == null) {
+				final Map<Integer, Double> sloTargets = VmAvailabilityBasedPreemptionPolicy
+						.getSLOAvailabilityTargets(properties);
+
+				// the waiting VMs of a priority all lose TTV at the rate of its SLO target, so they
+				// are kept by their TTV plus sloTarget * time, which does not change while they wait
+				waitingQueueOrder = new WaitingQueue.Order() {
+
+					@Override
+					public double getKey(PreemptableVm vm, double time) {
+						return vm.getActualRuntime(vm.getStartExec())
+								+ vm.getSubmitTime() * sloTargets.get(vm.getPriority());
+					}
+
+					@Override
+					public double getTieKey(PreemptableVm vm) {
+						return 0;
+					}
+
+					@Override
+					public boolean isTimeInvariant() {
+						return true;
+					}
+				};
+			}
 		}
+		return waitingQueueOrder;
 	}
 
-	public SortedSet<PreemptableVm> getVmsRunning() {
+	public RunningVmSet getVmsRunning() {
 		return vmsRunning;
 	}
 
-	public SortedSet<PreemptableVm> getVmsForScheduling() {
+	public WaitingQueue getVmsForScheduling() {
 		return vmsForScheduling;
 	}
 	
@@ -933,6 +1201,7 @@ public class PreemptiveDatacenter extends Datacenter {
 	}
 
 	public List<DatacenterInfo> getAllDatacenterInfo() {
+		getDataStoreWriter().flush();
 		return datacenterDataStore.getAllDatacenterInfo();
 	}
 
@@ -974,6 +1243,50 @@ public class PreemptiveDatacenter extends Datacenter {
 		this.hostUsageDataStore = hostUsageDataStore;
 	}
 
+	public void setDatacenterUsageDataStore(DatacenterUsageDataStore datacenterDataStore) {
+		this.datacenterDataStore = datacenterDataStore;
+	}
+
+	/**
+	 * Gets the writer of the data stores, creating one of this datacenter if none was set.
+	 */
+	public DataStoreWriter getDataStoreWriter() {
+		if (dataStoreWriter == null) {
+			dataStoreWriter = new DataStoreWriter(getName() + "-store-writer",
+					DataStoreWriter.getQueueCapacity(properties));
+			ownsDataStoreWriter = true;
+		}
+		return dataStoreWriter;
+	}
+
+	/**
+	 * Sets a writer shared with other entities, e.g. the broker. It is flushed, but not closed,
+	 * when this datacenter shuts down.
+	 */
+	public void setDataStoreWriter(DataStoreWriter dataStoreWriter) {
+		if (ownsDataStoreWriter) {
+			this.dataStoreWriter.close();
+		}
+		this.dataStoreWriter = dataStoreWriter;
+		this.ownsDataStoreWriter = false;
+	}
+
+	@Override
+	public void shutdownEntity() {
+		super.shutdownEntity();
+		if (dataStoreWriter != null) {
+			if (ownsDataStoreWriter) {
+				dataStoreWriter.close();
+				dataStoreWriter.printMetrics();
+			} else {
+				dataStoreWriter.flush();
+			}
+		}
+		// the connections are opened again if the data is read afterwards
+		hostUsageDataStore.close();
+		datacenterDataStore.close();
+	}
+
 	public double getAllocateWaitingQueueIntervalSize() {
 		return allocateWaitingQueueIntervalSize;
 	}
@@ -983,7 +1296,7 @@ public class PreemptiveDatacenter extends Datacenter {
 		this.allocateWaitingQueueIntervalSize = allocateWaitingQueueIntervalSize;
 	}
 
-	public Map<Integer, Double> getAdmittedRequests() {
+	public PriorityResources getAdmittedRequests() {
 		return admittedRequests;
 	}
 
@@ -1,19 +1,15 @@
 package org.cloudbus.cloudsim.preemption;
 
-import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 
-import gnu.trove.map.hash.THashMap;
 import org.cloudbus.cloudsim.Host;
 import org.cloudbus.cloudsim.Log;
 import org.cloudbus.cloudsim.Pe;
 import org.cloudbus.cloudsim.Vm;
 import org.cloudbus.cloudsim.VmScheduler;
 import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.preemption.datastore.HostUsageBuffer;
 import org.cloudbus.cloudsim.preemption.policies.preemption.PreemptionPolicy;
-import org.cloudbus.cloudsim.preemption.util.DecimalUtil;
 import org.cloudbus.cloudsim.provisioners.BwProvisionerSimple;
 import org.cloudbus.cloudsim.provisioners.RamProvisionerSimple;
 
@@ -21,7 +17,7 @@ public class PreemptiveHost extends Host implements Comparable<Host> {
 	
 	public static final int DECIMAL_ACCURACY = 9;
 		
-	private Map<Double, UsageInfo> usageMap;
+	private UsageSeries usageSeries;
 	private PreemptionPolicy preemptionPolicy;
 
 	public PreemptiveHost(int id, List<? extends Pe> peList, VmScheduler vmScheduler, PreemptionPolicy preemptionPolicy) {
@@ -29,8 +25,8 @@ public class PreemptiveHost extends Host implements Comparable<Host> {
 				new BwProvisionerSimple(Integer.MAX_VALUE), Integer.MAX_VALUE,
 				peList, vmScheduler);
 		
-		setUsageMap(new THashMap<Double, UsageInfo>());
 		setPreemptionPolicy(preemptionPolicy);
+		setUsageSeries(new UsageSeries(preemptionPolicy.getNumberOfPriorities()));
 		preemptionPolicy.setTotalMips(((VmSchedulerMipsBased) getVmScheduler())
 				.getTotalMips());
 	}
@@ -113,7 +109,7 @@ public class PreemptiveHost extends Host implements Comparable<Host> {
 	}
 	
 	public double getTotalUsage() {
-		return DecimalUtil.format(((VmSchedulerMipsBased)getVmScheduler()).getMipsInUse());
+		return ((VmSchedulerMipsBased)getVmScheduler()).getMipsInUse();
 	}
 	
 	@Override
@@ -139,53 +135,41 @@ public class PreemptiveHost extends Host implements Comparable<Host> {
 	}
 	
 	public List<UsageEntry> getUsageEntries(double clock) {
-		List<UsageEntry> usageEntries = new LinkedList<UsageEntry>();
-
-		List<UsageInfo> usageInfos = getUsageInfos();
-		resetUsageMap();
-
-		for (UsageInfo usageInfo : usageInfos) {
-
-			if (usageInfo.getTime() < clock) {
-				usageEntries.addAll(usageInfo.getUsageEntries());
-
-			} else {
-				putUsageInfo(usageInfo);
-			}
-		}
-		return usageEntries;
+		HostUsageBuffer usageEntries = new HostUsageBuffer(usageSeries.size() * getNumberOfPriorities(), false);
+		drainUsage(clock, false, usageEntries);
+		return usageEntries.toList();
 	}
 
-	public List<UsageInfo> getUsageInfos() {
-
-		List<UsageInfo> usageInfos = new LinkedList<>();
-		usageInfos.addAll(getUsageMap().values());
-
-		return usageInfos;
+	/**
+	 * Moves the usage before a time into a buffer to be stored.
+	 * 
+	 * @param clock the time
+	 * @param endOfSimulation whether the simulation is over, so the usage not drained yet is final
+	 * @param buffer the buffer
+	 */
+	public void drainUsage(double clock, boolean endOfSimulation, HostUsageBuffer buffer) {
+		usageSeries.drain(getId(), clock, endOfSimulation, buffer);
 	}
 
 	public void putUsageInfo(UsageInfo usageInfo) {
-		getUsageMap().put(usageInfo.getTime(), usageInfo);
-	}
-
-	public void resetUsageMap() {
-		getUsageMap().clear();
+		usageSeries.add(usageInfo);
 	}
 
-	private void setUsageMap(Map<Double, UsageInfo> usageMap) {
-		this.usageMap = usageMap;
+	public UsageSeries getUsageSeries() {
+		return usageSeries;
 	}
 
-	protected Map<Double, UsageInfo> getUsageMap() {
-		return usageMap;
+	/**
+	 * Sets how the usage of the host is kept, dropping the usage not drained yet.
+	 * 
+	 * @param usageSeries the usage series
+	 */
+	public void setUsageSeries(UsageSeries usageSeries) {
+		this.usageSeries = usageSeries;
 	}
 
 	public void updateUsage(double time) {
-		getUsageMap().put( time,
-				new UsageInfo(getId(), time, preemptionPolicy
-						.getPriorityToInUseMips(), preemptionPolicy
-						.getPriorityToVms(), getTotalUsage(),
-						getAvailableMips()));
+		usageSeries.add(time, preemptionPolicy, getAvailableMips());
 	}
 
 	public PreemptionPolicy getPreemptionPolicy() {
@@ -201,6 +185,17 @@ public class PreemptiveHost extends Host implements Comparable<Host> {
 		return preemptionPolicy.getAvailableMipsByPriorityAndAvailability(priority);
 	}
 
+	/**
+	 * Gets the most MIPS a VM of a priority may need for this host to be suitable for it, as
+	 * checked by {@link #isSuitableForVm(Vm)}.
+	 * 
+	 * @param priority the priority
+	 * @return an upper bound of the MIPS of the suitable VMs
+	 */
+	public double getMaxSuitableMips(int priority) {
+		return Math.max(getVmScheduler().getAvailableMips(), getAvailableMipsByPriorityAndAvailability(priority));
+	}
+
 	public double getAvailableMipsByVm(PreemptableVm vm) {
 		return preemptionPolicy.getAvailableMipsByVm(vm);
 	}}
\ No newline at end of file
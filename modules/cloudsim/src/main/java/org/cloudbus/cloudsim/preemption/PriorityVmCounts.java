@@ -0,0 +1,87 @@
+package org.cloudbus.cloudsim.preemption;
+
+import java.util.Arrays;
+
+import org.cloudbus.cloudsim.preemption.util.ResourceUnits;
+
+/**
+ * The number of VMs of each priority in a collection and the sum of their MIPS, updated as the
+ * VMs are added and removed, so they are known in O(1) instead of by visiting the VMs. The
+ * priorities are the ones seen so far, and grow as VMs of bigger priorities are added.
+ *
+ * @since CloudSim Toolkit 4.0
+ */
+final class PriorityVmCounts {
+
+	private int[] sizes = new int[0];
+
+	/** The MIPS of the VMs of each priority, in {@link ResourceUnits}. */
+	private long[] mipsUnits = new long[0];
+
+	private int size;
+
+	/**
+	 * Gets the number of priorities seen so far, one more than the biggest priority of a VM added.
+	 */
+	int getNumberOfPriorities() {
+		return sizes.length;
+	}
+
+	int size() {
+		return size;
+	}
+
+	int size(int priority) {
+		if (priority < 0 || priority >= sizes.length) {
+			return 0;
+		}
+		return sizes[priority];
+	}
+
+	double getMips(int priority) {
+		if (priority < 0 || priority >= mipsUnits.length) {
+			return 0;
+		}
+		return ResourceUnits.toMips(mipsUnits[priority]);
+	}
+
+	/**
+	 * Checks the priority of a VM about to be added and makes room for it.
+	 *
+	 * @param vm the VM
+	 * @return the priority of the VM
+	 * @throws IllegalArgumentException if the priority is negative
+	 */
+	int ensurePriority(PreemptableVm vm) {
+		int priority = vm.getPriority();
+		if (priority < 0) {
+			throw new IllegalArgumentException("The priority of VM #" + vm.getId() + " can not be negative.");
+		}
+		if (priority >= sizes.length) {
+			sizes = Arrays.copyOf(sizes, priority + 1);
+			mipsUnits = Arrays.copyOf(mipsUnits, priority + 1);
+		}
+		return priority;
+	}
+
+	/**
+	 * Counts a VM added, after {@link #ensurePriority(PreemptableVm)}.
+	 */
+	void added(PreemptableVm vm) {
+		sizes[vm.getPriority()]++;
+		mipsUnits[vm.getPriority()] += ResourceUnits.toUnits(vm.getMips());
+		size++;
+	}
+
+	void removed(PreemptableVm vm) {
+		sizes[vm.getPriority()]--;
+		mipsUnits[vm.getPriority()] -= ResourceUnits.toUnits(vm.getMips());
+		size--;
+	}
+
+	void clear() {
+		Arrays.fill(sizes, 0);
+		Arrays.fill(mipsUnits, 0);
+		size = 0;
+	}
+}
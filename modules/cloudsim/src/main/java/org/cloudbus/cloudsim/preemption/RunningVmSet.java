@@ -0,0 +1,124 @@
+package org.cloudbus.cloudsim.preemption;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+
+/**
+ * The VMs running in a datacenter, a set sorted by the natural order of the VMs. The number of
+ * VMs of each priority and the MIPS they use are counted as the VMs are added and removed, so
+ * they are known in O(1) instead of by visiting the VMs.
+ *
+ * @since CloudSim Toolkit 4.0
+ */
+public class RunningVmSet extends AbstractSet<PreemptableVm> {
+
+	private final TreeSet<PreemptableVm> vms = new TreeSet<PreemptableVm>();
+
+	private final PriorityVmCounts counts = new PriorityVmCounts();
+
+	/**
+	 * Gets the number of priorities seen so far, one more than the biggest priority of a VM added.
+	 */
+	public int getNumberOfPriorities() {
+		return counts.getNumberOfPriorities();
+	}
+
+	/**
+	 * Gets the number of VMs running with a priority.
+	 */
+	public int size(int priority) {
+		return counts.size(priority);
+	}
+
+	/**
+	 * Gets the sum of the MIPS used by the VMs running with a priority.
+	 */
+	public double getMips(int priority) {
+		return counts.getMips(priority);
+	}
+
+	@Override
+	public boolean add(PreemptableVm vm) {
+		counts.ensurePriority(vm);
+		if (!vms.add(vm)) {
+			return false;
+		}
+		counts.added(vm);
+		return true;
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		if (!(o instanceof PreemptableVm) || !vms.remove(o)) {
+			return false;
+		}
+		counts.removed((PreemptableVm) o);
+		return true;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return o instanceof PreemptableVm && vms.contains(o);
+	}
+
+	@Override
+	public int size() {
+		return vms.size();
+	}
+
+	@Override
+	public void clear() {
+		vms.clear();
+		counts.clear();
+	}
+
+	@Override
+	public Iterator<PreemptableVm> iterator() {
+		final Iterator<PreemptableVm> iterator = vms.iterator();
+		return new Iterator<PreemptableVm>() {
+
+			private PreemptableVm lastVm;
+
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public PreemptableVm next() {
+				lastVm = iterator.next();
+				return lastVm;
+			}
+
+			@Override
+			public void remove() {
+				if (lastVm == null) {
+					throw new IllegalStateException();
+				}
+				iterator.remove();
+				counts.removed(lastVm);
+				lastVm = null;
+			}
+		};
+	}
+
+	/**
+	 * Gets the first VM in natural order.
+	 *
+	 * @throws NoSuchElementException if the set is empty
+	 */
+	public PreemptableVm first() {
+		return vms.first();
+	}
+
+	/**
+	 * Gets the last VM in natural order.
+	 *
+	 * @throws NoSuchElementException if the set is empty
+	 */
+	public PreemptableVm last() {
+		return vms.last();
+	}
+}
@@ -8,8 +8,10 @@
 
 package org.cloudbus.cloudsim.preemption;
 
-import java.util.ArrayList;
+import java.io.File;
+import java.io.IOException;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -25,12 +27,20 @@ import gnu.trove.map.hash.THashMap;
 
 import org.cloudbus.cloudsim.DatacenterCharacteristics;
 import org.cloudbus.cloudsim.Log;
+import org.cloudbus.cloudsim.core.ArrivalSource;
 import org.cloudbus.cloudsim.core.CloudSim;
 import org.cloudbus.cloudsim.core.CloudSimTags;
 import org.cloudbus.cloudsim.core.SimEntity;
 import org.cloudbus.cloudsim.core.SimEvent;
+import org.cloudbus.cloudsim.preemption.datastore.BinaryTraceSource;
+import org.cloudbus.cloudsim.preemption.datastore.BufferedTaskResultSink;
+import org.cloudbus.cloudsim.preemption.datastore.DatacenterSnapshot;
 import org.cloudbus.cloudsim.preemption.datastore.InputTraceDataStore;
+import org.cloudbus.cloudsim.preemption.datastore.PrefetchingTraceSource;
 import org.cloudbus.cloudsim.preemption.datastore.TaskDataStore;
+import org.cloudbus.cloudsim.preemption.datastore.TaskResultSink;
+import org.cloudbus.cloudsim.preemption.datastore.TraceSource;
+import org.cloudbus.cloudsim.preemption.policies.routing.CellRoutingPolicy;
 
 /**
  * DatacentreBroker represents a broker acting on behalf of a user.
@@ -47,7 +57,14 @@ public class TraceDatacenterBroker extends SimEntity {
     private static final int DEFAULT_TASK_INTERVAL_SIZE = 5;
 
     protected TreeSet<Task> createdTasks;
-    protected List<TaskState> finishedTasks;
+
+    /**
+     * The tasks submitted and not created yet, kept in primitive arrays.
+     */
+    private VmStore vmStore;
+
+    /** Receives the finished tasks and stores them. */
+    private TaskResultSink resultSink;
 
     private int submittedTasks;
     private int concludedTasks;
@@ -66,21 +83,46 @@ public class TraceDatacenterBroker extends SimEntity {
     protected Map<Integer, DatacenterCharacteristics> datacenterCharacteristicsList;
 
     private int intervalIndex;
+
+    /** The time the next interval is loaded, negative if there are no more intervals. */
+    private double nextLoadingTime = -1;
+
+    /** The arrivals handed to the simulation that may still have tasks to be submitted. */
+    private List<TaskArrivals> pendingArrivals = new LinkedList<TaskArrivals>();
+
     private int taskLoadingIntervalSize; // in minutes
     private int taskStoringIntervalSize; // in minutes
 
-    private InputTraceDataStore inputTraceDataStore;
+    private TraceSource inputTraceDataStore;
 
     private TaskDataStore taskDataStore;
+
+    /**
+     * Chooses the datacenter of each task when the hosts are partitioned in cells, one datacenter
+     * each, or <code>null</code> if all the tasks go to the first datacenter.
+     */
+    private CellRoutingPolicy cellRoutingPolicy;
+
+    /** The cells that were sent the end of the simulation and did not answer yet. */
+    private int cellsToEnd;
 //    private ScheduledExecutorService executor = Executors.newScheduledThreadPool(1);
 
     public TraceDatacenterBroker(String name, Properties properties) throws Exception {
+        this(name, properties, createTraceSource(properties));
+    }
+
+    /**
+     * Creates a broker that reads the tasks from a given trace source, e.g. one
+     * shared by several simulations.
+     */
+    public TraceDatacenterBroker(String name, Properties properties,
+                                 TraceSource inputTraceDataStore) throws Exception {
         super(name);
 
         setSubmittedTasks(0);
         setConcludedTasks(0);
         setCreatedTasks(new TreeSet<Task>());
-        setFinishedTasks(new ArrayList<TaskState>());
+        vmStore = new VmStore();
 
         int taskLoadingIntervalSize = properties
                 .getProperty("loading_interval_size") == null ? DEFAULT_TASK_INTERVAL_SIZE
@@ -97,8 +139,16 @@ public class TraceDatacenterBroker extends SimEntity {
         setDatacenterIdsList(new LinkedList<Integer>());
         setDatacenterCharacteristicsList(new THashMap<Integer, DatacenterCharacteristics>());
 
-        inputTraceDataStore = new InputTraceDataStore(properties);
+        this.inputTraceDataStore = inputTraceDataStore;
+        if (inputTraceDataStore instanceof PrefetchingTraceSource) {
+            // reading the first interval while the simulation is being set up
+            ((PrefetchingTraceSource) inputTraceDataStore).prefetch(getIntervalIndex(),
+                    getTaskLoadingIntervalSize());
+        }
         taskDataStore = new TaskDataStore(properties);
+
+        resultSink = new BufferedTaskResultSink(taskDataStore,
+                BufferedTaskResultSink.getBatchSize(properties));
         
         this.properties = properties;
         
@@ -131,6 +181,10 @@ public class TraceDatacenterBroker extends SimEntity {
                 break;
             // if the simulation finishes
             case CloudSimTags.END_OF_SIMULATION:
+                // the simulation ends when every cell sent its last finished tasks
+                if (--cellsToEnd > 0) {
+                    break;
+                }
                 storeFinishedTasks(true);
 //                executor.shutdown();
                 break;
@@ -153,16 +207,17 @@ public class TraceDatacenterBroker extends SimEntity {
     }
 
     protected void storeFinishedTasks(boolean endOfSimulation) {
-        List<TaskState> toStore = new ArrayList<TaskState>(getFinishedTasks());
-        if (toStore != null && !toStore.isEmpty()
-                && taskDataStore.addTaskList(toStore)) {
-            Log.printConcatLine(CloudSim.clock(), ": ", toStore.size(),
-                    " VMs stored now.");
-            getFinishedTasks().removeAll(toStore);
+        int toStore = resultSink.getBufferedTaskCount();
+        if (toStore > 0) {
+            Log.printConcatLine(CloudSim.clock(), ": ", toStore,
+                    " VMs being stored now.");
+            resultSink.flush();
         }
         
         // abruptally terminating the simulation
         if (endOfSimulation) {
+        	// the output is complete when the simulation ends
+        	resultSink.awaitFlushes();
         	CloudSim.abruptallyTerminate();
         	return;
         }
@@ -184,11 +239,10 @@ public class TraceDatacenterBroker extends SimEntity {
         
         double now = CloudSim.clock();
 
-		TaskState taskState = new TaskState(vm.getId(), vm.getMips(),
-				vm.getSubmitTime(), now, vm.getRuntime(), vm.getPriority(),
-				vm.getNumberOfPreemptions(), vm.getNumberOfBackfillingChoice(),
-				vm.getNumberOfMigrations(), vm.getFirstTimeAllocated());
-        finishedTasks.add(taskState);
+        resultSink.addTask(vm.getId(), vm.getMips(), vm.getSubmitTime(), now,
+                vm.getRuntime(), vm.getPriority(), vm.getNumberOfPreemptions(),
+                vm.getNumberOfBackfillingChoice(), vm.getNumberOfMigrations(),
+                vm.getFirstTimeAllocated());
         setConcludedTasks(getConcludedTasks() + 1);
     }
 
@@ -210,7 +264,23 @@ public class TraceDatacenterBroker extends SimEntity {
 					.getProperty("init_from_checkpoint") != null && properties
 					.getProperty("init_from_checkpoint").equals("yes")) ? true : false;        	
 
-        	if (initFromCheckpoint) {
+			if (cellRoutingPolicy != null) {
+				if (cellRoutingPolicy.getNumberOfCells() != getDatacenterIdsList().size()) {
+					throw new IllegalArgumentException("The tasks are routed to "
+							+ cellRoutingPolicy.getNumberOfCells() + " cells, but there are "
+							+ getDatacenterIdsList().size() + " datacenters.");
+				}
+				if (initFromCheckpoint) {
+					throw new IllegalArgumentException(
+							"A simulation with the tasks routed to cells can not be initialized from a checkpoint.");
+				}
+			}
+
+        	File snapshotFile = DatacenterSnapshot.getSnapshotFile(properties);
+        	if (initFromCheckpoint && snapshotFile != null) {
+        		initializeFromSnapshot(snapshotFile);
+
+        	} else if (initFromCheckpoint) {
                 Log.printLine(CloudSim.clock() + ": Initializing execution from checkpoint.");
                 System.out.println(CloudSim.clock() + ": Initializing execution from checkpoint.");
 
@@ -264,18 +334,45 @@ public class TraceDatacenterBroker extends SimEntity {
         		send(getId(), getTaskStoringIntervalSize(), STORE_FINISHED_TASKS_EVENT);
         		
         		// scheduling datacenter events
-        		sendNow(getDatacenterId(), PreemptiveDatacenter.SCHEDULE_DATACENTER_EVENTS_EVENT);
+        		for (int datacenterId : getCellDatacenterIds()) {
+        			sendNow(datacenterId, PreemptiveDatacenter.SCHEDULE_DATACENTER_EVENTS_EVENT);
+        		}
         	}        	
 
         	// creating end of simulation event
         	if (properties.getProperty("end_of_simulation_time") != null) {
         		long endOfSimulationTime = Long.parseLong(properties.getProperty("end_of_simulation_time"));
         		
-        		send(getDatacenterId(), endOfSimulationTime, CloudSimTags.END_OF_SIMULATION);
+        		for (int datacenterId : getCellDatacenterIds()) {
+        			send(datacenterId, endOfSimulationTime, CloudSimTags.END_OF_SIMULATION);
+        			cellsToEnd++;
+        		}
         	}
         }
     }
 
+    /**
+     * Creates the trace source given by the input_trace_format property: the trace
+     * database (sqlite, the default) or a binary trace file (binary). If the
+     * input_trace_prefetch_depth property is positive, the source is read ahead in
+     * background by that many intervals.
+     */
+    public static TraceSource createTraceSource(Properties properties) throws Exception {
+        String format = properties.getProperty("input_trace_format");
+        TraceSource source;
+        if (format == null || format.equals("sqlite")) {
+            source = new InputTraceDataStore(properties);
+        } else if (format.equals("binary")) {
+            source = new BinaryTraceSource(properties);
+        } else {
+            throw new IllegalArgumentException("Unknown input_trace_format: " + format);
+        }
+
+        int prefetchDepth = properties.getProperty(PrefetchingTraceSource.PREFETCH_DEPTH_PROP) == null ? 0
+                : Integer.parseInt(properties.getProperty(PrefetchingTraceSource.PREFETCH_DEPTH_PROP));
+        return prefetchDepth > 0 ? new PrefetchingTraceSource(source, prefetchDepth) : source;
+    }
+
     protected void loadNextGoogleTasks() {
         Log.printLine("Loading next google tasks. Interval index " + getIntervalIndex());
 
@@ -289,9 +386,92 @@ public class TraceDatacenterBroker extends SimEntity {
             setIntervalIndex(++intervalIndex);
 
             send(getId(), getTaskLoadingIntervalSize(), LOAD_NEXT_TASKS_EVENT);
+            nextLoadingTime = CloudSim.clock() + getTaskLoadingIntervalSize();
+        } else {
+            nextLoadingTime = -1;
+        }
+    }
+
+    /**
+     * Resumes the simulation from a binary checkpoint: the tasks loaded and not submitted yet
+     * arrive at their submit times, the finished tasks not stored yet are stored with the next
+     * ones and the trace is read on from where it was. The datacenter restores its part of the
+     * snapshot when it is initialized, at the time of the checkpoint.
+     */
+    private void initializeFromSnapshot(File snapshotFile) {
+        DatacenterSnapshot snapshot;
+        try {
+            snapshot = DatacenterSnapshot.read(snapshotFile);
+        } catch (IOException e) {
+            throw new SimulationException("Couldn't read the snapshot " + snapshotFile + ": " + e.getMessage());
+        }
+        if (!snapshot.hasBrokerState()) {
+            throw new IllegalArgumentException(snapshotFile + " does not have the state of the broker.");
+        }
+
+        double startTime = snapshot.getTime();
+        Log.printLine(CloudSim.clock() + ": Initializing execution from snapshot " + snapshotFile
+                + " made at time " + startTime);
+
+        setIntervalIndex(snapshot.getIntervalIndex());
+        inputTraceDataStore.setNextTaskId(snapshot.getLastTaskId());
+        setSubmittedTasks(snapshot.getSubmittedTasks());
+        setConcludedTasks(snapshot.getConcludedTasks());
+
+        for (TaskState task : snapshot.getPendingResults()) {
+            resultSink.addTask(task.getTaskId(), task.getCpuReq(), task.getSubmitTime(),
+                    task.getFinishTime(), task.getRuntime(), task.getPriority(),
+                    task.getNumberOfPreemptions(), task.getNumberOfBackfillingChoices(),
+                    task.getNumberOfMigrations(), task.getFirstTimeAllocated());
+        }
+
+        double delay = startTime - CloudSim.clock();
+        send(getId(), delay + getTaskStoringIntervalSize(), STORE_FINISHED_TASKS_EVENT);
+
+        // the datacenter state comes with the event, so the snapshot is read once, and it
+        // comes before the tasks arriving at the time of the checkpoint
+        send(getDatacenterId(), delay, PreemptiveDatacenter.INITIALIZE_FROM_CHECKPOINT_EVENT, snapshot);
+
+        // the tasks were already counted as submitted
+        List<Task> pendingTasks = snapshot.getPendingTasks();
+        int[] handles = new int[pendingTasks.size()];
+        for (int i = 0; i < handles.length; i++) {
+            handles[i] = vmStore.addTask(pendingTasks.get(i));
+        }
+        TaskArrivals arrivals = new TaskArrivals(handles, startTime);
+        pendingArrivals.add(arrivals);
+        sendArrivals(getDatacenterId(), CloudSimTags.VM_CREATE, arrivals);
+
+        if (snapshot.getNextLoadingTime() >= 0) {
+            send(getId(), snapshot.getNextLoadingTime() - CloudSim.clock(), LOAD_NEXT_TASKS_EVENT);
+            nextLoadingTime = snapshot.getNextLoadingTime();
         }
     }
 
+    /**
+     * Adds the state of this broker to a snapshot: its position in the trace, the tasks loaded
+     * and not submitted yet and the finished tasks not stored yet.
+     *
+     * @param snapshot the snapshot
+     */
+    public void snapshot(DatacenterSnapshot snapshot) {
+        snapshot.setBrokerState(getIntervalIndex(), inputTraceDataStore.getNextTaskId(),
+                getSubmittedTasks(), getConcludedTasks(), nextLoadingTime);
+
+        Iterator<TaskArrivals> iterator = pendingArrivals.iterator();
+        while (iterator.hasNext()) {
+            TaskArrivals arrivals = iterator.next();
+            if (arrivals.remaining() == 0) {
+                iterator.remove();
+                continue;
+            }
+            for (int i = arrivals.next; i < arrivals.handles.length; i++) {
+                snapshot.addPendingTask(vmStore.getTask(arrivals.handles[i]));
+            }
+        }
+        snapshot.addPendingResults(resultSink.getBufferedTasks());
+    }
+
     /**
      * Process a request for the characteristics of a PowerDatacenter.
      *
@@ -329,7 +509,9 @@ public class TraceDatacenterBroker extends SimEntity {
     }
 
     /**
-     * Submit cloudlets to the created VMs.
+     * Submit cloudlets to the created VMs. The created tasks are handed to the
+     * simulation as an {@link ArrivalSource}, so the VM of each task and its
+     * creation event are only made when the submit time of the task is reached.
      *
      * @pre $none
      * @post $none
@@ -338,27 +520,102 @@ public class TraceDatacenterBroker extends SimEntity {
     protected void submitTasks() {
         Log.printConcatLine("Scheduling the creation of VMs.");
 
-        while (!getCreatedTasks().isEmpty()) {
-            scheduleRequestsForVm(getCreatedTasks().first());
+        int[] handles = new int[getCreatedTasks().size()];
+        // the cell of each task, if they are routed to cells
+        int[] cells = cellRoutingPolicy == null ? null : new int[handles.length];
+        int i = 0;
+        for (Task task : getCreatedTasks()) {
+            if (cells != null) {
+                cells[i] = routeToCell(task);
+            }
+            handles[i++] = vmStore.addTask(task);
+        }
+        getCreatedTasks().clear();
+        setSubmittedTasks(getSubmittedTasks() + handles.length);
+
+        // the arrivals whose tasks were all submitted are not needed for a snapshot
+        Iterator<TaskArrivals> iterator = pendingArrivals.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().remaining() == 0) {
+                iterator.remove();
+            }
+        }
+        if (cells == null) {
+            TaskArrivals arrivals = new TaskArrivals(handles, CloudSim.clock());
+            pendingArrivals.add(arrivals);
+            sendArrivals(getDatacenterId(), CloudSimTags.VM_CREATE, arrivals);
+            return;
+        }
+
+        // the tasks of each cell arrive in the order they were submitted
+        int[] cellSizes = new int[getDatacenterIdsList().size()];
+        for (int cell : cells) {
+            cellSizes[cell]++;
         }
+        int[][] cellHandles = new int[cellSizes.length][];
+        for (int cell = 0; cell < cellSizes.length; cell++) {
+            cellHandles[cell] = new int[cellSizes[cell]];
+            cellSizes[cell] = 0;
+        }
+        for (i = 0; i < handles.length; i++) {
+            cellHandles[cells[i]][cellSizes[cells[i]]++] = handles[i];
+        }
+        for (int cell = 0; cell < cellHandles.length; cell++) {
+            TaskArrivals arrivals = new TaskArrivals(cellHandles[cell], CloudSim.clock());
+            pendingArrivals.add(arrivals);
+            sendArrivals(getDatacenterIdsList().get(cell), CloudSimTags.VM_CREATE, arrivals);
+        }
+    }
+
+    private int routeToCell(Task task) {
+        int cell = cellRoutingPolicy.route(task);
+        if (cell < 0 || cell >= getDatacenterIdsList().size()) {
+            throw new SimulationException("Task #" + task.getId() + " was routed to the cell " + cell + " of "
+                    + getDatacenterIdsList().size() + ".");
+        }
+        return cell;
     }
 
-    private void scheduleRequestsForVm(Task task) {
+    /**
+     * The arrivals of the tasks of an interval, in submit time order. The VM of
+     * a task is created when the task is taken, and the task leaves the store.
+     */
+    private class TaskArrivals implements ArrivalSource {
+
+        private final int[] handles;
+
+        /** The time the tasks were submitted to the simulation. */
+        private final double submissionTime;
+
+        private int next;
 
-        PreemptableVm vm = new PreemptableVm(task.getId(), getId(), task.getCpuReq(),
-                task.getMemReq(), task.getSubmitTime(), task.getPriority(), task.getRuntime());
+        TaskArrivals(int[] handles, double submissionTime) {
+            this.handles = handles;
+            this.submissionTime = submissionTime;
+        }
 
-        int datacenterId = getDatacenterId();
+        @Override
+        public int remaining() {
+            return handles.length - next;
+        }
 
-        Log.printLine(CloudSim.clock() + ": " + getName()
-                + ": Trying to Create VM #" + vm.getId() + " in "
-                + datacenterId);
+        @Override
+        public double nextTime() {
+            // as a delayed send, tasks submitted before the interval was loaded arrive at once
+            return submissionTime + Math.max(0, vmStore.getSubmitTime(handles[next]) - submissionTime);
+        }
 
-        getCreatedTasks().remove(task);
-        setSubmittedTasks(getSubmittedTasks() + 1);
+        @Override
+        public Object next() {
+            int handle = handles[next++];
+            PreemptableVm vm = vmStore.createVm(handle, getId());
+            vmStore.release(handle);
 
-        double delay = task.getSubmitTime() - CloudSim.clock();
-        send(datacenterId, delay, CloudSimTags.VM_CREATE, vm);
+            Log.printLine(vm.getSubmitTime() + ": " + getName()
+                    + ": Trying to Create VM #" + vm.getId() + " in "
+                    + getDatacenterId());
+            return vm;
+        }
     }
 
     /*
@@ -372,9 +629,27 @@ public class TraceDatacenterBroker extends SimEntity {
         return getDatacenterIdsList().get(0);
     }
 
+    /**
+     * Gets the datacenters the tasks are submitted to: every datacenter if the tasks are routed
+     * to cells, or else the first one.
+     */
+    private List<Integer> getCellDatacenterIds() {
+        return cellRoutingPolicy == null ? getDatacenterIdsList().subList(0, 1) : getDatacenterIdsList();
+    }
+
     @Override
     public void shutdownEntity() {
         Log.printConcatLine(getName(), " is shutting down...");
+        resultSink.close();
+        if (resultSink instanceof BufferedTaskResultSink) {
+            ((BufferedTaskResultSink) resultSink).printMetrics();
+        }
+        // the connection is opened again if the tasks are read afterwards
+        taskDataStore.close();
+        if (inputTraceDataStore instanceof PrefetchingTraceSource) {
+            ((PrefetchingTraceSource) inputTraceDataStore).close();
+            ((PrefetchingTraceSource) inputTraceDataStore).printMetrics();
+        }
     }
 
     @Override
@@ -429,6 +704,7 @@ public class TraceDatacenterBroker extends SimEntity {
     }
 
     public List<TaskState> getStoredTasks() {
+        resultSink.awaitFlushes();
         return taskDataStore.getAllTasks();
     }
 
@@ -460,12 +736,23 @@ public class TraceDatacenterBroker extends SimEntity {
         this.taskStoringIntervalSize = storingIntervalSize;
     }
 
+    /**
+     * Gets the finished tasks not handed to be stored yet. The list is a copy.
+     */
     public List<TaskState> getFinishedTasks() {
-        return finishedTasks;
+        return resultSink.getBufferedTasks();
+    }
+
+    public TaskResultSink getResultSink() {
+        return resultSink;
     }
 
-    public void setFinishedTasks(List<TaskState> finishedTasks) {
-        this.finishedTasks = finishedTasks;
+    /**
+     * Sets the sink receiving the finished tasks, closing the current one.
+     */
+    public void setResultSink(TaskResultSink resultSink) {
+        this.resultSink.close();
+        this.resultSink = resultSink;
     }
 
     public void setSubmittedTasks(int submittedTasks) {
@@ -476,6 +763,18 @@ public class TraceDatacenterBroker extends SimEntity {
         return this.submittedTasks;
     }
 
+    public CellRoutingPolicy getCellRoutingPolicy() {
+        return cellRoutingPolicy;
+    }
+
+    /**
+     * Sets the policy routing the tasks to the cells, each one a datacenter, in the order the
+     * datacenters are registered. The policy must have as many cells as there are datacenters.
+     */
+    public void setCellRoutingPolicy(CellRoutingPolicy cellRoutingPolicy) {
+        this.cellRoutingPolicy = cellRoutingPolicy;
+    }
+
     public void setConcludedTasks(int concludedTasks) {
         this.concludedTasks = concludedTasks;
     }
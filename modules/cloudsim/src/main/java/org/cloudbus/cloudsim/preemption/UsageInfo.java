@@ -1,34 +1,37 @@
 package org.cloudbus.cloudsim.preemption;
 
-import gnu.trove.map.hash.THashMap;
-
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedSet;
 
+import org.cloudbus.cloudsim.preemption.util.PriorityResources;
+
 public class UsageInfo {
 
 	private int hostId;
 	private double time;
 	private double totalUsage;
 	private double availableMips;
-	private Map<Integer, Double> priorityToUsage;
-	private Map<Integer, Integer> priorityToNumberOfVms;
+	private double[] usageByPriority;
+	private int[] numberOfVmsByPriority;
 	
-	public UsageInfo(int hostId, double time, Map<Integer, Double> priorityToInUseMips,
+	public UsageInfo(int hostId, double time, PriorityResources inUseMips,
 			Map<Integer, SortedSet<PreemptableVm>> priorityToVms, double totalUsage, double availableMips) {
 		
 		this.hostId = hostId;
 		this.time = time;
 		this.totalUsage = totalUsage;
 		this.availableMips = availableMips;
-		this.priorityToUsage =  new THashMap<Integer, Double>(priorityToInUseMips);
-		this.priorityToNumberOfVms = new THashMap<Integer, Integer>();
+		this.usageByPriority = new double[inUseMips.getNumberOfPriorities()];
+		this.numberOfVmsByPriority = new int[priorityToVms.size()];
 		
-		for (Integer priority : priorityToVms.keySet()) {
-			priorityToNumberOfVms.put(priority, priorityToVms.get(priority).size());
+		for (int priority = 0; priority < usageByPriority.length; priority++) {
+			usageByPriority[priority] = inUseMips.get(priority);
+		}
+		for (int priority = 0; priority < numberOfVmsByPriority.length; priority++) {
+			numberOfVmsByPriority[priority] = priorityToVms.get(priority).size();
 		}
 	}
 
@@ -39,15 +42,8 @@ public class UsageInfo {
 		this.time = time;
 		this.totalUsage = p0Usage + p1Usage + p2Usage;
 		this.availableMips = availableMips;
-		this.priorityToUsage =  new THashMap<Integer, Double>();
-		priorityToUsage.put(0, p0Usage);
-		priorityToUsage.put(1, p1Usage);
-		priorityToUsage.put(2, p2Usage);
-		
-		this.priorityToNumberOfVms = new THashMap<Integer, Integer>();
-		priorityToNumberOfVms.put(0, p0Vms);
-		priorityToNumberOfVms.put(1, p1Vms);
-		priorityToNumberOfVms.put(2, p2Vms);
+		this.usageByPriority = new double[] { p0Usage, p1Usage, p2Usage };
+		this.numberOfVmsByPriority = new int[] { p0Vms, p1Vms, p2Vms };
 	}
 
 	public int getHostId() {
@@ -67,11 +63,11 @@ public class UsageInfo {
 	}
 
 	public double getUsageByPriority(int priority) {
-		return priorityToUsage.get(priority);
+		return usageByPriority[priority];
 	}
 
 	public int getNumberOfVmsByPriority(int priority) {
-		return priorityToNumberOfVms.get(priority);
+		return numberOfVmsByPriority[priority];
 	}
 
 	@Override
@@ -85,14 +81,14 @@ public class UsageInfo {
 		if (Double.compare(that.time, time) != 0) return false;
 		if (Double.compare(that.totalUsage, totalUsage) != 0) return false;
 		if (Double.compare(that.availableMips, availableMips) != 0) return false;
-		if (!priorityToUsage.equals(that.priorityToUsage)) return false;
-		return priorityToNumberOfVms.equals(that.priorityToNumberOfVms);
+		if (!Arrays.equals(usageByPriority, that.usageByPriority)) return false;
+		return Arrays.equals(numberOfVmsByPriority, that.numberOfVmsByPriority);
 
 	}
 	
 	public List<UsageEntry> getUsageEntries() {
 		List<UsageEntry> usageEntries = new LinkedList<UsageEntry>();
-		for (int priority = 0; priority < priorityToNumberOfVms.keySet().size(); priority++) {
+		for (int priority = 0; priority < numberOfVmsByPriority.length; priority++) {
 			usageEntries.add(new UsageEntry(getHostId(), getTime(),
 					getUsageByPriority(priority),
 					getNumberOfVmsByPriority(priority), priority,
@@ -0,0 +1,342 @@
+package org.cloudbus.cloudsim.preemption;
+
+import java.util.Properties;
+
+import org.cloudbus.cloudsim.preemption.datastore.HostUsageBuffer;
+import org.cloudbus.cloudsim.preemption.policies.preemption.PreemptionPolicy;
+
+/**
+ * The usage of a host over time, kept in primitive arrays used as a ring buffer until it is
+ * drained into a {@link HostUsageBuffer} to be stored. The {@value #RESOLUTION_PROP} property
+ * sets how much of it is kept:
+ * <ul>
+ * <li><code>change</code>, the default: the usage after every change, the last one at each time;
+ * <li><code>last</code>: the last usage in each bucket of {@value #RESOLUTION_INTERVAL_PROP}
+ * time units, with the time of its change;
+ * <li><code>stats</code>: the time-weighted average, the least and the most usage of each
+ * bucket, with the time the bucket starts, besides its last number of VMs and available MIPS.
+ * </ul>
+ * Only the buckets in which the usage changed are kept; the usage of the others is the one at
+ * the end of the bucket before. A bucket is drained once the simulation is past its end.
+ *
+ * @since CloudSim Toolkit 4.0
+ */
+public class UsageSeries {
+
+	public static final String RESOLUTION_PROP = "utilization_resolution";
+	public static final String RESOLUTION_INTERVAL_PROP = "utilization_resolution_interval";
+
+	public enum Resolution {
+		CHANGE, LAST, STATS
+	}
+
+	private static final int INITIAL_CAPACITY = 8;
+
+	private final int numberOfPriorities;
+	private final Resolution resolution;
+	private final double interval;
+
+	private double[] times;
+	private double[] availableMips;
+	private double[] usages;
+	private int[] numbersOfVms;
+	private double[] minUsages;
+	private double[] maxUsages;
+
+	/** The position of the oldest entry in the arrays. */
+	private int head;
+	private int size;
+
+	/** Whether the newest entry is a bucket whose statistics are being gathered. */
+	private boolean open;
+	private long openBucket;
+	private double lastChangeTime;
+	/** When the usage of the open bucket is known from, i.e. its start or the first change. */
+	private double coveredFrom;
+	private boolean started;
+	private double[] currentUsages;
+	private double[] integrals;
+
+	/**
+	 * Creates a series keeping the usage after every change.
+	 *
+	 * @param numberOfPriorities the number of priorities of the host
+	 */
+	public UsageSeries(int numberOfPriorities) {
+		this(numberOfPriorities, Resolution.CHANGE, 0);
+	}
+
+	/**
+	 * Creates a series.
+	 *
+	 * @param numberOfPriorities the number of priorities of the host
+	 * @param resolution how much of the usage is kept
+	 * @param interval the size of the buckets, not used if every change is kept
+	 */
+	public UsageSeries(int numberOfPriorities, Resolution resolution, double interval) {
+		if (resolution != Resolution.CHANGE && interval <= 0) {
+			throw new IllegalArgumentException(RESOLUTION_INTERVAL_PROP + " must be positive.");
+		}
+		this.numberOfPriorities = numberOfPriorities;
+		this.resolution = resolution;
+		this.interval = interval;
+
+		times = new double[INITIAL_CAPACITY];
+		availableMips = new double[INITIAL_CAPACITY];
+		usages = new double[INITIAL_CAPACITY * numberOfPriorities];
+		numbersOfVms = new int[INITIAL_CAPACITY * numberOfPriorities];
+		if (resolution == Resolution.STATS) {
+			minUsages = new double[INITIAL_CAPACITY * numberOfPriorities];
+			maxUsages = new double[INITIAL_CAPACITY * numberOfPriorities];
+			currentUsages = new double[numberOfPriorities];
+			integrals = new double[numberOfPriorities];
+		}
+	}
+
+	/**
+	 * Gets the resolution set in the properties, or {@link Resolution#CHANGE} if there is none.
+	 *
+	 * @param properties the simulation properties
+	 * @return the resolution
+	 */
+	public static Resolution getResolution(Properties properties) {
+		String resolution = properties.getProperty(RESOLUTION_PROP);
+		if (resolution == null) {
+			return Resolution.CHANGE;
+		}
+		try {
+			return Resolution.valueOf(resolution.trim().toUpperCase());
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException(RESOLUTION_PROP + " must be change, last or stats.");
+		}
+	}
+
+	/**
+	 * Gets the bucket size set in the properties, or 0 if there is none.
+	 *
+	 * @param properties the simulation properties
+	 * @return the bucket size
+	 */
+	public static double getResolutionInterval(Properties properties) {
+		return properties.getProperty(RESOLUTION_INTERVAL_PROP) == null ? 0
+				: Double.parseDouble(properties.getProperty(RESOLUTION_INTERVAL_PROP));
+	}
+
+	/**
+	 * Adds the usage of a host at a time, which must not be before the one added last.
+	 *
+	 * @param time the time
+	 * @param policy the preemption policy of the host
+	 * @param availableMips the MIPS available in the host
+	 */
+	public void add(double time, PreemptionPolicy policy, double availableMips) {
+		int entry = prepare(time, availableMips);
+		for (int priority = 0; priority < numberOfPriorities; priority++) {
+			put(entry, priority, policy.getInUseMips(priority), policy.getNumberOfVms(priority));
+		}
+	}
+
+	/**
+	 * Adds the usage of a host at a time, which must not be before the one added last.
+	 *
+	 * @param usageInfo the usage
+	 */
+	public void add(UsageInfo usageInfo) {
+		int entry = prepare(usageInfo.getTime(), usageInfo.getAvailableMips());
+		for (int priority = 0; priority < numberOfPriorities; priority++) {
+			put(entry, priority, usageInfo.getUsageByPriority(priority),
+					usageInfo.getNumberOfVmsByPriority(priority));
+		}
+	}
+
+	/**
+	 * Gets the position of the entry a change at a time goes to, adding it if needed.
+	 */
+	private int prepare(double time, double availableMips) {
+		int entry;
+		switch (resolution) {
+		case LAST:
+			entry = size > 0 && bucketOf(times[tail()]) == bucketOf(time) ? tail() : push();
+			times[entry] = time;
+			break;
+
+		case STATS:
+			long bucket = bucketOf(time);
+			if (open && bucket == openBucket) {
+				entry = tail();
+				integrate(time);
+			} else {
+				if (open) {
+					close(bucketStart(openBucket + 1));
+				}
+				entry = open(bucket, time);
+			}
+			lastChangeTime = time;
+			break;
+
+		default:
+			entry = size > 0 && times[tail()] == time ? tail() : push();
+			times[entry] = time;
+		}
+		this.availableMips[entry] = availableMips;
+		return entry;
+	}
+
+	private void put(int entry, int priority, double usage, int numberOfVms) {
+		int index = entry * numberOfPriorities + priority;
+		usages[index] = usage;
+		numbersOfVms[index] = numberOfVms;
+		if (resolution == Resolution.STATS) {
+			currentUsages[priority] = usage;
+			minUsages[index] = Math.min(minUsages[index], usage);
+			maxUsages[index] = Math.max(maxUsages[index], usage);
+		}
+	}
+
+	private int open(long bucket, double time) {
+		int entry = push();
+		double start = bucketStart(bucket);
+		times[entry] = start;
+		coveredFrom = started ? start : time;
+		for (int priority = 0; priority < numberOfPriorities; priority++) {
+			int index = entry * numberOfPriorities + priority;
+			// the usage before the first change of the bucket is the one the bucket before ended with
+			boolean carried = started && time > start;
+			integrals[priority] = carried ? currentUsages[priority] * (time - start) : 0;
+			minUsages[index] = carried ? currentUsages[priority] : Double.POSITIVE_INFINITY;
+			maxUsages[index] = carried ? currentUsages[priority] : Double.NEGATIVE_INFINITY;
+		}
+		open = true;
+		openBucket = bucket;
+		started = true;
+		return entry;
+	}
+
+	private void integrate(double time) {
+		for (int priority = 0; priority < numberOfPriorities; priority++) {
+			integrals[priority] += currentUsages[priority] * (time - lastChangeTime);
+		}
+		lastChangeTime = time;
+	}
+
+	/**
+	 * Works out the average usage of the open bucket, up to a time.
+	 */
+	private void close(double end) {
+		integrate(end);
+		int entry = tail();
+		double span = end - coveredFrom;
+		for (int priority = 0; priority < numberOfPriorities; priority++) {
+			usages[entry * numberOfPriorities + priority] = span > 0 ? integrals[priority] / span
+					: currentUsages[priority];
+		}
+		open = false;
+	}
+
+	/**
+	 * Moves the usage before a time into a buffer. At the end of the simulation, the usage of the
+	 * buckets not over yet is moved as well, their statistics being worked out up to that time.
+	 *
+	 * @param hostId the id of the host
+	 * @param clock the time
+	 * @param end whether the simulation is over
+	 * @param buffer the buffer
+	 */
+	public void drain(int hostId, double clock, boolean end, HostUsageBuffer buffer) {
+		if (open && (end || bucketStart(openBucket + 1) <= clock)) {
+			close(Math.min(bucketStart(openBucket + 1), Math.max(clock, lastChangeTime)));
+		}
+
+		while (size > (open ? 1 : 0) && isOver(times[head], clock, end)) {
+			for (int priority = 0; priority < numberOfPriorities; priority++) {
+				int index = head * numberOfPriorities + priority;
+				if (resolution == Resolution.STATS) {
+					buffer.add(hostId, times[head], usages[index], numbersOfVms[index], priority,
+							availableMips[head], minUsages[index], maxUsages[index]);
+				} else {
+					buffer.add(hostId, times[head], usages[index], numbersOfVms[index], priority,
+							availableMips[head]);
+				}
+			}
+			head = (head + 1) % times.length;
+			size--;
+		}
+	}
+
+	private boolean isOver(double time, double clock, boolean end) {
+		switch (resolution) {
+		case CHANGE:
+			// there may be other changes at the same time
+			return time < clock;
+		case LAST:
+			return end || bucketStart(bucketOf(time) + 1) <= clock;
+		default:
+			// the closed buckets
+			return true;
+		}
+	}
+
+	public Resolution getResolution() {
+		return resolution;
+	}
+
+	/**
+	 * Gets the number of entries not drained yet, each having the usage of every priority.
+	 *
+	 * @return the number of entries
+	 */
+	public int size() {
+		return size;
+	}
+
+	private long bucketOf(double time) {
+		return (long) Math.floor(time / interval);
+	}
+
+	private double bucketStart(long bucket) {
+		return bucket * interval;
+	}
+
+	private int tail() {
+		return (head + size - 1) % times.length;
+	}
+
+	private int push() {
+		if (size == times.length) {
+			grow();
+		}
+		size++;
+		return tail();
+	}
+
+	private void grow() {
+		int capacity = 2 * times.length;
+		times = unwrap(times, capacity, 1);
+		availableMips = unwrap(availableMips, capacity, 1);
+		usages = unwrap(usages, capacity, numberOfPriorities);
+		numbersOfVms = unwrap(numbersOfVms, capacity, numberOfPriorities);
+		if (resolution == Resolution.STATS) {
+			minUsages = unwrap(minUsages, capacity, numberOfPriorities);
+			maxUsages = unwrap(maxUsages, capacity, numberOfPriorities);
+		}
+		head = 0;
+	}
+
+	/** Copies the entries of a full ring into a bigger array, the oldest first. */
+	private double[] unwrap(double[] values, int capacity, int width) {
+		double[] copy = new double[capacity * width];
+		int first = (values.length / width - head) * width;
+		System.arraycopy(values, head * width, copy, 0, first);
+		System.arraycopy(values, 0, copy, first, head * width);
+		return copy;
+	}
+
+	private int[] unwrap(int[] values, int capacity, int width) {
+		int[] copy = new int[capacity * width];
+		int first = (values.length / width - head) * width;
+		System.arraycopy(values, head * width, copy, 0, first);
+		System.arraycopy(values, 0, copy, first, head * width);
+		return copy;
+	}
+
+}
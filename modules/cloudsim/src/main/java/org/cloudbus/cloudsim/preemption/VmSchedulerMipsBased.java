@@ -4,7 +4,7 @@ import org.cloudbus.cloudsim.Log;
 import org.cloudbus.cloudsim.Pe;
 import org.cloudbus.cloudsim.Vm;
 import org.cloudbus.cloudsim.VmScheduler;
-import org.cloudbus.cloudsim.preemption.util.DecimalUtil;
+import org.cloudbus.cloudsim.preemption.util.ResourceUnits;
 
 import java.util.List;
 
@@ -15,6 +15,10 @@ public class VmSchedulerMipsBased extends VmScheduler{
 
     double totalMips;
 
+    /** The total and the available MIPS in {@link ResourceUnits}, so they are kept exactly. */
+    long totalUnits;
+    long availableUnits;
+
     /**
      * Creates a new VmScheduler.
      *
@@ -50,8 +54,7 @@ public class VmSchedulerMipsBased extends VmScheduler{
         if (totalRequestedMips <= getAvailableMips()) {
 
             getMipsMap().put(vm.getUid(), mipsShare);
-            double newAvailableMips = getAvailableMips() - totalRequestedMips;
-            setAvailableMips(newAvailableMips);
+            setAvailableUnits(availableUnits - ResourceUnits.toUnits(totalRequestedMips));
 
             return true;
         }
@@ -86,19 +89,27 @@ public class VmSchedulerMipsBased extends VmScheduler{
             }
 
             getMipsMap().remove(vm.getUid());
-            setAvailableMips(getAvailableMips() + totalReleasedMips);
+            setAvailableUnits(availableUnits + ResourceUnits.toUnits(totalReleasedMips));
         }
     }
 
-    public double getMipsInUse(){ return getTotalMips() - getAvailableMips(); }
+    public double getMipsInUse(){ return ResourceUnits.toMips(totalUnits - availableUnits); }
 
     public double getTotalMips() { return totalMips; }
 
-    public void setTotalMips(double totalMips) { this.totalMips = DecimalUtil.format(totalMips); }
+    public void setTotalMips(double totalMips) {
+        this.totalUnits = ResourceUnits.toUnits(totalMips);
+        this.totalMips = ResourceUnits.toMips(totalUnits);
+    }
 
     @Override
     protected void setAvailableMips(double availableMips) {
-        super.setAvailableMips(DecimalUtil.format(availableMips));
+        setAvailableUnits(ResourceUnits.toUnits(availableMips));
+    }
+
+    private void setAvailableUnits(long availableUnits) {
+        this.availableUnits = availableUnits;
+        super.setAvailableMips(ResourceUnits.toMips(availableUnits));
     }
 
     @Override
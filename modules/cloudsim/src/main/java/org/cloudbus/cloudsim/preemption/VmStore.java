@@ -0,0 +1,157 @@
+package org.cloudbus.cloudsim.preemption;
+
+import java.util.Arrays;
+
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * The state of the tasks of a trace replay kept in parallel primitive arrays, each task being
+ * identified by an int handle. A task is kept here from the time it is loaded from the trace
+ * until its {@link PreemptableVm} is created, so the objects of a task only exist while it is
+ * waiting or running in the datacenter; the final states of the tasks go to a
+ * {@link org.cloudbus.cloudsim.preemption.datastore.TaskResultSink}. The handles of the released
+ * tasks are reused.
+ * <p>
+ * A store is not thread safe; it is used by the broker of one simulation.
+ *
+ * @since CloudSim Toolkit 4.0
+ */
+public class VmStore {
+
+	private static final int DEFAULT_CAPACITY = 1024;
+
+	private int[] ids;
+	private int[] priorities;
+
+	private double[] cpuReqs;
+	private double[] memReqs;
+	private double[] submitTimes;
+	private double[] runtimes;
+
+	/** The handles released and not reused yet. */
+	private final TIntArrayList freeHandles = new TIntArrayList();
+
+	/** The number of handles ever given, the next new one. */
+	private int handles;
+
+	private int size;
+
+	public VmStore() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a store with room for a number of tasks, which grows as needed.
+	 *
+	 * @param initialCapacity the number of tasks the store can hold before growing
+	 */
+	public VmStore(int initialCapacity) {
+		if (initialCapacity <= 0) {
+			throw new IllegalArgumentException("The initial capacity must be a positive integer.");
+		}
+		ids = new int[initialCapacity];
+		priorities = new int[initialCapacity];
+		cpuReqs = new double[initialCapacity];
+		memReqs = new double[initialCapacity];
+		submitTimes = new double[initialCapacity];
+		runtimes = new double[initialCapacity];
+	}
+
+	/**
+	 * Adds a task loaded from the trace, which was not submitted yet.
+	 *
+	 * @param task the task
+	 * @return the handle of the task
+	 */
+	public int addTask(Task task) {
+		int handle = newHandle();
+		ids[handle] = task.getId();
+		priorities[handle] = task.getPriority();
+		cpuReqs[handle] = task.getCpuReq();
+		memReqs[handle] = task.getMemReq();
+		submitTimes[handle] = task.getSubmitTime();
+		runtimes[handle] = task.getRuntime();
+		return handle;
+	}
+
+	/**
+	 * Creates the VM of a task added by {@link #addTask(Task)}. The task stays in the store until
+	 * it is released.
+	 *
+	 * @param handle the handle of the task
+	 * @param userId the id of the broker submitting the VM
+	 * @return the VM
+	 */
+	public PreemptableVm createVm(int handle, int userId) {
+		return new PreemptableVm(ids[handle], userId, cpuReqs[handle], memReqs[handle],
+				submitTimes[handle], priorities[handle], runtimes[handle]);
+	}
+
+	/**
+	 * Creates a task with the values of a task added by {@link #addTask(Task)}.
+	 *
+	 * @param handle the handle of the task
+	 * @return the task
+	 */
+	public Task getTask(int handle) {
+		return new Task(ids[handle], submitTimes[handle], runtimes[handle], cpuReqs[handle],
+				memReqs[handle], priorities[handle]);
+	}
+
+	/**
+	 * Removes a task, whose handle can then be given to another one.
+	 *
+	 * @param handle the handle of the task
+	 */
+	public void release(int handle) {
+		freeHandles.add(handle);
+		size--;
+	}
+
+	public int getId(int handle) {
+		return ids[handle];
+	}
+
+	public int getPriority(int handle) {
+		return priorities[handle];
+	}
+
+	public double getSubmitTime(int handle) {
+		return submitTimes[handle];
+	}
+
+	/**
+	 * Gets the number of tasks in the store.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets the number of tasks the store can hold before growing.
+	 */
+	public int getCapacity() {
+		return ids.length;
+	}
+
+	private int newHandle() {
+		size++;
+		if (!freeHandles.isEmpty()) {
+			return freeHandles.removeAt(freeHandles.size() - 1);
+		}
+		if (handles == ids.length) {
+			grow();
+		}
+		return handles++;
+	}
+
+	private void grow() {
+		int capacity = 2 * ids.length;
+		ids = Arrays.copyOf(ids, capacity);
+		priorities = Arrays.copyOf(priorities, capacity);
+		cpuReqs = Arrays.copyOf(cpuReqs, capacity);
+		memReqs = Arrays.copyOf(memReqs, capacity);
+		submitTimes = Arrays.copyOf(submitTimes, capacity);
+		runtimes = Arrays.copyOf(runtimes, capacity);
+	}
+}
@@ -0,0 +1,437 @@
+package org.cloudbus.cloudsim.preemption;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+
+import gnu.trove.map.hash.TIntLongHashMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+/**
+ * The VMs waiting to be allocated in a datacenter, kept by priority. It is a set sorted by the
+ * natural order of the VMs, which is by priority first, and also keeps the VMs of each priority
+ * by their MIPS, so the smallest request of a priority is known in O(1). The MIPS requested by
+ * each priority are summed as the VMs are added and removed.
+ * <p>
+ * Each VM gets an insertion number when it is added, so a pass over the queue can leave out the
+ * VMs added while it runs, as the VMs preempted during the pass. In natural order the VMs of a
+ * priority are found as they are visited, so a pass that stops early only pays for the VMs it
+ * visited. They can also be visited in another order, given by keys. When the keys do not depend
+ * on the time, the VMs are kept by them too, from the first pass in that order on, as they are
+ * added and removed, and are found as they are visited as in natural order. Otherwise the keys of
+ * all the VMs of the priority are computed when the pass starts, which is linear in their number,
+ * and the VMs are taken from a heap as they are visited, so a pass that stops early does not sort
+ * all of them.
+ *
+ * @since CloudSim Toolkit 4.0
+ */
+public class WaitingQueue extends AbstractSet<PreemptableVm> {
+
+	/**
+	 * Gives the keys by which the VMs of a priority are visited, smallest first. VMs with the same
+	 * keys are visited by id.
+	 */
+	public interface Order {
+
+		double getKey(PreemptableVm vm, double time);
+
+		double getTieKey(PreemptableVm vm);
+
+		/**
+		 * Checks whether the order of the waiting VMs given by the keys is the same at any time,
+		 * in which case the key of a VM must not depend on the time it is computed at.
+		 */
+		boolean isTimeInvariant();
+	}
+
+	private static final Comparator<PreemptableVm> MIPS_ORDER = new Comparator<PreemptableVm>() {
+
+		@Override
+		public int compare(PreemptableVm vm1, PreemptableVm vm2) {
+			int result = Double.compare(vm1.getMips(), vm2.getMips());
+			if (result == 0) {
+				result = vm1.compareTo(vm2);
+			}
+			return result;
+		}
+	};
+
+	private static final class Entry implements Comparable<Entry> {
+		final PreemptableVm vm;
+		final double key;
+		final double tieKey;
+
+		Entry(PreemptableVm vm, double key, double tieKey) {
+			this.vm = vm;
+			this.key = key;
+			this.tieKey = tieKey;
+		}
+
+		@Override
+		public int compareTo(Entry other) {
+			int result = Double.compare(key, other.key);
+			if (result == 0) {
+				result = Double.compare(tieKey, other.tieKey);
+			}
+			if (result == 0) {
+				result = vm.getId() < other.vm.getId() ? -1 : (vm.getId() == other.vm.getId() ? 0 : 1);
+			}
+			return result;
+		}
+	}
+
+	/** The VMs of each priority in natural order. */
+	private final List<TreeSet<PreemptableVm>> byPriority = new ArrayList<TreeSet<PreemptableVm>>();
+
+	/** The VMs of each priority by MIPS. */
+	private final List<TreeSet<PreemptableVm>> byMips = new ArrayList<TreeSet<PreemptableVm>>();
+
+	/** The time invariant order the VMs are kept by too, once a pass used it. */
+	private Order keptOrder;
+
+	/** The VMs of each priority by {@link #keptOrder}. */
+	private final List<TreeSet<Entry>> byKeptOrder = new ArrayList<TreeSet<Entry>>();
+
+	/** The entry of each VM in {@link #byKeptOrder}, by VM id. */
+	private final TIntObjectHashMap<Entry> keptEntries = new TIntObjectHashMap<Entry>();
+
+	private final PriorityVmCounts counts = new PriorityVmCounts();
+
+	private final TIntLongHashMap insertionNumbers = new TIntLongHashMap();
+
+	private long nextInsertionNumber;
+
+	/**
+	 * Gets the number of priorities seen so far, one more than the biggest priority of a VM added.
+	 */
+	public int getNumberOfPriorities() {
+		return counts.getNumberOfPriorities();
+	}
+
+	/**
+	 * Gets the number of VMs waiting with a priority.
+	 */
+	public int size(int priority) {
+		return counts.size(priority);
+	}
+
+	/**
+	 * Gets the smallest MIPS requested by a VM waiting with a priority.
+	 *
+	 * @param priority the priority
+	 * @return the smallest MIPS, or {@link Double#POSITIVE_INFINITY} if no VM is waiting
+	 */
+	public double getMinMips(int priority) {
+		if (size(priority) == 0) {
+			return Double.POSITIVE_INFINITY;
+		}
+		return byMips.get(priority).first().getMips();
+	}
+
+	/**
+	 * Gets the sum of the MIPS requested by the VMs waiting with a priority.
+	 */
+	public double getMips(int priority) {
+		return counts.getMips(priority);
+	}
+
+	/**
+	 * Gets the insertion number the next VM added will get, so the VMs added from now on can be
+	 * left out of a pass.
+	 */
+	public long getInsertionMark() {
+		return nextInsertionNumber;
+	}
+
+	/**
+	 * Gets the VMs of a priority added before a mark, in natural order or in the given one. The
+	 * queue can be changed while the VMs are visited: in natural order, and in a time invariant
+	 * one, each VM is found after the last one visited, and in other orders the VMs are taken when
+	 * the queue is called.
+	 *
+	 * @param priority the priority
+	 * @param order the order, or <code>null</code> for the natural one
+	 * @param time the time the keys of the order are computed for
+	 * @param insertionMark the mark given by {@link #getInsertionMark()}
+	 * @return the VMs
+	 */
+	public Iterator<PreemptableVm> iterator(int priority, Order order, double time, final long insertionMark) {
+		if (size(priority) == 0) {
+			return Collections.<PreemptableVm> emptyList().iterator();
+		}
+		final TreeSet<PreemptableVm> vms = byPriority.get(priority);
+
+		if (order == null) {
+			return new PassIterator() {
+
+				private PreemptableVm next;
+
+				@Override
+				public boolean hasNext() {
+					if (next == null) {
+						next = lastVm == null ? (vms.isEmpty() ? null : vms.first()) : vms.higher(lastVm);
+						while (next != null && insertionNumbers.get(next.getId()) >= insertionMark) {
+							next = vms.higher(next);
+						}
+					}
+					return next != null;
+				}
+
+				@Override
+				PreemptableVm take() {
+					PreemptableVm vm = next;
+					next = null;
+					return vm;
+				}
+			};
+		}
+
+		if (order.isTimeInvariant()) {
+			if (order != keptOrder) {
+				keepOrder(order);
+			}
+			final TreeSet<Entry> kept = byKeptOrder.get(priority);
+
+			return new PassIterator() {
+
+				private Entry lastEntry;
+
+				private Entry next;
+
+				@Override
+				public boolean hasNext() {
+					if (next == null) {
+						next = lastEntry == null ? (kept.isEmpty() ? null : kept.first()) : kept.higher(lastEntry);
+						while (next != null && insertionNumbers.get(next.vm.getId()) >= insertionMark) {
+							next = kept.higher(next);
+						}
+					}
+					return next != null;
+				}
+
+				@Override
+				PreemptableVm take() {
+					lastEntry = next;
+					next = null;
+					return lastEntry.vm;
+				}
+			};
+		}
+
+		List<Entry> entries = new ArrayList<Entry>(vms.size());
+		for (PreemptableVm vm : vms) {
+			if (insertionNumbers.get(vm.getId()) < insertionMark) {
+				entries.add(new Entry(vm, order.getKey(vm, time), order.getTieKey(vm)));
+			}
+		}
+		final PriorityQueue<Entry> heap = new PriorityQueue<Entry>(entries);
+
+		return new PassIterator() {
+
+			@Override
+			public boolean hasNext() {
+				return !heap.isEmpty();
+			}
+
+			@Override
+			PreemptableVm take() {
+				return heap.poll().vm;
+			}
+		};
+	}
+
+	/** Visits the VMs of a pass, removing them from the queue when asked. */
+	private abstract class PassIterator implements Iterator<PreemptableVm> {
+
+		PreemptableVm lastVm;
+
+		private boolean removable;
+
+		/** Takes the next VM, once {@link #hasNext()} found one. */
+		abstract PreemptableVm take();
+
+		@Override
+		public PreemptableVm next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			lastVm = take();
+			removable = true;
+			return lastVm;
+		}
+
+		@Override
+		public void remove() {
+			if (!removable) {
+				throw new IllegalStateException();
+			}
+			WaitingQueue.this.remove(lastVm);
+			removable = false;
+		}
+	}
+
+	@Override
+	public boolean add(PreemptableVm vm) {
+		int priority = counts.ensurePriority(vm);
+		while (byPriority.size() <= priority) {
+			byPriority.add(new TreeSet<PreemptableVm>());
+			byMips.add(new TreeSet<PreemptableVm>(MIPS_ORDER));
+			byKeptOrder.add(new TreeSet<Entry>());
+		}
+
+		if (!byPriority.get(priority).add(vm)) {
+			return false;
+		}
+		byMips.get(priority).add(vm);
+		if (keptOrder != null) {
+			keep(vm);
+		}
+		counts.added(vm);
+		insertionNumbers.put(vm.getId(), nextInsertionNumber++);
+		return true;
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		if (!(o instanceof PreemptableVm)) {
+			return false;
+		}
+		PreemptableVm vm = (PreemptableVm) o;
+		if (size(vm.getPriority()) == 0 || !byPriority.get(vm.getPriority()).remove(vm)) {
+			return false;
+		}
+		removed(vm);
+		return true;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		if (!(o instanceof PreemptableVm)) {
+			return false;
+		}
+		PreemptableVm vm = (PreemptableVm) o;
+		return size(vm.getPriority()) > 0 && byPriority.get(vm.getPriority()).contains(vm);
+	}
+
+	@Override
+	public int size() {
+		return counts.size();
+	}
+
+	@Override
+	public void clear() {
+		for (int priority = 0; priority < byPriority.size(); priority++) {
+			byPriority.get(priority).clear();
+			byMips.get(priority).clear();
+			byKeptOrder.get(priority).clear();
+		}
+		keptEntries.clear();
+		counts.clear();
+		insertionNumbers.clear();
+	}
+
+	@Override
+	public Iterator<PreemptableVm> iterator() {
+		return new Iterator<PreemptableVm>() {
+
+			private int priority = -1;
+
+			private Iterator<PreemptableVm> current;
+
+			private Iterator<PreemptableVm> last;
+
+			private PreemptableVm lastVm;
+
+			@Override
+			public boolean hasNext() {
+				while ((current == null || !current.hasNext()) && priority + 1 < byPriority.size()) {
+					priority++;
+					current = byPriority.get(priority).iterator();
+				}
+				return current != null && current.hasNext();
+			}
+
+			@Override
+			public PreemptableVm next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				last = current;
+				lastVm = current.next();
+				return lastVm;
+			}
+
+			@Override
+			public void remove() {
+				if (last == null) {
+					throw new IllegalStateException();
+				}
+				last.remove();
+				removed(lastVm);
+				last = null;
+			}
+		};
+	}
+
+	/**
+	 * Gets the first VM in natural order.
+	 *
+	 * @throws NoSuchElementException if the queue is empty
+	 */
+	public PreemptableVm first() {
+		for (TreeSet<PreemptableVm> vms : byPriority) {
+			if (!vms.isEmpty()) {
+				return vms.first();
+			}
+		}
+		throw new NoSuchElementException();
+	}
+
+	/**
+	 * Gets the last VM in natural order.
+	 *
+	 * @throws NoSuchElementException if the queue is empty
+	 */
+	public PreemptableVm last() {
+		for (int priority = byPriority.size() - 1; priority >= 0; priority--) {
+			if (!byPriority.get(priority).isEmpty()) {
+				return byPriority.get(priority).last();
+			}
+		}
+		throw new NoSuchElementException();
+	}
+
+	/** Starts keeping the VMs by a time invariant order, instead of the one kept so far. */
+	private void keepOrder(Order order) {
+		keptOrder = order;
+		keptEntries.clear();
+		for (int priority = 0; priority < byPriority.size(); priority++) {
+			byKeptOrder.get(priority).clear();
+			for (PreemptableVm vm : byPriority.get(priority)) {
+				keep(vm);
+			}
+		}
+	}
+
+	private void keep(PreemptableVm vm) {
+		// the keys do not depend on the time
+		Entry entry = new Entry(vm, keptOrder.getKey(vm, 0), keptOrder.getTieKey(vm));
+		byKeptOrder.get(vm.getPriority()).add(entry);
+		keptEntries.put(vm.getId(), entry);
+	}
+
+	private void removed(PreemptableVm vm) {
+		byMips.get(vm.getPriority()).remove(vm);
+		if (keptOrder != null) {
+			byKeptOrder.get(vm.getPriority()).remove(keptEntries.remove(vm.getId()));
+		}
+		counts.removed(vm);
+		insertionNumbers.remove(vm.getId());
+	}
+}
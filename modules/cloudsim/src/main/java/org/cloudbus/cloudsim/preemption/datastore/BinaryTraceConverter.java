@@ -0,0 +1,208 @@
+package org.cloudbus.cloudsim.preemption.datastore;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import org.cloudbus.cloudsim.preemption.util.ResourceUnits;
+import org.cloudbus.cloudsim.util.WorkloadFileReader;
+
+/**
+ * Converts input traces into the binary format read by {@link BinaryTraceSource}. The tasks can
+ * come from the <code>tasks</code> table of a trace database, with the same filters and priority
+ * classes used by {@link InputTraceDataStore}, or from a file in the Standard Workload Format read
+ * by {@link WorkloadFileReader}.
+ * <p>
+ * Usage:
+ * <ul>
+ * <li><code>BinaryTraceConverter sqlite &lt;database url&gt; &lt;output file&gt;</code>
+ * <li><code>BinaryTraceConverter swf &lt;swf file&gt; &lt;output file&gt; &lt;cpu per processor&gt;
+ * &lt;memory per processor&gt; [priority class]</code>
+ * </ul>
+ *
+ * @since CloudSim Toolkit 4.0
+ */
+public class BinaryTraceConverter {
+
+	/** The default span of the index buckets: 5 minutes, in microseconds as in the Google trace. */
+	public static final double DEFAULT_BUCKET_SPAN = 300000000;
+
+	/** The SWF times are in seconds, while the simulated traces are in microseconds. */
+	public static final double SWF_TIME_SCALE = 1000000;
+
+	/** The most buckets in the index, so the header stays small. */
+	private static final int MAX_BUCKETS = 1 << 20;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	public static void main(String[] args) throws Exception {
+		if (args.length == 3 && args[0].equals("sqlite")) {
+			convertDatabase(args[1], new File(args[2]));
+		} else if ((args.length == 5 || args.length == 6) && args[0].equals("swf")) {
+			convertSwf(args[1], new File(args[2]), Double.parseDouble(args[3]),
+					Double.parseDouble(args[4]), args.length == 6 ? Integer.parseInt(args[5]) : 0);
+		} else {
+			System.err.println("Usage: BinaryTraceConverter sqlite <database url> <output file>");
+			System.err.println("       BinaryTraceConverter swf <swf file> <output file> <cpu per processor>"
+					+ " <memory per processor> [priority class]");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Converts the tasks table of a trace database.
+	 *
+	 * @param databaseURL the JDBC URL of the trace database
+	 * @param file the binary trace file to write
+	 */
+	public static void convertDatabase(String databaseURL, File file) throws ClassNotFoundException,
+			SQLException, IOException {
+		write(PreloadedInputTrace.load(databaseURL), file, DEFAULT_BUCKET_SPAN);
+	}
+
+	/**
+	 * Converts a trace in the Standard Workload Format. Each job becomes a task whose resource
+	 * requests are proportional to its number of processors and whose submit time and runtime are
+	 * converted from seconds to microseconds.
+	 *
+	 * @param swfFile the SWF file, which may be compressed as read by {@link WorkloadFileReader}
+	 * @param file the binary trace file to write
+	 * @param cpuPerProcessor the CPU request of each processor of a job
+	 * @param memoryPerProcessor the memory request of each processor of a job
+	 * @param priorityClass the priority class of all tasks
+	 */
+	public static void convertSwf(String swfFile, File file, double cpuPerProcessor,
+			double memoryPerProcessor, int priorityClass) throws IOException {
+		if (cpuPerProcessor <= 0 || memoryPerProcessor <= 0) {
+			throw new IllegalArgumentException("The requests per processor must be positive.");
+		}
+		if (priorityClass < 0 || priorityClass > Byte.MAX_VALUE) {
+			throw new IllegalArgumentException("Invalid priority class: " + priorityClass);
+		}
+
+		SwfTaskReader reader = new SwfTaskReader(swfFile);
+		if (reader.generateWorkload() == null) {
+			throw new IOException("Couldn't read the SWF file " + swfFile);
+		}
+
+		int size = reader.size;
+		double[] submitTime = new double[size];
+		double[] runtime = new double[size];
+		double[] cpuReq = new double[size];
+		double[] memReq = new double[size];
+		byte[] priority = new byte[size];
+		boolean sorted = true;
+		double maxTraceTime = -1;
+		for (int i = 0; i < size; i++) {
+			submitTime[i] = reader.submitTime[i] * SWF_TIME_SCALE;
+			runtime[i] = reader.runtime[i] * SWF_TIME_SCALE;
+			cpuReq[i] = ResourceUnits.round(reader.processors[i] * cpuPerProcessor);
+			memReq[i] = ResourceUnits.round(reader.processors[i] * memoryPerProcessor);
+			priority[i] = (byte) priorityClass;
+			if (i > 0 && submitTime[i] < submitTime[i - 1]) {
+				sorted = false;
+			}
+			maxTraceTime = Math.max(maxTraceTime, submitTime[i]);
+		}
+
+		write(PreloadedInputTrace.fromColumns(submitTime, runtime, cpuReq, memReq, priority, sorted,
+				maxTraceTime), file, DEFAULT_BUCKET_SPAN);
+	}
+
+	/**
+	 * Writes a trace in the binary format.
+	 *
+	 * @param trace the trace
+	 * @param file the binary trace file to write
+	 * @param bucketSpan the span of the index buckets, which may be enlarged to limit the index size
+	 */
+	public static void write(PreloadedInputTrace trace, File file, double bucketSpan)
+			throws IOException {
+		if (bucketSpan <= 0) {
+			throw new IllegalArgumentException("The bucket span must be positive.");
+		}
+
+		int size = trace.size();
+		double lastSubmitTime = size == 0 ? 0 : Math.max(0, trace.getSubmitTime(size - 1));
+		if (lastSubmitTime / bucketSpan >= MAX_BUCKETS - 1) {
+			bucketSpan = lastSubmitTime / (MAX_BUCKETS - 1);
+		}
+		int buckets = Math.min(MAX_BUCKETS, (int) Math.floor(lastSubmitTime / bucketSpan) + 1);
+
+		FileOutputStream output = new FileOutputStream(file);
+		try {
+			FileChannel channel = output.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+			buffer.putInt(BinaryTraceSource.MAGIC);
+			buffer.putInt(BinaryTraceSource.VERSION);
+			buffer.putLong(size);
+			buffer.putDouble(trace.getMaxTraceTime());
+			buffer.putDouble(bucketSpan);
+			buffer.putInt(buckets);
+			for (int k = 0; k < buckets; k++) {
+				if (buffer.remaining() < 8) {
+					flush(buffer, channel);
+				}
+				buffer.putLong(trace.firstAtOrAfter(k * bucketSpan));
+			}
+
+			// tasks submitted at the same time are already in table order
+			for (int i = 0; i < size; i++) {
+				if (buffer.remaining() < BinaryTraceSource.RECORD_SIZE) {
+					flush(buffer, channel);
+				}
+				buffer.putDouble(trace.getSubmitTime(i));
+				buffer.putDouble(trace.getRuntime(i));
+				buffer.putDouble(trace.getCpuReq(i));
+				buffer.putDouble(trace.getMemReq(i));
+				buffer.put((byte) trace.getPriority(i));
+			}
+			flush(buffer, channel);
+		} finally {
+			output.close();
+		}
+	}
+
+	private static void flush(ByteBuffer buffer, FileChannel channel) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/** Keeps the fields of the SWF jobs needed for tasks, instead of creating cloudlets. */
+	private static class SwfTaskReader extends WorkloadFileReader {
+
+		long[] submitTime = new long[1024];
+		int[] runtime = new int[1024];
+		int[] processors = new int[1024];
+		int size;
+
+		SwfTaskReader(String fileName) throws FileNotFoundException {
+			super(fileName, 1);
+		}
+
+		@Override
+		protected void createJob(int id, long submitTime, int runTime, int numProc, int reqRunTime,
+				int userID, int groupID) {
+			if (size == this.submitTime.length) {
+				this.submitTime = Arrays.copyOf(this.submitTime, 2 * size);
+				runtime = Arrays.copyOf(runtime, 2 * size);
+				processors = Arrays.copyOf(processors, 2 * size);
+			}
+			this.submitTime[size] = submitTime;
+			runtime[size] = runTime;
+			processors[size] = numProc;
+			size++;
+		}
+	}
+
+}
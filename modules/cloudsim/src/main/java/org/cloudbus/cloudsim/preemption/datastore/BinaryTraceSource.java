@@ -0,0 +1,296 @@
+package org.cloudbus.cloudsim.preemption.datastore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.cloudbus.cloudsim.Log;
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.preemption.Task;
+
+/**
+ * A trace source reading a binary trace file written by {@link BinaryTraceConverter}. The file is
+ * memory mapped and the records are read in place, so nothing is allocated for a record until its
+ * {@link Task} is created.
+ * <p>
+ * The file is little-endian. Its header has:
+ * <ul>
+ * <li>the magic number {@link #MAGIC} and the format {@link #VERSION}, as ints;
+ * <li>the number of records, as a long;
+ * <li>the maximum submit time of the trace, as a double, computed as
+ * {@link InputTraceDataStore#getMaxTraceTime()} does;
+ * <li>the time span of the index buckets, as a double, and the number of buckets, as an int;
+ * <li>for each bucket <code>k</code>, the index of the first record submitted at or after
+ * <code>k</code> times the bucket span, as a long.
+ * </ul>
+ * It is followed by the records, sorted by submit time, each with the submit time, runtime, CPU
+ * request and memory request as doubles and the priority class as a byte. Records submitted at the
+ * same time are kept in the order of the trace they were converted from. So the tasks of an
+ * interval are the ones the trace database gives and, if its table is sorted by submit time, they
+ * also come in the same order and get the same ids.
+ *
+ * @since CloudSim Toolkit 4.0
+ * @see TraceSource
+ */
+public class BinaryTraceSource implements TraceSource {
+
+	public static String BINARY_FILE_PROP = "input_trace_binary_file";
+
+	/** "CSTR" in ASCII. */
+	public static final int MAGIC = 0x43535452;
+
+	public static final int VERSION = 1;
+
+	/** The size of the fixed part of the header, before the index. */
+	static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 8 + 4;
+
+	static final int RECORD_SIZE = 4 * 8 + 1;
+
+	private static final int SUBMIT_TIME_OFFSET = 0;
+	private static final int RUNTIME_OFFSET = 8;
+	private static final int CPU_REQ_OFFSET = 16;
+	private static final int MEM_REQ_OFFSET = 24;
+	private static final int PRIORITY_OFFSET = 32;
+
+	/** The number of records in each mapped segment, since a mapping cannot exceed 2 GB. */
+	private static final int RECORDS_PER_SEGMENT = Integer.MAX_VALUE / RECORD_SIZE;
+
+	private final MappedByteBuffer[] segments;
+
+	private final int size;
+
+	private final double maxTraceTime;
+
+	private final double bucketSpan;
+
+	private final long[] index;
+
+	private int nextTaskId = 0;
+
+	private double minInterestedTime;
+	private double maxInterestedTime;
+
+	/**
+	 * Opens the binary trace file given by the {@link #BINARY_FILE_PROP} property.
+	 *
+	 * @param properties the simulation properties
+	 * @throws IOException if the file cannot be read
+	 */
+	public BinaryTraceSource(Properties properties) throws IOException {
+		this(properties, new File(getBinaryFile(properties)));
+	}
+
+	/**
+	 * Opens a binary trace file.
+	 *
+	 * @param properties the simulation properties, which may set the interested times
+	 * @param file the binary trace file
+	 * @throws IOException if the file cannot be read
+	 */
+	public BinaryTraceSource(Properties properties, File file) throws IOException {
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = input.getChannel();
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					Math.min(HEADER_SIZE, channel.size())).order(ByteOrder.LITTLE_ENDIAN);
+			if (header.limit() < HEADER_SIZE || header.getInt() != MAGIC) {
+				throw new IllegalArgumentException(file + " is not a binary trace file.");
+			}
+			if (header.getInt() != VERSION) {
+				throw new IllegalArgumentException(file + " has an unsupported binary trace version.");
+			}
+			long records = header.getLong();
+			if (records > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException(file + " has too many records.");
+			}
+			size = (int) records;
+			maxTraceTime = header.getDouble();
+			bucketSpan = header.getDouble();
+			int buckets = header.getInt();
+
+			index = new long[buckets];
+			channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, 8L * buckets)
+					.order(ByteOrder.LITTLE_ENDIAN).asLongBuffer().get(index);
+
+			long recordsOffset = HEADER_SIZE + 8L * buckets;
+			if (channel.size() < recordsOffset + (long) RECORD_SIZE * size) {
+				throw new IllegalArgumentException(file + " is truncated.");
+			}
+			segments = new MappedByteBuffer[size == 0 ? 0 : (size - 1) / RECORDS_PER_SEGMENT + 1];
+			for (int i = 0; i < segments.length; i++) {
+				long first = (long) i * RECORDS_PER_SEGMENT;
+				long count = Math.min(RECORDS_PER_SEGMENT, size - first);
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+						recordsOffset + first * RECORD_SIZE, count * RECORD_SIZE);
+				segments[i].order(ByteOrder.LITTLE_ENDIAN);
+			}
+		} finally {
+			// the mappings stay valid after the file is closed
+			input.close();
+		}
+
+		checkInterestedTimes(properties);
+		setInterestedTimes(properties);
+		Log.printConcatLine("Binary input trace ", file, " opened: ", size, " tasks.");
+	}
+
+	private static String getBinaryFile(Properties properties) {
+		String file = properties.getProperty(BINARY_FILE_PROP);
+		if (file == null) {
+			throw new IllegalArgumentException(BINARY_FILE_PROP + " must be set to read a binary trace.");
+		}
+		return file;
+	}
+
+	private void checkInterestedTimes(Properties properties) {
+		String min = properties.getProperty(InputTraceDataStore.MIN_INTERESTED_TIME_PROP);
+		if (min != null && Double.parseDouble(min) < 0) {
+			throw new IllegalArgumentException(InputTraceDataStore.MIN_INTERESTED_TIME_PROP
+					+ " must not be negative.");
+		}
+
+		String max = properties.getProperty(InputTraceDataStore.MAX_INTERESTED_TIME_PROP);
+		if (max != null && Double.parseDouble(max) < 0) {
+			throw new IllegalArgumentException(InputTraceDataStore.MAX_INTERESTED_TIME_PROP
+					+ " must not be negative.");
+		}
+	}
+
+	private void setInterestedTimes(Properties properties) {
+		String min = properties.getProperty(InputTraceDataStore.MIN_INTERESTED_TIME_PROP);
+		minInterestedTime = min != null ? Double.parseDouble(min) : 0;
+
+		String max = properties.getProperty(InputTraceDataStore.MAX_INTERESTED_TIME_PROP);
+		maxInterestedTime = max != null ? Double.parseDouble(max) : maxTraceTime + 1;
+	}
+
+	@Override
+	public List<Task> getGoogleTaskInterval(int intervalIndex, double intervalSize) {
+
+		if (intervalIndex < 0) {
+			throw new IllegalArgumentException("Interval index must be not negative");
+		}
+
+		if (intervalSize <= 0) {
+			throw new IllegalArgumentException("Interval size must be positive");
+		}
+
+		if (!hasMoreEvents(intervalIndex, intervalSize)) {
+			Log.printLine(CloudSim.clock() + ": The Interval index is " + intervalIndex
+					+ " and there are not more events to be treated.");
+			return null;
+		}
+
+		double minTime = Math.max(getMinInterestedTime(), (intervalIndex * intervalSize));
+		double maxTime = Math.min(getMaxInterestedTime(), ((intervalIndex + 1) * intervalSize));
+
+		int first = firstAtOrAfter(minTime);
+		int last = Math.max(first, firstAtOrAfter(maxTime));
+		List<Task> googleTasks = new ArrayList<Task>(last - first);
+		for (int i = first; i < last; i++) {
+			MappedByteBuffer segment = segments[i / RECORDS_PER_SEGMENT];
+			int offset = (i % RECORDS_PER_SEGMENT) * RECORD_SIZE;
+			nextTaskId++;
+			googleTasks.add(new Task(nextTaskId,
+					segment.getDouble(offset + SUBMIT_TIME_OFFSET),
+					segment.getDouble(offset + RUNTIME_OFFSET),
+					segment.getDouble(offset + CPU_REQ_OFFSET),
+					segment.getDouble(offset + MEM_REQ_OFFSET),
+					segment.get(offset + PRIORITY_OFFSET)));
+		}
+
+		Log.printLine(CloudSim.clock() + ": Interval index is " + intervalIndex
+				+ " and number of tasks is " + googleTasks.size());
+		return googleTasks;
+	}
+
+	/**
+	 * Gets the index of the first record submitted at or after a given time. The time index gives
+	 * the records of the bucket of the time, which are then binary searched in place.
+	 *
+	 * @param time the time
+	 * @return the index, which is the number of records if all of them were submitted before
+	 */
+	int firstAtOrAfter(double time) {
+		int low = 0;
+		int high = size;
+		double bucket = Math.floor(time / bucketSpan);
+		if (index.length > 0 && bucket >= index.length) {
+			low = (int) index[index.length - 1];
+		} else if (index.length > 0 && bucket >= 0) {
+			// one more bucket at each side, as the division may round across a bucket boundary
+			int k = (int) bucket;
+			low = (int) index[Math.max(k - 1, 0)];
+			high = k + 2 < index.length ? (int) index[k + 2] : size;
+		}
+		return binarySearch(low, high, time);
+	}
+
+	private int binarySearch(int low, int high, double time) {
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (getSubmitTime(middle) < time) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	private double getSubmitTime(int record) {
+		return segments[record / RECORDS_PER_SEGMENT].getDouble((record % RECORDS_PER_SEGMENT)
+				* RECORD_SIZE + SUBMIT_TIME_OFFSET);
+	}
+
+	@Override
+	public boolean hasMoreEvents(int intervalIndex, double intervalSize) {
+		return (intervalIndex >= 0 && (intervalIndex * intervalSize) <= getMaxInterestedTime());
+	}
+
+	@Override
+	public double getMinInterestedTime() {
+		return minInterestedTime;
+	}
+
+	@Override
+	public double getMaxInterestedTime() {
+		return maxInterestedTime;
+	}
+
+	@Override
+	public int getNextTaskId() {
+		return nextTaskId;
+	}
+
+	@Override
+	public void setNextTaskId(int nextTaskId) {
+		this.nextTaskId = nextTaskId;
+	}
+
+	/**
+	 * Gets the maximum submit time of the trace.
+	 *
+	 * @return the maximum submit time
+	 */
+	public double getMaxTraceTime() {
+		return maxTraceTime;
+	}
+
+	/**
+	 * Gets the number of records in the file.
+	 *
+	 * @return the number of records
+	 */
+	public int size() {
+		return size;
+	}
+
+}
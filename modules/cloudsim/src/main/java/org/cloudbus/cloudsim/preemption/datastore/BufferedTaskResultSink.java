@@ -0,0 +1,231 @@
+package org.cloudbus.cloudsim.preemption.datastore;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.cloudbus.cloudsim.Log;
+import org.cloudbus.cloudsim.preemption.TaskState;
+
+/**
+ * A task result sink that stores the tasks into a {@link TaskDataStore} through a
+ * {@link DataStoreWriter}. The tasks are received into a buffer of primitive arrays; when it is
+ * flushed, the buffer is handed to the writer thread and the tasks go on being received into another one, so the
+ * simulation does not wait for the database. A buffer is reused once its tasks are stored, so
+ * two buffers are used while the writes keep up with the simulation; otherwise a new one is made
+ * rather than waiting.
+ * <p>
+ * The sink is flushed when it holds the number of tasks given by the
+ * {@value #BATCH_SIZE_PROP} property, if it is positive, besides every storing interval of the
+ * broker. A batch that could not be stored is tried again at the next flush.
+ *
+ * @since CloudSim Toolkit 4.0
+ */
+public class BufferedTaskResultSink implements TaskResultSink {
+
+	public static final String BATCH_SIZE_PROP = "output_tasks_batch_size";
+
+	private static final int INITIAL_BUFFER_CAPACITY = 1024;
+
+	private final TaskDataStore dataStore;
+
+	/** The number of tasks that makes the sink be flushed, or 0 if there is none. */
+	private final int batchSize;
+
+	private final DataStoreWriter writer;
+
+	/** Whether the writer was created by this sink, which then closes it. */
+	private final boolean ownsWriter;
+
+	/** The buffers whose tasks were stored, ready to be reused. */
+	private final ConcurrentLinkedQueue<TaskResultBuffer> freeBuffers = new ConcurrentLinkedQueue<TaskResultBuffer>();
+
+	/** The buffers whose tasks could not be stored, to be tried again. */
+	private final ConcurrentLinkedQueue<TaskResultBuffer> failedBuffers = new ConcurrentLinkedQueue<TaskResultBuffer>();
+
+	private TaskResultBuffer current;
+
+	private int flushes;
+
+	private boolean closed;
+
+	private int allocatedBuffers;
+
+	private volatile long writingTime;
+
+	/**
+	 * Creates a sink storing the tasks into a data store with a writer of its own.
+	 *
+	 * @param dataStore the data store
+	 * @param batchSize the number of tasks that makes the sink be flushed, or 0 to only flush it
+	 *            when asked for
+	 */
+	public BufferedTaskResultSink(TaskDataStore dataStore, int batchSize) {
+		this(dataStore, batchSize, new DataStoreWriter("task-result-writer",
+				DataStoreWriter.DEFAULT_QUEUE_CAPACITY), true);
+	}
+
+	/**
+	 * Creates a sink storing the tasks into a data store with a writer shared with other data
+	 * stores. The writer is flushed, but not closed, when the sink is closed.
+	 *
+	 * @param dataStore the data store
+	 * @param batchSize the number of tasks that makes the sink be flushed, or 0 to only flush it
+	 *            when asked for
+	 * @param writer the writer
+	 */
+	public BufferedTaskResultSink(TaskDataStore dataStore, int batchSize, DataStoreWriter writer) {
+		this(dataStore, batchSize, writer, false);
+	}
+
+	private BufferedTaskResultSink(TaskDataStore dataStore, int batchSize, DataStoreWriter writer,
+			boolean ownsWriter) {
+		if (batchSize < 0) {
+			throw new IllegalArgumentException(BATCH_SIZE_PROP + " must not be negative.");
+		}
+		this.dataStore = dataStore;
+		this.batchSize = batchSize;
+		this.current = newBuffer();
+		this.writer = writer;
+		this.ownsWriter = ownsWriter;
+	}
+
+	/**
+	 * Gets the batch size set in the properties, or 0 if there is none.
+	 *
+	 * @param properties the simulation properties
+	 * @return the batch size
+	 */
+	public static int getBatchSize(Properties properties) {
+		return properties.getProperty(BATCH_SIZE_PROP) == null ? 0
+				: Integer.parseInt(properties.getProperty(BATCH_SIZE_PROP));
+	}
+
+	@Override
+	public void addTask(int taskId, double cpuReq, double submitTime, double finishTime, double runtime,
+			int priority, int preemptions, int backfillingChoices, int migrations,
+			double firstTimeAllocated) {
+		current.add(taskId, cpuReq, submitTime, finishTime, runtime, priority, preemptions,
+				backfillingChoices, migrations, firstTimeAllocated);
+		if (batchSize > 0 && current.size() >= batchSize) {
+			flush();
+		}
+	}
+
+	@Override
+	public List<TaskState> getBufferedTasks() {
+		return current.toList();
+	}
+
+	@Override
+	public int getBufferedTaskCount() {
+		return current.size();
+	}
+
+	@Override
+	public void flush() {
+		TaskResultBuffer failed;
+		while ((failed = failedBuffers.poll()) != null) {
+			write(failed);
+		}
+		if (current.isEmpty()) {
+			return;
+		}
+
+		write(current);
+		flushes++;
+		current = freeBuffers.poll();
+		if (current == null) {
+			current = newBuffer();
+		}
+	}
+
+	private void write(final TaskResultBuffer buffer) {
+		writer.submit(new Runnable() {
+
+			@Override
+			public void run() {
+				long start = System.nanoTime();
+				boolean stored = dataStore.addTasks(buffer);
+				writingTime += System.nanoTime() - start;
+
+				if (stored) {
+					buffer.clear();
+					freeBuffers.add(buffer);
+				} else {
+					Log.printLine("Couldn't store " + buffer.size() + " tasks, they will be tried again.");
+					failedBuffers.add(buffer);
+				}
+			}
+		});
+	}
+
+	@Override
+	public void awaitFlushes() {
+		writer.flush();
+	}
+
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		if (!writer.isClosed()) {
+			flush();
+			if (ownsWriter) {
+				writer.close();
+			} else {
+				writer.flush();
+			}
+		}
+		dataStore.close();
+
+		int notStored = 0;
+		for (TaskResultBuffer buffer : failedBuffers) {
+			notStored += buffer.size();
+		}
+		if (notStored > 0) {
+			Log.printLine(notStored + " tasks could not be stored.");
+		}
+	}
+
+	private TaskResultBuffer newBuffer() {
+		allocatedBuffers++;
+		return new TaskResultBuffer(batchSize > 0 ? batchSize : INITIAL_BUFFER_CAPACITY);
+	}
+
+	/**
+	 * Gets the number of times the sink was flushed with tasks in it.
+	 *
+	 * @return the number of flushes
+	 */
+	public int getFlushes() {
+		return flushes;
+	}
+
+	/**
+	 * Gets the number of buffers made, which is more than two only if the writes did not keep
+	 * up with the simulation.
+	 *
+	 * @return the number of buffers
+	 */
+	public int getAllocatedBuffers() {
+		return allocatedBuffers;
+	}
+
+	public DataStoreWriter getWriter() {
+		return writer;
+	}
+
+	/**
+	 * Logs how many batches were stored and how long the writer thread spent storing them.
+	 */
+	public void printMetrics() {
+		Log.printConcatLine("Task results: ", flushes, " batches stored in ", writingTime / 1000000,
+				" ms in background, using ", allocatedBuffers, " buffers.");
+		if (ownsWriter) {
+			writer.printMetrics();
+		}
+	}
+}
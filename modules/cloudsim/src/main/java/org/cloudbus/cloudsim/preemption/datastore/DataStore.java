@@ -2,32 +2,330 @@ package org.cloudbus.cloudsim.preemption.datastore;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.cloudbus.cloudsim.Log;
 
+/**
+ * The base of the data stores. A data store keeps one connection to its database, opened when
+ * it is first used and again after {@link #close()}, and the statements prepared on it, so a
+ * read or a batch of writes does not open a connection nor compile its SQL again.
+ * <p>
+ * The SQLite pragmas set in the properties are applied when the connection is opened:
+ * {@value #JOURNAL_MODE_PROP} (e.g. WAL), {@value #SYNCHRONOUS_PROP} (e.g. NORMAL),
+ * {@value #PAGE_SIZE_PROP} and {@value #CACHE_SIZE_PROP}; SQLite's defaults are kept for the
+ * ones not set. The page size only takes effect on a database not created yet.
+ * <p>
+ * The data stores of the same database, e.g. the one of the simulation and the one of a
+ * {@link DataStoreWriter} thread, use it one at a time, holding {@link #getDatabaseLock()},
+ * instead of retrying while SQLite reports it as busy.
+ */
 public class DataStore {
 
 	protected static final String DATASTORE_SQLITE_DRIVER = "org.sqlite.JDBC";
 
+	public static final String JOURNAL_MODE_PROP = "sqlite_journal_mode";
+	public static final String SYNCHRONOUS_PROP = "sqlite_synchronous";
+	public static final String PAGE_SIZE_PROP = "sqlite_page_size";
+	public static final String CACHE_SIZE_PROP = "sqlite_cache_size";
+
+	static {
+		try {
+			Class.forName(DATASTORE_SQLITE_DRIVER);
+		} catch (ClassNotFoundException e) {
+			Log.printLine("The SQLite driver " + DATASTORE_SQLITE_DRIVER + " was not found.");
+		}
+	}
+
+	/** The locks by database URL. */
+	private static final ConcurrentMap<String, Lock> DATABASE_LOCKS = new ConcurrentHashMap<String, Lock>();
+
+	/**
+	 * Maps each row of a query result into an object.
+	 */
+	protected interface RowMapper<T> {
+
+		T map(ResultSet rs) throws SQLException;
+	}
+
+	/**
+	 * Handles each row of a query result, e.g. to read it into columns instead of objects.
+	 */
+	protected interface RowHandler {
+
+		void handle(ResultSet rs) throws SQLException;
+	}
+
+	/**
+	 * Sets the parameters of a batch of statements.
+	 */
+	protected interface BatchBuilder {
+
+		void addBatch(PreparedStatement statement) throws SQLException;
+	}
+
 	private String databaseURL;
 
+	/** The pragmas run when the connection is opened, in order. */
+	private final List<String> pragmas = new ArrayList<String>();
+
+	private Connection connection;
+
+	private final Map<String, PreparedStatement> statements = new HashMap<String, PreparedStatement>();
+
 	public DataStore(String databaseURL) {
 		setDatabaseURL(databaseURL);
-		
+
+	}
+
+	/**
+	 * Creates a data store whose connection is tuned by the SQLite pragmas set in the properties.
+	 *
+	 * @param databaseURL the database URL
+	 * @param properties the simulation properties
+	 */
+	public DataStore(String databaseURL, Properties properties) {
+		this(databaseURL);
+
+		// the page size must come before the journal mode is set to WAL
+		addPragma(properties, PAGE_SIZE_PROP, "page_size");
+		addPragma(properties, JOURNAL_MODE_PROP, "journal_mode");
+		addPragma(properties, SYNCHRONOUS_PROP, "synchronous");
+		addPragma(properties, CACHE_SIZE_PROP, "cache_size");
 	}
-	
+
+	private void addPragma(Properties properties, String propKey, String pragma) {
+		String value = properties.getProperty(propKey);
+		if (value == null) {
+			return;
+		}
+		if (!value.trim().matches("-?\\w+")) {
+			throw new IllegalArgumentException(propKey + " must be a number or a keyword.");
+		}
+		pragmas.add("PRAGMA " + pragma + " = " + value.trim());
+	}
+
+	/**
+	 * Gets the connection of this data store, opening it if needed. It must be used holding
+	 * {@link #getDatabaseLock()} and must not be closed.
+	 */
 	protected Connection getConnection() throws SQLException {
+		if (connection != null && !connection.isClosed()) {
+			return connection;
+		}
+		statements.clear();
 		try {
-			return DriverManager.getConnection(getDatabaseURL());
+			connection = DriverManager.getConnection(getDatabaseURL());
 		} catch (SQLException e) {
 			Log.print(e);
 			Log.printLine("Error while getting a connection to " + getDatabaseURL());
 			throw e;
 		}
+
+		Statement statement = connection.createStatement();
+		try {
+			for (String pragma : pragmas) {
+				statement.execute(pragma);
+			}
+		} finally {
+			statement.close();
+		}
+		return connection;
+	}
+
+	/**
+	 * Gets a statement prepared on the connection of this data store, which is kept for the
+	 * next time. It must be used holding {@link #getDatabaseLock()} and must not be closed.
+	 */
+	protected PreparedStatement prepare(String sql) throws SQLException {
+		Connection connection = getConnection();
+		PreparedStatement statement = statements.get(sql);
+		if (statement == null) {
+			statement = connection.prepareStatement(sql);
+			statements.put(sql, statement);
+		}
+		return statement;
+	}
+
+	/**
+	 * Gets the lock to be held while using the database of this data store.
+	 */
+	protected Lock getDatabaseLock() {
+		Lock lock = DATABASE_LOCKS.get(String.valueOf(getDatabaseURL()));
+		if (lock == null) {
+			Lock newLock = new ReentrantLock();
+			lock = DATABASE_LOCKS.putIfAbsent(String.valueOf(getDatabaseURL()), newLock);
+			if (lock == null) {
+				lock = newLock;
+			}
+		}
+		return lock;
+	}
+
+	/**
+	 * Runs statements that return nothing, e.g. creating a table and its indexes.
+	 *
+	 * @param sqls the statements
+	 */
+	protected void execute(String... sqls) throws SQLException {
+		Lock lock = getDatabaseLock();
+		lock.lock();
+		try {
+			Statement statement = getConnection().createStatement();
+			try {
+				for (String sql : sqls) {
+					statement.execute(sql);
+				}
+			} finally {
+				statement.close();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Runs a query with parameters.
+	 *
+	 * @param sql the query
+	 * @param mapper maps each row into an object
+	 * @param parameters the parameters of the query
+	 * @return the objects, in the order of the rows
+	 */
+	protected <T> List<T> query(String sql, final RowMapper<T> mapper, Object... parameters)
+			throws SQLException {
+		final List<T> rows = new ArrayList<T>();
+		forEachRow(sql, new RowHandler() {
+
+			@Override
+			public void handle(ResultSet rs) throws SQLException {
+				rows.add(mapper.map(rs));
+			}
+		}, parameters);
+		return rows;
+	}
+
+	/**
+	 * Runs a query with parameters, handling its rows one at a time.
+	 *
+	 * @param sql the query
+	 * @param handler handles each row
+	 * @param parameters the parameters of the query
+	 */
+	protected void forEachRow(String sql, RowHandler handler, Object... parameters) throws SQLException {
+		Lock lock = getDatabaseLock();
+		lock.lock();
+		try {
+			PreparedStatement statement = prepare(sql);
+			for (int i = 0; i < parameters.length; i++) {
+				statement.setObject(i + 1, parameters[i]);
+			}
+			ResultSet rs = statement.executeQuery();
+			try {
+				while (rs.next()) {
+					handler.handle(rs);
+				}
+			} finally {
+				rs.close();
+			}
+		} finally {
+			lock.unlock();
+		}
 	}
-	
+
+	/**
+	 * Runs a batch of statements in one transaction, which is rolled back if any of them fails.
+	 *
+	 * @param sql the statement
+	 * @param builder sets the parameters of each statement of the batch
+	 * @return <code>true</code> if the transaction was committed
+	 */
+	protected boolean executeBatch(String sql, BatchBuilder builder) {
+		Connection connection = null;
+
+		Lock lock = getDatabaseLock();
+		lock.lock();
+		try {
+			connection = getConnection();
+			connection.setAutoCommit(false);
+
+			PreparedStatement statement = prepare(sql);
+			// a batch that failed is left in the statement
+			statement.clearBatch();
+			builder.addBatch(statement);
+
+			if (executionFailed(statement.executeBatch())) {
+				Log.printLine("Rollback will be executed.");
+				connection.rollback();
+				return false;
+			}
+
+			connection.commit();
+			return true;
+		} catch (SQLException e) {
+			e.printStackTrace();
+			try {
+				if (connection != null) {
+					connection.rollback();
+				}
+			} catch (SQLException e1) {
+				e1.printStackTrace();
+				Log.printLine("Couldn't rollback transaction.");
+			}
+			return false;
+		} finally {
+			try {
+				if (connection != null && !connection.isClosed()) {
+					connection.setAutoCommit(true);
+				}
+			} catch (SQLException e) {
+				Log.print(e);
+				Log.printLine("Couldn't restore the auto-commit mode.");
+			}
+			lock.unlock();
+		}
+	}
+
+	private boolean executionFailed(int[] executeBatch) {
+		for (int i : executeBatch) {
+			if (i == PreparedStatement.EXECUTE_FAILED) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Closes the statements and the connection of this data store. It is opened again if the
+	 * data store is used afterwards.
+	 */
+	public void close() {
+		Lock lock = getDatabaseLock();
+		lock.lock();
+		try {
+			for (PreparedStatement statement : statements.values()) {
+				close(statement, null);
+			}
+			statements.clear();
+			close(null, connection);
+			connection = null;
+		} finally {
+			lock.unlock();
+		}
+	}
+
 	protected void close(Statement statement, Connection conn) {
 		if (statement != null) {
 			try {
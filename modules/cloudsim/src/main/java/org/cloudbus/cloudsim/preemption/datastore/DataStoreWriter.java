@@ -0,0 +1,291 @@
+package org.cloudbus.cloudsim.preemption.datastore;
+
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+import org.cloudbus.cloudsim.Log;
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.SimulationContext;
+
+/**
+ * A write-behind pipeline for the data stores: the simulation hands writes over a bounded queue
+ * to a single background thread, which runs them in the order they were submitted. A write must
+ * only use data that the simulation does not change afterwards, i.e. a snapshot or a batch it
+ * gave up, since it runs while the simulation goes on.
+ * <p>
+ * When the queue is full the simulation waits for room in it, so the writes behind are bounded.
+ * The deepest the queue got, how long the writes took and how long the simulation waited are
+ * kept so the capacity, given by the {@value #QUEUE_CAPACITY_PROP} property, can be tuned.
+ * <p>
+ * The writes submitted are done by {@link #flush()}, e.g. at the end of the simulation, and by
+ * {@link #close()}, after which the writer can not be used.
+ * <p>
+ * Simulations running on different threads, e.g. the cells of a partitioned datacenter, may share
+ * a writer, so one thread writes to each data store. The writes of each simulation are done in the
+ * order it submitted them.
+ *
+ * @since CloudSim Toolkit 4.0
+ */
+public class DataStoreWriter {
+
+	public static final String QUEUE_CAPACITY_PROP = "output_write_queue_capacity";
+
+	public static final int DEFAULT_QUEUE_CAPACITY = 16;
+
+	/** Tells the thread to stop; it is never run. */
+	private static final Runnable STOP = new Runnable() {
+
+		@Override
+		public void run() {
+		}
+	};
+
+	/** Lets {@link #flush()} know the writes before it are done; it is not counted as a write. */
+	private static final class Barrier implements Runnable {
+
+		final CountDownLatch done = new CountDownLatch(1);
+
+		@Override
+		public void run() {
+			done.countDown();
+		}
+	}
+
+	private final class Writer extends Thread {
+
+		Writer(String name) {
+			super(name);
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			// the data stores may log the simulation time; the default context needs no binding
+			if (CloudSim.getContext() != context) {
+				CloudSim.setContext(context);
+			}
+			try {
+				Runnable write;
+				while ((write = queue.take()) != STOP) {
+					if (write instanceof Barrier) {
+						write.run();
+						continue;
+					}
+					long start = System.nanoTime();
+					try {
+						write.run();
+					} catch (RuntimeException e) {
+						failedWrites++;
+						Log.printLine(getName() + ": a write failed: " + e);
+					}
+					long latency = System.nanoTime() - start;
+					writeTime += latency;
+					maxWriteTime = Math.max(maxWriteTime, latency);
+					writes++;
+				}
+			} catch (InterruptedException e) {
+				// stopped without draining the queue
+			}
+		}
+	}
+
+	private final BlockingQueue<Runnable> queue;
+
+	private final SimulationContext context;
+
+	private final Writer writer;
+
+	private volatile boolean closed;
+
+	private int submittedWrites;
+
+	private int maxQueueDepth;
+
+	private int blockedSubmits;
+
+	private long blockedTime;
+
+	private volatile int writes;
+
+	private volatile int failedWrites;
+
+	private volatile long writeTime;
+
+	private volatile long maxWriteTime;
+
+	/**
+	 * Creates a writer whose thread has a given name.
+	 *
+	 * @param name the name of the thread
+	 * @param capacity the most writes waiting in the queue
+	 */
+	public DataStoreWriter(String name, int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException(QUEUE_CAPACITY_PROP + " must be positive.");
+		}
+		this.queue = new ArrayBlockingQueue<Runnable>(capacity);
+		this.context = CloudSim.getContext();
+		this.writer = new Writer(name);
+		this.writer.start();
+	}
+
+	/**
+	 * Gets the queue capacity set in the properties, or the default one.
+	 *
+	 * @param properties the simulation properties
+	 * @return the queue capacity
+	 */
+	public static int getQueueCapacity(Properties properties) {
+		return properties.getProperty(QUEUE_CAPACITY_PROP) == null ? DEFAULT_QUEUE_CAPACITY
+				: Integer.parseInt(properties.getProperty(QUEUE_CAPACITY_PROP));
+	}
+
+	/**
+	 * Hands a write to the background thread, waiting for room in the queue if it is full.
+	 *
+	 * @param write the write, which must not use data changed by the simulation afterwards
+	 */
+	public synchronized void submit(Runnable write) {
+		if (closed) {
+			throw new IllegalStateException(writer.getName() + " is closed.");
+		}
+		submittedWrites++;
+		enqueue(write);
+	}
+
+	private synchronized void enqueue(Runnable write) {
+		if (queue.offer(write)) {
+			maxQueueDepth = Math.max(maxQueueDepth, queue.size());
+			return;
+		}
+
+		// the queue is full
+		maxQueueDepth = queue.size() + queue.remainingCapacity();
+		blockedSubmits++;
+		long start = System.nanoTime();
+		try {
+			queue.put(write);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for room in the write queue.", e);
+		} finally {
+			blockedTime += System.nanoTime() - start;
+		}
+	}
+
+	/**
+	 * Waits until the writes submitted so far are done.
+	 */
+	public void flush() {
+		Barrier barrier = new Barrier();
+		synchronized (this) {
+			if (closed) {
+				// all the writes were done when closing
+				return;
+			}
+			enqueue(barrier);
+		}
+		try {
+			barrier.done.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for the writes.", e);
+		}
+	}
+
+	/**
+	 * Does the writes submitted and stops the background thread.
+	 */
+	public void close() {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			enqueue(STOP);
+			closed = true;
+		}
+		boolean interrupted = false;
+		while (writer.isAlive()) {
+			try {
+				writer.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Gets the number of writes submitted.
+	 */
+	public int getSubmittedWrites() {
+		return submittedWrites;
+	}
+
+	/**
+	 * Gets the number of writes done, including the failed ones.
+	 */
+	public int getWrites() {
+		return writes;
+	}
+
+	/**
+	 * Gets the number of writes that threw an exception.
+	 */
+	public int getFailedWrites() {
+		return failedWrites;
+	}
+
+	/**
+	 * Gets the most writes that were in the queue at once.
+	 */
+	public int getMaxQueueDepth() {
+		return maxQueueDepth;
+	}
+
+	/**
+	 * Gets the number of writes the simulation had to wait to submit because the queue was full.
+	 */
+	public int getBlockedSubmits() {
+		return blockedSubmits;
+	}
+
+	/**
+	 * Gets how long the simulation waited for room in the queue, in nanoseconds.
+	 */
+	public long getBlockedTime() {
+		return blockedTime;
+	}
+
+	/**
+	 * Gets how long the writes took altogether, in nanoseconds.
+	 */
+	public long getWriteTime() {
+		return writeTime;
+	}
+
+	/**
+	 * Gets how long the slowest write took, in nanoseconds.
+	 */
+	public long getMaxWriteTime() {
+		return maxWriteTime;
+	}
+
+	/**
+	 * Logs the queue depth, the write latencies and how long the simulation waited.
+	 */
+	public void printMetrics() {
+		Log.printConcatLine(writer.getName(), ": ", writes, " writes (", failedWrites, " failed) in ",
+				writeTime / 1000000, " ms, the slowest in ", maxWriteTime / 1000000,
+				" ms, at most ", maxQueueDepth, " queued; the simulation waited ", blockedSubmits,
+				" times for ", blockedTime / 1000000, " ms.");
+	}
+}
@@ -0,0 +1,613 @@
+package org.cloudbus.cloudsim.preemption.datastore;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+
+import org.cloudbus.cloudsim.preemption.PreemptableVm;
+import org.cloudbus.cloudsim.preemption.Task;
+import org.cloudbus.cloudsim.preemption.TaskState;
+import org.cloudbus.cloudsim.preemption.util.PriorityResources;
+
+/**
+ * The state of a simulation at a checkpoint, kept in primitive arrays and written to a binary
+ * file, which is read back as a whole to resume the simulation from it. It has the state of the
+ * datacenter, i.e. the resources admitted and the quotas of each priority and the running VMs,
+ * with their hosts, and the waiting ones, and the state of the broker, i.e. its position in the
+ * trace, the tasks loaded but not submitted yet and the finished tasks not stored yet.
+ * <p>
+ * The file is little-endian. It has:
+ * <ul>
+ * <li>the magic number {@link #MAGIC} and the format {@link #VERSION}, as ints;
+ * <li>the time of the checkpoint, as a double, and the number of priorities, as an int;
+ * <li>the admitted resources of each priority, as doubles, followed by a byte telling whether
+ * there are quotas and, if so, the quota of each priority, as doubles;
+ * <li>the number of running VMs and the number of waiting VMs, as ints, followed by the VMs, the
+ * running ones first, each with its id, user id, priority, number of preemptions, of backfilling
+ * choices and of migrations and the id of its host, as ints, and its CPU request, memory request,
+ * submit time, runtime, runtime reached at the checkpoint and first time allocated, as doubles;
+ * <li>a byte telling whether the broker state follows and, if so, the next interval index, the id
+ * of the last task read from the trace and the number of tasks submitted and concluded, as ints,
+ * and the time of the next interval loading, as a double, negative if there is none;
+ * <li>the number of tasks not submitted yet, as an int, followed by the tasks, each with its id
+ * and priority, as ints, and its submit time, runtime, CPU request and memory request, as doubles;
+ * <li>the number of finished tasks not stored yet, as an int, followed by the tasks, each with its
+ * id, priority, number of preemptions, of backfilling choices and of migrations, as ints, and its
+ * CPU request, submit time, finish time, runtime and first time allocated, as doubles.
+ * </ul>
+ * The events of the simulation are not written, as they are given by this state: the VMs running
+ * are destroyed when they reach their runtime, the tasks not submitted yet arrive at their submit
+ * time and the periodic events of the datacenter start again from the time of the checkpoint.
+ *
+ * @since CloudSim Toolkit 4.0
+ */
+public class DatacenterSnapshot {
+
+	/** The format of the checkpoints, <code>sqlite</code> (the default) or <code>binary</code>. */
+	public static final String CHECKPOINT_FORMAT_PROP = "checkpoint_format";
+
+	/** The binary checkpoint the simulation is resumed from. */
+	public static final String SNAPSHOT_FILE_PROP = "checkpoint_snapshot_file";
+
+	/** "CSSN" in ASCII. */
+	public static final int MAGIC = 0x4353534E;
+
+	public static final int VERSION = 1;
+
+	static final int VM_RECORD_SIZE = 7 * 4 + 6 * 8;
+
+	static final int TASK_RECORD_SIZE = 2 * 4 + 4 * 8;
+
+	static final int RESULT_RECORD_SIZE = 5 * 4 + 5 * 8;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final double time;
+
+	private final int numberOfPriorities;
+
+	private final double[] admittedRequests;
+
+	private double[] quotas;
+
+	private final VmColumns runningVms = new VmColumns();
+
+	private final VmColumns waitingVms = new VmColumns();
+
+	private boolean withBrokerState;
+	private int intervalIndex;
+	private int lastTaskId;
+	private int submittedTasks;
+	private int concludedTasks;
+	private double nextLoadingTime = -1;
+
+	private final List<Task> pendingTasks = new ArrayList<Task>();
+
+	private final TaskResultBuffer pendingResults = new TaskResultBuffer(0);
+
+	/**
+	 * Creates an empty snapshot.
+	 *
+	 * @param time the time of the checkpoint
+	 * @param numberOfPriorities the number of priorities of the datacenter
+	 */
+	public DatacenterSnapshot(double time, int numberOfPriorities) {
+		if (numberOfPriorities <= 0) {
+			throw new IllegalArgumentException("The number of priorities must be a positive integer.");
+		}
+		this.time = time;
+		this.numberOfPriorities = numberOfPriorities;
+		this.admittedRequests = new double[numberOfPriorities];
+	}
+
+	/**
+	 * Tells whether the checkpoints are written in the binary format.
+	 *
+	 * @param properties the simulation properties
+	 * @return <code>true</code> if the {@value #CHECKPOINT_FORMAT_PROP} property is binary
+	 */
+	public static boolean isBinaryFormat(Properties properties) {
+		String format = properties.getProperty(CHECKPOINT_FORMAT_PROP);
+		if (format == null || format.equals("sqlite")) {
+			return false;
+		} else if (format.equals("binary")) {
+			return true;
+		}
+		throw new IllegalArgumentException("Unknown " + CHECKPOINT_FORMAT_PROP + ": " + format);
+	}
+
+	/**
+	 * Gets the file of the binary checkpoint made at a time, in the checkpoint directory and named
+	 * as the SQLite checkpoints are.
+	 *
+	 * @param properties the simulation properties
+	 * @param time the time of the checkpoint
+	 * @return the file
+	 */
+	public static File getCheckpointFile(Properties properties, double time) {
+		return new File(properties.getProperty(PreemptableVmDataStore.CHECKPOINT_DIR_PROP)
+				+ "snapshot-" + properties.getProperty("number_of_hosts") + "-hosts-"
+				+ String.valueOf(time));
+	}
+
+	/**
+	 * Gets the binary checkpoint given by the {@value #SNAPSHOT_FILE_PROP} property, or
+	 * <code>null</code> if there is none.
+	 *
+	 * @param properties the simulation properties
+	 * @return the file
+	 */
+	public static File getSnapshotFile(Properties properties) {
+		String file = properties.getProperty(SNAPSHOT_FILE_PROP);
+		return file == null ? null : new File(file);
+	}
+
+	public double getTime() {
+		return time;
+	}
+
+	public int getNumberOfPriorities() {
+		return numberOfPriorities;
+	}
+
+	public void setAdmittedRequests(PriorityResources admittedRequests) {
+		checkPriorities(admittedRequests);
+		for (int priority = 0; priority < numberOfPriorities; priority++) {
+			this.admittedRequests[priority] = admittedRequests.get(priority);
+		}
+	}
+
+	public PriorityResources getAdmittedRequests() {
+		return toPriorityResources(admittedRequests);
+	}
+
+	public void setQuotas(PriorityResources quotas) {
+		checkPriorities(quotas);
+		this.quotas = new double[numberOfPriorities];
+		for (int priority = 0; priority < numberOfPriorities; priority++) {
+			this.quotas[priority] = quotas.get(priority);
+		}
+	}
+
+	/**
+	 * Gets the quotas of the admission controller, or <code>null</code> if it has none.
+	 */
+	public PriorityResources getQuotas() {
+		return quotas == null ? null : toPriorityResources(quotas);
+	}
+
+	private void checkPriorities(PriorityResources resources) {
+		if (resources.getNumberOfPriorities() != numberOfPriorities) {
+			throw new IllegalArgumentException("The resources must have " + numberOfPriorities
+					+ " priorities.");
+		}
+	}
+
+	private PriorityResources toPriorityResources(double[] amounts) {
+		PriorityResources resources = new PriorityResources(numberOfPriorities);
+		for (int priority = 0; priority < numberOfPriorities; priority++) {
+			resources.set(priority, amounts[priority]);
+		}
+		return resources;
+	}
+
+	/**
+	 * Adds running VMs, reading them at the time of the checkpoint.
+	 *
+	 * @param vms the VMs, each allocated to a host
+	 */
+	public void addRunningVms(Collection<PreemptableVm> vms) {
+		for (PreemptableVm vm : vms) {
+			runningVms.add(vm, vm.getHost().getId(), time);
+		}
+	}
+
+	/**
+	 * Adds waiting VMs, reading them at the time of the checkpoint.
+	 *
+	 * @param vms the VMs
+	 */
+	public void addWaitingVms(Collection<PreemptableVm> vms) {
+		for (PreemptableVm vm : vms) {
+			waitingVms.add(vm, vm.getLastHostId(), time);
+		}
+	}
+
+	/**
+	 * Creates the running VMs, each with the id of its host as the last host id and with the
+	 * runtime it reached at the time of the checkpoint, as if it was preempted then.
+	 *
+	 * @return the VMs, in the order they were added
+	 */
+	public List<PreemptableVm> getRunningVms() {
+		return runningVms.toVms();
+	}
+
+	/**
+	 * Creates the waiting VMs.
+	 *
+	 * @return the VMs, in the order they were added
+	 */
+	public List<PreemptableVm> getWaitingVms() {
+		return waitingVms.toVms();
+	}
+
+	public int getNumberOfRunningVms() {
+		return runningVms.size;
+	}
+
+	public int getNumberOfWaitingVms() {
+		return waitingVms.size;
+	}
+
+	/**
+	 * Sets the position of the broker in the trace.
+	 *
+	 * @param intervalIndex the index of the next interval to be loaded
+	 * @param lastTaskId the id of the last task read from the trace
+	 * @param submittedTasks the number of tasks submitted
+	 * @param concludedTasks the number of tasks concluded
+	 * @param nextLoadingTime the time the next interval is loaded, negative if there is none
+	 */
+	public void setBrokerState(int intervalIndex, int lastTaskId, int submittedTasks,
+			int concludedTasks, double nextLoadingTime) {
+		this.withBrokerState = true;
+		this.intervalIndex = intervalIndex;
+		this.lastTaskId = lastTaskId;
+		this.submittedTasks = submittedTasks;
+		this.concludedTasks = concludedTasks;
+		this.nextLoadingTime = nextLoadingTime;
+	}
+
+	public boolean hasBrokerState() {
+		return withBrokerState;
+	}
+
+	public int getIntervalIndex() {
+		return intervalIndex;
+	}
+
+	public int getLastTaskId() {
+		return lastTaskId;
+	}
+
+	public int getSubmittedTasks() {
+		return submittedTasks;
+	}
+
+	public int getConcludedTasks() {
+		return concludedTasks;
+	}
+
+	public double getNextLoadingTime() {
+		return nextLoadingTime;
+	}
+
+	/**
+	 * Adds a task loaded from the trace that was not submitted yet.
+	 *
+	 * @param task the task
+	 */
+	public void addPendingTask(Task task) {
+		pendingTasks.add(task);
+	}
+
+	/**
+	 * Gets the tasks not submitted yet, in the order they were added.
+	 */
+	public List<Task> getPendingTasks() {
+		return pendingTasks;
+	}
+
+	/**
+	 * Adds finished tasks that were not stored yet.
+	 *
+	 * @param tasks the tasks
+	 */
+	public void addPendingResults(List<TaskState> tasks) {
+		for (TaskState task : tasks) {
+			pendingResults.add(task);
+		}
+	}
+
+	/**
+	 * Gets the finished tasks not stored yet, in the order they were added.
+	 */
+	public List<TaskState> getPendingResults() {
+		return pendingResults.toList();
+	}
+
+	/**
+	 * Writes this snapshot to a file.
+	 *
+	 * @param file the file, which is overwritten if it exists
+	 */
+	public void write(File file) throws IOException {
+		FileOutputStream output = new FileOutputStream(file);
+		try {
+			FileChannel channel = output.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putDouble(time);
+			buffer.putInt(numberOfPriorities);
+			for (int priority = 0; priority < numberOfPriorities; priority++) {
+				ensureRemaining(buffer, channel, 8);
+				buffer.putDouble(admittedRequests[priority]);
+			}
+			ensureRemaining(buffer, channel, 1);
+			buffer.put((byte) (quotas == null ? 0 : 1));
+			for (int priority = 0; quotas != null && priority < numberOfPriorities; priority++) {
+				ensureRemaining(buffer, channel, 8);
+				buffer.putDouble(quotas[priority]);
+			}
+
+			ensureRemaining(buffer, channel, 8);
+			buffer.putInt(runningVms.size);
+			buffer.putInt(waitingVms.size);
+			runningVms.write(buffer, channel);
+			waitingVms.write(buffer, channel);
+
+			ensureRemaining(buffer, channel, 1 + 4 * 4 + 8 + 4);
+			buffer.put((byte) (withBrokerState ? 1 : 0));
+			if (withBrokerState) {
+				buffer.putInt(intervalIndex);
+				buffer.putInt(lastTaskId);
+				buffer.putInt(submittedTasks);
+				buffer.putInt(concludedTasks);
+				buffer.putDouble(nextLoadingTime);
+			}
+
+			buffer.putInt(pendingTasks.size());
+			for (Task task : pendingTasks) {
+				ensureRemaining(buffer, channel, TASK_RECORD_SIZE);
+				buffer.putInt(task.getId());
+				buffer.putInt(task.getPriority());
+				buffer.putDouble(task.getSubmitTime());
+				buffer.putDouble(task.getRuntime());
+				buffer.putDouble(task.getCpuReq());
+				buffer.putDouble(task.getMemReq());
+			}
+
+			ensureRemaining(buffer, channel, 4);
+			buffer.putInt(pendingResults.size());
+			for (int i = 0; i < pendingResults.size(); i++) {
+				ensureRemaining(buffer, channel, RESULT_RECORD_SIZE);
+				buffer.putInt(pendingResults.getTaskId(i));
+				buffer.putInt(pendingResults.getPriority(i));
+				buffer.putInt(pendingResults.getPreemptions(i));
+				buffer.putInt(pendingResults.getBackfillingChoices(i));
+				buffer.putInt(pendingResults.getMigrations(i));
+				buffer.putDouble(pendingResults.getCpuReq(i));
+				buffer.putDouble(pendingResults.getSubmitTime(i));
+				buffer.putDouble(pendingResults.getFinishTime(i));
+				buffer.putDouble(pendingResults.getRuntime(i));
+				buffer.putDouble(pendingResults.getFirstTimeAllocated(i));
+			}
+			flush(buffer, channel);
+		} finally {
+			output.close();
+		}
+	}
+
+	/**
+	 * Reads a snapshot from a file, which is memory mapped and read as a whole.
+	 *
+	 * @param file the file written by {@link #write(File)}
+	 * @return the snapshot
+	 */
+	public static DatacenterSnapshot read(File file) throws IOException {
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = input.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException(file + " is too big for a snapshot.");
+			}
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+					.order(ByteOrder.LITTLE_ENDIAN);
+			try {
+				return read(buffer, file);
+			} catch (BufferUnderflowException e) {
+				throw new IllegalArgumentException(file + " is truncated.");
+			}
+		} finally {
+			// the mapping stays valid after the file is closed
+			input.close();
+		}
+	}
+
+	private static DatacenterSnapshot read(ByteBuffer buffer, File file) {
+		if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+			throw new IllegalArgumentException(file + " is not a snapshot file.");
+		}
+		if (buffer.getInt() != VERSION) {
+			throw new IllegalArgumentException(file + " has an unsupported snapshot version.");
+		}
+
+		DatacenterSnapshot snapshot = new DatacenterSnapshot(buffer.getDouble(), buffer.getInt());
+		for (int priority = 0; priority < snapshot.numberOfPriorities; priority++) {
+			snapshot.admittedRequests[priority] = buffer.getDouble();
+		}
+		if (buffer.get() != 0) {
+			snapshot.quotas = new double[snapshot.numberOfPriorities];
+			for (int priority = 0; priority < snapshot.numberOfPriorities; priority++) {
+				snapshot.quotas[priority] = buffer.getDouble();
+			}
+		}
+
+		int running = buffer.getInt();
+		int waiting = buffer.getInt();
+		if (running < 0 || waiting < 0
+				|| ((long) running + waiting) * VM_RECORD_SIZE > buffer.remaining()) {
+			throw new IllegalArgumentException(file + " is truncated.");
+		}
+		snapshot.runningVms.read(buffer, running);
+		snapshot.waitingVms.read(buffer, waiting);
+
+		if (buffer.get() != 0) {
+			snapshot.setBrokerState(buffer.getInt(), buffer.getInt(), buffer.getInt(),
+					buffer.getInt(), buffer.getDouble());
+		}
+
+		int tasks = buffer.getInt();
+		for (int i = 0; i < tasks; i++) {
+			int id = buffer.getInt();
+			int priority = buffer.getInt();
+			snapshot.pendingTasks.add(new Task(id, buffer.getDouble(), buffer.getDouble(),
+					buffer.getDouble(), buffer.getDouble(), priority));
+		}
+
+		int results = buffer.getInt();
+		for (int i = 0; i < results; i++) {
+			int taskId = buffer.getInt();
+			int priority = buffer.getInt();
+			int preemptions = buffer.getInt();
+			int backfillingChoices = buffer.getInt();
+			int migrations = buffer.getInt();
+			double cpuReq = buffer.getDouble();
+			double submitTime = buffer.getDouble();
+			double finishTime = buffer.getDouble();
+			double runtime = buffer.getDouble();
+			snapshot.pendingResults.add(taskId, cpuReq, submitTime, finishTime, runtime, priority,
+					preemptions, backfillingChoices, migrations, buffer.getDouble());
+		}
+		return snapshot;
+	}
+
+	private static void ensureRemaining(ByteBuffer buffer, FileChannel channel, int bytes)
+			throws IOException {
+		if (buffer.remaining() < bytes) {
+			flush(buffer, channel);
+		}
+	}
+
+	private static void flush(ByteBuffer buffer, FileChannel channel) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/** The VMs of a snapshot, in parallel primitive arrays that grow as needed. */
+	private static class VmColumns {
+
+		private int[] ids = new int[1];
+		private int[] userIds = new int[1];
+		private int[] priorities = new int[1];
+		private int[] preemptions = new int[1];
+		private int[] backfillingChoices = new int[1];
+		private int[] migrations = new int[1];
+		private int[] hostIds = new int[1];
+
+		private double[] cpuReqs = new double[1];
+		private double[] memReqs = new double[1];
+		private double[] submitTimes = new double[1];
+		private double[] runtimes = new double[1];
+		private double[] actualRuntimes = new double[1];
+		private double[] firstTimesAllocated = new double[1];
+
+		private int size;
+
+		void add(PreemptableVm vm, int hostId, double time) {
+			if (size == ids.length) {
+				grow(2 * size);
+			}
+			ids[size] = vm.getId();
+			userIds[size] = vm.getUserId();
+			priorities[size] = vm.getPriority();
+			preemptions[size] = vm.getNumberOfPreemptions();
+			backfillingChoices[size] = vm.getNumberOfBackfillingChoice();
+			migrations[size] = vm.getNumberOfMigrations();
+			hostIds[size] = hostId;
+			cpuReqs[size] = vm.getMips();
+			memReqs[size] = vm.getRam();
+			submitTimes[size] = vm.getSubmitTime();
+			runtimes[size] = vm.getRuntime();
+			actualRuntimes[size] = vm.getActualRuntime(time);
+			firstTimesAllocated[size] = vm.getFirstTimeAllocated();
+			size++;
+		}
+
+		List<PreemptableVm> toVms() {
+			List<PreemptableVm> vms = new ArrayList<PreemptableVm>(size);
+			for (int i = 0; i < size; i++) {
+				PreemptableVm vm = new PreemptableVm(ids[i], userIds[i], cpuReqs[i], memReqs[i],
+						submitTimes[i], priorities[i], runtimes[i]);
+				vm.setActualRuntime(actualRuntimes[i]);
+				vm.setLastHostId(hostIds[i]);
+				vm.setNumberOfPreemptions(preemptions[i]);
+				vm.setNumberOfBackfillingChoice(backfillingChoices[i]);
+				vm.setNumberOfMigrations(migrations[i]);
+				vm.setFirstTimeAllocated(firstTimesAllocated[i]);
+				vms.add(vm);
+			}
+			return vms;
+		}
+
+		void write(ByteBuffer buffer, FileChannel channel) throws IOException {
+			for (int i = 0; i < size; i++) {
+				ensureRemaining(buffer, channel, VM_RECORD_SIZE);
+				buffer.putInt(ids[i]);
+				buffer.putInt(userIds[i]);
+				buffer.putInt(priorities[i]);
+				buffer.putInt(preemptions[i]);
+				buffer.putInt(backfillingChoices[i]);
+				buffer.putInt(migrations[i]);
+				buffer.putInt(hostIds[i]);
+				buffer.putDouble(cpuReqs[i]);
+				buffer.putDouble(memReqs[i]);
+				buffer.putDouble(submitTimes[i]);
+				buffer.putDouble(runtimes[i]);
+				buffer.putDouble(actualRuntimes[i]);
+				buffer.putDouble(firstTimesAllocated[i]);
+			}
+		}
+
+		void read(ByteBuffer buffer, int count) {
+			grow(Math.max(1, count));
+			for (size = 0; size < count; size++) {
+				ids[size] = buffer.getInt();
+				userIds[size] = buffer.getInt();
+				priorities[size] = buffer.getInt();
+				preemptions[size] = buffer.getInt();
+				backfillingChoices[size] = buffer.getInt();
+				migrations[size] = buffer.getInt();
+				hostIds[size] = buffer.getInt();
+				cpuReqs[size] = buffer.getDouble();
+				memReqs[size] = buffer.getDouble();
+				submitTimes[size] = buffer.getDouble();
+				runtimes[size] = buffer.getDouble();
+				actualRuntimes[size] = buffer.getDouble();
+				firstTimesAllocated[size] = buffer.getDouble();
+			}
+		}
+
+		private void grow(int capacity) {
+			ids = Arrays.copyOf(ids, capacity);
+			userIds = Arrays.copyOf(userIds, capacity);
+			priorities = Arrays.copyOf(priorities, capacity);
+			preemptions = Arrays.copyOf(preemptions, capacity);
+			backfillingChoices = Arrays.copyOf(backfillingChoices, capacity);
+			migrations = Arrays.copyOf(migrations, capacity);
+			hostIds = Arrays.copyOf(hostIds, capacity);
+			cpuReqs = Arrays.copyOf(cpuReqs, capacity);
+			memReqs = Arrays.copyOf(memReqs, capacity);
+			submitTimes = Arrays.copyOf(submitTimes, capacity);
+			runtimes = Arrays.copyOf(runtimes, capacity);
+			actualRuntimes = Arrays.copyOf(actualRuntimes, capacity);
+			firstTimesAllocated = Arrays.copyOf(firstTimesAllocated, capacity);
+		}
+	}
+}
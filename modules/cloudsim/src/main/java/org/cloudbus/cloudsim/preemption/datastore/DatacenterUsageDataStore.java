@@ -1,65 +1,79 @@
 package org.cloudbus.cloudsim.preemption.datastore;
 
-import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
 
 import org.cloudbus.cloudsim.Log;
 import org.cloudbus.cloudsim.preemption.DatacenterInfo;
+import org.cloudbus.cloudsim.preemption.policies.preemption.PreemptionPolicy;
 
+/**
+ * Stores the {@link DatacenterInfo} collected by a datacenter, with a column for the VMs and
+ * the resources of each of the number_of_priorities priorities (3 by default).
+ */
 public class DatacenterUsageDataStore extends DataStore {
 
 	public static final String DATABASE_URL_PROP = "datacenter_database_url";
 	private static final String DATACENTER_TABLE_NAME = "datacenterusage";
-	
+
+	private final int numberOfPriorities;
+
+	private final String insertDatacenterInfoSql;
+
 	public DatacenterUsageDataStore(Properties properties) {
-		super(properties.getProperty(DATABASE_URL_PROP));
+		super(properties.getProperty(DATABASE_URL_PROP), properties);
+
+		this.numberOfPriorities = properties.getProperty(PreemptionPolicy.NUMBER_OF_PRIORITIES_PROP) == null
+				? PreemptionPolicy.DEFAULT_NUMBER_OF_PRIORITIES
+				: Integer.parseInt(properties.getProperty(PreemptionPolicy.NUMBER_OF_PRIORITIES_PROP));
+		if (numberOfPriorities <= 0) {
+			throw new IllegalArgumentException("The number of priorities must be a positive integer.");
+		}
+
+		// the columns of the VMs running of each priority, then the ones of the VMs waiting
+		StringBuilder columns = new StringBuilder("time, vmsRunning");
+		StringBuilder columnTypes = new StringBuilder("time REAL NOT NULL, vmsRunning INTEGER, ");
+		for (int priority = 0; priority < numberOfPriorities; priority++) {
+			columns.append(", vmsRunningP").append(priority).append(", resourcesRunningP").append(priority);
+			columnTypes.append("vmsRunningP").append(priority).append(" INTEGER, resourcesRunningP")
+					.append(priority).append(" REAL, ");
+		}
+		columns.append(", vmsForScheduling");
+		columnTypes.append("vmsForScheduling INTEGER, ");
+		for (int priority = 0; priority < numberOfPriorities; priority++) {
+			columns.append(", vmsForSchedulingP").append(priority).append(", resourcesWaitingP").append(priority);
+			columnTypes.append("vmsForSchedulingP").append(priority).append(" INTEGER, resourcesWaitingP")
+					.append(priority).append(" REAL, ");
+		}
+
+		StringBuilder parameters = new StringBuilder("?");
+		for (int i = 1; i < 3 + 4 * numberOfPriorities; i++) {
+			parameters.append(", ?");
+		}
+		this.insertDatacenterInfoSql = "INSERT INTO " + DATACENTER_TABLE_NAME + " (" + columns + ") VALUES("
+				+ parameters + ")";
 
-		Statement statement = null;
-		Connection connection = null;
 		try {
 			Log.printLine("datacenter_database_url=" + getDatabaseURL());
 
-			Class.forName(DATASTORE_SQLITE_DRIVER);
-
-			connection = getConnection();
-			statement = connection.createStatement();
-			statement
-					.execute("CREATE TABLE IF NOT EXISTS datacenterusage("
-							+ "time REAL NOT NULL, "
-							+ "vmsRunning INTEGER, "
-							+ "vmsRunningP0 INTEGER, "
-							+ "resourcesRunningP0 REAL, "
-							+ "vmsRunningP1 INTEGER, "
-							+ "resourcesRunningP1 REAL, "
-							+ "vmsRunningP2 INTEGER, "
-							+ "resourcesRunningP2 REAL, "
-							+ "vmsForScheduling INTEGER, "
-							+ "vmsForSchedulingP0 INTEGER, "
-							+ "resourcesWaitingP0 REAL, "
-							+ "vmsForSchedulingP1 INTEGER, "
-							+ "resourcesWaitingP1 REAL, "
-							+ "vmsForSchedulingP2 INTEGER, "
-							+ "resourcesWaitingP2 REAL, "
+			execute("CREATE TABLE IF NOT EXISTS datacenterusage("
+							+ columnTypes
 							+ "PRIMARY KEY (time)"
 							+ ")");
 		} catch (Exception e) {
 			e.printStackTrace();
 			Log.printLine("Error while initializing the Utilization database store.");
-		} finally {
-			close(statement, connection);
 		}
 	}
-	
-	private static final String INSERT_DATACENTER_INFO_SQL = "INSERT INTO " + DATACENTER_TABLE_NAME
-			+ " VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
-	public boolean addDatacenterInfo(List<DatacenterInfo> datacenterInfo) {
+	public int getNumberOfPriorities() {
+		return numberOfPriorities;
+	}
+
+	public boolean addDatacenterInfo(final List<DatacenterInfo> datacenterInfo) {
 		if (datacenterInfo == null) {
 			Log.printLine("datacenter must no be null.");
 			return false;
@@ -69,106 +83,69 @@ public class DatacenterUsageDataStore extends DataStore {
 		if (datacenterInfo.isEmpty()) {
 			return true;
 		}
-		
-		PreparedStatement insertMemberStatement = null;
-		
-		Connection connection = null;
-		
-		try {
-			connection = getConnection();
-			connection.setAutoCommit(false);
-			
-			insertMemberStatement = connection.prepareStatement(INSERT_DATACENTER_INFO_SQL);
-			insertMemberStatement = connection
-					.prepareStatement(INSERT_DATACENTER_INFO_SQL);
-			
-			for (DatacenterInfo info : datacenterInfo) {
-				insertMemberStatement.setDouble(1, info.getTime());
-				insertMemberStatement.setInt(2, info.getVmsRunning());
-				insertMemberStatement.setInt(3, info.getVmsRunningP0());
-				insertMemberStatement.setDouble(4, info.getResourcesRunningP0());
-				insertMemberStatement.setInt(5, info.getVmsRunningP1());
-				insertMemberStatement.setDouble(6, info.getResourcesRunningP1());
-				insertMemberStatement.setInt(7, info.getVmsRunningP2());
-				insertMemberStatement.setDouble(8, info.getResourcesRunningP2());
-				insertMemberStatement.setInt(9, info.getVmsForScheduling());
-				insertMemberStatement.setInt(10, info.getVmsForSchedulingP0());
-				insertMemberStatement.setDouble(11, info.getResourcesWaitingP0());
-				insertMemberStatement.setInt(12, info.getVmsForSchedulingP1());
-				insertMemberStatement.setDouble(13, info.getResourcesWaitingP1());
-				insertMemberStatement.setInt(14, info.getVmsForSchedulingP2());
-				insertMemberStatement.setDouble(15, info.getResourcesWaitingP2());
-				insertMemberStatement.addBatch();
-			}
-			
-			int[] executeBatch = insertMemberStatement.executeBatch();
-			
-			if (executionFailed(connection, executeBatch)){
-				Log.printLine("Rollback will be executed.");
-				connection.rollback();
+		for (DatacenterInfo info : datacenterInfo) {
+			if (info.getNumberOfPriorities() > numberOfPriorities) {
+				Log.printLine("The datacenter info of time " + info.getTime() + " has "
+						+ info.getNumberOfPriorities() + " priorities, but the store has " + numberOfPriorities + ".");
 				return false;
 			}
-			
-			connection.commit();
-			return true;
-		} catch (SQLException e) {
-			e.printStackTrace();
-			Log.printLine("Couldn't add datacenter info entries.");
-			try {
-				if (connection != null) {
-					connection.rollback();
-				}
-			} catch (SQLException e1) {
-				e1.printStackTrace();
-				Log.printLine("Couldn't rollback transaction.");
-			}
-			return false;
-		} finally {
-			close(insertMemberStatement, connection);
 		}
-	}
-	
-	private boolean executionFailed(Connection connection, int[] executeBatch) {
-		for (int i : executeBatch) {
-			if (i == PreparedStatement.EXECUTE_FAILED) {
-				return true;
+
+		boolean added = executeBatch(insertDatacenterInfoSql, new BatchBuilder() {
+
+			@Override
+			public void addBatch(PreparedStatement insertMemberStatement) throws SQLException {
+				for (DatacenterInfo info : datacenterInfo) {
+					int column = 1;
+					insertMemberStatement.setDouble(column++, info.getTime());
+					insertMemberStatement.setInt(column++, info.getVmsRunning());
+					for (int priority = 0; priority < numberOfPriorities; priority++) {
+						insertMemberStatement.setInt(column++, info.getVmsRunning(priority));
+						insertMemberStatement.setDouble(column++, info.getResourcesRunning(priority));
+					}
+					insertMemberStatement.setInt(column++, info.getVmsForScheduling());
+					for (int priority = 0; priority < numberOfPriorities; priority++) {
+						insertMemberStatement.setInt(column++, info.getVmsForScheduling(priority));
+						insertMemberStatement.setDouble(column++, info.getResourcesWaiting(priority));
+					}
+					insertMemberStatement.addBatch();
+				}
 			}
+		});
+
+		if (!added) {
+			Log.printLine("Couldn't add datacenter info entries.");
 		}
-		return false;
+		return added;
 	}
 
 	private static final String SELECT_ALL_ENTRIES_SQL = "SELECT * FROM " + DATACENTER_TABLE_NAME;
+
+	private static final String SELECT_ENTRIES_BEFORE_SQL = "SELECT * FROM "
+			+ DATACENTER_TABLE_NAME + " WHERE time <= ?";
+
+	private final RowMapper<DatacenterInfo> datacenterInfoMapper = new RowMapper<DatacenterInfo>() {
+
+		@Override
+		public DatacenterInfo map(ResultSet rs) throws SQLException {
+			int[] vmsRunning = new int[numberOfPriorities];
+			double[] resourcesRunning = new double[numberOfPriorities];
+			int[] vmsForScheduling = new int[numberOfPriorities];
+			double[] resourcesWaiting = new double[numberOfPriorities];
+			for (int priority = 0; priority < numberOfPriorities; priority++) {
+				vmsRunning[priority] = rs.getInt("vmsRunningP" + priority);
+				resourcesRunning[priority] = rs.getDouble("resourcesRunningP" + priority);
+				vmsForScheduling[priority] = rs.getInt("vmsForSchedulingP" + priority);
+				resourcesWaiting[priority] = rs.getDouble("resourcesWaitingP" + priority);
+			}
+			return new DatacenterInfo(rs.getDouble("time"), rs.getInt("vmsRunning"), vmsRunning,
+					resourcesRunning, rs.getInt("vmsForScheduling"), vmsForScheduling, resourcesWaiting);
+		}
+	};
 	
 	public List<DatacenterInfo> getAllDatacenterInfo() {
-		Statement statement = null;
-		Connection conn = null;
-		List<DatacenterInfo> entries = new ArrayList<DatacenterInfo>();
-		
 		try {
-			conn = getConnection();
-			statement = conn.createStatement();
-
-			statement.execute(SELECT_ALL_ENTRIES_SQL);
-			ResultSet rs = statement.getResultSet();
-
-			while (rs.next()) {
-				entries.add(new DatacenterInfo(rs.getDouble("time"), rs
-						.getInt("vmsRunning"), rs
-						.getInt("vmsRunningP0"), rs
-						.getDouble("resourcesRunningP0"), rs
-						.getInt("vmsRunningP1"), rs
-						.getDouble("resourcesRunningP1"), rs
-						.getInt("vmsRunningP2"), rs
-						.getDouble("resourcesRunningP2"), rs
-						.getInt("vmsForScheduling"), rs
-						.getInt("vmsForSchedulingP0"), rs
-						.getDouble("resourcesWaitingP0"), rs
-						.getInt("vmsForSchedulingP1"), rs
-						.getDouble("resourcesWaitingP1"), rs
-						.getInt("vmsForSchedulingP2"), rs
-						.getDouble("resourcesWaitingP2")));
-			}
-			return entries;
+			return query(SELECT_ALL_ENTRIES_SQL, datacenterInfoMapper);
 		} catch (SQLException e) {
 			Log.print(e);
 			Log.printLine("Couldn't get tasks from DB.");
@@ -177,44 +154,12 @@ public class DatacenterUsageDataStore extends DataStore {
 	}
 
 	public List<DatacenterInfo> getDatacenterInfoFinishedBefore(double interestedTime) {
-		Statement statement = null;
-		Connection conn = null;
-
 		try {
-			conn = getConnection();
-			statement = conn.createStatement();
-
-			statement.execute("SELECT * FROM " + DATACENTER_TABLE_NAME
-					+ " WHERE time <= '" + interestedTime + "'");
-			ResultSet rs = statement.getResultSet();
-
-			return generateDatacenterInfoList(rs);
+			return query(SELECT_ENTRIES_BEFORE_SQL, datacenterInfoMapper, interestedTime);
 		} catch (SQLException e) {
 			Log.print(e);
 			Log.printLine("Couldn't get tasks from DB.");
 			return null;
 		}
 	}
-
-	private List<DatacenterInfo> generateDatacenterInfoList(ResultSet rs) throws SQLException{
-		List<DatacenterInfo> datacenterInfoList = new ArrayList<>();
-		while (rs.next()) {
-			datacenterInfoList.add(new DatacenterInfo(rs.getDouble("time"), rs
-					.getInt("vmsRunning"), rs.getInt("vmsRunningP0"), rs
-					.getDouble("resourcesRunningP0"), rs
-					.getInt("vmsRunningP1"), rs
-					.getDouble("resourcesRunningP1"), rs
-					.getInt("vmsRunningP2"), rs
-					.getDouble("resourcesRunningP2"), rs
-					.getInt("vmsForScheduling"), rs
-					.getInt("vmsForSchedulingP0"), rs
-					.getDouble("resourcesWaitingP0"), rs
-					.getInt("vmsForSchedulingP1"), rs
-					.getDouble("resourcesWaitingP1"), rs
-					.getInt("vmsForSchedulingP2"), rs
-					.getDouble("resourcesWaitingP2")));
-		}
-
-		return datacenterInfoList;
-	}
 }
@@ -0,0 +1,166 @@
+package org.cloudbus.cloudsim.preemption.datastore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.cloudbus.cloudsim.preemption.UsageEntry;
+
+/**
+ * A batch of host usage rows, one by host, time and priority, kept in parallel primitive arrays
+ * that grow as needed. When the usage was downsampled into statistics, each row also has the
+ * least and the most usage seen in its bucket, the usage being the average.
+ *
+ * @since CloudSim Toolkit 4.0
+ */
+public class HostUsageBuffer {
+
+	private final boolean withStats;
+
+	private int[] hostIds;
+	private int[] numbersOfVms;
+	private int[] priorities;
+
+	private double[] times;
+	private double[] usages;
+	private double[] availableMips;
+	private double[] minUsages;
+	private double[] maxUsages;
+
+	private int size;
+
+	/**
+	 * Creates a buffer with room for a number of rows.
+	 *
+	 * @param initialCapacity the number of rows the buffer can hold before growing
+	 * @param withStats whether the rows have the least and the most usage
+	 */
+	public HostUsageBuffer(int initialCapacity, boolean withStats) {
+		int capacity = Math.max(1, initialCapacity);
+		this.withStats = withStats;
+		hostIds = new int[capacity];
+		numbersOfVms = new int[capacity];
+		priorities = new int[capacity];
+		times = new double[capacity];
+		usages = new double[capacity];
+		availableMips = new double[capacity];
+		if (withStats) {
+			minUsages = new double[capacity];
+			maxUsages = new double[capacity];
+		}
+	}
+
+	public void add(int hostId, double time, double usage, int numberOfVms, int priority,
+			double availableMips) {
+		add(hostId, time, usage, numberOfVms, priority, availableMips, usage, usage);
+	}
+
+	public void add(int hostId, double time, double usage, int numberOfVms, int priority,
+			double availableMips, double minUsage, double maxUsage) {
+		if (size == hostIds.length) {
+			grow();
+		}
+		this.hostIds[size] = hostId;
+		this.times[size] = time;
+		this.usages[size] = usage;
+		this.numbersOfVms[size] = numberOfVms;
+		this.priorities[size] = priority;
+		this.availableMips[size] = availableMips;
+		if (withStats) {
+			this.minUsages[size] = minUsage;
+			this.maxUsages[size] = maxUsage;
+		}
+		size++;
+	}
+
+	public void add(UsageEntry entry) {
+		add(entry.getHostId(), entry.getTime(), entry.getUsage(), entry.getNumberOfVms(),
+				entry.getPriority(), entry.getAvailableMips());
+	}
+
+	public boolean hasStats() {
+		return withStats;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	public int getHostId(int index) {
+		return hostIds[index];
+	}
+
+	public double getTime(int index) {
+		return times[index];
+	}
+
+	public double getUsage(int index) {
+		return usages[index];
+	}
+
+	public int getNumberOfVms(int index) {
+		return numbersOfVms[index];
+	}
+
+	public int getPriority(int index) {
+		return priorities[index];
+	}
+
+	public double getAvailableMips(int index) {
+		return availableMips[index];
+	}
+
+	public double getMinUsage(int index) {
+		return withStats ? minUsages[index] : usages[index];
+	}
+
+	public double getMaxUsage(int index) {
+		return withStats ? maxUsages[index] : usages[index];
+	}
+
+	/**
+	 * Gets a row as an object.
+	 *
+	 * @param index the position of the row in the buffer
+	 * @return the row
+	 */
+	public UsageEntry get(int index) {
+		return new UsageEntry(hostIds[index], times[index], usages[index], numbersOfVms[index],
+				priorities[index], availableMips[index]);
+	}
+
+	/**
+	 * Gets the rows as objects, in the order they were added.
+	 *
+	 * @return the rows
+	 */
+	public List<UsageEntry> toList() {
+		List<UsageEntry> entries = new ArrayList<UsageEntry>(size);
+		for (int i = 0; i < size; i++) {
+			entries.add(get(i));
+		}
+		return entries;
+	}
+
+	private void grow() {
+		int capacity = 2 * hostIds.length;
+		hostIds = Arrays.copyOf(hostIds, capacity);
+		numbersOfVms = Arrays.copyOf(numbersOfVms, capacity);
+		priorities = Arrays.copyOf(priorities, capacity);
+		times = Arrays.copyOf(times, capacity);
+		usages = Arrays.copyOf(usages, capacity);
+		availableMips = Arrays.copyOf(availableMips, capacity);
+		if (withStats) {
+			minUsages = Arrays.copyOf(minUsages, capacity);
+			maxUsages = Arrays.copyOf(maxUsages, capacity);
+		}
+	}
+}
@@ -1,10 +1,8 @@
 package org.cloudbus.cloudsim.preemption.datastore;
 
-import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
@@ -18,21 +16,15 @@ public class HostUsageDataStore extends DataStore {
 
 	public static final String DATABASE_URL_PROP = "utilization_database_url";
 	private static final String UTILIZATION_TABLE_NAME = "usage";
+	private static final String UTILIZATION_STATS_TABLE_NAME = "usagestats";
 	
 	public HostUsageDataStore(Properties properties) {
-		super(properties.getProperty(DATABASE_URL_PROP));
+		super(properties.getProperty(DATABASE_URL_PROP), properties);
 
-		Statement statement = null;
-		Connection connection = null;
 		try {
 			Log.printLine("utilization_database_url=" + getDatabaseURL());
 
-			Class.forName(DATASTORE_SQLITE_DRIVER);
-
-			connection = getConnection();
-			statement = connection.createStatement();
-			statement
-					.execute("CREATE TABLE IF NOT EXISTS usage("
+			execute("CREATE TABLE IF NOT EXISTS usage("
 							+ "hostId INTEGER NOT NULL, "
 							+ "time REAL NOT NULL, "
 							+ "usage REAL, "
@@ -40,128 +32,128 @@ public class HostUsageDataStore extends DataStore {
 							+ "priority INTEGER, "
 							+ "availableMips REAL, "
 							+ "PRIMARY KEY (hostId, time, priority)"
+							+ ")",
+					"CREATE INDEX IF NOT EXISTS usage_time ON usage(time)",
+					"CREATE TABLE IF NOT EXISTS usagestats("
+							+ "hostId INTEGER NOT NULL, "
+							+ "time REAL NOT NULL, "
+							+ "priority INTEGER, "
+							+ "minUsage REAL, "
+							+ "maxUsage REAL, "
+							+ "PRIMARY KEY (hostId, time, priority)"
 							+ ")");
 		} catch (Exception e) {
 			e.printStackTrace();
 			Log.printLine("Error while initializing the host usage database store.");
-		} finally {
-			close(statement, connection);
 		}
 	}
 	
 	private static final String INSERT_USAGE_ENTRY_SQL = "INSERT INTO " + UTILIZATION_TABLE_NAME
 			+ " VALUES(?, ?, ?, ?, ?, ?)";
 	
+	private static final String INSERT_USAGE_STATS_SQL = "INSERT INTO " + UTILIZATION_STATS_TABLE_NAME
+			+ " VALUES(?, ?, ?, ?, ?)";
+	
 	public boolean addUsageEntries(List<UsageEntry> usageEntries) {
 		if (usageEntries == null) {
 			Log.printLine("usageEntries must no be null.");
 			return false;
-		}		
-		Log.printLine("Adding " + usageEntries.size() + " usage entries into database.");
-		
-		if (usageEntries.isEmpty()) {
-			return true;
 		}
+		HostUsageBuffer usage = new HostUsageBuffer(usageEntries.size(), false);
+		for (UsageEntry entry : usageEntries) {
+			usage.add(entry);
+		}
+		return addUsage(usage);
+	}
+
+	/**
+	 * Adds the rows of a buffer, without making objects for them. The least and the most usage
+	 * of the rows, if the buffer has them, go into the {@value #UTILIZATION_STATS_TABLE_NAME}
+	 * table.
+	 *
+	 * @param usage the rows
+	 * @return <code>true</code> if all the rows were added
+	 */
+	public boolean addUsage(final HostUsageBuffer usage) {
+		Log.printLine("Adding " + usage.size() + " usage entries into database.");
 		
-		PreparedStatement insertMemberStatement = null;
-		
-		Connection connection = null;
-		
-		try {
-			connection = getConnection();
-			connection.setAutoCommit(false);
-			
-			insertMemberStatement = connection.prepareStatement(INSERT_USAGE_ENTRY_SQL);
-			insertMemberStatement = connection
-					.prepareStatement(INSERT_USAGE_ENTRY_SQL);
-			
-			for (UsageEntry entry : usageEntries) {
-				insertMemberStatement.setInt(1, entry.getHostId());
-				insertMemberStatement.setDouble(2, entry.getTime());
-				insertMemberStatement.setDouble(3, entry.getUsage());
-				insertMemberStatement.setInt(4, entry.getNumberOfVms());
-				insertMemberStatement.setInt(5, entry.getPriority());
-				insertMemberStatement.setDouble(6, entry.getAvailableMips());
-				insertMemberStatement.addBatch();
-			}
-			
-			int[] executeBatch = insertMemberStatement.executeBatch();
-			
-			if (executionFailed(connection, executeBatch)){
-				Log.printLine("Rollback will be executed.");
-				connection.rollback();
-				return false;
-			}
-			
-			connection.commit();
+		if (usage.isEmpty()) {
 			return true;
-		} catch (SQLException e) {
-			e.printStackTrace();
-			Log.printLine("Couldn't add utilization entries.");
-			try {
-				if (connection != null) {
-					connection.rollback();
+		}
+
+		boolean added = executeBatch(INSERT_USAGE_ENTRY_SQL, new BatchBuilder() {
+
+			@Override
+			public void addBatch(PreparedStatement insertMemberStatement) throws SQLException {
+				for (int i = 0; i < usage.size(); i++) {
+					insertMemberStatement.setInt(1, usage.getHostId(i));
+					insertMemberStatement.setDouble(2, usage.getTime(i));
+					insertMemberStatement.setDouble(3, usage.getUsage(i));
+					insertMemberStatement.setInt(4, usage.getNumberOfVms(i));
+					insertMemberStatement.setInt(5, usage.getPriority(i));
+					insertMemberStatement.setDouble(6, usage.getAvailableMips(i));
+					insertMemberStatement.addBatch();
 				}
-			} catch (SQLException e1) {
-				e1.printStackTrace();
-				Log.printLine("Couldn't rollback transaction.");
 			}
-			return false;
-		} finally {
-			close(insertMemberStatement, connection);
+		});
+
+		if (added && usage.hasStats()) {
+			added = executeBatch(INSERT_USAGE_STATS_SQL, new BatchBuilder() {
+
+				@Override
+				public void addBatch(PreparedStatement insertMemberStatement) throws SQLException {
+					for (int i = 0; i < usage.size(); i++) {
+						insertMemberStatement.setInt(1, usage.getHostId(i));
+						insertMemberStatement.setDouble(2, usage.getTime(i));
+						insertMemberStatement.setInt(3, usage.getPriority(i));
+						insertMemberStatement.setDouble(4, usage.getMinUsage(i));
+						insertMemberStatement.setDouble(5, usage.getMaxUsage(i));
+						insertMemberStatement.addBatch();
+					}
+				}
+			});
+		}
+
+		if (!added) {
+			Log.printLine("Couldn't add utilization entries.");
 		}
+		return added;
 	}
 	
 	private static final String SELECT_ALL_USAGE_ENTRIES_SQL = "SELECT * FROM " + UTILIZATION_TABLE_NAME;
+
+	private static final String SELECT_USAGE_ENTRIES_BEFORE_SQL = "SELECT * FROM "
+			+ UTILIZATION_TABLE_NAME + " WHERE time < ?";
+
+	private static final String SELECT_USAGE_ENTRY_INTERVAL_SQL = "SELECT hostId, time, usage, vms, priority, availableMips FROM "
+			+ UTILIZATION_TABLE_NAME + " WHERE time >= ? AND time < ?";
+
+	private static final String SELECT_MAX_TIME_SQL = "SELECT MAX(time) FROM " + UTILIZATION_TABLE_NAME;
+
+	private static final RowMapper<UsageEntry> USAGE_ENTRY_MAPPER = new RowMapper<UsageEntry>() {
+
+		@Override
+		public UsageEntry map(ResultSet rs) throws SQLException {
+			return new UsageEntry(rs.getInt("hostId"), rs
+					.getDouble("time"), rs.getDouble("usage"), rs
+					.getInt("vms"), rs.getInt("priority"), rs
+					.getDouble("availableMips"));
+		}
+	};
 	
 	public List<UsageEntry> getAllUsageEntries() {
-		Statement statement = null;
-		Connection conn = null;
-		List<UsageEntry> entries = new ArrayList<UsageEntry>();
-		
 		try {
-			conn = getConnection();
-			statement = conn.createStatement();
-			
-			statement.execute(SELECT_ALL_USAGE_ENTRIES_SQL);
-			ResultSet rs = statement.getResultSet();
-			
-			while (rs.next()) {
-				entries.add(new UsageEntry(rs.getInt("hostId"), rs
-						.getDouble("time"), rs.getDouble("usage"), rs
-						.getInt("vms"), rs.getInt("priority"), rs
-						.getDouble("availableMips")));
-			}
-			return entries;
+			return query(SELECT_ALL_USAGE_ENTRIES_SQL, USAGE_ENTRY_MAPPER);
 		} catch (SQLException e) {
 			Log.print(e);
 			Log.printLine("Couldn't get tasks from DB.");
 			return null;
 		}
 	}
-	
-	private boolean executionFailed(Connection connection, int[] executeBatch) {
-		for (int i : executeBatch) {
-			if (i == PreparedStatement.EXECUTE_FAILED) {
-				return true;
-			}
-		}
-		return false;
-	}
 
 	public List<UsageEntry> getUsageEntriesFinishedBefore(double interestedTime) {
-		Statement statement = null;
-		Connection conn = null;
-
 		try {
-			conn = getConnection();
-			statement = conn.createStatement();
-
-			statement.execute("SELECT * FROM " + UTILIZATION_TABLE_NAME
-					+ " WHERE time < '" + interestedTime + "'");
-			ResultSet rs = statement.getResultSet();
-
-			return generateUsageEntriesList(rs);
+			return query(SELECT_USAGE_ENTRIES_BEFORE_SQL, USAGE_ENTRY_MAPPER, interestedTime);
 		} catch (SQLException e) {
 			Log.print(e);
 			Log.printLine("Couldn't get tasks from DB.");
@@ -169,18 +161,6 @@ public class HostUsageDataStore extends DataStore {
 		}
 	}
 
-	private List<UsageEntry> generateUsageEntriesList(ResultSet rs) throws SQLException{
-		List<UsageEntry> usageEntries = new ArrayList<>();
-		while (rs.next()) {
-			usageEntries.add(new UsageEntry(rs.getInt("hostId"), rs
-					.getDouble("time"), rs.getDouble("usage"), rs
-					.getInt("vms"), rs.getInt("priority"), rs
-					.getDouble("availableMips")));
-		}
-
-		return usageEntries;
-	}
-
 	public List<UsageEntry> getUsageEntryInterval(int intervalIndex,
 											double intervalSize, double minInterestedTime, double maxInterestedTime) throws SQLException, ClassNotFoundException {
 
@@ -205,34 +185,10 @@ public class HostUsageDataStore extends DataStore {
 
 		List<UsageEntry> usageEntries = new ArrayList<UsageEntry>();
 
-		Statement statement = null;
-		Connection connection;
 		try {
-			connection = getConnection();
-
-			if (connection != null) {
-				statement = connection.createStatement();
-
-				String sql = "SELECT hostId, time, usage, vms,priority, availableMips FROM usage WHERE time >= '"
-						+ minTime + "' AND time < '" + maxTime + "'";
+			usageEntries = query(SELECT_USAGE_ENTRY_INTERVAL_SQL, USAGE_ENTRY_MAPPER, minTime, maxTime);
 
-				ResultSet rs = statement.executeQuery(sql);
-
-				while (rs.next()) {
-					/*
-					 * TODO We need to check if this nextTaskId variable is considered for post processing.
-					 * If we execute part of the trace more than one time, the same task can be have different
-					 * taskId (depending of the interval size).
-					 */
-					//TODO review it
-					usageEntries.add(new UsageEntry(rs.getInt("hostId"), rs
-							.getDouble("time"), rs.getDouble("usage"), rs
-							.getInt("vms"), rs.getInt("priority"), rs
-							.getDouble("availableMips")));
-				}
-
-				Log.printLine(CloudSim.clock() + ": Interval index is " + intervalIndex + " and number of tasks is " + usageEntries.size());
-			}
+			Log.printLine(CloudSim.clock() + ": Interval index is " + intervalIndex + " and number of tasks is " + usageEntries.size());
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
@@ -247,30 +203,14 @@ public class HostUsageDataStore extends DataStore {
 
 	public double getMaxTraceTime() throws ClassNotFoundException,
 			SQLException {
-		Statement statement = null;
-		Connection connection = null;
+		List<Double> maxTime = query(SELECT_MAX_TIME_SQL, new RowMapper<Double>() {
 
-		try {
-			Class.forName(DATASTORE_SQLITE_DRIVER);
-			connection = getConnection();
-
-			if (connection != null) {
-				Log.printLine("Connected to the database: " + getDatabaseURL());
-
-				statement = connection.createStatement();
-
-				// getting the max submitTime from database
-				ResultSet results = statement
-						.executeQuery("SELECT MAX(time) FROM usage");
-
-				while (results.next()) {
-					return results.getDouble("MAX(time)");
-				}
+			@Override
+			public Double map(ResultSet rs) throws SQLException {
+				return rs.getDouble(1);
 			}
-		} finally {
-			close(statement, connection);
-		}
-		// It should never return this value.
-		return -1;
+		});
+		// It should never return -1, since MAX always gives one row.
+		return maxTime.isEmpty() ? -1 : maxTime.get(0);
 	}
-}
\ No newline at end of file
+}
@@ -1,9 +1,7 @@
 package org.cloudbus.cloudsim.preemption.datastore;
 
-import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
@@ -12,23 +10,70 @@ import org.cloudbus.cloudsim.Log;
 import org.cloudbus.cloudsim.core.CloudSim;
 import org.cloudbus.cloudsim.preemption.PreemptiveHost;
 import org.cloudbus.cloudsim.preemption.Task;
-import org.cloudbus.cloudsim.preemption.util.DecimalUtil;
+import org.cloudbus.cloudsim.preemption.util.ResourceUnits;
 
-public class InputTraceDataStore extends DataStore {
+public class InputTraceDataStore extends DataStore implements TraceSource {
 
 	public static String DATABASE_URL_PROP = "input_trace_database_url";
 	public static String MIN_INTERESTED_TIME_PROP = "minimum_interested_time";
 	public static String MAX_INTERESTED_TIME_PROP = "maximum_interested_time";
+	public static String PRELOAD_PROP = "input_trace_preload";
 	
 	private int nextTaskId = 0;
 	
 	private double minInterestedTime;
 	private double maxInterestedTime;
 
+	/**
+	 * The trace kept in memory, or <code>null</code> if the intervals are queried from the
+	 * database.
+	 */
+	private PreloadedInputTrace preloadedTrace;
+
 	public InputTraceDataStore(Properties properties)
 			throws ClassNotFoundException, SQLException {
 		super(properties.getProperty(DATABASE_URL_PROP));
 
+		checkInterestedTimes(properties);
+		if (isPropertySet(properties, PRELOAD_PROP) && properties.getProperty(PRELOAD_PROP).equals("yes")) {
+			preloadedTrace = readTrace();
+			logMemoryEstimate();
+			setInterestedTimes(properties, preloadedTrace.getMaxTraceTime());
+		} else {
+			setInterestedTimes(properties, isPropertySet(properties, MAX_INTERESTED_TIME_PROP) ? -1 : getMaxTraceTime());
+		}
+	}
+
+	/**
+	 * Creates a data store serving the intervals of a trace already in memory, which may be shared
+	 * with other data stores, so the database is not queried at all.
+	 * 
+	 * @param properties the simulation properties
+	 * @param preloadedTrace the trace read from the database
+	 */
+	public InputTraceDataStore(Properties properties, PreloadedInputTrace preloadedTrace) {
+		super(properties.getProperty(DATABASE_URL_PROP));
+
+		checkInterestedTimes(properties);
+		this.preloadedTrace = preloadedTrace;
+		setInterestedTimes(properties, preloadedTrace.getMaxTraceTime());
+	}
+
+	/**
+	 * Creates a data store that only reads the trace, used to preload it.
+	 * 
+	 * @param databaseURL the JDBC URL of the trace database
+	 */
+	InputTraceDataStore(String databaseURL) {
+		super(databaseURL);
+	}
+
+	private void logMemoryEstimate() {
+		Log.printConcatLine("Input trace ", getDatabaseURL(), " preloaded: ", preloadedTrace.size(),
+				" tasks using about ", preloadedTrace.getMemoryEstimate() / (1024 * 1024), " MB of memory.");
+	}
+
+	private void checkInterestedTimes(Properties properties) {
 		if (isPropertySet(properties, MIN_INTERESTED_TIME_PROP) &&
 				Double.parseDouble(properties.getProperty(MIN_INTERESTED_TIME_PROP)) < 0) {
 			throw new IllegalArgumentException(MIN_INTERESTED_TIME_PROP + " must not be negative.");
@@ -38,46 +83,96 @@ public class InputTraceDataStore extends DataStore {
 				Double.parseDouble(properties.getProperty(MAX_INTERESTED_TIME_PROP)) < 0) {
 			throw new IllegalArgumentException(MAX_INTERESTED_TIME_PROP + " must not be negative.");
 		}
+	}
 
+	private void setInterestedTimes(Properties properties, double maxTraceTime) {
 		minInterestedTime = isPropertySet(properties, MIN_INTERESTED_TIME_PROP) ? Double
 				.parseDouble(properties.getProperty(MIN_INTERESTED_TIME_PROP)) : 0;
 
 		maxInterestedTime = isPropertySet(properties, MAX_INTERESTED_TIME_PROP)? Double
-				.parseDouble(properties.getProperty(MAX_INTERESTED_TIME_PROP)) : getMaxTraceTime() + 1;
-
+				.parseDouble(properties.getProperty(MAX_INTERESTED_TIME_PROP)) : maxTraceTime + 1;
 	}
 
 	private boolean isPropertySet(Properties properties, String propKey) {
 		return properties.getProperty(propKey) != null;
 	}
 
+	private static final String SELECT_MAX_SUBMIT_TIME_SQL = "SELECT MAX(submitTime) FROM tasks WHERE cpuReq > 0 AND memReq > 0";
+
+	private static final String SELECT_TASK_INTERVAL_SQL = "SELECT submitTime, runtime, cpuReq, memReq, priority FROM tasks "
+			+ "WHERE cpuReq > 0 AND memReq > 0 AND runtime > 0 AND submitTime >= ? AND submitTime < ?";
+
+	private static final String SELECT_TASK_COUNT_SQL = "SELECT COUNT(*) FROM tasks "
+			+ "WHERE cpuReq > 0 AND memReq > 0 AND runtime > 0";
+
+	private static final String SELECT_ALL_TASKS_SQL = "SELECT submitTime, runtime, cpuReq, memReq, priority FROM tasks "
+			+ "WHERE cpuReq > 0 AND memReq > 0 AND runtime > 0";
+
 	protected double getMaxTraceTime() throws ClassNotFoundException,
 			SQLException {
-		Statement statement = null;
-		Connection connection = null;
+		Log.printLine("Connected to the database: " + getDatabaseURL());
 
-		try {
-			Class.forName(DATASTORE_SQLITE_DRIVER);
-			connection = getConnection();
+		// getting the max submitTime from database
+		List<Double> maxSubmitTime = query(SELECT_MAX_SUBMIT_TIME_SQL, new RowMapper<Double>() {
 
-			if (connection != null) {
-				Log.printLine("Connected to the database: " + getDatabaseURL());
+			@Override
+			public Double map(ResultSet rs) throws SQLException {
+				return rs.getDouble(1);
+			}
+		});
+		// It should never return -1, since MAX always gives one row.
+		return maxSubmitTime.isEmpty() ? -1 : maxSubmitTime.get(0);
+	}
 
-				statement = connection.createStatement();
+	/**
+	 * Reads all the tasks of the trace into memory, with the same filters used to query an
+	 * interval.
+	 * 
+	 * @return the trace
+	 */
+	PreloadedInputTrace readTrace() throws ClassNotFoundException, SQLException {
+		double maxTraceTime = getMaxTraceTime();
 
-				// getting the max submitTime from database
-				ResultSet results = statement
-						.executeQuery("SELECT MAX(submitTime) FROM tasks WHERE cpuReq > '0' AND memReq > '0'");
+		List<Integer> count = query(SELECT_TASK_COUNT_SQL, new RowMapper<Integer>() {
 
-				while (results.next()) {
-					return results.getDouble("MAX(submitTime)");
+			@Override
+			public Integer map(ResultSet rs) throws SQLException {
+				return rs.getInt(1);
+			}
+		});
+		final int size = count.isEmpty() ? 0 : count.get(0);
+
+		final double[] submitTime = new double[size];
+		final double[] runtime = new double[size];
+		final double[] cpuReq = new double[size];
+		final double[] memReq = new double[size];
+		final byte[] priority = new byte[size];
+		// the number of tasks read and whether they came sorted by submit time
+		final int[] read = new int[1];
+		final boolean[] sortedTable = { true };
+
+		forEachRow(SELECT_ALL_TASKS_SQL, new RowHandler() {
+
+			@Override
+			public void handle(ResultSet results) throws SQLException {
+				int index = read[0];
+				if (index == size) {
+					return;
+				}
+				submitTime[index] = results.getDouble("submitTime");
+				runtime[index] = ResourceUnits.round(results.getDouble("runtime"));
+				cpuReq[index] = ResourceUnits.round(results.getDouble("cpuReq"));
+				memReq[index] = ResourceUnits.round(results.getDouble("memReq"));
+				priority[index] = (byte) convertPriorityToPriorityClass(results.getInt("priority"));
+				if (index > 0 && submitTime[index] < submitTime[index - 1]) {
+					sortedTable[0] = false;
 				}
+				read[0]++;
 			}
-		} finally {
-			close(statement, connection);
-		}
-		// It should never return this value.
-		return -1;
+		});
+
+		return PreloadedInputTrace.fromColumns(submitTime, runtime, cpuReq, memReq, priority,
+				sortedTable[0], maxTraceTime);
 	}
 
 	public List<Task> getGoogleTaskInterval(int intervalIndex,
@@ -104,22 +199,17 @@ public class InputTraceDataStore extends DataStore {
 		Log.printLine(CloudSim.clock() + ": Interval index is " + intervalIndex
 				+ ", minTime=" + minTime + " and maxTime=" + maxTime);
 		
+		if (preloadedTrace != null) {
+			return getPreloadedTaskInterval(intervalIndex, minTime, maxTime);
+		}
+
 		List<Task> googleTasks = new ArrayList<Task>();
 
-		Statement statement = null;
-		Connection connection;
 		try {
-			connection = getConnection();
+			googleTasks = query(SELECT_TASK_INTERVAL_SQL, new RowMapper<Task>() {
 
-			if (connection != null) {
-				statement = connection.createStatement();
-
-				String sql = "SELECT submitTime, runtime, cpuReq, memReq, priority FROM tasks WHERE cpuReq > '0.0' AND memReq > '0.0' AND runtime > '0.0' AND submitTime >= '"
-						+ minTime + "' AND submitTime < '" + maxTime + "'";
-
-				ResultSet results = statement.executeQuery(sql);
-
-				while (results.next()) {
+				@Override
+				public Task map(ResultSet results) throws SQLException {
 					/* 
 					 * TODO We need to check if this nextTaskId variable is considered for post processing.
 					 * If we execute part of the trace more than one time, the same task can be have different 
@@ -127,18 +217,16 @@ public class InputTraceDataStore extends DataStore {
 					 */
 					nextTaskId++;
 					//TODO review it
-					Task task = new Task(nextTaskId,
+					return new Task(nextTaskId,
 							results.getDouble("submitTime"),
-							DecimalUtil.format(results.getDouble("runtime")),
-							DecimalUtil.format(results.getDouble("cpuReq")),
-							DecimalUtil.format(results.getDouble("memReq")),
+							ResourceUnits.round(results.getDouble("runtime")),
+							ResourceUnits.round(results.getDouble("cpuReq")),
+							ResourceUnits.round(results.getDouble("memReq")),
 							convertPriorityToPriorityClass(results.getInt("priority")));
-					
-					googleTasks.add(task);
 				}
-				
-				Log.printLine(CloudSim.clock() + ": Interval index is " + intervalIndex + " and number of tasks is " + googleTasks.size());
-			}			
+			}, minTime, maxTime);
+
+			Log.printLine(CloudSim.clock() + ": Interval index is " + intervalIndex + " and number of tasks is " + googleTasks.size());
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
@@ -146,7 +234,25 @@ public class InputTraceDataStore extends DataStore {
 		return googleTasks;
 	}
 
-	private int convertPriorityToPriorityClass(int priority) {
+	private List<Task> getPreloadedTaskInterval(int intervalIndex, double minTime, double maxTime) {
+		int[] indexes = preloadedTrace.getInterval(minTime, maxTime);
+		List<Task> googleTasks = new ArrayList<Task>(indexes.length);
+
+		for (int index : indexes) {
+			nextTaskId++;
+			googleTasks.add(new Task(nextTaskId,
+					preloadedTrace.getSubmitTime(index),
+					preloadedTrace.getRuntime(index),
+					preloadedTrace.getCpuReq(index),
+					preloadedTrace.getMemReq(index),
+					preloadedTrace.getPriority(index)));
+		}
+
+		Log.printLine(CloudSim.clock() + ": Interval index is " + intervalIndex + " and number of tasks is " + googleTasks.size());
+		return googleTasks;
+	}
+
+	static int convertPriorityToPriorityClass(int priority) {
 		if(priority <= 1) {
 			return 2;
 		} else if (priority <= 8) {
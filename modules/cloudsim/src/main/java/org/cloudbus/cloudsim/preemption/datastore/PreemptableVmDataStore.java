@@ -1,11 +1,10 @@
 package org.cloudbus.cloudsim.preemption.datastore;
 
-import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Properties;
 import java.util.SortedSet;
@@ -22,24 +21,75 @@ public class PreemptableVmDataStore extends DataStore {
 	public static final String CHECKPOINT_URL = "checkpoint_file_url";
 	private static final String VMS_TABLE_NAME = "preemptivevms";
 	private double time;
+
+	/**
+	 * The columns of a VM at the time of a checkpoint. They are read by the simulation, so the
+	 * checkpoint can be written while the VMs keep changing.
+	 */
+	public static final class VmSnapshot {
+
+		private final int id;
+		private final int userId;
+		private final double cpuReq;
+		private final double memReq;
+		private final double submitTime;
+		private final int priority;
+		private final double runtime;
+		private final double startExec;
+		private final double actualRuntime;
+		private final int preemptions;
+		private final int backfillingChoices;
+		private final int migrations;
+		private final int hostId;
+		private final boolean running;
+		private final double firstTimeAllocated;
+
+		public VmSnapshot(PreemptableVm vm, boolean running, double time) {
+			this.id = vm.getId();
+			this.userId = vm.getUserId();
+			this.cpuReq = vm.getMips();
+			this.memReq = vm.getRam();
+			this.submitTime = vm.getSubmitTime();
+			this.priority = vm.getPriority();
+			this.runtime = vm.getRuntime();
+			this.startExec = vm.getStartExec();
+			this.actualRuntime = vm.getActualRuntime(time);
+			this.preemptions = vm.getNumberOfPreemptions();
+			this.backfillingChoices = vm.getNumberOfBackfillingChoice();
+			this.migrations = vm.getNumberOfMigrations();
+			// a waiting vm doesn't have host
+			this.hostId = running ? vm.getHost().getId() : vm.getLastHostId();
+			this.running = running;
+			this.firstTimeAllocated = vm.getFirstTimeAllocated();
+		}
+	}
+
+	/**
+	 * Reads the columns of VMs at a time.
+	 *
+	 * @param vms the VMs
+	 * @param running whether the VMs are running or waiting
+	 * @param time the time of the checkpoint
+	 * @return the columns of the VMs, in the same order
+	 */
+	public static List<VmSnapshot> snapshot(Collection<PreemptableVm> vms, boolean running, double time) {
+		List<VmSnapshot> snapshots = new ArrayList<VmSnapshot>(vms.size());
+		for (PreemptableVm vm : vms) {
+			snapshots.add(new VmSnapshot(vm, running, time));
+		}
+		return snapshots;
+	}
 	
 	public PreemptableVmDataStore(Properties properties, double time) {
 		super("jdbc:sqlite:" + properties.getProperty(CHECKPOINT_DIR_PROP)
 				+ "vms-" + properties.getProperty("number_of_hosts") + "-hosts-"
-				+ String.valueOf(time));
+				+ String.valueOf(time), properties);
 
 		this.time = time;
-		Statement statement = null;
-		Connection connection = null;
 		try {
 			Log.printLine("vms database url=" + getDatabaseURL());
 
-			Class.forName(DATASTORE_SQLITE_DRIVER);
-
-			connection = getConnection();
-			statement = connection.createStatement();
-			statement
-					.execute("CREATE TABLE IF NOT EXISTS preemptivevms("
+			execute("CREATE TABLE IF NOT EXISTS preemptivevms("
 							+ "vmId INTEGER NOT NULL, "
 							+ "userId INTEGER, "
 							+ "cpuReq REAL, "
@@ -60,14 +110,12 @@ public class PreemptableVmDataStore extends DataStore {
 		} catch (Exception e) {
 			e.printStackTrace();
 			Log.printLine("Error while initializing the vms database store.");
-		} finally {
-			close(statement, connection);
 		}
 	}
 
 	//TODO Is it necessary throw any exception here?
 	public PreemptableVmDataStore(Properties properties){
-		super(properties.getProperty(CHECKPOINT_URL));
+		super(properties.getProperty(CHECKPOINT_URL), properties);
 
 	}
 
@@ -81,7 +129,7 @@ public class PreemptableVmDataStore extends DataStore {
 		}		
 		Log.printLine("Adding " + waitingVms.size() + " waiting VMs into database.");
 		
-		return addVms(waitingVms, false);		
+		return addVmSnapshots(snapshot(waitingVms, false, time));		
 	}
 	
 	public boolean addRunningVms(SortedSet<PreemptableVm> runningVms) {		
@@ -91,168 +139,97 @@ public class PreemptableVmDataStore extends DataStore {
 		}		
 		Log.printLine("Adding " + runningVms.size() + " running VMs into database.");
 		
-		return addVms(runningVms, true);
+		return addVmSnapshots(snapshot(runningVms, true, time));
 	}
 
-	private boolean addVms(SortedSet<PreemptableVm> vms, boolean running) {
+	/**
+	 * Adds VMs read at the time of this data store.
+	 *
+	 * @param vms the columns of the VMs
+	 * @return <code>true</code> if all the VMs were added
+	 */
+	public boolean addVmSnapshots(final List<VmSnapshot> vms) {
+		if (vms == null) {
+			Log.printLine("vms must not be null.");
+			return false;
+		}
 		if (vms.isEmpty()) {
 			return true;
 		}
 		
-		PreparedStatement insertMemberStatement = null;
-		
-		Connection connection = null;
-		
-		try {
-			connection = getConnection();
-			connection.setAutoCommit(false);
-			
-			insertMemberStatement = connection.prepareStatement(INSERT_DATACENTER_INFO_SQL);
-			insertMemberStatement = connection
-					.prepareStatement(INSERT_DATACENTER_INFO_SQL);
-			
-			for (PreemptableVm vm : vms) {
-				insertMemberStatement.setInt(1, vm.getId());
-				insertMemberStatement.setInt(2, vm.getUserId());
-				insertMemberStatement.setDouble(3, vm.getMips());
-				insertMemberStatement.setDouble(4, vm.getRam());
-				insertMemberStatement.setDouble(5, vm.getSubmitTime());
-				insertMemberStatement.setInt(6, vm.getPriority());
-				insertMemberStatement.setDouble(7, vm.getRuntime());
-				insertMemberStatement.setDouble(8, vm.getStartExec());
-				insertMemberStatement.setDouble(9, vm.getActualRuntime(time));
-				insertMemberStatement.setInt(10, vm.getNumberOfPreemptions());
-				insertMemberStatement.setInt(11, vm.getNumberOfBackfillingChoice());
-				insertMemberStatement.setInt(12, vm.getNumberOfMigrations());
-				insertMemberStatement.setDouble(15, vm.getFirstTimeAllocated());
-
-				if (running) {
-					insertMemberStatement.setInt(13, vm.getHost().getId()); //vm is waiting and doesn't have host
-					insertMemberStatement.setInt(14, RUNNING);
-				} else {
-					insertMemberStatement.setInt(13, vm.getLastHostId()); //vm is waiting and doesn't have host
-					insertMemberStatement.setInt(14, WAITING);
+		boolean added = executeBatch(INSERT_DATACENTER_INFO_SQL, new BatchBuilder() {
+
+			@Override
+			public void addBatch(PreparedStatement insertMemberStatement) throws SQLException {
+				for (VmSnapshot vm : vms) {
+					insertMemberStatement.setInt(1, vm.id);
+					insertMemberStatement.setInt(2, vm.userId);
+					insertMemberStatement.setDouble(3, vm.cpuReq);
+					insertMemberStatement.setDouble(4, vm.memReq);
+					insertMemberStatement.setDouble(5, vm.submitTime);
+					insertMemberStatement.setInt(6, vm.priority);
+					insertMemberStatement.setDouble(7, vm.runtime);
+					insertMemberStatement.setDouble(8, vm.startExec);
+					insertMemberStatement.setDouble(9, vm.actualRuntime);
+					insertMemberStatement.setInt(10, vm.preemptions);
+					insertMemberStatement.setInt(11, vm.backfillingChoices);
+					insertMemberStatement.setInt(12, vm.migrations);
+					insertMemberStatement.setInt(13, vm.hostId);
+					insertMemberStatement.setInt(14, vm.running ? RUNNING : WAITING);
+					insertMemberStatement.setDouble(15, vm.firstTimeAllocated);
+					insertMemberStatement.addBatch();
 				}
-				insertMemberStatement.addBatch();
-			}
-			
-			int[] executeBatch = insertMemberStatement.executeBatch();
-			
-			if (executionFailed(connection, executeBatch)){
-				Log.printLine("Rollback will be executed.");
-				connection.rollback();
-				return false;
 			}
-			
-			connection.commit();
-			return true;
-		} catch (SQLException e) {
-			e.printStackTrace();
+		});
+
+		if (!added) {
 			Log.printLine("Couldn't add vms.");
-			try {
-				if (connection != null) {
-					connection.rollback();
-				}
-			} catch (SQLException e1) {
-				e1.printStackTrace();
-				Log.printLine("Couldn't rollback transaction.");
-			}
-			return false;
-		} finally {
-			close(insertMemberStatement, connection);
 		}
-	}
-	
-	private boolean executionFailed(Connection connection, int[] executeBatch) {
-		for (int i : executeBatch) {
-			if (i == PreparedStatement.EXECUTE_FAILED) {
-				return true;
-			}
-		}
-		return false;
+		return added;
 	}
 
-	private static final String SELECT_RUNNING_VMS_SQL = "SELECT * FROM "
-			+ VMS_TABLE_NAME + " WHERE running == '" + RUNNING + "'";
+	private static final String SELECT_VMS_SQL = "SELECT * FROM "
+			+ VMS_TABLE_NAME + " WHERE running = ?";
+
+	/*
+	 * TODO how to treat the information about Host?
+	 */
+	private static final RowMapper<PreemptableVm> VM_MAPPER = new RowMapper<PreemptableVm>() {
+
+		@Override
+		public PreemptableVm map(ResultSet rs) throws SQLException {
+			PreemptableVm vm = new PreemptableVm(rs.getInt("vmId"),
+					rs.getInt("userId"), rs.getDouble("cpuReq"),
+					rs.getDouble("memReq"), rs.getDouble("submitTime"),
+					rs.getInt("priority"), rs.getDouble("runtime"));
+
+			vm.setActualRuntime(rs.getDouble("actualRuntime"));
+			vm.setLastHostId(rs.getInt("hostId"));
+			vm.setNumberOfPreemptions(rs.getInt("preemptions"));
+			vm.setNumberOfBackfillingChoice(rs.getInt("backfillingChoice"));
+			vm.setNumberOfMigrations(rs.getInt("migrations"));
+			vm.setFirstTimeAllocated(rs.getDouble("firstTimeAllocated"));
+			return vm;
+		}
+	};
 
 	public List<PreemptableVm> getAllRunningVms() {
-		Statement statement = null;
-		Connection conn = null;
-		List<PreemptableVm> runningVms = new ArrayList<PreemptableVm>();
-		
 		try {
-			conn = getConnection();
-			statement = conn.createStatement();
-
-			statement.execute(SELECT_RUNNING_VMS_SQL);
-			ResultSet rs = statement.getResultSet();
-
-			/*
-			 * TODO how to treat the information about Host?
-			 */
-			while (rs.next()) {
-				PreemptableVm vm = new PreemptableVm(rs.getInt("vmId"),
-						rs.getInt("userId"), rs.getDouble("cpuReq"),
-						rs.getDouble("memReq"), rs.getDouble("submitTime"),
-						rs.getInt("priority"), rs.getDouble("runtime"));
-				
-				vm.setActualRuntime(rs.getDouble("actualRuntime"));
-				vm.setLastHostId(rs.getInt("hostId"));
-				vm.setNumberOfPreemptions(rs.getInt("preemptions"));
-				vm.setNumberOfBackfillingChoice(rs.getInt("backfillingChoice"));
-				vm.setNumberOfMigrations(rs.getInt("migrations"));
-				vm.setFirstTimeAllocated(rs.getDouble("firstTimeAllocated"));
-				
-				runningVms.add(vm);
-			}
-			return runningVms;
+			return query(SELECT_VMS_SQL, VM_MAPPER, RUNNING);
 		} catch (SQLException e) {
 			Log.print(e);
 			Log.printLine("Couldn't get tasks from DB.");
 			return null;
 		}
-		
 	}
 
-	private static final String SELECT_WAITING_VMS_SQL = "SELECT * FROM "
-			+ VMS_TABLE_NAME + " WHERE running == '" + WAITING + "'";
-	
 	public List<PreemptableVm> getAllWaitingVms() {
-		Statement statement = null;
-		Connection conn = null;
-		List<PreemptableVm> waitingVms = new ArrayList<PreemptableVm>();
-		
 		try {
-			conn = getConnection();
-			statement = conn.createStatement();
-
-			statement.execute(SELECT_WAITING_VMS_SQL);
-			ResultSet rs = statement.getResultSet();
-
-			while (rs.next()) {
-				PreemptableVm vm = new PreemptableVm(rs.getInt("vmId"),
-						rs.getInt("userId"), rs.getDouble("cpuReq"),
-						rs.getDouble("memReq"), rs.getDouble("submitTime"),
-						rs.getInt("priority"), rs.getDouble("runtime"));
-				
-				vm.setActualRuntime(rs.getDouble("actualRuntime"));
-				vm.setLastHostId(rs.getInt("hostId"));
-				vm.setNumberOfPreemptions(rs.getInt("preemptions"));
-				vm.setNumberOfBackfillingChoice(rs.getInt("backfillingChoice"));
-				vm.setNumberOfMigrations(rs.getInt("migrations"));
-				vm.setFirstTimeAllocated(rs.getDouble("firstTimeAllocated"));
-
-				waitingVms.add(vm);
-			}
-			return waitingVms;
+			return query(SELECT_VMS_SQL, VM_MAPPER, WAITING);
 		} catch (SQLException e) {
 			Log.print(e);
 			Log.printLine("Couldn't get tasks from DB.");
 			return null;
-		}		
-	}
-
-	private boolean isPropertySet(Properties properties, String propKey) {
-		return properties.getProperty(propKey) != null;
+		}
 	}
 }
@@ -0,0 +1,298 @@
+package org.cloudbus.cloudsim.preemption.datastore;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.cloudbus.cloudsim.Log;
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.SimulationContext;
+import org.cloudbus.cloudsim.preemption.Task;
+
+/**
+ * A trace source that reads the next intervals of another source in a background thread, while
+ * the simulation is processing the current one. At most a given number of intervals are read
+ * ahead: when the queue is full the background thread waits for the simulation to take an
+ * interval.
+ * <p>
+ * The intervals are expected to be requested in order, as the
+ * {@link org.cloudbus.cloudsim.preemption.TraceDatacenterBroker} does. If another interval is
+ * requested, e.g. when the simulation starts from a checkpoint, the intervals read ahead are
+ * dropped and the reading starts again from the requested one. The source numbers the tasks as
+ * it reads them, from the id of the last task the simulation took, and the intervals read ahead
+ * are dropped too if the simulation sets another id, so the ids do not depend on how far the trace
+ * was read ahead.
+ * <p>
+ * The background thread only reads the source. It is bound to the {@link SimulationContext} of
+ * the simulation that started it, so what the source logs carries the clock of that simulation.
+ * Whatever the source throws, errors included, is thrown again to the simulation when it takes
+ * the interval.
+ * <p>
+ * The number of times the simulation had to wait for an interval, and for how long, are kept so
+ * the depth can be tuned.
+ *
+ * @since CloudSim Toolkit 4.0
+ */
+public class PrefetchingTraceSource implements TraceSource {
+
+	public static String PREFETCH_DEPTH_PROP = "input_trace_prefetch_depth";
+
+	/** An interval read by the background thread. */
+	private static final class Interval {
+		final int index;
+		final List<Task> tasks;
+		/** The id of the last task read from the source up to this interval. */
+		final int lastTaskId;
+		final Throwable error;
+
+		Interval(int index, List<Task> tasks, int lastTaskId, Throwable error) {
+			this.index = index;
+			this.tasks = tasks;
+			this.lastTaskId = lastTaskId;
+			this.error = error;
+		}
+	}
+
+	/** Reads the intervals of the source in order, from a given one until there are no more. */
+	private final class Prefetcher extends Thread {
+
+		private final int firstIndex;
+		private final double intervalSize;
+		private final SimulationContext context;
+		private final BlockingQueue<Interval> queue;
+		private volatile boolean stopped;
+
+		Prefetcher(int firstIndex, double intervalSize) {
+			super("trace-prefetcher");
+			setDaemon(true);
+			this.firstIndex = firstIndex;
+			this.intervalSize = intervalSize;
+			this.context = CloudSim.getContext();
+			this.queue = new ArrayBlockingQueue<Interval>(depth);
+		}
+
+		@Override
+		public void run() {
+			// a new thread already uses the default context
+			if (context != CloudSim.getContext()) {
+				CloudSim.setContext(context);
+			}
+			try {
+				for (int index = firstIndex; !stopped; index++) {
+					Interval interval;
+					try {
+						List<Task> tasks = source.getGoogleTaskInterval(index, intervalSize);
+						interval = new Interval(index, tasks, source.getNextTaskId(), null);
+					} catch (Throwable e) {
+						// an error would otherwise leave the simulation waiting forever
+						interval = new Interval(index, null, source.getNextTaskId(), e);
+					}
+					queue.put(interval);
+					if (interval.tasks == null) {
+						return;
+					}
+				}
+			} catch (InterruptedException e) {
+				// stopped while waiting for room in the queue
+			}
+		}
+
+		/** Stops the thread and waits for it, so the source is not read by two threads. */
+		void shutdown() {
+			stopped = true;
+			interrupt();
+			boolean interrupted = false;
+			while (isAlive()) {
+				try {
+					join();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private final TraceSource source;
+
+	private final int depth;
+
+	private Prefetcher prefetcher;
+
+	/** The index of the next interval the prefetcher will give. */
+	private int nextIndex;
+
+	private int nextTaskId;
+
+	private int requestedIntervals;
+
+	private int blockedRequests;
+
+	private long blockedTime;
+
+	/**
+	 * Creates a source reading ahead the intervals of another one.
+	 *
+	 * @param source the source, which must not be used by anything else afterwards
+	 * @param depth the most intervals read ahead
+	 */
+	public PrefetchingTraceSource(TraceSource source, int depth) {
+		if (depth <= 0) {
+			throw new IllegalArgumentException(PREFETCH_DEPTH_PROP + " must be positive.");
+		}
+		this.source = source;
+		this.depth = depth;
+		this.nextTaskId = source.getNextTaskId();
+	}
+
+	@Override
+	public List<Task> getGoogleTaskInterval(int intervalIndex, double intervalSize) {
+		if (intervalIndex < 0) {
+			throw new IllegalArgumentException("Interval index must be not negative");
+		}
+
+		if (intervalSize <= 0) {
+			throw new IllegalArgumentException("Interval size must be positive");
+		}
+
+		prefetch(intervalIndex, intervalSize);
+		Interval interval = take();
+		nextIndex = interval.index + 1;
+		if (interval.error instanceof RuntimeException) {
+			throw (RuntimeException) interval.error;
+		}
+		if (interval.error instanceof Error) {
+			throw (Error) interval.error;
+		}
+		if (interval.error != null) {
+			throw new IllegalStateException("Error reading the input trace.", interval.error);
+		}
+		if (interval.tasks == null) {
+			close();
+			return null;
+		}
+		nextTaskId = interval.lastTaskId;
+		return interval.tasks;
+	}
+
+	/**
+	 * Starts reading ahead from a given interval, unless it is already the next one read.
+	 *
+	 * @param intervalIndex the index of the next interval to be requested
+	 * @param intervalSize the size of the intervals
+	 */
+	public void prefetch(int intervalIndex, double intervalSize) {
+		if (prefetcher == null || intervalIndex != nextIndex || intervalSize != prefetcher.intervalSize) {
+			close();
+			nextIndex = intervalIndex;
+			// the source is not read by another thread, so it can be set before starting one
+			if (source.getNextTaskId() != nextTaskId) {
+				source.setNextTaskId(nextTaskId);
+			}
+			prefetcher = new Prefetcher(intervalIndex, intervalSize);
+			prefetcher.start();
+		}
+	}
+
+	private Interval take() {
+		requestedIntervals++;
+		Interval interval = prefetcher.queue.poll();
+		if (interval != null) {
+			return interval;
+		}
+
+		blockedRequests++;
+		long start = System.nanoTime();
+		try {
+			interval = prefetcher.queue.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for the input trace.", e);
+		} finally {
+			blockedTime += System.nanoTime() - start;
+		}
+		return interval;
+	}
+
+	/**
+	 * Stops reading ahead. The source may still be used, starting to read ahead again.
+	 */
+	public void close() {
+		if (prefetcher != null) {
+			prefetcher.shutdown();
+			prefetcher = null;
+		}
+	}
+
+	@Override
+	public boolean hasMoreEvents(int intervalIndex, double intervalSize) {
+		return source.hasMoreEvents(intervalIndex, intervalSize);
+	}
+
+	@Override
+	public double getMinInterestedTime() {
+		return source.getMinInterestedTime();
+	}
+
+	@Override
+	public double getMaxInterestedTime() {
+		return source.getMaxInterestedTime();
+	}
+
+	@Override
+	public int getNextTaskId() {
+		return nextTaskId;
+	}
+
+	@Override
+	public void setNextTaskId(int nextTaskId) {
+		if (nextTaskId != this.nextTaskId) {
+			// the tasks read ahead were numbered from the previous id
+			close();
+		}
+		this.nextTaskId = nextTaskId;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * Gets the number of intervals requested by the simulation.
+	 *
+	 * @return the number of requests
+	 */
+	public int getRequestedIntervals() {
+		return requestedIntervals;
+	}
+
+	/**
+	 * Gets the number of requests for which the interval was not read yet, so the simulation had
+	 * to wait for it.
+	 *
+	 * @return the number of blocked requests
+	 */
+	public int getBlockedRequests() {
+		return blockedRequests;
+	}
+
+	/**
+	 * Gets the total time the simulation waited for intervals.
+	 *
+	 * @return the time, in nanoseconds
+	 */
+	public long getBlockedTime() {
+		return blockedTime;
+	}
+
+	/**
+	 * Logs how often and how long the simulation waited for intervals.
+	 */
+	public void printMetrics() {
+		Log.printConcatLine("Input trace prefetching (depth ", depth, "): ", blockedRequests, " of ",
+				requestedIntervals, " interval requests blocked for ", blockedTime / 1000000, " ms in total.");
+	}
+
+}
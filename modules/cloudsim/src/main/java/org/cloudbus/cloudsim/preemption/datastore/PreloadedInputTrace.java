@@ -0,0 +1,236 @@
+package org.cloudbus.cloudsim.preemption.datastore;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * The filtered tasks of an input trace database, read once and kept in memory as primitive
+ * columns sorted by submit time. The tasks of an interval are found by binary search, so serving
+ * an interval does not touch the database. The columns are never modified after loading, so the
+ * same trace can be shared by the {@link InputTraceDataStore}s of simulations running at the
+ * same time.
+ *
+ * @since CloudSim Toolkit 4.0
+ * @see InputTraceDataStore#PRELOAD_PROP
+ */
+public class PreloadedInputTrace {
+
+	/** The bytes kept for each task: four doubles and the priority class. */
+	private static final int BYTES_PER_TASK = 4 * 8 + 1;
+
+	private final double[] submitTime;
+	private final double[] runtime;
+	private final double[] cpuReq;
+	private final double[] memReq;
+	private final byte[] priority;
+
+	/**
+	 * The position in the table of each task, or <code>null</code> if the table was already
+	 * sorted by submit time. It is used to serve the tasks of an interval in table order.
+	 */
+	private final int[] tablePosition;
+
+	private final double maxTraceTime;
+
+	private PreloadedInputTrace(double[] submitTime, double[] runtime, double[] cpuReq,
+			double[] memReq, byte[] priority, int[] tablePosition, double maxTraceTime) {
+		this.submitTime = submitTime;
+		this.runtime = runtime;
+		this.cpuReq = cpuReq;
+		this.memReq = memReq;
+		this.priority = priority;
+		this.tablePosition = tablePosition;
+		this.maxTraceTime = maxTraceTime;
+	}
+
+	/**
+	 * Reads the tasks of a trace database, with the same filters used by
+	 * {@link InputTraceDataStore#getGoogleTaskInterval(int, double)}.
+	 *
+	 * @param databaseURL the JDBC URL of the trace database
+	 * @return the trace
+	 */
+	public static PreloadedInputTrace load(String databaseURL) throws ClassNotFoundException,
+			SQLException {
+		InputTraceDataStore dataStore = new InputTraceDataStore(databaseURL);
+		try {
+			return dataStore.readTrace();
+		} finally {
+			dataStore.close();
+		}
+	}
+
+	/**
+	 * Creates a trace from columns in table order, sorting them by submit time if needed.
+	 *
+	 * @param sortedTable whether the columns are already sorted by submit time
+	 * @param maxTraceTime the maximum submit time of the trace
+	 * @return the trace
+	 */
+	static PreloadedInputTrace fromColumns(double[] submitTime, double[] runtime, double[] cpuReq,
+			double[] memReq, byte[] priority, boolean sortedTable, double maxTraceTime) {
+		if (sortedTable) {
+			return new PreloadedInputTrace(submitTime, runtime, cpuReq, memReq, priority, null,
+					maxTraceTime);
+		}
+
+		// stable, so tasks submitted at the same time keep their table order
+		int size = submitTime.length;
+		int[] order = new int[size];
+		for (int i = 0; i < size; i++) {
+			order[i] = i;
+		}
+		sortBySubmitTime(order, new int[size], 0, size, submitTime);
+		return new PreloadedInputTrace(permute(submitTime, order), permute(runtime, order),
+				permute(cpuReq, order), permute(memReq, order), permute(priority, order), order,
+				maxTraceTime);
+	}
+
+	/**
+	 * Gets the index of the first task submitted at or after a given time.
+	 *
+	 * @param time the time
+	 * @return the index, which is the number of tasks if all of them were submitted before
+	 */
+	public int firstAtOrAfter(double time) {
+		int low = 0;
+		int high = submitTime.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (submitTime[middle] < time) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Gets the indexes of the tasks submitted in an interval, in table order, that is, the order
+	 * the SQL interval query returns them.
+	 *
+	 * @param minTime the start of the interval, inclusive
+	 * @param maxTime the end of the interval, exclusive
+	 * @return the indexes of the tasks
+	 */
+	public int[] getInterval(double minTime, double maxTime) {
+		int first = firstAtOrAfter(minTime);
+		int last = Math.max(first, firstAtOrAfter(maxTime));
+		int[] indexes = new int[last - first];
+
+		if (tablePosition == null) {
+			for (int i = 0; i < indexes.length; i++) {
+				indexes[i] = first + i;
+			}
+			return indexes;
+		}
+
+		long[] keys = new long[indexes.length];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = ((long) tablePosition[first + i] << 32) | i;
+		}
+		Arrays.sort(keys);
+		for (int i = 0; i < keys.length; i++) {
+			indexes[i] = first + (int) keys[i];
+		}
+		return indexes;
+	}
+
+	public double getSubmitTime(int index) {
+		return submitTime[index];
+	}
+
+	public double getRuntime(int index) {
+		return runtime[index];
+	}
+
+	public double getCpuReq(int index) {
+		return cpuReq[index];
+	}
+
+	public double getMemReq(int index) {
+		return memReq[index];
+	}
+
+	/**
+	 * Gets the priority class of a task, already converted from the priority of the trace.
+	 *
+	 * @param index the index of the task
+	 * @return the priority class
+	 */
+	public int getPriority(int index) {
+		return priority[index];
+	}
+
+	/**
+	 * Gets the maximum submit time of the trace, computed as in
+	 * {@link InputTraceDataStore#getMaxTraceTime()}.
+	 *
+	 * @return the maximum submit time
+	 */
+	public double getMaxTraceTime() {
+		return maxTraceTime;
+	}
+
+	/**
+	 * Gets the number of tasks in the trace.
+	 *
+	 * @return the number of tasks
+	 */
+	public int size() {
+		return submitTime.length;
+	}
+
+	/**
+	 * Estimates the heap used by the trace columns.
+	 *
+	 * @return the estimate, in bytes
+	 */
+	public long getMemoryEstimate() {
+		long bytesPerTask = BYTES_PER_TASK + (tablePosition == null ? 0 : 4);
+		return bytesPerTask * size();
+	}
+
+	/** A stable merge sort of task indexes by submit time. */
+	private static void sortBySubmitTime(int[] order, int[] buffer, int from, int to,
+			double[] submitTime) {
+		if (to - from < 2) {
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		sortBySubmitTime(order, buffer, from, middle, submitTime);
+		sortBySubmitTime(order, buffer, middle, to, submitTime);
+		if (submitTime[order[middle - 1]] <= submitTime[order[middle]]) {
+			return;
+		}
+
+		System.arraycopy(order, from, buffer, from, to - from);
+		int left = from;
+		int right = middle;
+		for (int i = from; i < to; i++) {
+			if (right >= to || (left < middle && submitTime[buffer[left]] <= submitTime[buffer[right]])) {
+				order[i] = buffer[left++];
+			} else {
+				order[i] = buffer[right++];
+			}
+		}
+	}
+
+	private static double[] permute(double[] column, int[] order) {
+		double[] permuted = new double[column.length];
+		for (int i = 0; i < order.length; i++) {
+			permuted[i] = column[order[i]];
+		}
+		return permuted;
+	}
+
+	private static byte[] permute(byte[] column, int[] order) {
+		byte[] permuted = new byte[column.length];
+		for (int i = 0; i < order.length; i++) {
+			permuted[i] = column[order[i]];
+		}
+		return permuted;
+	}
+
+}
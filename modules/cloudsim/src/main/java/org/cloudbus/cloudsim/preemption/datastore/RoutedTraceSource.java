@@ -0,0 +1,327 @@
+package org.cloudbus.cloudsim.preemption.datastore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.cloudbus.cloudsim.Log;
+import org.cloudbus.cloudsim.preemption.SimulationException;
+import org.cloudbus.cloudsim.preemption.Task;
+import org.cloudbus.cloudsim.preemption.policies.routing.CellRoutingPolicy;
+
+/**
+ * Splits the intervals of a trace among cells, so each cell can be simulated on its own thread,
+ * in its own {@link org.cloudbus.cloudsim.core.SimulationContext}, by a
+ * {@link org.cloudbus.cloudsim.preemption.TraceDatacenterBroker} reading the source of the cell
+ * given by {@link #getCellSource(int)}. Each interval is read once, by the first cell requesting it,
+ * and its tasks are routed in the order of {@link Task#compareTo(Task)}, as a broker routing the
+ * tasks to all the cells of a single simulation does, so every cell gets the same tasks, with the
+ * same ids, in both cases.
+ * <p>
+ * The cells are synchronized conservatively, with the loading interval as lookahead: a cell
+ * loading an interval waits until the tasks submitted up to the end of the interval were routed,
+ * and nothing else is sent to it, since the routing does not depend on the state of the cells.
+ * The cells advance on their own otherwise. An interval is kept until every cell took it, and at
+ * most a given number of intervals are kept: a cell that is that many intervals ahead of the
+ * slowest one waits for it before loading the next interval, so the memory used does not grow with
+ * the trace. The reading of the trace can be hidden from the cells by a
+ * {@link PrefetchingTraceSource}.
+ * <p>
+ * The intervals of each cell must be requested in order, from the first one, as the brokers do
+ * when the simulation is not started from a checkpoint, and each cell must be read by its own
+ * thread. A cell that stops reading before the end of the trace must be {@link #finish(int)
+ * finished}, or the other cells may wait for it forever. The tasks of a cell are numbered when the
+ * trace is routed, so its next task id can only be set to the one it already has.
+ *
+ * @since CloudSim Toolkit 4.0
+ */
+public class RoutedTraceSource {
+
+	/** The most intervals kept at once by default. */
+	public static final int DEFAULT_MAX_INTERVALS = 16;
+
+	/** The tasks of an interval, for each cell. */
+	private static final class Interval {
+		final List<List<Task>> tasks;
+		/** The id of the last task read from the trace up to this interval. */
+		final int lastTaskId;
+
+		Interval(List<List<Task>> tasks, int lastTaskId) {
+			this.tasks = tasks;
+			this.lastTaskId = lastTaskId;
+		}
+	}
+
+	/** The trace as seen by one cell. */
+	private final class CellSource implements TraceSource {
+
+		private final int cell;
+
+		CellSource(int cell) {
+			this.cell = cell;
+		}
+
+		@Override
+		public List<Task> getGoogleTaskInterval(int intervalIndex, double intervalSize) {
+			return getInterval(cell, intervalIndex, intervalSize);
+		}
+
+		@Override
+		public boolean hasMoreEvents(int intervalIndex, double intervalSize) {
+			// it only depends on the interested times of the trace
+			return source.hasMoreEvents(intervalIndex, intervalSize);
+		}
+
+		@Override
+		public double getMinInterestedTime() {
+			return source.getMinInterestedTime();
+		}
+
+		@Override
+		public double getMaxInterestedTime() {
+			return source.getMaxInterestedTime();
+		}
+
+		@Override
+		public int getNextTaskId() {
+			synchronized (RoutedTraceSource.this) {
+				return lastTaskIds[cell];
+			}
+		}
+
+		@Override
+		public void setNextTaskId(int nextTaskId) {
+			synchronized (RoutedTraceSource.this) {
+				if (nextTaskId != lastTaskIds[cell]) {
+					throw new IllegalArgumentException("The next task id of cell " + cell + " is "
+							+ lastTaskIds[cell] + ", as numbered by the routing, and can not be set to "
+							+ nextTaskId + ".");
+				}
+			}
+		}
+	}
+
+	private final TraceSource source;
+
+	private final CellRoutingPolicy routingPolicy;
+
+	private final CellSource[] cellSources;
+
+	/**
+	 * The intervals routed and not taken by every cell yet, a ring buffer where the interval of
+	 * each index is at the index modulo its length.
+	 */
+	private final Interval[] intervals;
+
+	/** The index of the first interval kept. */
+	private int firstIndex;
+
+	private int keptIntervals;
+
+	/** The index of the first interval with no tasks, or -1 if the trace was not read up to it. */
+	private int endIndex = -1;
+
+	private double intervalSize;
+
+	/** The index of the next interval each cell will request. */
+	private final int[] nextIndexes;
+
+	private final int[] lastTaskIds;
+
+	private final long[] routedTasks;
+
+	private int maxKeptIntervals;
+
+	/**
+	 * Creates a source splitting the tasks of another one among cells, keeping at most
+	 * {@link #DEFAULT_MAX_INTERVALS} intervals.
+	 *
+	 * @param source the source, which must not be used by anything else afterwards
+	 * @param routingPolicy the policy choosing the cell of each task
+	 */
+	public RoutedTraceSource(TraceSource source, CellRoutingPolicy routingPolicy) {
+		this(source, routingPolicy, DEFAULT_MAX_INTERVALS);
+	}
+
+	/**
+	 * Creates a source splitting the tasks of another one among cells.
+	 *
+	 * @param source the source, which must not be used by anything else afterwards
+	 * @param routingPolicy the policy choosing the cell of each task
+	 * @param maxIntervals the most intervals kept at once, i.e. how far a cell can get ahead of
+	 *            the slowest one
+	 */
+	public RoutedTraceSource(TraceSource source, CellRoutingPolicy routingPolicy, int maxIntervals) {
+		if (maxIntervals <= 0) {
+			throw new IllegalArgumentException("The most intervals kept must be positive.");
+		}
+		this.source = source;
+		this.routingPolicy = routingPolicy;
+		this.intervals = new Interval[maxIntervals];
+
+		int cells = routingPolicy.getNumberOfCells();
+		this.cellSources = new CellSource[cells];
+		for (int cell = 0; cell < cells; cell++) {
+			cellSources[cell] = new CellSource(cell);
+		}
+		this.nextIndexes = new int[cells];
+		this.lastTaskIds = new int[cells];
+		for (int cell = 0; cell < cells; cell++) {
+			lastTaskIds[cell] = source.getNextTaskId();
+		}
+		this.routedTasks = new long[cells];
+	}
+
+	/**
+	 * Gets the source of the tasks routed to a cell. It can be used by a thread other than the
+	 * ones of the other cells.
+	 *
+	 * @param cell the index of the cell
+	 * @return the source of the cell
+	 */
+	public TraceSource getCellSource(int cell) {
+		return cellSources[cell];
+	}
+
+	public int getNumberOfCells() {
+		return cellSources.length;
+	}
+
+	private synchronized List<Task> getInterval(int cell, int intervalIndex, double intervalSize) {
+		if (nextIndexes[cell] == Integer.MAX_VALUE) {
+			throw new IllegalStateException("Cell " + cell + " was finished.");
+		}
+		if (intervalIndex != nextIndexes[cell]) {
+			throw new IllegalArgumentException("Cell " + cell + " requested the interval " + intervalIndex
+					+ " instead of the interval " + nextIndexes[cell] + ".");
+		}
+		if (intervalSize <= 0) {
+			throw new IllegalArgumentException("Interval size must be positive");
+		}
+		if (this.intervalSize == 0) {
+			this.intervalSize = intervalSize;
+		} else if (intervalSize != this.intervalSize) {
+			throw new IllegalArgumentException("The cells must request intervals of the same size, "
+					+ this.intervalSize + ", but an interval of size " + intervalSize + " was requested.");
+		}
+
+		// the slowest cell is at the first interval kept, so it never waits, and the end of the trace
+		// takes no room
+		while ((endIndex < 0 || intervalIndex < endIndex) && intervalIndex >= firstIndex + intervals.length
+				&& source.hasMoreEvents(intervalIndex, intervalSize)) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for the slower cells.", e);
+			}
+		}
+
+		while (endIndex < 0 && firstIndex + keptIntervals <= intervalIndex) {
+			route(firstIndex + keptIntervals);
+		}
+		if (endIndex >= 0 && intervalIndex >= endIndex) {
+			return null;
+		}
+
+		Interval interval = intervals[intervalIndex % intervals.length];
+		List<Task> tasks = interval.tasks.get(cell);
+		lastTaskIds[cell] = interval.lastTaskId;
+		nextIndexes[cell]++;
+		dropTakenIntervals();
+		return tasks;
+	}
+
+	/**
+	 * Finishes the reading of a cell, so the other cells do not wait for it. Its source can not be
+	 * read afterwards.
+	 *
+	 * @param cell the index of the cell
+	 */
+	public synchronized void finish(int cell) {
+		nextIndexes[cell] = Integer.MAX_VALUE;
+		dropTakenIntervals();
+	}
+
+	/** Drops the intervals every cell took, waking up the cells waiting for room. */
+	private void dropTakenIntervals() {
+		int dropped = 0;
+		while (keptIntervals > 0 && isTakenByAllCells(firstIndex)) {
+			intervals[firstIndex % intervals.length] = null;
+			firstIndex++;
+			keptIntervals--;
+			dropped++;
+		}
+		if (dropped > 0) {
+			notifyAll();
+		}
+	}
+
+	private boolean isTakenByAllCells(int intervalIndex) {
+		for (int nextIndex : nextIndexes) {
+			if (nextIndex <= intervalIndex) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Reads an interval of the source and routes its tasks. */
+	private void route(int intervalIndex) {
+		List<Task> tasks = source.getGoogleTaskInterval(intervalIndex, intervalSize);
+		if (tasks == null) {
+			endIndex = intervalIndex;
+			return;
+		}
+
+		// the order the brokers submit the tasks in
+		List<Task> sorted = new ArrayList<Task>(tasks);
+		Collections.sort(sorted);
+
+		List<List<Task>> cellTasks = new ArrayList<List<Task>>(cellSources.length);
+		for (int cell = 0; cell < cellSources.length; cell++) {
+			cellTasks.add(new ArrayList<Task>());
+		}
+		for (Task task : sorted) {
+			int cell = routingPolicy.route(task);
+			if (cell < 0 || cell >= cellTasks.size()) {
+				throw new SimulationException("Task #" + task.getId() + " was routed to the cell " + cell + " of "
+						+ cellTasks.size() + ".");
+			}
+			cellTasks.get(cell).add(task);
+			routedTasks[cell]++;
+		}
+		intervals[intervalIndex % intervals.length] = new Interval(cellTasks, source.getNextTaskId());
+		keptIntervals++;
+		maxKeptIntervals = Math.max(maxKeptIntervals, keptIntervals);
+	}
+
+	/**
+	 * Gets the number of tasks routed to a cell so far.
+	 *
+	 * @param cell the index of the cell
+	 * @return the number of tasks
+	 */
+	public synchronized long getRoutedTasks(int cell) {
+		return routedTasks[cell];
+	}
+
+	/**
+	 * Gets the most intervals that were kept at once, waiting for the slower cells to take them.
+	 */
+	public synchronized int getMaxKeptIntervals() {
+		return maxKeptIntervals;
+	}
+
+	/**
+	 * Logs how many tasks were routed to each cell and how far apart the cells got.
+	 */
+	public synchronized void printMetrics() {
+		StringBuilder tasks = new StringBuilder();
+		for (int cell = 0; cell < routedTasks.length; cell++) {
+			tasks.append(cell == 0 ? "" : ", ").append(routedTasks[cell]);
+		}
+		Log.printConcatLine("Routed trace: ", tasks, " tasks routed to the cells, at most ", maxKeptIntervals,
+				" intervals kept for the slower cells.");
+	}
+}
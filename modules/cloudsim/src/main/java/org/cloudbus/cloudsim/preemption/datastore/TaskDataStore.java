@@ -1,11 +1,8 @@
 package org.cloudbus.cloudsim.preemption.datastore;
 
-import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
 
@@ -19,19 +16,12 @@ public class TaskDataStore extends DataStore {
 	private static final String GOOGLE_TASK_TABLE_NAME = "googletasks";
 			
 	public TaskDataStore(Properties properties) {
-		super(properties.getProperty(DATABASE_URL_PROP));
+		super(properties.getProperty(DATABASE_URL_PROP), properties);
 
-		Statement statement = null;
-		Connection connection = null;
 		try {
 			Log.printLine("output_tasks_database_url=" + getDatabaseURL());
 
-			Class.forName(DATASTORE_SQLITE_DRIVER);
-
-			connection = getConnection();
-			statement = connection.createStatement();
-			statement
-					.execute("CREATE TABLE IF NOT EXISTS googletasks("
+			execute("CREATE TABLE IF NOT EXISTS googletasks("
 							+ "taskId INTEGER NOT NULL, "
 							+ "cpuReq REAL, "
 							+ "submitTime REAL, "
@@ -43,12 +33,11 @@ public class TaskDataStore extends DataStore {
 							+ "migrations INTEGER, "
 							+ "firstTimeAllocated REAL, "
 							+ "PRIMARY KEY (taskId)"
-							+ ")");
+							+ ")",
+					"CREATE INDEX IF NOT EXISTS googletasks_finishTime ON googletasks(finishTime)");
 		} catch (Exception e) {
 			e.printStackTrace();
 			Log.printLine("Error while initializing the GoogleTask database store.");
-		} finally {
-			close(statement, connection);
 		}
 	}
 	
@@ -59,91 +48,75 @@ public class TaskDataStore extends DataStore {
 		if (taskStates == null) {
 			Log.printLine("taskStates must no be null.");
 			return false;
-		}		
-		Log.printLine("Adding " + taskStates.size() + " VMs into database.");
-		
-		PreparedStatement insertMemberStatement = null;
-		
-		Connection connection = null;
-		
-		try {
-			connection = getConnection();
-			connection.setAutoCommit(false);
-			
-			insertMemberStatement = connection.prepareStatement(INSERT_TASK_SQL);
-			insertMemberStatement = connection
-					.prepareStatement(INSERT_TASK_SQL);
-			
-			for (TaskState taskState : taskStates) {
-				addTask(insertMemberStatement, taskState);
-			}
-			
-			int[] executeBatch = insertMemberStatement.executeBatch();
-			
-			if (executionFailed(connection, executeBatch)){
-				Log.printLine("Rollback will be executed.");
-				connection.rollback();
-				return false;
-			}
-			
-			connection.commit();
-			return true;
-		} catch (SQLException e) {
-			e.printStackTrace();
-			Log.printLine("Couldn't add tasks.");
-			try {
-				if (connection != null) {
-					connection.rollback();
-				}
-			} catch (SQLException e1) {
-				e1.printStackTrace();
-				Log.printLine("Couldn't rollback transaction.");
-			}
-			return false;
-		} finally {
-			close(insertMemberStatement, connection);
 		}
+		TaskResultBuffer tasks = new TaskResultBuffer(taskStates.size());
+		for (TaskState taskState : taskStates) {
+			tasks.add(taskState);
+		}
+		return addTasks(tasks);
 	}
 
-	private boolean executionFailed(Connection connection, int[] executeBatch)
-			throws SQLException {
-		for (int i : executeBatch) {
-			if (i == PreparedStatement.EXECUTE_FAILED) {
-				return true;
+	/**
+	 * Adds the tasks of a buffer in one transaction, without making objects for them.
+	 *
+	 * @param tasks the tasks
+	 * @return <code>true</code> if all the tasks were added
+	 */
+	public boolean addTasks(final TaskResultBuffer tasks) {
+		Log.printLine("Adding " + tasks.size() + " VMs into database.");
+
+		boolean added = executeBatch(INSERT_TASK_SQL, new BatchBuilder() {
+
+			@Override
+			public void addBatch(PreparedStatement insertMemberStatement) throws SQLException {
+				for (int i = 0; i < tasks.size(); i++) {
+					addTask(insertMemberStatement, tasks, i);
+				}
 			}
+		});
+
+		if (!added) {
+			Log.printLine("Couldn't add tasks.");
 		}
-		return false;
+		return added;
 	}
 
 	private void addTask(PreparedStatement insertMemberStatement,
-			TaskState taskState) throws SQLException {
-		insertMemberStatement.setInt(1, taskState.getTaskId());
-		insertMemberStatement.setDouble(2, taskState.getCpuReq());
-		insertMemberStatement.setDouble(3, taskState.getSubmitTime());
-		insertMemberStatement.setDouble(4, taskState.getFinishTime());
-		insertMemberStatement.setDouble(5, taskState.getRuntime());
-		insertMemberStatement.setInt(6, taskState.getPriority());
-		insertMemberStatement.setInt(7, taskState.getNumberOfPreemptions());
-		insertMemberStatement.setInt(8, taskState.getNumberOfBackfillingChoices());
-		insertMemberStatement.setInt(9, taskState.getNumberOfMigrations());
-		insertMemberStatement.setDouble(10, taskState.getFirstTimeAllocated());
+			TaskResultBuffer tasks, int index) throws SQLException {
+		insertMemberStatement.setInt(1, tasks.getTaskId(index));
+		insertMemberStatement.setDouble(2, tasks.getCpuReq(index));
+		insertMemberStatement.setDouble(3, tasks.getSubmitTime(index));
+		insertMemberStatement.setDouble(4, tasks.getFinishTime(index));
+		insertMemberStatement.setDouble(5, tasks.getRuntime(index));
+		insertMemberStatement.setInt(6, tasks.getPriority(index));
+		insertMemberStatement.setInt(7, tasks.getPreemptions(index));
+		insertMemberStatement.setInt(8, tasks.getBackfillingChoices(index));
+		insertMemberStatement.setInt(9, tasks.getMigrations(index));
+		insertMemberStatement.setDouble(10, tasks.getFirstTimeAllocated(index));
 		insertMemberStatement.addBatch();
 	}
 	
 	private static final String SELECT_ALL_TASKS_SQL = "SELECT * FROM " + GOOGLE_TASK_TABLE_NAME;
 
-	public List<TaskState> getAllTasks() {
-		Statement statement = null;
-		Connection conn = null;
-	
-		try {
-			conn = getConnection();
-			statement = conn.createStatement();
+	private static final String SELECT_TASKS_FINISHED_BEFORE_SQL = "SELECT * FROM "
+			+ GOOGLE_TASK_TABLE_NAME + " WHERE finishTime <= ?";
+
+	private static final RowMapper<TaskState> TASK_STATE_MAPPER = new RowMapper<TaskState>() {
 
-			statement.execute(SELECT_ALL_TASKS_SQL);
-			ResultSet rs = statement.getResultSet();
+		@Override
+		public TaskState map(ResultSet rs) throws SQLException {
+			return new TaskState(rs.getInt("taskId"), rs
+					.getDouble("cpuReq"), rs.getDouble("submitTime"), rs
+					.getDouble("finishTime"), rs.getDouble("runtime"), rs
+					.getInt("priority"), rs.getInt("preemptions"), rs
+					.getInt("backfillingChoices"), rs
+					.getInt("migrations"), rs.getDouble("firstTimeAllocated"));
+		}
+	};
 
-			return generateTaskList(rs);
+	public List<TaskState> getAllTasks() {
+		try {
+			return query(SELECT_ALL_TASKS_SQL, TASK_STATE_MAPPER);
 		} catch (SQLException e) {
 			Log.print(e);
 			Log.printLine("Couldn't get tasks from DB.");
@@ -151,32 +124,9 @@ public class TaskDataStore extends DataStore {
 		}
 	}
 
-	private List<TaskState> generateTaskList(ResultSet rs) throws SQLException {
-		List<TaskState> taskStates = new ArrayList<TaskState>();
-		while (rs.next()) {
-			taskStates.add(new TaskState(rs.getInt("taskId"), rs
-					.getDouble("cpuReq"), rs.getDouble("submitTime"), rs
-					.getDouble("finishTime"), rs.getDouble("runtime"), rs
-					.getInt("priority"), rs.getInt("preemptions"), rs
-					.getInt("backfillingChoices"), rs
-					.getInt("migrations"), rs.getDouble("firstTimeAllocated")));
-		}
-		return taskStates;
-	}
-	
 	public List<TaskState> getTasksFinishedBefore(double interestedTime) {
-		Statement statement = null;
-		Connection conn = null;
-	
 		try {
-			conn = getConnection();
-			statement = conn.createStatement();
-
-			statement.execute("SELECT * FROM " + GOOGLE_TASK_TABLE_NAME
-					+ " WHERE finishTime <= '" + interestedTime + "'");
-			ResultSet rs = statement.getResultSet();
-
-			return generateTaskList(rs);
+			return query(SELECT_TASKS_FINISHED_BEFORE_SQL, TASK_STATE_MAPPER, interestedTime);
 		} catch (SQLException e) {
 			Log.print(e);
 			Log.printLine("Couldn't get tasks from DB.");
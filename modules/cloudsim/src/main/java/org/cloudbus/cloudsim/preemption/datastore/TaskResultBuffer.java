@@ -0,0 +1,166 @@
+package org.cloudbus.cloudsim.preemption.datastore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.cloudbus.cloudsim.preemption.TaskState;
+
+/**
+ * The final states of a batch of tasks, kept in parallel primitive arrays that grow as needed.
+ * A buffer is cleared and reused after its tasks are stored.
+ *
+ * @since CloudSim Toolkit 4.0
+ */
+public class TaskResultBuffer {
+
+	private int[] taskIds;
+	private int[] priorities;
+	private int[] preemptions;
+	private int[] backfillingChoices;
+	private int[] migrations;
+
+	private double[] cpuReqs;
+	private double[] submitTimes;
+	private double[] finishTimes;
+	private double[] runtimes;
+	private double[] firstTimesAllocated;
+
+	private int size;
+
+	/**
+	 * Creates a buffer with room for a number of tasks.
+	 *
+	 * @param initialCapacity the number of tasks the buffer can hold before growing
+	 */
+	public TaskResultBuffer(int initialCapacity) {
+		int capacity = Math.max(1, initialCapacity);
+		taskIds = new int[capacity];
+		priorities = new int[capacity];
+		preemptions = new int[capacity];
+		backfillingChoices = new int[capacity];
+		migrations = new int[capacity];
+		cpuReqs = new double[capacity];
+		submitTimes = new double[capacity];
+		finishTimes = new double[capacity];
+		runtimes = new double[capacity];
+		firstTimesAllocated = new double[capacity];
+	}
+
+	public void add(int taskId, double cpuReq, double submitTime, double finishTime, double runtime,
+			int priority, int preemptions, int backfillingChoices, int migrations,
+			double firstTimeAllocated) {
+		if (size == taskIds.length) {
+			grow();
+		}
+		this.taskIds[size] = taskId;
+		this.cpuReqs[size] = cpuReq;
+		this.submitTimes[size] = submitTime;
+		this.finishTimes[size] = finishTime;
+		this.runtimes[size] = runtime;
+		this.priorities[size] = priority;
+		this.preemptions[size] = preemptions;
+		this.backfillingChoices[size] = backfillingChoices;
+		this.migrations[size] = migrations;
+		this.firstTimesAllocated[size] = firstTimeAllocated;
+		size++;
+	}
+
+	public void add(TaskState taskState) {
+		add(taskState.getTaskId(), taskState.getCpuReq(), taskState.getSubmitTime(),
+				taskState.getFinishTime(), taskState.getRuntime(), taskState.getPriority(),
+				taskState.getNumberOfPreemptions(), taskState.getNumberOfBackfillingChoices(),
+				taskState.getNumberOfMigrations(), taskState.getFirstTimeAllocated());
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	public int getTaskId(int index) {
+		return taskIds[index];
+	}
+
+	public double getCpuReq(int index) {
+		return cpuReqs[index];
+	}
+
+	public double getSubmitTime(int index) {
+		return submitTimes[index];
+	}
+
+	public double getFinishTime(int index) {
+		return finishTimes[index];
+	}
+
+	public double getRuntime(int index) {
+		return runtimes[index];
+	}
+
+	public int getPriority(int index) {
+		return priorities[index];
+	}
+
+	public int getPreemptions(int index) {
+		return preemptions[index];
+	}
+
+	public int getBackfillingChoices(int index) {
+		return backfillingChoices[index];
+	}
+
+	public int getMigrations(int index) {
+		return migrations[index];
+	}
+
+	public double getFirstTimeAllocated(int index) {
+		return firstTimesAllocated[index];
+	}
+
+	/**
+	 * Gets the state of a task as an object.
+	 *
+	 * @param index the position of the task in the buffer
+	 * @return the state of the task
+	 */
+	public TaskState get(int index) {
+		return new TaskState(taskIds[index], cpuReqs[index], submitTimes[index], finishTimes[index],
+				runtimes[index], priorities[index], preemptions[index], backfillingChoices[index],
+				migrations[index], firstTimesAllocated[index]);
+	}
+
+	/**
+	 * Gets the states of the tasks as objects, in the order they were added.
+	 *
+	 * @return the states of the tasks
+	 */
+	public List<TaskState> toList() {
+		List<TaskState> taskStates = new ArrayList<TaskState>(size);
+		for (int i = 0; i < size; i++) {
+			taskStates.add(get(i));
+		}
+		return taskStates;
+	}
+
+	private void grow() {
+		int capacity = 2 * taskIds.length;
+		taskIds = Arrays.copyOf(taskIds, capacity);
+		priorities = Arrays.copyOf(priorities, capacity);
+		preemptions = Arrays.copyOf(preemptions, capacity);
+		backfillingChoices = Arrays.copyOf(backfillingChoices, capacity);
+		migrations = Arrays.copyOf(migrations, capacity);
+		cpuReqs = Arrays.copyOf(cpuReqs, capacity);
+		submitTimes = Arrays.copyOf(submitTimes, capacity);
+		finishTimes = Arrays.copyOf(finishTimes, capacity);
+		runtimes = Arrays.copyOf(runtimes, capacity);
+		firstTimesAllocated = Arrays.copyOf(firstTimesAllocated, capacity);
+	}
+}
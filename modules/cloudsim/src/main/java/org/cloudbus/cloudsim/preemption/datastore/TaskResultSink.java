@@ -0,0 +1,52 @@
+package org.cloudbus.cloudsim.preemption.datastore;
+
+import java.util.List;
+
+import org.cloudbus.cloudsim.preemption.TaskState;
+
+/**
+ * Receives the final state of each task concluded by a
+ * {@link org.cloudbus.cloudsim.preemption.TraceDatacenterBroker}, as primitives, and stores the
+ * tasks in batches. The tasks received are kept until the sink is flushed, which happens when
+ * a batch is full or when the broker asks for it, every storing interval.
+ *
+ * @since CloudSim Toolkit 4.0
+ * @see BufferedTaskResultSink
+ */
+public interface TaskResultSink {
+
+	/**
+	 * Receives the final state of a task.
+	 */
+	void addTask(int taskId, double cpuReq, double submitTime, double finishTime, double runtime,
+			int priority, int preemptions, int backfillingChoices, int migrations,
+			double firstTimeAllocated);
+
+	/**
+	 * Gets the tasks received since the last flush.
+	 *
+	 * @return a copy of the tasks
+	 */
+	List<TaskState> getBufferedTasks();
+
+	/**
+	 * Gets the number of tasks received since the last flush.
+	 */
+	int getBufferedTaskCount();
+
+	/**
+	 * Hands the tasks received since the last flush to be stored.
+	 */
+	void flush();
+
+	/**
+	 * Waits until the tasks handed to be stored so far are stored.
+	 */
+	void awaitFlushes();
+
+	/**
+	 * Flushes the sink and waits until all the tasks are stored. The sink can not be used
+	 * afterwards.
+	 */
+	void close();
+}
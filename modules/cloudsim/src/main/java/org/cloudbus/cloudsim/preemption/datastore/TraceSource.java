@@ -0,0 +1,49 @@
+package org.cloudbus.cloudsim.preemption.datastore;
+
+import java.util.List;
+
+import org.cloudbus.cloudsim.preemption.Task;
+
+/**
+ * A source of the tasks of an input trace, served in consecutive intervals of submit time to a
+ * {@link org.cloudbus.cloudsim.preemption.TraceDatacenterBroker}. The tasks of each interval are
+ * numbered in order, starting after the id given by {@link #getNextTaskId()}.
+ *
+ * @since CloudSim Toolkit 4.0
+ * @see InputTraceDataStore
+ * @see BinaryTraceSource
+ */
+public interface TraceSource {
+
+	/**
+	 * Gets the tasks submitted in an interval, limited to the interested times of the trace.
+	 *
+	 * @param intervalIndex the index of the interval
+	 * @param intervalSize the size of the intervals
+	 * @return the tasks, or <code>null</code> if there are no more intervals
+	 */
+	List<Task> getGoogleTaskInterval(int intervalIndex, double intervalSize);
+
+	/**
+	 * Checks whether an interval starts before the end of the interested times.
+	 *
+	 * @param intervalIndex the index of the interval
+	 * @param intervalSize the size of the intervals
+	 * @return <code>true</code> if there may be tasks in the interval or after it
+	 */
+	boolean hasMoreEvents(int intervalIndex, double intervalSize);
+
+	double getMinInterestedTime();
+
+	double getMaxInterestedTime();
+
+	/**
+	 * Gets the id of the last task served.
+	 *
+	 * @return the id of the last task served
+	 */
+	int getNextTaskId();
+
+	void setNextTaskId(int nextTaskId);
+
+}
@@ -10,19 +10,30 @@ import org.cloudbus.cloudsim.Vm;
 import org.cloudbus.cloudsim.core.CloudSim;
 import org.cloudbus.cloudsim.preemption.PreemptableVm;
 import org.cloudbus.cloudsim.preemption.SimulationTimeUtil;
-import org.cloudbus.cloudsim.preemption.util.DecimalUtil;
+import org.cloudbus.cloudsim.preemption.util.PriorityResources;
+import org.cloudbus.cloudsim.preemption.util.ResourceUnits;
 
 public abstract class PreemptionPolicy {
 	
 	public static final int DEFAULT_NUMBER_OF_PRIORITIES = 3;
 
-	private Map<Integer, Double> priorityToInUseMips = new THashMap<Integer, Double>();
+	/** The MIPS in use by each priority. */
+	private PriorityResources inUseMips = new PriorityResources(DEFAULT_NUMBER_OF_PRIORITIES);
 	private Map<Integer, SortedSet<PreemptableVm>> priorityToVms = new THashMap<Integer, SortedSet<PreemptableVm>>();
 	private int numberOfPriorities = DEFAULT_NUMBER_OF_PRIORITIES;
 	private double totalMips;
+	private long totalUnits;
 	protected SimulationTimeUtil simulationTimeUtil;
 	public static final String NUMBER_OF_PRIORITIES_PROP = "number_of_priorities";
 		
+	/**
+	 * Checks if a VM can be allocated in the host, possibly preempting others. A VM needing more
+	 * than {@link #getAvailableMipsByPriorityAndAvailability(int)} for its priority must not be
+	 * suitable, as the datacenter skips such VMs without asking.
+	 * 
+	 * @param vm the VM
+	 * @return <code>true</code> if the VM is suitable
+	 */
 	public abstract boolean isSuitableFor(PreemptableVm vm);
 	
 	public abstract Vm nextVmForPreempting();
@@ -33,11 +44,7 @@ public abstract class PreemptionPolicy {
 		}
 		
 		getPriorityToVms().get(vm.getPriority()).add(vm);
-
-		double priorityCurrentUse = getPriorityToInUseMips().get(vm.getPriority()); 
-		getPriorityToInUseMips().put(vm.getPriority(),
-				DecimalUtil.format(priorityCurrentUse + vm.getMips()));
-		
+		addInUseMips(vm.getPriority(), vm.getMips());
 	}
 	
 	public void deallocating(PreemptableVm vm) {
@@ -47,11 +54,27 @@ public abstract class PreemptionPolicy {
 		}
 
 		getPriorityToVms().get(vm.getPriority()).remove(vm);
-		double priorityCurrentUse = getPriorityToInUseMips().get(vm.getPriority()); 
-		
-		getPriorityToInUseMips().put( vm.getPriority(),
-				DecimalUtil.format(priorityCurrentUse - vm.getMips()));
-		
+		addInUseMips(vm.getPriority(), -vm.getMips());
+	}
+
+	/**
+	 * Adds to the MIPS in use by a priority, without rounding errors accumulating.
+	 * 
+	 * @param priority the priority
+	 * @param mips the MIPS to add, negative when they are released
+	 */
+	protected void addInUseMips(int priority, double mips) {
+		inUseMips.add(priority, mips);
+	}
+
+	/**
+	 * Gets the MIPS in use by a priority.
+	 * 
+	 * @param priority the priority
+	 * @return the MIPS in use
+	 */
+	public double getInUseMips(int priority) {
+		return inUseMips.get(priority);
 	}
 	
 	public int getNumberOfPriorities() {
@@ -60,15 +83,42 @@ public abstract class PreemptionPolicy {
 	
 	protected void setNumberOfPriorities(int numberOfPriorities) {
 		this.numberOfPriorities = numberOfPriorities;
+		this.inUseMips = new PriorityResources(numberOfPriorities);
 	}
 	
+	/**
+	 * Gets the MIPS in use by each priority. The map is a copy, so changing it does not change
+	 * the policy.
+	 * 
+	 * @return the MIPS in use by priority
+	 */
 	public Map<Integer, Double> getPriorityToInUseMips() {
-		return priorityToInUseMips;
+		return inUseMips.toMap();
+	}
+
+	/**
+	 * Gets the MIPS in use by each priority. The amounts are a copy, so changing them does not
+	 * change the policy.
+	 * 
+	 * @return the MIPS in use by priority
+	 */
+	public PriorityResources getInUseMipsByPriority() {
+		return new PriorityResources(inUseMips);
 	}
 
 	public void setPriorityToInUseMips(
 			Map<Integer, Double> priorityToMipsInUse) {
-		this.priorityToInUseMips = priorityToMipsInUse;
+		this.inUseMips = new PriorityResources(getNumberOfPriorities(), priorityToMipsInUse);
+	}
+
+	/**
+	 * Gets the number of VMs of a priority allocated in the host.
+	 * 
+	 * @param priority the priority
+	 * @return the number of VMs
+	 */
+	public int getNumberOfVms(int priority) {
+		return getPriorityToVms().get(priority).size();
 	}
 
 	public Map<Integer, SortedSet<PreemptableVm>> getPriorityToVms() {
@@ -85,16 +135,22 @@ public abstract class PreemptionPolicy {
 
 	public void setTotalMips(double totalMips) {
 		this.totalMips = totalMips;
+		this.totalUnits = ResourceUnits.toUnits(totalMips);
 	}
 	
 	public double getAvailableMipsByPriority(int priority) {
-		double inUseByNonPreemptiveVms = 0;
-
-		for (int i = 0; i <= priority; i++) {
-			inUseByNonPreemptiveVms += getPriorityToInUseMips().get(i);
-		}
+		return ResourceUnits.toMips(getAvailableUnitsByPriority(priority));
+	}
 
-		return DecimalUtil.format(getTotalMips() - inUseByNonPreemptiveVms);
+	/**
+	 * Gets the MIPS available for a priority in {@link ResourceUnits}, so they can be added to
+	 * other amounts without rounding.
+	 * 
+	 * @param priority the priority
+	 * @return the available units
+	 */
+	protected long getAvailableUnitsByPriority(int priority) {
+		return totalUnits - inUseMips.getUnitsUpTo(priority);
 	}
 
 
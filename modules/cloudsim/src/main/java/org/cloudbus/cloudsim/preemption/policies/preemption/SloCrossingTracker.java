@@ -0,0 +1,260 @@
+package org.cloudbus.cloudsim.preemption.policies.preemption;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import org.cloudbus.cloudsim.preemption.PreemptableVm;
+import org.cloudbus.cloudsim.preemption.util.ResourceUnits;
+
+/**
+ * Keeps the MIPS of the running VMs of a priority whose availability is above the SLO target, so
+ * they are not summed over all running VMs each time they are needed.
+ * <p>
+ * The availability of a running VM never decreases: it grows while the VM is not getting all the
+ * time since its submission, and stays the same otherwise. So once a running VM is above its SLO
+ * target it stays above until it is deallocated, and the time it will cross the target can be
+ * computed when it is allocated. The VMs below the target are kept in a heap by that time, and the
+ * ones whose time has come are checked against the target when the MIPS are asked for, with the
+ * same computation of the availability used before. A VM found still below, because the time it
+ * crosses was rounded, is checked again at the next time.
+ *
+ * @since CloudSim Toolkit 4.0
+ */
+public class SloCrossingTracker {
+
+	private final double sloTarget;
+
+	/** The MIPS above the target, in {@link ResourceUnits}. */
+	private long unitsAboveTarget;
+
+	/** The ids of the VMs above the target. */
+	private final TIntIntHashMap aboveTarget = new TIntIntHashMap();
+
+	/** The generation of the heap entry of each VM below the target, so stale entries are skipped. */
+	private final TIntIntHashMap belowTarget = new TIntIntHashMap();
+
+	private int nextGeneration;
+
+	/**
+	 * The VMs added without a start time, whose availability may decrease, so they are checked
+	 * each time.
+	 */
+	private final TIntObjectHashMap<PreemptableVm> notExecuting = new TIntObjectHashMap<PreemptableVm>();
+
+	private double[] heapTimes = new double[16];
+	private PreemptableVm[] heapVms = new PreemptableVm[16];
+	private int[] heapGenerations = new int[16];
+	private int heapSize;
+
+	private double lastTime = Double.NEGATIVE_INFINITY;
+
+	public SloCrossingTracker(double sloTarget) {
+		this.sloTarget = sloTarget;
+	}
+
+	/**
+	 * Adds a VM that started running.
+	 *
+	 * @param vm the VM, with its start time already set
+	 * @param currentTime the current time
+	 */
+	public void add(PreemptableVm vm, double currentTime) {
+		if (vm.getStartExec() == PreemptableVm.NOT_EXECUTING_TIME) {
+			notExecuting.put(vm.getId(), vm);
+		} else if (isAboveTarget(vm, currentTime)) {
+			aboveTarget.put(vm.getId(), 0);
+			unitsAboveTarget += ResourceUnits.toUnits(vm.getMips());
+		} else {
+			belowTarget.put(vm.getId(), nextGeneration);
+			push(getCrossingTime(vm), vm, nextGeneration++);
+		}
+	}
+
+	/**
+	 * Removes a VM that is not running anymore.
+	 *
+	 * @param vm the VM
+	 */
+	public void remove(PreemptableVm vm) {
+		if (aboveTarget.containsKey(vm.getId())) {
+			aboveTarget.remove(vm.getId());
+			unitsAboveTarget -= ResourceUnits.toUnits(vm.getMips());
+		} else if (notExecuting.remove(vm.getId()) == null) {
+			belowTarget.remove(vm.getId());
+			if (heapSize > 2 * belowTarget.size() + 16) {
+				compact();
+			}
+		}
+	}
+
+	/**
+	 * Gets the MIPS of the running VMs above the SLO target at the current time.
+	 *
+	 * @param runningVms the running VMs, used if the time went back since the last call, as
+	 *        tests may do
+	 * @param currentTime the current time
+	 * @return the MIPS above the target
+	 */
+	public double getMipsAboveTarget(Collection<PreemptableVm> runningVms, double currentTime) {
+		return ResourceUnits.toMips(getUnitsAboveTarget(runningVms, currentTime));
+	}
+
+	/**
+	 * Gets the MIPS of the running VMs above the SLO target at the current time in
+	 * {@link ResourceUnits}.
+	 *
+	 * @param runningVms the running VMs, used if the time went back since the last call
+	 * @param currentTime the current time
+	 * @return the units above the target
+	 */
+	public long getUnitsAboveTarget(Collection<PreemptableVm> runningVms, double currentTime) {
+		if (currentTime < lastTime) {
+			rebuild(runningVms, currentTime);
+		}
+		lastTime = currentTime;
+
+		while (heapSize > 0 && heapTimes[0] < currentTime) {
+			PreemptableVm vm = heapVms[0];
+			int generation = heapGenerations[0];
+			pop();
+			if (!belowTarget.containsKey(vm.getId()) || belowTarget.get(vm.getId()) != generation) {
+				continue;
+			}
+
+			if (isAboveTarget(vm, currentTime)) {
+				belowTarget.remove(vm.getId());
+				aboveTarget.put(vm.getId(), 0);
+				unitsAboveTarget += ResourceUnits.toUnits(vm.getMips());
+			} else {
+				belowTarget.put(vm.getId(), nextGeneration);
+				push(currentTime, vm, nextGeneration++);
+			}
+		}
+
+		long units = unitsAboveTarget;
+		if (!notExecuting.isEmpty()) {
+			for (PreemptableVm vm : notExecuting.valueCollection()) {
+				if (isAboveTarget(vm, currentTime)) {
+					units += ResourceUnits.toUnits(vm.getMips());
+				}
+			}
+		}
+		return units;
+	}
+
+	private boolean isAboveTarget(PreemptableVm vm, double currentTime) {
+		return vm.getCurrentAvailability(currentTime) - sloTarget > 0;
+	}
+
+	/**
+	 * Gets a time slightly before the one the availability of a running VM goes above the target,
+	 * which is when its runtime, growing as the time, becomes bigger than the target times the
+	 * time since its submission.
+	 */
+	private double getCrossingTime(PreemptableVm vm) {
+		if (sloTarget >= 1) {
+			// the runtime of a VM is never bigger than the time since its submission
+			return Double.POSITIVE_INFINITY;
+		}
+		double startExec = vm.getStartExec();
+		double runtimeBeforeStart = vm.getActualRuntime(startExec);
+		double time = (startExec - runtimeBeforeStart - sloTarget * vm.getSubmitTime()) / (1 - sloTarget);
+		double roundingMargin = 1e-6 * (Math.abs(startExec) + Math.abs(runtimeBeforeStart)
+				+ Math.abs(vm.getSubmitTime()) + 1) / (1 - sloTarget);
+		return time - roundingMargin;
+	}
+
+	private void rebuild(Collection<PreemptableVm> runningVms, double currentTime) {
+		unitsAboveTarget = 0;
+		aboveTarget.clear();
+		belowTarget.clear();
+		notExecuting.clear();
+		Arrays.fill(heapVms, 0, heapSize, null);
+		heapSize = 0;
+		lastTime = currentTime;
+		for (PreemptableVm vm : runningVms) {
+			add(vm, currentTime);
+		}
+	}
+
+	/** Drops the stale heap entries of the VMs removed. */
+	private void compact() {
+		int size = 0;
+		for (int i = 0; i < heapSize; i++) {
+			PreemptableVm vm = heapVms[i];
+			if (belowTarget.containsKey(vm.getId()) && belowTarget.get(vm.getId()) == heapGenerations[i]) {
+				heapTimes[size] = heapTimes[i];
+				heapVms[size] = vm;
+				heapGenerations[size] = heapGenerations[i];
+				size++;
+			}
+		}
+		Arrays.fill(heapVms, size, heapSize, null);
+		heapSize = size;
+		for (int i = heapSize / 2 - 1; i >= 0; i--) {
+			siftDown(i);
+		}
+	}
+
+	private void push(double time, PreemptableVm vm, int generation) {
+		if (heapSize == heapTimes.length) {
+			heapTimes = Arrays.copyOf(heapTimes, 2 * heapSize);
+			heapVms = Arrays.copyOf(heapVms, 2 * heapSize);
+			heapGenerations = Arrays.copyOf(heapGenerations, 2 * heapSize);
+		}
+		int i = heapSize++;
+		heapTimes[i] = time;
+		heapVms[i] = vm;
+		heapGenerations[i] = generation;
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			if (heapTimes[parent] <= heapTimes[i]) {
+				break;
+			}
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	private void pop() {
+		heapSize--;
+		heapTimes[0] = heapTimes[heapSize];
+		heapVms[0] = heapVms[heapSize];
+		heapGenerations[0] = heapGenerations[heapSize];
+		heapVms[heapSize] = null;
+		siftDown(0);
+	}
+
+	private void siftDown(int i) {
+		while (true) {
+			int smallest = i;
+			int left = 2 * i + 1;
+			int right = left + 1;
+			if (left < heapSize && heapTimes[left] < heapTimes[smallest]) {
+				smallest = left;
+			}
+			if (right < heapSize && heapTimes[right] < heapTimes[smallest]) {
+				smallest = right;
+			}
+			if (smallest == i) {
+				return;
+			}
+			swap(i, smallest);
+			i = smallest;
+		}
+	}
+
+	private void swap(int i, int j) {
+		double time = heapTimes[i];
+		heapTimes[i] = heapTimes[j];
+		heapTimes[j] = time;
+		PreemptableVm vm = heapVms[i];
+		heapVms[i] = heapVms[j];
+		heapVms[j] = vm;
+		int generation = heapGenerations[i];
+		heapGenerations[i] = heapGenerations[j];
+		heapGenerations[j] = generation;
+	}
+}
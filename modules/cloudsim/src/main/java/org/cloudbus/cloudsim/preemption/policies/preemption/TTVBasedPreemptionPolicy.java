@@ -1,10 +1,7 @@
 package org.cloudbus.cloudsim.preemption.policies.preemption;
 
 import java.util.Properties;
-import java.util.SortedSet;
-import java.util.TreeSet;
 
-import org.cloudbus.cloudsim.Vm;
 import org.cloudbus.cloudsim.preemption.PreemptableVm;
 import org.cloudbus.cloudsim.preemption.util.PriorityAndTTVBasedPreemptableVmComparator;
 
@@ -14,22 +11,29 @@ public class TTVBasedPreemptionPolicy extends VmAvailabilityBasedPreemptionPolic
 		super(properties);
 	}
 
+	/**
+	 * Gets the time to violate the SLO target of a running VM, as in
+	 * {@link PriorityAndTTVBasedPreemptableVmComparator}, less <code>(1 - sloTarget) * time</code>.
+	 * The time to violate of every running VM of a priority grows at that same rate, so the
+	 * difference does not depend on the time and the VMs keep their order.
+	 */
 	@Override
-	public Vm nextVmForPreempting() {
-		for (int i = getNumberOfPriorities() - 1; i >= 0; i--) {
-
-			PriorityAndTTVBasedPreemptableVmComparator comparator = new PriorityAndTTVBasedPreemptableVmComparator(
-					priorityToSLOTarget, simulationTimeUtil);
+	protected double getPreemptionKey(PreemptableVm vm, double time) {
+		double sloTarget = priorityToSLOTarget.get(vm.getPriority());
+		return vm.getActualRuntime(vm.getStartExec()) - vm.getStartExec() + vm.getSubmitTime() * sloTarget;
+	}
 
-			SortedSet<PreemptableVm> sortedSet = new TreeSet<PreemptableVm>(
-					comparator);
-			sortedSet.addAll(priorityToRunningVms.get(i).values());
+	@Override
+	protected boolean isPreemptionKeyTimeInvariant() {
+		return true;
+	}
 
-			if (!sortedSet.isEmpty()) {
-				return sortedSet.last();
-			}
-		}
-		return null;
+	/**
+	 * VMs with the same time to violate are sorted by id only.
+	 */
+	@Override
+	protected double getPreemptionTieKey(PreemptableVm vm) {
+		return 0;
 	}
 
 }
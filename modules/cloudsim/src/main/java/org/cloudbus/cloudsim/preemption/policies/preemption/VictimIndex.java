@@ -0,0 +1,165 @@
+package org.cloudbus.cloudsim.preemption.policies.preemption;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.TreeSet;
+
+import gnu.trove.map.hash.TIntObjectHashMap;
+import org.cloudbus.cloudsim.preemption.PreemptableVm;
+
+/**
+ * Keeps the running VMs of a priority in preemption order, so the next VM to be preempted is
+ * found in O(log n) instead of sorting all of them on each preemption.
+ * <p>
+ * When the {@link SortKeys} are time invariant, as the time to violate of the TTV policy shifted
+ * by the rate all the running VMs of a priority share, the VMs keep their order as the time
+ * passes: the index is built once and VMs allocated and deallocated are added and removed in
+ * O(log n) at any time.
+ * <p>
+ * Otherwise, as for the availability of a VM, which changes at a rate that depends on the VM, each
+ * VM is kept with its sort keys computed at the time the index is valid for. While the time does
+ * not change, as while a host preempts one VM after another to allocate an arriving one, VMs
+ * allocated and deallocated are added and removed in O(log n). When the time changes, the index is
+ * rebuilt the next time a VM is asked for.
+ * <p>
+ * The VMs are sorted by their key, then by their tie key and then by id. The keys of a VM are
+ * kept with it, so a VM can be removed even after its state changed, e.g. when it was preempted.
+ *
+ * @since CloudSim Toolkit 4.0
+ */
+public class VictimIndex {
+
+	/** Gives the sort keys of the VMs at a given time. */
+	public interface SortKeys {
+
+		double getKey(PreemptableVm vm, double time);
+
+		double getTieKey(PreemptableVm vm);
+
+		/**
+		 * Checks whether the order of the running VMs given by the keys is the same at any time,
+		 * in which case the key of a VM must not depend on the time it is computed at.
+		 */
+		boolean isTimeInvariant();
+	}
+
+	private static final class Entry {
+		final PreemptableVm vm;
+		final double key;
+		final double tieKey;
+
+		Entry(PreemptableVm vm, double key, double tieKey) {
+			this.vm = vm;
+			this.key = key;
+			this.tieKey = tieKey;
+		}
+	}
+
+	private static final Comparator<Entry> ORDER = new Comparator<Entry>() {
+
+		@Override
+		public int compare(Entry entry1, Entry entry2) {
+			if (entry1.vm.getId() == entry2.vm.getId()) {
+				return 0;
+			}
+			int result = Double.compare(entry1.key, entry2.key);
+			if (result == 0) {
+				result = Double.compare(entry1.tieKey, entry2.tieKey);
+			}
+			if (result == 0) {
+				result = entry1.vm.getId() < entry2.vm.getId() ? -1 : 1;
+			}
+			return result;
+		}
+	};
+
+	private final SortKeys sortKeys;
+
+	private final TreeSet<Entry> entries = new TreeSet<Entry>(ORDER);
+
+	private final TIntObjectHashMap<Entry> entriesById = new TIntObjectHashMap<Entry>();
+
+	private boolean valid;
+
+	private double time;
+
+	public VictimIndex(SortKeys sortKeys) {
+		this.sortKeys = sortKeys;
+	}
+
+	/**
+	 * Adds an allocated VM. If the keys depend on the time and the index is valid for another
+	 * time, it is only dropped.
+	 *
+	 * @param vm the VM
+	 * @param currentTime the current time
+	 */
+	public void add(PreemptableVm vm, double currentTime) {
+		if (valid && (time == currentTime || sortKeys.isTimeInvariant())) {
+			put(vm);
+		} else {
+			invalidate();
+		}
+	}
+
+	/**
+	 * Removes a deallocated VM.
+	 *
+	 * @param vm the VM
+	 */
+	public void remove(PreemptableVm vm) {
+		if (valid) {
+			Entry entry = entriesById.remove(vm.getId());
+			if (entry != null) {
+				entries.remove(entry);
+			}
+		}
+	}
+
+	/**
+	 * Gets the last VM in preemption order at the current time.
+	 *
+	 * @param runningVms the VMs running, used when the index must be rebuilt
+	 * @param currentTime the current time
+	 * @return the last VM, or <code>null</code> if there is none
+	 */
+	public PreemptableVm last(Collection<PreemptableVm> runningVms, double currentTime) {
+		if (runningVms.isEmpty()) {
+			return null;
+		}
+		if (!valid || (time != currentTime && !sortKeys.isTimeInvariant())) {
+			rebuild(runningVms, currentTime);
+		}
+		return entries.last().vm;
+	}
+
+	/**
+	 * Drops the index, e.g. when the running VMs were changed other than by {@link #add} and
+	 * {@link #remove}.
+	 */
+	public void invalidate() {
+		if (valid) {
+			valid = false;
+			entries.clear();
+			entriesById.clear();
+		}
+	}
+
+	private void rebuild(Collection<PreemptableVm> runningVms, double currentTime) {
+		invalidate();
+		time = currentTime;
+		for (PreemptableVm vm : runningVms) {
+			put(vm);
+		}
+		valid = true;
+	}
+
+	private void put(PreemptableVm vm) {
+		Entry entry = new Entry(vm, sortKeys.getKey(vm, time), sortKeys.getTieKey(vm));
+		Entry previous = entriesById.put(vm.getId(), entry);
+		if (previous != null) {
+			entries.remove(previous);
+		}
+		entries.add(entry);
+	}
+}
@@ -10,7 +10,7 @@ import gnu.trove.map.hash.THashMap;
 import org.cloudbus.cloudsim.Vm;
 import org.cloudbus.cloudsim.preemption.PreemptableVm;
 import org.cloudbus.cloudsim.preemption.SimulationTimeUtil;
-import org.cloudbus.cloudsim.preemption.util.DecimalUtil;
+import org.cloudbus.cloudsim.preemption.util.ResourceUnits;
 import org.cloudbus.cloudsim.preemption.util.VmAvailabilityBasedPreemptableVmComparator;
 
 public class VmAvailabilityBasedPreemptionPolicy extends PreemptionPolicy {
@@ -19,6 +19,26 @@ public class VmAvailabilityBasedPreemptionPolicy extends PreemptionPolicy {
 
     protected Map<Integer, Double> priorityToSLOTarget = new THashMap<Integer, Double>();
     protected Map<Integer, Map<Integer, PreemptableVm>> priorityToRunningVms = new THashMap<Integer, Map<Integer, PreemptableVm>>();
+    protected Map<Integer, VictimIndex> priorityToVictimIndex = new THashMap<Integer, VictimIndex>();
+    protected Map<Integer, SloCrossingTracker> priorityToSloCrossingTracker = new THashMap<Integer, SloCrossingTracker>();
+
+    private final VictimIndex.SortKeys sortKeys = new VictimIndex.SortKeys() {
+
+        @Override
+        public double getKey(PreemptableVm vm, double time) {
+            return getPreemptionKey(vm, time);
+        }
+
+        @Override
+        public double getTieKey(PreemptableVm vm) {
+            return getPreemptionTieKey(vm);
+        }
+
+        @Override
+        public boolean isTimeInvariant() {
+            return isPreemptionKeyTimeInvariant();
+        }
+    };
 
     public VmAvailabilityBasedPreemptionPolicy(Properties properties) {
         this(properties, new SimulationTimeUtil());
@@ -53,7 +73,8 @@ public class VmAvailabilityBasedPreemptionPolicy extends PreemptionPolicy {
 //					sloAvailabilityTargets.get(priority), simulationTimeUtil);
 //			getPriorityToVms().put(priority, new TreeSet<PreemptableVm>(comparator));
             priorityToRunningVms.put(priority, new THashMap<Integer, PreemptableVm>());
-            getPriorityToInUseMips().put(priority, new Double(0));
+            priorityToVictimIndex.put(priority, new VictimIndex(sortKeys));
+            priorityToSloCrossingTracker.put(priority, new SloCrossingTracker(sloAvailabilityTargets.get(priority)));
         }
     }
 
@@ -94,17 +115,20 @@ public class VmAvailabilityBasedPreemptionPolicy extends PreemptionPolicy {
             return false;
         }
 
-        double availableMipsForVmPriority = getAvailableMipsByPriority(vm.getPriority());
-        if (availableMipsForVmPriority >= vm.getMips()) {
+        long availableUnitsForVmPriority = getAvailableUnitsByPriority(vm.getPriority());
+        if (ResourceUnits.toMips(availableUnitsForVmPriority) >= vm.getMips()) {
             return true;
         }
 
-        double mipsToBeAvailableBasedOnVmAvailability = calcMipsOfSamePriorityToBeAvailable(vm);
-        return ((availableMipsForVmPriority + mipsToBeAvailableBasedOnVmAvailability) >= vm.getMips());
+        long unitsToBeAvailableBasedOnVmAvailability = calcUnitsOfSamePriorityToBeAvailable(vm);
+        return ResourceUnits.toMips(availableUnitsForVmPriority + unitsToBeAvailableBasedOnVmAvailability) >= vm.getMips();
     }
 
     protected double calcMipsOfSamePriorityToBeAvailable(PreemptableVm arrivingVm) {
-        double mipsToBeAvailable = 0;
+        return ResourceUnits.toMips(calcUnitsOfSamePriorityToBeAvailable(arrivingVm));
+    }
+
+    private long calcUnitsOfSamePriorityToBeAvailable(PreemptableVm arrivingVm) {
         double sloTarget = getPriorityToSLOTarget().get(arrivingVm.getPriority());
 
         // check if arriving VM isn't violating the SLO target
@@ -113,57 +137,77 @@ public class VmAvailabilityBasedPreemptionPolicy extends PreemptionPolicy {
             return 0;
         }
 
-//		for (Vm vm : getPriorityToVms().get(arrivingVm.getPriority())) {
-        for (Vm vm : priorityToRunningVms.get(arrivingVm.getPriority()).values()) {
-            PreemptableVm runningVm = (PreemptableVm) vm;
-
-            double runningDiff = runningVm.getCurrentAvailability(simulationTimeUtil.clock()) - sloTarget;
-
-            if (runningDiff > arrivingDiff && runningDiff > 0) {
-                mipsToBeAvailable += runningVm.getMips();
-            }
-        }
-
-        return mipsToBeAvailable;
+        // the running VMs above the SLO target are above the arriving VM too
+        return getUnitsAboveSLOTarget(arrivingVm.getPriority());
     }
 
     @Override
     public double getAvailableMipsByPriorityAndAvailability(int priority) {
+        return ResourceUnits.toMips(getAvailableUnitsByPriority(priority) + getUnitsAboveSLOTarget(priority));
+    }
 
-        double mipsToBeAvailable = getAvailableMipsByPriority(priority);
-
-        double sloTarget = getPriorityToSLOTarget().get(priority);
-
-        for (Vm vm : priorityToRunningVms.get(priority).values()) {
-
-            PreemptableVm pVM = (PreemptableVm) vm;
-            double currentAvailability = pVM.getCurrentAvailability(simulationTimeUtil.clock());
-
-            if (currentAvailability > sloTarget)
-                mipsToBeAvailable += pVM.getMips();
+    /**
+     * Gets the MIPS of the running VMs of a priority whose current availability is above the SLO
+     * target of the priority.
+     *
+     * @param priority the priority
+     * @return the MIPS above the SLO target
+     */
+    public double getMipsAboveSLOTarget(int priority) {
+        return ResourceUnits.toMips(getUnitsAboveSLOTarget(priority));
+    }
 
-        }
-        return mipsToBeAvailable;
+    private long getUnitsAboveSLOTarget(int priority) {
+        return priorityToSloCrossingTracker.get(priority).getUnitsAboveTarget(
+                priorityToRunningVms.get(priority).values(), simulationTimeUtil.clock());
     }
 
     @Override
     public Vm nextVmForPreempting() {
         for (int i = getNumberOfPriorities() - 1; i >= 0; i--) {
 
-            VmAvailabilityBasedPreemptableVmComparator comparator = new VmAvailabilityBasedPreemptableVmComparator(
-                    priorityToSLOTarget.get(i), simulationTimeUtil);
-
-            SortedSet<PreemptableVm> sortedSet = new TreeSet<PreemptableVm>(comparator);
-            sortedSet.addAll(priorityToRunningVms.get(i).values());
-
-//			if (!getPriorityToVms().get(i).isEmpty()) {
-            if (!sortedSet.isEmpty()) {
-                return sortedSet.last();
+            PreemptableVm vm = priorityToVictimIndex.get(i).last(priorityToRunningVms.get(i).values(),
+                    simulationTimeUtil.clock());
+            if (vm != null) {
+                return vm;
             }
         }
         return null;
     }
 
+    /**
+     * Gets the key by which the running VMs of a priority are sorted to be preempted, the last
+     * one first. The order is the one given by {@link VmAvailabilityBasedPreemptableVmComparator}.
+     *
+     * @param vm the running VM
+     * @param time the current time
+     * @return the difference between the availability of the VM and its SLO target
+     */
+    protected double getPreemptionKey(PreemptableVm vm, double time) {
+        return vm.getCurrentAvailability(time) - priorityToSLOTarget.get(vm.getPriority());
+    }
+
+    /**
+     * Gets the key by which the running VMs with the same {@link #getPreemptionKey} are sorted.
+     *
+     * @param vm the running VM
+     * @return the submit time of the VM
+     */
+    protected double getPreemptionTieKey(PreemptableVm vm) {
+        return vm.getSubmitTime();
+    }
+
+    /**
+     * Checks whether the running VMs of a priority keep their {@link #getPreemptionKey} order as
+     * the time passes. The availability of a running VM tends to 1 at a rate that depends on its
+     * runtime and submit time, so VMs can swap places and the order is only valid for one time.
+     *
+     * @return <code>false</code>
+     */
+    protected boolean isPreemptionKeyTimeInvariant() {
+        return false;
+    }
+
     @Override
     public void allocating(PreemptableVm vm) {
         if (vm == null) {
@@ -171,12 +215,11 @@ public class VmAvailabilityBasedPreemptionPolicy extends PreemptionPolicy {
         }
 
         priorityToRunningVms.get(vm.getPriority()).put(vm.getId(), vm);
+        priorityToVictimIndex.get(vm.getPriority()).add(vm, simulationTimeUtil.clock());
+        priorityToSloCrossingTracker.get(vm.getPriority()).add(vm, simulationTimeUtil.clock());
 
 //		getPriorityToVms().get(vm.getPriority()).add(vm);
-        double priorityCurrentUse = getPriorityToInUseMips().get(vm.getPriority());
-        getPriorityToInUseMips().put(vm.getPriority(),
-                DecimalUtil.format(priorityCurrentUse + vm.getMips()));
-
+        addInUseMips(vm.getPriority(), vm.getMips());
     }
 
     @Override
@@ -187,13 +230,11 @@ public class VmAvailabilityBasedPreemptionPolicy extends PreemptionPolicy {
         }
 
         priorityToRunningVms.get(vm.getPriority()).remove(vm.getId());
+        priorityToVictimIndex.get(vm.getPriority()).remove(vm);
+        priorityToSloCrossingTracker.get(vm.getPriority()).remove(vm);
 
 //		getPriorityToVms().get(vm.getPriority()).remove(vm);
-        double priorityCurrentUse = getPriorityToInUseMips().get(vm.getPriority());
-
-        getPriorityToInUseMips().put(vm.getPriority(),
-                DecimalUtil.format(priorityCurrentUse - vm.getMips()));
-
+        addInUseMips(vm.getPriority(), -vm.getMips());
     }
 
     public Map<Integer, Double> getPriorityToSLOTarget() {
@@ -208,6 +249,11 @@ public class VmAvailabilityBasedPreemptionPolicy extends PreemptionPolicy {
         this.simulationTimeUtil = simulationTimeUtil;
     }
 
+    @Override
+    public int getNumberOfVms(int priority) {
+        return priorityToRunningVms.get(priority).size();
+    }
+
     @Override
     public Map<Integer, SortedSet<PreemptableVm>> getPriorityToVms() {
         Map<Integer, SortedSet<PreemptableVm>> priorityToVms = new THashMap<Integer, SortedSet<PreemptableVm>>();
@@ -226,9 +272,7 @@ public class VmAvailabilityBasedPreemptionPolicy extends PreemptionPolicy {
 
     @Override
     public double getAvailableMipsByVm(PreemptableVm vm) {
-        double availableMipsByPriority = getAvailableMipsByPriority(vm
-                .getPriority());
-        double mipsToBeAvilableOfSamePriority = calcMipsOfSamePriorityToBeAvailable(vm);
-        return availableMipsByPriority + mipsToBeAvilableOfSamePriority;
+        return ResourceUnits.toMips(getAvailableUnitsByPriority(vm.getPriority())
+                + calcUnitsOfSamePriorityToBeAvailable(vm));
     }
 }
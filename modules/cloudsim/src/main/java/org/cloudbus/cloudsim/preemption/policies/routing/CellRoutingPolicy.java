@@ -0,0 +1,31 @@
+package org.cloudbus.cloudsim.preemption.policies.routing;
+
+import org.cloudbus.cloudsim.preemption.Task;
+
+/**
+ * Chooses the cell of each task when the hosts are partitioned in cells, each one a
+ * {@link org.cloudbus.cloudsim.preemption.PreemptiveDatacenter} with its own hosts, allocation
+ * policy and waiting queue. The tasks are routed by the
+ * {@link org.cloudbus.cloudsim.preemption.TraceDatacenterBroker} when they are loaded, in the
+ * order of {@link Task#compareTo(Task)} within each loading interval.
+ * <p>
+ * A policy only sees the tasks, not the state of the cells, so the cells do not depend on each
+ * other and may be simulated at the same time: see
+ * {@link org.cloudbus.cloudsim.preemption.datastore.RoutedTraceSource}. A policy may keep state,
+ * as long as it only depends on the tasks routed before.
+ *
+ * @since CloudSim Toolkit 4.0
+ */
+public interface CellRoutingPolicy {
+
+	/**
+	 * Gets the cell of a task.
+	 *
+	 * @param task the task
+	 * @return the index of the cell, from 0 to the number of cells - 1
+	 */
+	int route(Task task);
+
+	int getNumberOfCells();
+
+}
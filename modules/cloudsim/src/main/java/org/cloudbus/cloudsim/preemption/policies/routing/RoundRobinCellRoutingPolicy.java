@@ -0,0 +1,62 @@
+package org.cloudbus.cloudsim.preemption.policies.routing;
+
+import org.cloudbus.cloudsim.preemption.Task;
+
+/**
+ * Routes the tasks to the cells in turn, each cell getting a share of the tasks proportional to
+ * its capacity. The turns are spread as in a smooth weighted round robin: each cell gains its
+ * capacity at every task, the cell with the most gained gets the task and gives back the total
+ * capacity. With equal capacities the cells get the tasks one after the other.
+ *
+ * @since CloudSim Toolkit 4.0
+ */
+public class RoundRobinCellRoutingPolicy implements CellRoutingPolicy {
+
+	private final double[] capacities;
+
+	private final double totalCapacity;
+
+	/** What each cell gained since it last got a task. */
+	private final double[] gained;
+
+	/**
+	 * Creates a policy for cells with given capacities.
+	 *
+	 * @param capacities the capacity of each cell, e.g. its MIPS
+	 */
+	public RoundRobinCellRoutingPolicy(double[] capacities) {
+		if (capacities == null || capacities.length == 0) {
+			throw new IllegalArgumentException("There must be at least one cell.");
+		}
+		double total = 0;
+		for (double capacity : capacities) {
+			if (!(capacity > 0) || Double.isInfinite(capacity)) {
+				throw new IllegalArgumentException("The capacity of the cells must be positive, but is "
+						+ capacity + ".");
+			}
+			total += capacity;
+		}
+		this.capacities = capacities.clone();
+		this.totalCapacity = total;
+		this.gained = new double[capacities.length];
+	}
+
+	@Override
+	public int route(Task task) {
+		int chosen = 0;
+		for (int cell = 0; cell < gained.length; cell++) {
+			gained[cell] += capacities[cell];
+			if (gained[cell] > gained[chosen]) {
+				chosen = cell;
+			}
+		}
+		gained[chosen] -= totalCapacity;
+		return chosen;
+	}
+
+	@Override
+	public int getNumberOfCells() {
+		return capacities.length;
+	}
+
+}
@@ -0,0 +1,406 @@
+package org.cloudbus.cloudsim.preemption.policies.vmallocation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import gnu.trove.map.hash.TIntIntHashMap;
+import org.cloudbus.cloudsim.Host;
+import org.cloudbus.cloudsim.preemption.PreemptiveHost;
+
+/**
+ * Keeps the capacity of each host for each priority in segment trees, so the host to allocate a
+ * VM is found in O(log H) instead of keeping a sorted set of hosts for each priority, where
+ * updating a host costs a removal and an insertion in each set.
+ * <p>
+ * Each host has a fixed slot, given by its id order, and each priority has a tree with the
+ * maximum and the minimum capacity below each node. Updating a host refreshes its leaf and the
+ * nodes above it. When capacities are equal, the host with the lowest id (the leftmost slot) is
+ * chosen, as the host comparators of the allocation policies do. Capacities are compared with
+ * {@link Double#compare(double, double)}, also as the comparators do, and must not be infinite.
+ * <p>
+ * A host not known by the index, e.g. one added to the datacenter after the allocation policy was
+ * created, gets a slot when it is first updated, which rebuilds the trees in O(P H).
+ *
+ * @since CloudSim Toolkit 4.0
+ */
+public class HostCapacityIndex {
+
+	/** Gives the capacity of a host for a priority. */
+	public interface Capacity {
+
+		double get(PreemptiveHost host, int priority);
+	}
+
+	/** The MIPS available for each priority, as used by the worst fit policies. */
+	public static final Capacity AVAILABLE_MIPS = new Capacity() {
+
+		@Override
+		public double get(PreemptiveHost host, int priority) {
+			return host.getAvailableMipsByPriority(priority);
+		}
+	};
+
+	/** The MIPS available for each priority considering the availability of the running VMs. */
+	public static final Capacity AVAILABLE_MIPS_BY_AVAILABILITY = new Capacity() {
+
+		@Override
+		public double get(PreemptiveHost host, int priority) {
+			return host.getAvailableMipsByPriorityAndAvailability(priority);
+		}
+	};
+
+	private static final Comparator<PreemptiveHost> ID_ORDER = new Comparator<PreemptiveHost>() {
+
+		@Override
+		public int compare(PreemptiveHost host1, PreemptiveHost host2) {
+			return Integer.compare(host1.getId(), host2.getId());
+		}
+	};
+
+	private final Capacity capacity;
+
+	private final int numberOfPriorities;
+
+	/** The hosts by slot. */
+	private PreemptiveHost[] hosts;
+
+	private TIntIntHashMap idToSlot;
+
+	private boolean[] indexed;
+
+	private int size;
+
+	/** The number of leaves of the trees, a power of two. */
+	private int leaves;
+
+	/** The maximum capacity below each node by priority. The root is 1 and the leaves follow the inner nodes. */
+	private double[][] max;
+
+	/** The minimum capacity below each node by priority. */
+	private double[][] min;
+
+	/**
+	 * Creates an index with all the given hosts.
+	 *
+	 * @param hostList the hosts
+	 * @param numberOfPriorities the number of priorities
+	 * @param capacity the capacity of the hosts
+	 */
+	public HostCapacityIndex(List<PreemptiveHost> hostList, int numberOfPriorities, Capacity capacity) {
+		if (hostList == null) {
+			throw new IllegalArgumentException("The set of host can not be null.");
+		}
+		if (numberOfPriorities < 0) {
+			throw new IllegalArgumentException("The number of priorities can not be negative.");
+		}
+		this.capacity = capacity;
+		this.numberOfPriorities = numberOfPriorities;
+
+		setSlots(hostList.toArray(new PreemptiveHost[hostList.size()]));
+		Arrays.fill(indexed, true);
+		size = hosts.length;
+		updateAll();
+	}
+
+	public int getNumberOfPriorities() {
+		return numberOfPriorities;
+	}
+
+	/**
+	 * Gets the number of hosts in the index.
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean contains(PreemptiveHost host) {
+		return host != null && idToSlot.containsKey(host.getId()) && indexed[idToSlot.get(host.getId())];
+	}
+
+	/**
+	 * Puts a host in the index with its current capacity, in O(P log H).
+	 *
+	 * @param host the host
+	 */
+	public void update(PreemptiveHost host) {
+		if (host == null) {
+			throw new IllegalArgumentException("The host can not be null.");
+		}
+		if (!idToSlot.containsKey(host.getId())) {
+			addSlot(host);
+		}
+		int slot = getSlot(host);
+		if (!indexed[slot]) {
+			indexed[slot] = true;
+			size++;
+		}
+		for (int priority = 0; priority < numberOfPriorities; priority++) {
+			double value = capacity.get(host, priority);
+			set(priority, slot, value, value);
+		}
+	}
+
+	/**
+	 * Takes a host out of the index, so it is not chosen until it is updated again.
+	 *
+	 * @param host the host
+	 */
+	public void remove(PreemptiveHost host) {
+		if (!contains(host)) {
+			return;
+		}
+		int slot = getSlot(host);
+		indexed[slot] = false;
+		size--;
+		for (int priority = 0; priority < numberOfPriorities; priority++) {
+			set(priority, slot, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+		}
+	}
+
+	/**
+	 * Keeps only the given hosts in the index, with their current capacity, in O(P H).
+	 *
+	 * @param hostList the hosts
+	 */
+	public void rebuild(List<? extends Host> hostList) {
+		Arrays.fill(indexed, false);
+		size = 0;
+		for (Host host : hostList) {
+			if (!idToSlot.containsKey(host.getId())) {
+				addSlot((PreemptiveHost) host);
+			}
+			int slot = getSlot((PreemptiveHost) host);
+			if (!indexed[slot]) {
+				indexed[slot] = true;
+				size++;
+			}
+		}
+		for (int slot = 0; slot < hosts.length; slot++) {
+			if (!indexed[slot]) {
+				for (int priority = 0; priority < numberOfPriorities; priority++) {
+					max[priority][leaves + slot] = Double.NEGATIVE_INFINITY;
+					min[priority][leaves + slot] = Double.POSITIVE_INFINITY;
+				}
+			}
+		}
+		updateAll();
+	}
+
+	/**
+	 * Refreshes the capacity of all hosts in the index, in O(P H), e.g. when it depends on the
+	 * current time.
+	 */
+	public void updateAll() {
+		for (int slot = 0; slot < hosts.length; slot++) {
+			if (indexed[slot]) {
+				for (int priority = 0; priority < numberOfPriorities; priority++) {
+					double value = capacity.get(hosts[slot], priority);
+					max[priority][leaves + slot] = value;
+					min[priority][leaves + slot] = value;
+				}
+			}
+		}
+		for (int priority = 0; priority < numberOfPriorities; priority++) {
+			for (int node = leaves - 1; node > 0; node--) {
+				pull(priority, node);
+			}
+		}
+	}
+
+	/**
+	 * Gets the capacity of a host for a priority as of its last update.
+	 */
+	public double getCapacity(PreemptiveHost host, int priority) {
+		return max[priority][leaves + getSlot(host)];
+	}
+
+	/**
+	 * Gets the host with the biggest capacity for a priority.
+	 *
+	 * @param priority the priority
+	 * @return the host, or <code>null</code> if the index is empty
+	 */
+	public PreemptiveHost worstFit(int priority) {
+		if (size == 0) {
+			return null;
+		}
+		double[] maxTree = max[priority];
+		int node = 1;
+		while (node < leaves) {
+			node = 2 * node;
+			if (Double.compare(maxTree[node], maxTree[node / 2]) != 0) {
+				node++;
+			}
+		}
+		return hosts[node - leaves];
+	}
+
+	/**
+	 * Gets the host with the lowest id whose capacity for a priority is at least the requested.
+	 *
+	 * @param priority the priority
+	 * @param mips the requested MIPS
+	 * @return the host, or <code>null</code> if there is none
+	 */
+	public PreemptiveHost firstFit(int priority, double mips) {
+		double[] maxTree = max[priority];
+		if (!(maxTree[1] >= mips)) {
+			return null;
+		}
+		int node = 1;
+		while (node < leaves) {
+			node = 2 * node;
+			if (!(maxTree[node] >= mips)) {
+				node++;
+			}
+		}
+		return hosts[node - leaves];
+	}
+
+	/**
+	 * Gets the host with the smallest capacity for a priority that is at least the requested.
+	 * Subtrees whose capacities are all too small or all bigger than the best found are skipped,
+	 * so it usually costs O(log H), but it may visit more nodes when the capacities just below the
+	 * request are spread among the hosts.
+	 *
+	 * @param priority the priority
+	 * @param mips the requested MIPS
+	 * @return the host, or <code>null</code> if there is none
+	 */
+	public PreemptiveHost bestFit(int priority, double mips) {
+		double[] maxTree = max[priority];
+		double[] minTree = min[priority];
+		if (!(maxTree[1] >= mips)) {
+			return null;
+		}
+
+		int bestNode = -1;
+		double bestValue = Double.POSITIVE_INFINITY;
+		int[] stack = new int[2 * Integer.numberOfTrailingZeros(leaves) + 2];
+		int top = 0;
+		stack[top++] = 1;
+		while (top > 0) {
+			int node = stack[--top];
+			if (!(maxTree[node] >= mips) || (bestNode >= 0 && Double.compare(minTree[node], bestValue) >= 0)) {
+				continue;
+			}
+			if (minTree[node] >= mips) {
+				// the whole subtree fits, so its best is its leftmost minimum
+				while (node < leaves) {
+					node = 2 * node;
+					if (Double.compare(minTree[node], minTree[node / 2]) != 0) {
+						node++;
+					}
+				}
+				bestNode = node;
+				bestValue = minTree[node];
+			} else {
+				// visiting the left child first, so the lowest id is kept on ties
+				stack[top++] = 2 * node + 1;
+				stack[top++] = 2 * node;
+			}
+		}
+		return hosts[bestNode - leaves];
+	}
+
+	/**
+	 * Gets the hosts in the index sorted by a comparator, e.g. to show them as the sorted sets of
+	 * hosts used before this index.
+	 */
+	public List<PreemptiveHost> getSortedHosts(Comparator<PreemptiveHost> comparator) {
+		List<PreemptiveHost> sortedHosts = new ArrayList<PreemptiveHost>(size);
+		for (int slot = 0; slot < hosts.length; slot++) {
+			if (indexed[slot]) {
+				sortedHosts.add(hosts[slot]);
+			}
+		}
+		Collections.sort(sortedHosts, comparator);
+		return sortedHosts;
+	}
+
+	/**
+	 * Sets the slots of the given hosts, by id, with empty trees.
+	 */
+	private void setSlots(PreemptiveHost[] sortedHosts) {
+		Arrays.sort(sortedHosts, ID_ORDER);
+		hosts = sortedHosts;
+
+		idToSlot = new TIntIntHashMap(hosts.length);
+		for (int slot = 0; slot < hosts.length; slot++) {
+			if (idToSlot.containsKey(hosts[slot].getId())) {
+				throw new IllegalArgumentException("There are two hosts with id " + hosts[slot].getId() + ".");
+			}
+			idToSlot.put(hosts[slot].getId(), slot);
+		}
+
+		leaves = 1;
+		while (leaves < hosts.length) {
+			leaves *= 2;
+		}
+
+		indexed = new boolean[hosts.length];
+		max = new double[numberOfPriorities][2 * leaves];
+		min = new double[numberOfPriorities][2 * leaves];
+		for (int priority = 0; priority < numberOfPriorities; priority++) {
+			Arrays.fill(max[priority], Double.NEGATIVE_INFINITY);
+			Arrays.fill(min[priority], Double.POSITIVE_INFINITY);
+		}
+	}
+
+	/**
+	 * Gives a slot to a new host, out of the index, keeping the capacities of the other hosts.
+	 */
+	private void addSlot(PreemptiveHost host) {
+		PreemptiveHost[] oldHosts = hosts;
+		boolean[] oldIndexed = indexed;
+		int oldLeaves = leaves;
+		double[][] oldMax = max;
+
+		PreemptiveHost[] newHosts = Arrays.copyOf(oldHosts, oldHosts.length + 1);
+		newHosts[oldHosts.length] = host;
+		setSlots(newHosts);
+
+		for (int oldSlot = 0; oldSlot < oldHosts.length; oldSlot++) {
+			if (oldIndexed[oldSlot]) {
+				int slot = idToSlot.get(oldHosts[oldSlot].getId());
+				indexed[slot] = true;
+				for (int priority = 0; priority < numberOfPriorities; priority++) {
+					max[priority][leaves + slot] = oldMax[priority][oldLeaves + oldSlot];
+					min[priority][leaves + slot] = oldMax[priority][oldLeaves + oldSlot];
+				}
+			}
+		}
+		for (int priority = 0; priority < numberOfPriorities; priority++) {
+			for (int node = leaves - 1; node > 0; node--) {
+				pull(priority, node);
+			}
+		}
+	}
+
+	private int getSlot(PreemptiveHost host) {
+		if (host == null || !idToSlot.containsKey(host.getId())) {
+			throw new IllegalArgumentException("The host is not in the index.");
+		}
+		return idToSlot.get(host.getId());
+	}
+
+	private void set(int priority, int slot, double maxValue, double minValue) {
+		int node = leaves + slot;
+		max[priority][node] = maxValue;
+		min[priority][node] = minValue;
+		for (node /= 2; node > 0; node /= 2) {
+			pull(priority, node);
+		}
+	}
+
+	private void pull(int priority, int node) {
+		double[] maxTree = max[priority];
+		double[] minTree = min[priority];
+		int left = 2 * node;
+		maxTree[node] = Double.compare(maxTree[left], maxTree[left + 1]) >= 0 ? maxTree[left] : maxTree[left + 1];
+		minTree[node] = Double.compare(minTree[left], minTree[left + 1]) <= 0 ? minTree[left] : minTree[left + 1];
+	}
+}
@@ -32,6 +32,34 @@ public abstract class PreemptableVmAllocationPolicy extends VmAllocationPolicy {
 	public abstract boolean preempt(PreemptableVm vm);
 
 	public abstract Host selectHost(Vm vm);
+
+	/**
+	 * Gets the most MIPS a VM of a priority may need for {@link #selectHost(Vm)} to find a host for
+	 * it now, so the datacenter can skip the waiting VMs that would not be allocated. It is not
+	 * known by default.
+	 * 
+	 * @param priority the priority
+	 * @return an upper bound of the MIPS of the VMs that may be allocated
+	 */
+	public double getMaxSuitableMips(int priority) {
+		return Double.POSITIVE_INFINITY;
+	}
+	
+	/**
+	 * Allocates a host for VMs at once, e.g. when a checkpoint is restored. By default, each VM is
+	 * allocated by {@link #allocateHostForVm(Vm, Host)}.
+	 * 
+	 * @param vms the VMs
+	 * @param host the host
+	 * @return <code>true</code> if all the VMs were allocated
+	 */
+	public boolean allocateHostForVms(List<? extends Vm> vms, Host host) {
+		boolean result = true;
+		for (Vm vm : vms) {
+			result &= allocateHostForVm(vm, host);
+		}
+		return result;
+	}
 	
 	@Override
 	public List<Map<String, Object>> optimizeAllocation(
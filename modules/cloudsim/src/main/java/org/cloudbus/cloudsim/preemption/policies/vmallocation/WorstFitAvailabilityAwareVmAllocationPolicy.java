@@ -10,16 +10,16 @@ import org.cloudbus.cloudsim.preemption.PreemptableVm;
 import org.cloudbus.cloudsim.preemption.PreemptiveHost;
 import org.cloudbus.cloudsim.preemption.SimulationTimeUtil;
 import org.cloudbus.cloudsim.preemption.policies.preemption.VmAvailabilityBasedPreemptionPolicy;
-import org.cloudbus.cloudsim.preemption.util.PreemptiveHostComparator;
-import org.cloudbus.cloudsim.preemption.util.PriorityAndAvailabilityBasedPreemptiveHostComparator;
 
 /**
  * Created by Alessandro Lia Fook Santos on 02/12/16.
  */
 public class WorstFitAvailabilityAwareVmAllocationPolicy extends PreemptableVmAllocationPolicy {
 
-    private Map<Integer, PriorityQueue<PreemptiveHost>> priorityToSortedHostFCFS;
-    private Map<Integer, PriorityQueue<PreemptiveHost>> priorityToSortedHostAvailabilityAware;
+    private final List<PreemptiveHost> initialHostList;
+    private final int numberOfPriorities;
+    private HostCapacityIndex hostIndexFCFS;
+    private HostCapacityIndex hostIndexAvailabilityAware;
     private Map<Integer, Double> priorityToSLOTarget = new THashMap<Integer, Double>();
 
     public WorstFitAvailabilityAwareVmAllocationPolicy(List<PreemptiveHost> hostList) {
@@ -28,50 +28,17 @@ public class WorstFitAvailabilityAwareVmAllocationPolicy extends PreemptableVmAl
 
         verifyHosts(hostList);
 
-        priorityToSortedHostFCFS = new THashMap<>();
-        priorityToSortedHostAvailabilityAware = new THashMap<>();
-
-        int numberOfPriorities = hostList.get(0).getNumberOfPriorities();
-
-        for (int priority = 0; priority < numberOfPriorities; priority++) {
-
-            PreemptiveHostComparator comparatorFCFS = new PreemptiveHostComparator(priority);
-            PriorityAndAvailabilityBasedPreemptiveHostComparator comparatorAvailabilityAware = new PriorityAndAvailabilityBasedPreemptiveHostComparator(priority);
-
-            getPriorityToSortedHostFCFS().put(priority, new PriorityQueue(comparatorFCFS));
-            getPriorityToSortedHostAvailabilityAware().put(priority, new PriorityQueue(comparatorAvailabilityAware));
-        }
-
-        for (PreemptiveHost host : hostList) {
-            for (int priority = 0; priority < numberOfPriorities; priority++) {
-                getPriorityToSortedHostFCFS().get(priority).add(host);
-                getPriorityToSortedHostAvailabilityAware().get(priority).add(host);
-            }
-        }
+        initialHostList = new ArrayList<PreemptiveHost>(hostList);
+        numberOfPriorities = hostList.get(0).getNumberOfPriorities();
 
         setPriorityToSLOTarget(hostList);
     }
 
+    /**
+     * Refreshes the MIPS available by availability of the hosts, as they change with the time.
+     */
     public void preProcess() {
-
-        priorityToSortedHostAvailabilityAware = new THashMap<>();
-
-        int numberOfPriorities = ((PreemptiveHost) getHostList().get(0)).getNumberOfPriorities();
-
-        for (int priority = 0; priority < numberOfPriorities; priority++) {
-
-            PriorityAndAvailabilityBasedPreemptiveHostComparator comparatorAvailabilityAware = new PriorityAndAvailabilityBasedPreemptiveHostComparator(priority);
-            getPriorityToSortedHostAvailabilityAware().put(priority, new PriorityQueue(comparatorAvailabilityAware));
-
-        }
-
-        for (Host host : getHostList()) {
-            PreemptiveHost pHost = (PreemptiveHost) host;
-            for (int priority = 0; priority < numberOfPriorities; priority++) {
-                getPriorityToSortedHostAvailabilityAware().get(priority).add(pHost);
-            }
-        }
-
+        getHostIndexAvailabilityAware().rebuild(getHostList());
     }
 
     private void verifyHosts(List<PreemptiveHost> hostList) {
@@ -94,27 +61,29 @@ public class WorstFitAvailabilityAwareVmAllocationPolicy extends PreemptableVmAl
             return false;
 
         vm.preempt(simulationTimeUtil.clock());
-        removePriorityHost(host);
         host.vmDestroy(vm);
         addPriorityHost(host);
         vm.setBeingInstantiated(true);
         return true;
     }
 
+    /**
+     * Puts a host in both host indexes with its current available MIPS, so it must be called
+     * after the VMs of the host change.
+     */
     protected void addPriorityHost(Host host) {
         PreemptiveHost gHost = (PreemptiveHost) host;
-        for (int priority = 0; priority < gHost.getNumberOfPriorities(); priority++) {
-            getPriorityToSortedHostFCFS().get(priority).add(gHost);
-            getPriorityToSortedHostAvailabilityAware().get(priority).add(gHost);
-        }
+        getHostIndexFCFS().update(gHost);
+        getHostIndexAvailabilityAware().update(gHost);
     }
 
+    /**
+     * Takes a host out of both host indexes, so it is not selected until it is added again.
+     */
     protected void removePriorityHost(Host host) {
         PreemptiveHost gHost = (PreemptiveHost) host;
-        for (int priority = 0; priority < gHost.getNumberOfPriorities(); priority++) {
-            getPriorityToSortedHostFCFS().get(priority).remove(gHost);
-            getPriorityToSortedHostAvailabilityAware().get(priority).remove(gHost);
-        }
+        getHostIndexFCFS().remove(gHost);
+        getHostIndexAvailabilityAware().remove(gHost);
     }
 
     private boolean validateHostForVm(PreemptableVm vm, Host host) {
@@ -141,19 +110,42 @@ public class WorstFitAvailabilityAwareVmAllocationPolicy extends PreemptableVmAl
             @TODO or in the next time to choose the way of select the host.
             */
             if (pVm.getCurrentAvailability(simulationTimeUtil.clock()) > getSLOTarget(pVm.getPriority())) {
-                firstHost = getPriorityToSortedHostFCFS().get(pVm.getPriority()).peek();
+                firstHost = getHostIndexFCFS().worstFit(pVm.getPriority());
 
             } else {
-                firstHost = getPriorityToSortedHostAvailabilityAware().get(pVm.getPriority()).peek();
+                firstHost = getHostIndexAvailabilityAware().worstFit(pVm.getPriority());
             }
 
-            if (firstHost.isSuitableForVm(pVm)) {
+            if (firstHost != null && firstHost.isSuitableForVm(pVm)) {
                 return firstHost;
             }
         }
         return null;
     }
 
+    /**
+     * Gets the most MIPS the hosts tried by {@link #selectHost(Vm)} are suitable for, the one with
+     * the most MIPS available for the priority and the one with the most considering the
+     * availability of the running VMs.
+     */
+    @Override
+    public double getMaxSuitableMips(int priority) {
+        if (getHostList().isEmpty() || priority < 0 || priority >= numberOfPriorities) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        PreemptiveHost hostFCFS = getHostIndexFCFS().worstFit(priority);
+        PreemptiveHost hostAvailabilityAware = getHostIndexAvailabilityAware().worstFit(priority);
+
+        double maxSuitableMips = Double.NEGATIVE_INFINITY;
+        if (hostFCFS != null) {
+            maxSuitableMips = hostFCFS.getMaxSuitableMips(priority);
+        }
+        if (hostAvailabilityAware != null) {
+            maxSuitableMips = Math.max(maxSuitableMips, hostAvailabilityAware.getMaxSuitableMips(priority));
+        }
+        return maxSuitableMips;
+    }
+
     private double getSLOTarget(int priority) {
         return priorityToSLOTarget.get(priority);
     }
@@ -177,13 +169,30 @@ public class WorstFitAvailabilityAwareVmAllocationPolicy extends PreemptableVmAl
             return false;
         }
 
-        removePriorityHost(host);
         boolean result = host.vmCreate(vm);
         addPriorityHost(host);
 
         return result;
     }
 
+    /**
+     * Creates the VMs on the host and then puts it in both host indexes once.
+     */
+    @Override
+    public boolean allocateHostForVms(List<? extends Vm> vms, Host host) {
+        boolean result = true;
+        for (Vm vm : vms) {
+            verifyVm(vm);
+            if (!validateHostForVm((PreemptableVm) vm, host)) {
+                return false;
+            }
+            result &= host.vmCreate(vm);
+        }
+        addPriorityHost(host);
+
+        return result;
+    }
+
     @Override
     public void deallocateHostForVm(Vm vm) {
         verifyVm(vm);
@@ -191,18 +200,29 @@ public class WorstFitAvailabilityAwareVmAllocationPolicy extends PreemptableVmAl
         Host host = vm.getHost();
 
         if (validateHostForVm((PreemptableVm) vm, host)) {
-            removePriorityHost(host);
             host.vmDestroy(vm);
             addPriorityHost(host);
         }
     }
 
-    private Map<Integer, PriorityQueue<PreemptiveHost>> getPriorityToSortedHostFCFS() {
-        return this.priorityToSortedHostFCFS;
+    /*
+     * The indexes are created when first used, so the MIPS available of the hosts are read as late
+     * as possible, after their preemption policies are set up.
+     */
+    private HostCapacityIndex getHostIndexFCFS() {
+        if (this.hostIndexFCFS == null) {
+            this.hostIndexFCFS = new HostCapacityIndex(initialHostList, numberOfPriorities,
+                    HostCapacityIndex.AVAILABLE_MIPS);
+        }
+        return this.hostIndexFCFS;
     }
 
-    private Map<Integer, PriorityQueue<PreemptiveHost>> getPriorityToSortedHostAvailabilityAware() {
-        return this.priorityToSortedHostAvailabilityAware;
+    private HostCapacityIndex getHostIndexAvailabilityAware() {
+        if (this.hostIndexAvailabilityAware == null) {
+            this.hostIndexAvailabilityAware = new HostCapacityIndex(initialHostList, numberOfPriorities,
+                    HostCapacityIndex.AVAILABLE_MIPS_BY_AVAILABILITY);
+        }
+        return this.hostIndexAvailabilityAware;
     }
 
 
@@ -14,7 +14,7 @@ import org.cloudbus.cloudsim.preemption.util.PreemptiveHostComparator;
 public class WorstFitPriorityBasedVmAllocationPolicy extends
 		PreemptableVmAllocationPolicy {
 
-	private Map<Integer, SortedSet<PreemptiveHost>> priorityToSortedHost;
+	private HostCapacityIndex hostIndex;
 
 	public WorstFitPriorityBasedVmAllocationPolicy(List<PreemptiveHost> hosts) {
 		super(new ArrayList<Host>(0));
@@ -25,22 +25,9 @@ public class WorstFitPriorityBasedVmAllocationPolicy extends
 		}
 
 		setSimulationTimeUtil(new SimulationTimeUtil());
-		priorityToSortedHost = new THashMap<>();
 		int numberOfPriorities = hosts.get(0).getNumberOfPriorities();
 
-		for (int priority = 0; priority < numberOfPriorities; priority++) {
-
-			PreemptiveHostComparator comparator = new PreemptiveHostComparator(priority);
-			getPriorityToSortedHost().put(priority, new TreeSet<>(comparator));
-		}
-
-		// creating priority host skins
-		for (PreemptiveHost host : hosts) {
-			for (int priority = 0; priority < numberOfPriorities; priority++) {
-				getPriorityToSortedHost().get(priority).add(host);
-			}
-		}
-
+		hostIndex = new HostCapacityIndex(hosts, numberOfPriorities, HostCapacityIndex.AVAILABLE_MIPS);
 	}
 
 	@Override
@@ -69,26 +56,25 @@ public class WorstFitPriorityBasedVmAllocationPolicy extends
 
 		vm.preempt(simulationTimeUtil.clock());
 
-		// just to update the sorted set
-		removePriorityHost(host);
 		host.vmDestroy(vm);
 		addPriorityHost(host);
 		vm.setBeingInstantiated(true);
 		return true;
 	}
 
+	/**
+	 * Puts a host in the host index with its current available MIPS, so it must be called after
+	 * the VMs of the host change.
+	 */
 	protected void addPriorityHost(Host host) {
-		PreemptiveHost gHost = (PreemptiveHost) host;
-		for (int priority = 0; priority < gHost.getNumberOfPriorities(); priority++) {
-			getPriorityToSortedHost().get(priority).add(gHost);
-		}
+		hostIndex.update((PreemptiveHost) host);
 	}
 
+	/**
+	 * Takes a host out of the host index, so it is not selected until it is added again.
+	 */
 	protected void removePriorityHost(Host host) {
-		PreemptiveHost gHost = (PreemptiveHost) host;
-		for (int priority = 0; priority < gHost.getNumberOfPriorities(); priority++) {
-			getPriorityToSortedHost().get(priority).remove(gHost);
-		}
+		hostIndex.remove((PreemptiveHost) host);
 	}
 
 
@@ -99,8 +85,6 @@ public class WorstFitPriorityBasedVmAllocationPolicy extends
 			return false;
 		}
 
-		// just to update the sorted set
-		removePriorityHost(host);
 		boolean result = host.vmCreate(vm);
 		addPriorityHost(host);
 
@@ -112,21 +96,34 @@ public class WorstFitPriorityBasedVmAllocationPolicy extends
 		if (host == null) {
 			return false;
 		}
-		// just to update the sorted set
-		removePriorityHost(host);
 		boolean result = host.vmCreate(vm);
 		addPriorityHost(host);
 
 		return result;
 	}
 
+	/**
+	 * Creates the VMs on the host and then puts it in the host index once.
+	 */
+	@Override
+	public boolean allocateHostForVms(List<? extends Vm> vms, Host host) {
+		if (host == null) {
+			return false;
+		}
+		boolean result = true;
+		for (Vm vm : vms) {
+			result &= host.vmCreate(vm);
+		}
+		addPriorityHost(host);
+
+		return result;
+	}
+
 	@Override
 	public void deallocateHostForVm(Vm vm) {
 
 		Host host = vm.getHost();
 		if (host != null) {
-			// just to update the sorted set
-			removePriorityHost(host);
 			host.vmDestroy(vm);
 			addPriorityHost(host);
 		}
@@ -139,21 +136,31 @@ public class WorstFitPriorityBasedVmAllocationPolicy extends
 
 		PreemptableVm gVm = (PreemptableVm) vm;
 
-		if (getPriorityToSortedHost().containsKey(gVm.getPriority())) {
+		if (gVm.getPriority() >= 0 && gVm.getPriority() < hostIndex.getNumberOfPriorities()) {
 
-			SortedSet<PreemptiveHost> hosts = getPriorityToSortedHost().get(gVm.getPriority());
+			PreemptiveHost firstHost = hostIndex.worstFit(gVm.getPriority());
 
-			if (!hosts.isEmpty()) {
-				PreemptiveHost firstHost = hosts.first();
-				if (firstHost.isSuitableForVm(vm)) {
-					return firstHost;
-				}
+			if (firstHost != null && firstHost.isSuitableForVm(vm)) {
+				return firstHost;
 			}
 		}
 
 		return null;
 	}
 
+	/**
+	 * Gets the most MIPS the host with the most MIPS available for the priority is suitable for, as
+	 * it is the only one tried by {@link #selectHost(Vm)}.
+	 */
+	@Override
+	public double getMaxSuitableMips(int priority) {
+		if (priority < 0 || priority >= hostIndex.getNumberOfPriorities()) {
+			return Double.NEGATIVE_INFINITY;
+		}
+		PreemptiveHost firstHost = hostIndex.worstFit(priority);
+		return firstHost == null ? Double.NEGATIVE_INFINITY : firstHost.getMaxSuitableMips(priority);
+	}
+
 	private void validateVm(Vm vm) {
 		if (vm == null){
 			throw new IllegalArgumentException("The Vm can not be null.");
@@ -162,11 +169,22 @@ public class WorstFitPriorityBasedVmAllocationPolicy extends
 
 	@Override
 	public List<Host> getHostList() {
-		List<Host> hostList = new ArrayList<Host>(getPriorityToSortedHost().get(0));
+		List<Host> hostList = new ArrayList<Host>(hostIndex.getSortedHosts(new PreemptiveHostComparator(0)));
 		return hostList;
 	}
 
+	/**
+	 * Gets the hosts sorted by the MIPS available for each priority, built from the host index
+	 * each time it is called, so changes to the sets are not seen by this policy.
+	 */
 	public Map<Integer, SortedSet<PreemptiveHost>> getPriorityToSortedHost() {
+		Map<Integer, SortedSet<PreemptiveHost>> priorityToSortedHost = new THashMap<>();
+		for (int priority = 0; priority < hostIndex.getNumberOfPriorities(); priority++) {
+			PreemptiveHostComparator comparator = new PreemptiveHostComparator(priority);
+			SortedSet<PreemptiveHost> sortedHosts = new TreeSet<>(comparator);
+			sortedHosts.addAll(hostIndex.getSortedHosts(comparator));
+			priorityToSortedHost.put(priority, sortedHosts);
+		}
 		return priorityToSortedHost;
 	}
 
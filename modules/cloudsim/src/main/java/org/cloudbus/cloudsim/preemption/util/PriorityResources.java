@@ -0,0 +1,188 @@
+package org.cloudbus.cloudsim.preemption.util;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import gnu.trove.map.hash.THashMap;
+
+/**
+ * An amount of a resource for each priority, kept in {@link ResourceUnits} in a primitive array
+ * indexed by priority. The sums of the amounts of the priorities up to each one are kept as well,
+ * so the amount used by a priority and the more important ones is read in O(1); changing the
+ * amount of a priority updates the sums of it and the less important priorities, which are few.
+ * <p>
+ * Priorities are numbered from 0, the most important one.
+ *
+ * @since CloudSim Toolkit 4.0
+ */
+public class PriorityResources {
+
+	private final long[] units;
+
+	/** The sum of the units of the priorities from 0 up to each one. */
+	private final long[] unitsUpTo;
+
+	/**
+	 * Creates an amount of zero for each priority.
+	 *
+	 * @param numberOfPriorities the number of priorities
+	 */
+	public PriorityResources(int numberOfPriorities) {
+		if (numberOfPriorities <= 0) {
+			throw new IllegalArgumentException("The number of priorities must be a positive integer.");
+		}
+		this.units = new long[numberOfPriorities];
+		this.unitsUpTo = new long[numberOfPriorities];
+	}
+
+	/**
+	 * Creates a copy of other amounts.
+	 *
+	 * @param other the amounts to copy
+	 */
+	public PriorityResources(PriorityResources other) {
+		this.units = Arrays.copyOf(other.units, other.units.length);
+		this.unitsUpTo = Arrays.copyOf(other.unitsUpTo, other.unitsUpTo.length);
+	}
+
+	/**
+	 * Creates amounts from a map of priority to amount. The priorities not in the map get zero.
+	 *
+	 * @param numberOfPriorities the number of priorities
+	 * @param priorityToAmount the amounts by priority
+	 */
+	public PriorityResources(int numberOfPriorities, Map<Integer, Double> priorityToAmount) {
+		this(numberOfPriorities);
+		for (int priority = 0; priority < numberOfPriorities; priority++) {
+			Double amount = priorityToAmount.get(priority);
+			if (amount != null) {
+				set(priority, amount);
+			}
+		}
+	}
+
+	public int getNumberOfPriorities() {
+		return units.length;
+	}
+
+	/**
+	 * Gets the amount of a priority.
+	 *
+	 * @param priority the priority
+	 * @return the amount
+	 */
+	public double get(int priority) {
+		return ResourceUnits.toMips(units[priority]);
+	}
+
+	/**
+	 * Gets the amount of a priority in {@link ResourceUnits}.
+	 *
+	 * @param priority the priority
+	 * @return the units
+	 */
+	public long getUnits(int priority) {
+		return units[priority];
+	}
+
+	/**
+	 * Gets the sum of the amounts of the priorities from 0 up to a priority, included.
+	 *
+	 * @param priority the last priority summed, or -1 for none
+	 * @return the sum
+	 */
+	public double getUpTo(int priority) {
+		return ResourceUnits.toMips(getUnitsUpTo(priority));
+	}
+
+	/**
+	 * Gets the sum of the amounts of the priorities from 0 up to a priority, included, in
+	 * {@link ResourceUnits}.
+	 *
+	 * @param priority the last priority summed, or -1 for none
+	 * @return the units
+	 */
+	public long getUnitsUpTo(int priority) {
+		return priority < 0 ? 0 : unitsUpTo[priority];
+	}
+
+	/**
+	 * Gets the sum of the amounts of all priorities.
+	 */
+	public double getTotal() {
+		return getUpTo(units.length - 1);
+	}
+
+	/**
+	 * Adds to the amount of a priority.
+	 *
+	 * @param priority the priority
+	 * @param amount the amount to add, negative to take it
+	 */
+	public void add(int priority, double amount) {
+		addUnits(priority, ResourceUnits.toUnits(amount));
+	}
+
+	/**
+	 * Adds units to the amount of a priority.
+	 *
+	 * @param priority the priority
+	 * @param unitsToAdd the units to add, negative to take them
+	 */
+	public void addUnits(int priority, long unitsToAdd) {
+		units[priority] += unitsToAdd;
+		for (int i = priority; i < unitsUpTo.length; i++) {
+			unitsUpTo[i] += unitsToAdd;
+		}
+	}
+
+	/**
+	 * Sets the amount of a priority.
+	 *
+	 * @param priority the priority
+	 * @param amount the amount
+	 */
+	public void set(int priority, double amount) {
+		addUnits(priority, ResourceUnits.toUnits(amount) - units[priority]);
+	}
+
+	/**
+	 * Sets the amount of all priorities to zero.
+	 */
+	public void clear() {
+		Arrays.fill(units, 0);
+		Arrays.fill(unitsUpTo, 0);
+	}
+
+	/**
+	 * Gets the amounts as a map of priority to amount, for the code reading them by priority.
+	 * The map is a copy.
+	 *
+	 * @return the amounts by priority
+	 */
+	public Map<Integer, Double> toMap() {
+		Map<Integer, Double> priorityToAmount = new THashMap<Integer, Double>();
+		for (int priority = 0; priority < units.length; priority++) {
+			priorityToAmount.put(priority, get(priority));
+		}
+		return priorityToAmount;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+
+		return Arrays.equals(units, ((PriorityResources) o).units);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(units);
+	}
+
+	@Override
+	public String toString() {
+		return toMap().toString();
+	}
+}
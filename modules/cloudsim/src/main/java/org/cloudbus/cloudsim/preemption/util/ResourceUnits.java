@@ -0,0 +1,57 @@
+package org.cloudbus.cloudsim.preemption.util;
+
+/**
+ * Converts resource amounts to and from fixed-point units, a billionth of a MIPS (or of any other
+ * resource), so they can be added and subtracted exactly as longs.
+ * <p>
+ * An amount converted to units and back is rounded to 9 decimal places, as
+ * {@link DecimalUtil#format(double)} does without formatting it as a string, and releasing an
+ * amount always takes back exactly what was taken. The two may differ by one unit at half a unit:
+ * {@link DecimalUtil#format(double)} rounds the decimal digits of the amount half to even, while
+ * the amount is scaled to units, with a rounding error of its own, and rounded half up. E.g.
+ * <code>1.0 / 1024</code>, which is exactly 0.0009765625, is 976563 units, but formats as
+ * 0.000976562.
+ *
+ * @since CloudSim Toolkit 4.0
+ */
+public final class ResourceUnits {
+
+	/** The number of units in one MIPS. */
+	public static final long UNITS_PER_MIPS = 1000000000L;
+
+	private static final double UNITS_PER_MIPS_DOUBLE = UNITS_PER_MIPS;
+
+	private ResourceUnits() {
+	}
+
+	/**
+	 * Converts an amount to units, rounding it to the nearest unit.
+	 *
+	 * @param mips the amount
+	 * @return the amount in units
+	 */
+	public static long toUnits(double mips) {
+		return Math.round(mips * UNITS_PER_MIPS_DOUBLE);
+	}
+
+	/**
+	 * Converts units to an amount.
+	 *
+	 * @param units the amount in units
+	 * @return the amount
+	 */
+	public static double toMips(long units) {
+		return units / UNITS_PER_MIPS_DOUBLE;
+	}
+
+	/**
+	 * Rounds an amount to a whole number of units, as {@link DecimalUtil#format(double)} does
+	 * except at half a unit, which is rounded up.
+	 *
+	 * @param mips the amount
+	 * @return the rounded amount
+	 */
+	public static double round(double mips) {
+		return toMips(toUnits(mips));
+	}
+}
@@ -308,6 +308,7 @@ public class WorkloadFileReader implements WorkloadModel {
 
     /**
      * Creates a Cloudlet with the given information and adds to the list of {@link #jobs}.
+     * Subclasses may override it to build other kinds of jobs from the trace.
      * 
      * @param id a Cloudlet ID
      * @param submitTime Cloudlet's submit time
@@ -325,7 +326,7 @@ public class WorkloadFileReader implements WorkloadModel {
      * @post $none
      * @see #rating
      */
-    private void createJob(
+    protected void createJob(
                     final int id,
                     final long submitTime,
                     final int runTime,
@@ -0,0 +1,166 @@
+package org.cloudbus.cloudsim.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+
+import org.cloudbus.cloudsim.Log;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the arrivals of an {@link ArrivalSource} are delivered in the same order as the
+ * events they replace, and that they are only created when they are reached.
+ */
+public class ArrivalSourceTest {
+
+	private static final int TAG_A = 1001;
+
+	private static final int TAG_B = 1002;
+
+	private static final double[] ARRIVAL_TIMES = { 1, 2, 2, 5 };
+
+	private static class Arrivals implements ArrivalSource {
+
+		final List<Double> creationClocks = new ArrayList<Double>();
+
+		private final double[] times;
+
+		private int next;
+
+		Arrivals(double[] times) {
+			this.times = times;
+		}
+
+		@Override
+		public int remaining() {
+			return times.length - next;
+		}
+
+		@Override
+		public double nextTime() {
+			return times[next];
+		}
+
+		@Override
+		public Object next() {
+			creationClocks.add(CloudSim.clock());
+			return "a" + next++;
+		}
+	}
+
+	private static class Receiver extends SimEntity {
+
+		final List<Object> received = new ArrayList<Object>();
+
+		Receiver(String name) {
+			super(name);
+		}
+
+		@Override
+		public void startEntity() {
+		}
+
+		@Override
+		public void processEvent(SimEvent ev) {
+			received.add(ev.getData());
+		}
+
+		@Override
+		public void shutdownEntity() {
+		}
+	}
+
+	/**
+	 * Sends other events around the arrivals, either as a source or one by one, and either with
+	 * priority in the queue or not.
+	 */
+	private static class Sender extends Receiver {
+
+		final Arrivals arrivals = new Arrivals(ARRIVAL_TIMES);
+
+		private final Receiver receiver;
+
+		private final boolean asSource;
+
+		private final boolean first;
+
+		int pendingAfterSend;
+
+		Sender(String name, Receiver receiver, boolean asSource, boolean first) {
+			super(name);
+			this.receiver = receiver;
+			this.asSource = asSource;
+			this.first = first;
+		}
+
+		@Override
+		public void startEntity() {
+			send(receiver.getId(), 2, TAG_B, "b-before");
+			if (asSource && first) {
+				sendArrivalsFirst(receiver.getId(), TAG_A, arrivals);
+			} else if (asSource) {
+				sendArrivals(receiver.getId(), TAG_A, arrivals);
+			} else {
+				while (arrivals.remaining() > 0) {
+					double time = arrivals.nextTime();
+					if (first) {
+						scheduleFirst(receiver.getId(), time, TAG_A, arrivals.next());
+					} else {
+						send(receiver.getId(), time, TAG_A, arrivals.next());
+					}
+				}
+			}
+			pendingAfterSend = CloudSim.countPending(receiver.getId(), TAG_A);
+			send(receiver.getId(), 2, TAG_B, "b-after");
+			send(receiver.getId(), 5, TAG_B, "b5");
+		}
+	}
+
+	@Before
+	public void setUp() {
+		Log.disable();
+	}
+
+	@Test
+	public void testSameOrderAsEvents() {
+		List<Object> expected = run(false, false).received;
+		Assert.assertEquals(Arrays.<Object> asList("a0", "b-before", "a1", "a2", "b-after", "a3", "b5"), expected);
+		Assert.assertEquals(expected, run(true, false).received);
+	}
+
+	@Test
+	public void testSentFirstSameOrderAsEvents() {
+		List<Object> expected = run(false, true).received;
+		Assert.assertEquals(Arrays.<Object> asList("a0", "a1", "a2", "b-before", "b-after", "a3", "b5"), expected);
+		Assert.assertEquals(expected, run(true, true).received);
+	}
+
+	@Test
+	public void testArrivalsCreatedWhenReached() {
+		CloudSim.init(1, Calendar.getInstance(), false);
+		Receiver receiver = new Receiver("receiver");
+		Sender sender = new Sender("sender", receiver, true, false);
+		CloudSim.startSimulation();
+
+		Assert.assertEquals(4, sender.pendingAfterSend);
+		// each arrival is created when the events before it were delivered
+		Assert.assertEquals(Arrays.asList(0d, 2d, 2d, 2d), sender.arrivals.creationClocks);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testArrivalInThePast() {
+		CloudSim.init(1, Calendar.getInstance(), false);
+		CloudSim.getContext().sendArrivals(0, 0, TAG_A, new Arrivals(new double[] { -1 }));
+	}
+
+	private static Receiver run(boolean asSource, boolean first) {
+		CloudSim.init(1, Calendar.getInstance(), false);
+		Receiver receiver = new Receiver("receiver");
+		new Sender("sender", receiver, asSource, first);
+		CloudSim.startSimulation();
+		return receiver;
+	}
+}
@@ -0,0 +1,139 @@
+package org.cloudbus.cloudsim.core;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+import org.cloudbus.cloudsim.Log;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the batched dispatch of events and the coalescing of duplicate events.
+ */
+public class BatchDispatchTest {
+
+	private static final int TAG_A = 1001;
+
+	private static final int TAG_B = 1002;
+
+	/** Records the events it processes and the batches it gets. */
+	private static class Receiver extends SimEntity {
+
+		final List<SimEvent> processed = new ArrayList<SimEvent>();
+
+		final List<Integer> batchSizes = new ArrayList<Integer>();
+
+		Receiver(String name, boolean batch) {
+			super(name);
+			setBatchDispatch(batch);
+		}
+
+		@Override
+		public void startEntity() {
+		}
+
+		@Override
+		protected void processEvents(List<SimEvent> events) {
+			batchSizes.add(events.size());
+			super.processEvents(events);
+		}
+
+		@Override
+		public void processEvent(SimEvent ev) {
+			processed.add(ev);
+		}
+
+		@Override
+		public void shutdownEntity() {
+		}
+	}
+
+	@Before
+	public void setUp() {
+		Log.disable();
+		CloudSim.init(1, Calendar.getInstance(), false);
+	}
+
+	@Test
+	public void testBatchHasAllEventsOfAnInstant() {
+		Receiver receiver = new Receiver("receiver", true);
+		Receiver sender = new Receiver("sender", false);
+		CloudSim.send(sender.getId(), receiver.getId(), 1, TAG_A, "a");
+		CloudSim.send(sender.getId(), receiver.getId(), 2, TAG_A, "b");
+		CloudSim.send(sender.getId(), receiver.getId(), 1, TAG_B, "c");
+		CloudSim.send(sender.getId(), receiver.getId(), 2, TAG_B, "d");
+		CloudSim.send(sender.getId(), receiver.getId(), 2, TAG_A, "e");
+
+		CloudSim.startSimulation();
+
+		Assert.assertEquals(2, receiver.batchSizes.size());
+		Assert.assertEquals(2, receiver.batchSizes.get(0).intValue());
+		Assert.assertEquals(3, receiver.batchSizes.get(1).intValue());
+		Assert.assertEquals(5, receiver.processed.size());
+		String[] expected = { "a", "c", "b", "d", "e" };
+		for (int i = 0; i < expected.length; i++) {
+			Assert.assertEquals(expected[i], receiver.processed.get(i).getData());
+		}
+		Assert.assertTrue(sender.batchSizes.isEmpty());
+	}
+
+	@Test
+	public void testCoalescibleTags() {
+		Receiver receiver = new Receiver("receiver", false);
+		Receiver sender = new Receiver("sender", false);
+		receiver.addCoalescibleTag(TAG_A);
+		Assert.assertTrue(receiver.isCoalescible(TAG_A));
+		Assert.assertFalse(receiver.isCoalescible(TAG_B));
+
+		for (int i = 0; i < 3; i++) {
+			CloudSim.send(receiver.getId(), receiver.getId(), 1, TAG_A, null);
+		}
+		for (int i = 0; i < 3; i++) {
+			CloudSim.send(receiver.getId(), receiver.getId(), 1, TAG_B, null);
+		}
+		// other data, source or time are not duplicates
+		CloudSim.send(receiver.getId(), receiver.getId(), 1, TAG_A, "data");
+		CloudSim.send(sender.getId(), receiver.getId(), 1, TAG_A, null);
+		CloudSim.send(receiver.getId(), receiver.getId(), 2, TAG_A, null);
+		CloudSim.send(receiver.getId(), receiver.getId(), 2, TAG_A, null);
+
+		CloudSim.startSimulation();
+
+		int tagA = 0;
+		int tagB = 0;
+		for (SimEvent event : receiver.processed) {
+			if (event.getTag() == TAG_A) {
+				tagA++;
+			} else {
+				tagB++;
+			}
+		}
+		Assert.assertEquals(4, tagA);
+		Assert.assertEquals(3, tagB);
+	}
+
+	@Test
+	public void testDuplicatesWithAnEventBetweenAreKept() {
+		Receiver receiver = new Receiver("receiver", false);
+		receiver.addCoalescibleTag(TAG_A);
+
+		CloudSim.send(receiver.getId(), receiver.getId(), 1, TAG_A, null);
+		CloudSim.send(receiver.getId(), receiver.getId(), 1, TAG_A, null);
+		CloudSim.send(receiver.getId(), receiver.getId(), 1, TAG_B, "between");
+		CloudSim.send(receiver.getId(), receiver.getId(), 1, TAG_A, null);
+		CloudSim.send(receiver.getId(), receiver.getId(), 1, TAG_A, null);
+
+		CloudSim.startSimulation();
+
+		// the receiver sees the duplicates before and after the other event, in order
+		int[] expected = { TAG_A, TAG_B, TAG_A };
+		Assert.assertEquals(expected.length, receiver.processed.size());
+		for (int i = 0; i < expected.length; i++) {
+			Assert.assertEquals(expected[i], receiver.processed.get(i).getTag());
+		}
+		Assert.assertEquals("between", receiver.processed.get(1).getData());
+	}
+
+}
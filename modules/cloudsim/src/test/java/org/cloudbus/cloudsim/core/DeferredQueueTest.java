@@ -0,0 +1,177 @@
+package org.cloudbus.cloudsim.core;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Random;
+
+import org.cloudbus.cloudsim.core.predicates.Predicate;
+import org.cloudbus.cloudsim.core.predicates.PredicateFrom;
+import org.cloudbus.cloudsim.core.predicates.PredicateNone;
+import org.cloudbus.cloudsim.core.predicates.PredicateNotType;
+import org.cloudbus.cloudsim.core.predicates.PredicateType;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the per-destination {@link DeferredQueue} against the single time ordered list it
+ * replaced.
+ */
+public class DeferredQueueTest {
+
+	private DeferredQueue queue;
+
+	@Before
+	public void setUp() {
+		queue = new DeferredQueue();
+	}
+
+	private static SimEvent newEvent(double time, int src, int dest, int tag) {
+		return new SimEvent(SimEvent.SEND, time, src, dest, tag, null);
+	}
+
+	@Test
+	public void testEmptyQueue() {
+		Assert.assertEquals(0, queue.size());
+		Assert.assertEquals(0, queue.count(0, CloudSim.SIM_ANY));
+		Assert.assertNull(queue.findFirst(0, CloudSim.SIM_ANY));
+		Assert.assertNull(queue.select(3, new PredicateType(1)));
+		Assert.assertFalse(queue.iterator().hasNext());
+	}
+
+	@Test
+	public void testSelectOnlyTouchesDestination() {
+		SimEvent toZero = newEvent(1, 5, 0, 1);
+		SimEvent toOne = newEvent(0.5, 5, 1, 1);
+		queue.addEvent(toZero);
+		queue.addEvent(toOne);
+
+		Assert.assertEquals(1, queue.count(0, CloudSim.SIM_ANY));
+		Assert.assertSame(toOne, queue.findFirst(1, CloudSim.SIM_ANY));
+		Assert.assertNull(queue.select(2, CloudSim.SIM_ANY));
+		Assert.assertSame(toZero, queue.select(0, CloudSim.SIM_ANY));
+		Assert.assertEquals(1, queue.size());
+		Assert.assertNull(queue.select(0, CloudSim.SIM_ANY));
+	}
+
+	@Test
+	public void testEventsWithEarlierTimeAreInsertedAfterEqualOnes() {
+		SimEvent first = newEvent(1, 0, 0, 1);
+		SimEvent third = newEvent(2, 0, 0, 2);
+		SimEvent second = newEvent(1, 0, 0, 2);
+		queue.addEvent(first);
+		queue.addEvent(third);
+		queue.addEvent(second);
+
+		Assert.assertSame(second, queue.findFirst(0, new PredicateType(2)));
+		Assert.assertSame(first, queue.select(0, CloudSim.SIM_ANY));
+		Assert.assertSame(second, queue.select(0, CloudSim.SIM_ANY));
+		Assert.assertSame(third, queue.select(0, CloudSim.SIM_ANY));
+	}
+
+	@Test
+	public void testTagPredicates() {
+		for (int i = 0; i < 10; i++) {
+			queue.addEvent(newEvent(i, 0, 0, i % 3));
+		}
+		PredicateType oneOrTwo = new PredicateType(new int[] { 2, 1, 2 });
+
+		Assert.assertEquals(6, queue.count(0, oneOrTwo));
+		Assert.assertEquals(1, queue.findFirst(0, oneOrTwo).eventTime(), 0);
+		Assert.assertEquals(1, queue.select(0, oneOrTwo).eventTime(), 0);
+		Assert.assertEquals(2, queue.select(0, oneOrTwo).eventTime(), 0);
+		Assert.assertEquals(4, queue.count(0, oneOrTwo));
+		Assert.assertEquals(0, queue.select(0, CloudSim.SIM_ANY).eventTime(), 0);
+		Assert.assertEquals(3, queue.select(0, new PredicateType(0)).eventTime(), 0);
+		Assert.assertEquals(0, queue.count(0, new PredicateType(7)));
+		Assert.assertEquals(6, queue.size());
+	}
+
+	@Test
+	public void testIteratorRemove() {
+		for (int i = 0; i < 10; i++) {
+			queue.addEvent(newEvent(i, 0, i % 2, i % 3));
+		}
+		queue.count(0, new PredicateType(1));
+
+		Iterator<SimEvent> iterator = queue.iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().getTag() == 1) {
+				iterator.remove();
+			}
+		}
+		Assert.assertEquals(7, queue.size());
+		Assert.assertEquals(0, queue.count(0, new PredicateType(1)));
+		Assert.assertEquals(0, queue.count(1, new PredicateType(1)));
+		Assert.assertEquals(4, queue.count(0, CloudSim.SIM_ANY));
+	}
+
+	@Test
+	public void testSameResultsAsSingleList() {
+		List<SimEvent> reference = new LinkedList<SimEvent>();
+		Random random = new Random(3);
+		Predicate[] predicates = { CloudSim.SIM_ANY, new PredicateNone(), new PredicateType(1),
+				new PredicateType(new int[] { 0, 3 }), new PredicateNotType(2), new PredicateFrom(4) };
+
+		double time = 0;
+		for (int i = 0; i < 5000; i++) {
+			int action = random.nextInt(4);
+			int destination = random.nextInt(5);
+			Predicate p = predicates[random.nextInt(predicates.length)];
+			if (action < 2) {
+				time += random.nextInt(3) == 0 ? 0 : 1;
+				double eventTime = random.nextInt(10) == 0 ? time - random.nextInt(5) : time;
+				SimEvent event = newEvent(eventTime, random.nextInt(6), destination, random.nextInt(5));
+				queue.addEvent(event);
+				addToReference(reference, event);
+			} else if (action == 2) {
+				Assert.assertEquals(count(reference, destination, p), queue.count(destination, p));
+				Assert.assertSame(first(reference, destination, p), queue.findFirst(destination, p));
+			} else {
+				SimEvent expected = first(reference, destination, p);
+				for (Iterator<SimEvent> iterator = reference.iterator(); iterator.hasNext();) {
+					if (iterator.next() == expected) {
+						iterator.remove();
+					}
+				}
+				Assert.assertSame(expected, queue.select(destination, p));
+			}
+			Assert.assertEquals(reference.size(), queue.size());
+		}
+	}
+
+	/** The insertion of the former linked list deferred queue. */
+	private static void addToReference(List<SimEvent> list, SimEvent newEvent) {
+		ListIterator<SimEvent> iterator = list.listIterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().eventTime() > newEvent.eventTime()) {
+				iterator.previous();
+				iterator.add(newEvent);
+				return;
+			}
+		}
+		list.add(newEvent);
+	}
+
+	private static int count(List<SimEvent> list, int destination, Predicate p) {
+		int count = 0;
+		for (SimEvent event : list) {
+			if (event.getDestination() == destination && p.match(event)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static SimEvent first(List<SimEvent> list, int destination, Predicate p) {
+		for (SimEvent event : list) {
+			if (event.getDestination() == destination && p.match(event)) {
+				return event;
+			}
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,144 @@
+package org.cloudbus.cloudsim.core;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks that every {@link FutureQueue} delivers the events in the same order as the
+ * {@link TreeSetFutureQueue}.
+ */
+public class FutureQueueTest {
+
+	private static final int NUMBER_OF_EVENTS = 20000;
+
+	private static FutureQueue[] newQueues() {
+		return new FutureQueue[] { new TreeSetFutureQueue(), new HeapFutureQueue(2), new HeapFutureQueue(4),
+				new CalendarFutureQueue(), new LadderFutureQueue() };
+	}
+
+	private static SimEvent newEvent(double time, int tag) {
+		return new SimEvent(SimEvent.SEND, time, 0, 1, tag, null);
+	}
+
+	@Test
+	public void testEmptyQueue() {
+		for (FutureQueue queue : newQueues()) {
+			Assert.assertEquals(0, queue.size());
+			Assert.assertNull(queue.peek());
+			Assert.assertNull(queue.poll());
+		}
+	}
+
+	@Test
+	public void testTimeAndSerialOrder() {
+		for (FutureQueue queue : newQueues()) {
+			SimEvent later = newEvent(10, 0);
+			SimEvent sameTime = newEvent(5, 1);
+			SimEvent first = newEvent(5, 2);
+			SimEvent beforeAll = newEvent(5, 3);
+			SimEvent earlier = newEvent(1, 4);
+
+			queue.addEvent(later);
+			queue.addEvent(sameTime);
+			queue.addEventFirst(first);
+			queue.addEvent(beforeAll, -1);
+			queue.addEvent(earlier);
+
+			Assert.assertEquals(5, queue.size());
+			Assert.assertSame(earlier, queue.peek());
+			Assert.assertSame(earlier, queue.poll());
+			Assert.assertSame(beforeAll, queue.poll());
+			Assert.assertSame(first, queue.poll());
+			Assert.assertSame(sameTime, queue.poll());
+			Assert.assertSame(later, queue.poll());
+			Assert.assertEquals(0, queue.size());
+		}
+	}
+
+	@Test
+	public void testInsertionOrderForEqualTimeAndSerial() {
+		for (FutureQueue queue : newQueues()) {
+			List<SimEvent> events = new ArrayList<SimEvent>();
+			for (int i = 0; i < 100; i++) {
+				SimEvent event = newEvent(3, i);
+				events.add(event);
+				queue.addEvent(event, -1);
+			}
+			for (SimEvent event : events) {
+				Assert.assertSame(event, queue.poll());
+			}
+		}
+	}
+
+	@Test
+	public void testSameOrderAsTreeSet() {
+		for (FutureQueue queue : newQueues()) {
+			FutureQueue expected = new TreeSetFutureQueue();
+			Random random = new Random(7);
+
+			for (int i = 0; i < NUMBER_OF_EVENTS; i++) {
+				double time = Math.floor(random.nextDouble() * 1000);
+				queue.addEvent(newEvent(time, i));
+				expected.addEvent(newEvent(time, i));
+			}
+
+			// polls and schedules events like a simulation, sometimes in the current time
+			for (int i = 0; i < 5 * NUMBER_OF_EVENTS; i++) {
+				SimEvent next = expected.poll();
+				SimEvent actual = queue.poll();
+				Assert.assertEquals(next.eventTime(), actual.eventTime(), 0);
+				Assert.assertEquals(next.serial, actual.serial);
+				Assert.assertEquals(next.getTag(), actual.getTag());
+
+				double time = next.eventTime() + (random.nextInt(4) == 0 ? 0 : Math.floor(random.nextDouble() * 100));
+				if (random.nextInt(10) == 0) {
+					queue.addEvent(newEvent(time, i), -1);
+					expected.addEvent(newEvent(time, i), -1);
+				} else {
+					queue.addEvent(newEvent(time, i));
+					expected.addEvent(newEvent(time, i));
+				}
+			}
+			Assert.assertEquals(expected.size(), queue.size());
+
+			while (expected.size() > 0) {
+				SimEvent next = expected.poll();
+				SimEvent actual = queue.poll();
+				Assert.assertEquals(next.eventTime(), actual.eventTime(), 0);
+				Assert.assertEquals(next.serial, actual.serial);
+				Assert.assertEquals(next.getTag(), actual.getTag());
+			}
+			Assert.assertNull(queue.poll());
+		}
+	}
+
+	@Test
+	public void testRemoveThroughIterator() {
+		for (FutureQueue queue : newQueues()) {
+			for (int i = 0; i < 1000; i++) {
+				queue.addEvent(newEvent(i % 100, i));
+			}
+			Iterator<SimEvent> iterator = queue.iterator();
+			while (iterator.hasNext()) {
+				if (iterator.next().getTag() % 2 == 0) {
+					iterator.remove();
+				}
+			}
+			Assert.assertEquals(500, queue.size());
+
+			double previousTime = -1;
+			SimEvent event;
+			while ((event = queue.poll()) != null) {
+				Assert.assertTrue(event.getTag() % 2 == 1);
+				Assert.assertTrue(event.eventTime() >= previousTime);
+				previousTime = event.eventTime();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,100 @@
+package org.cloudbus.cloudsim.core;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+import org.cloudbus.cloudsim.Log;
+import org.cloudbus.cloudsim.core.predicates.PredicateType;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the pending event counters kept by {@link CloudSim} against the predicate scans they
+ * replace.
+ */
+public class PendingEventCountersTest {
+
+	private static final int TAG_A = 1001;
+
+	private static final int TAG_B = 1002;
+
+	/** Records the counters seen when processing each event. */
+	private static class Receiver extends SimEntity {
+
+		final List<int[]> seen = new ArrayList<int[]>();
+
+		Receiver(String name) {
+			super(name);
+		}
+
+		@Override
+		public void startEntity() {
+		}
+
+		@Override
+		public void processEvent(SimEvent ev) {
+			seen.add(new int[] { ev.getTag(), countPending(TAG_A), countPending(TAG_B), countDeferred(TAG_B),
+					numEventsWaiting(new PredicateType(TAG_B)) });
+		}
+
+		@Override
+		public void shutdownEntity() {
+		}
+	}
+
+	private Receiver receiver;
+
+	private Receiver sender;
+
+	@Before
+	public void setUp() {
+		Log.disable();
+		CloudSim.init(1, Calendar.getInstance(), false);
+		receiver = new Receiver("receiver");
+		sender = new Receiver("sender");
+	}
+
+	@Test
+	public void testCountersFollowSendAndCancel() {
+		CloudSim.send(sender.getId(), receiver.getId(), 1, TAG_A, null);
+		CloudSim.send(sender.getId(), receiver.getId(), 2, TAG_A, null, -1);
+		CloudSim.sendFirst(sender.getId(), receiver.getId(), 3, TAG_B, null);
+		CloudSim.send(receiver.getId(), sender.getId(), 1, TAG_A, null);
+
+		Assert.assertEquals(2, receiver.countPending(TAG_A));
+		Assert.assertEquals(1, receiver.countPending(TAG_B));
+		Assert.assertEquals(1, sender.countPending(TAG_A));
+		Assert.assertEquals(0, sender.countPending(TAG_B));
+		Assert.assertEquals(0, receiver.countDeferred(TAG_A));
+
+		SimEvent cancelled = CloudSim.cancel(sender.getId(), new PredicateType(TAG_A));
+		Assert.assertEquals(1, cancelled.eventTime(), 0);
+		Assert.assertEquals(1, receiver.countPending(TAG_A));
+
+		CloudSim.cancelAll(sender.getId(), CloudSim.SIM_ANY);
+		Assert.assertEquals(0, receiver.countPending(TAG_A));
+		Assert.assertEquals(0, receiver.countPending(TAG_B));
+		Assert.assertEquals(1, sender.countPending(TAG_A));
+	}
+
+	@Test
+	public void testCountersDuringSimulation() {
+		CloudSim.send(sender.getId(), receiver.getId(), 1, TAG_A, null);
+		CloudSim.send(sender.getId(), receiver.getId(), 5, TAG_A, null);
+		CloudSim.send(sender.getId(), receiver.getId(), 5, TAG_B, null);
+		CloudSim.send(sender.getId(), receiver.getId(), 5, TAG_B, null);
+
+		CloudSim.startSimulation();
+
+		Assert.assertEquals(4, receiver.seen.size());
+		// at time 1, the events at time 5 are still in the future queue
+		Assert.assertArrayEquals(new int[] { TAG_A, 1, 2, 0, 0 }, receiver.seen.get(0));
+		// at time 5, the events were delivered to the deferred queue
+		Assert.assertArrayEquals(new int[] { TAG_A, 0, 2, 2, 2 }, receiver.seen.get(1));
+		Assert.assertArrayEquals(new int[] { TAG_B, 0, 1, 1, 1 }, receiver.seen.get(2));
+		Assert.assertArrayEquals(new int[] { TAG_B, 0, 0, 0, 0 }, receiver.seen.get(3));
+	}
+
+}
@@ -0,0 +1,135 @@
+package org.cloudbus.cloudsim.core;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.cloudbus.cloudsim.Log;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that simulations bound to different {@link SimulationContext}s run independently.
+ */
+public class SimulationContextTest {
+
+	private static final int PING = 1001;
+
+	/** Sends events back and forth with a fixed delay until a number of rounds is reached. */
+	private static class Player extends SimEntity {
+
+		final double delay;
+
+		final int rounds;
+
+		int received;
+
+		Player other;
+
+		Player(String name, double delay, int rounds) {
+			super(name);
+			this.delay = delay;
+			this.rounds = rounds;
+		}
+
+		@Override
+		public void startEntity() {
+		}
+
+		@Override
+		public void processEvent(SimEvent ev) {
+			received++;
+			if (received < rounds) {
+				schedule(other.getId(), delay, PING);
+			}
+		}
+
+		@Override
+		public void shutdownEntity() {
+		}
+	}
+
+	@Before
+	public void setUp() {
+		Log.disable();
+	}
+
+	/**
+	 * Runs a simulation in the context of the calling thread.
+	 *
+	 * @return the final clock and the number of events each player received
+	 */
+	private static double[] simulate(double delay, int rounds) {
+		CloudSim.init(1, Calendar.getInstance(), false);
+		Player ping = new Player("ping", delay, rounds);
+		Player pong = new Player("pong", delay, rounds);
+		ping.other = pong;
+		pong.other = ping;
+		Assert.assertSame(CloudSim.getContext(), ping.getContext());
+		CloudSim.send(pong.getId(), ping.getId(), delay, PING, null);
+		double clock = CloudSim.startSimulation();
+		return new double[] { clock, ping.received, pong.received };
+	}
+
+	@Test
+	public void testConcurrentSimulations() throws Exception {
+		final int simulations = 4;
+		double[][] expected = new double[simulations][];
+		for (int i = 0; i < simulations; i++) {
+			expected[i] = simulate(i + 1, 1000 * (i + 1));
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(simulations);
+		try {
+			List<Future<double[]>> results = new ArrayList<Future<double[]>>();
+			for (int i = 0; i < simulations; i++) {
+				final int index = i;
+				results.add(executor.submit(new Callable<double[]>() {
+
+					@Override
+					public double[] call() {
+						CloudSim.setContext(new SimulationContext());
+						try {
+							return simulate(index + 1, 1000 * (index + 1));
+						} finally {
+							CloudSim.setContext(null);
+						}
+					}
+				}));
+			}
+			for (int i = 0; i < simulations; i++) {
+				Assert.assertArrayEquals(expected[i], results.get(i).get(), 0);
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testEntitiesKeepTheirContext() {
+		SimulationContext context = new SimulationContext();
+		CloudSim.setContext(context);
+		Player player;
+		try {
+			CloudSim.init(1, Calendar.getInstance(), false);
+			player = new Player("player", 1, 1);
+		} finally {
+			CloudSim.setContext(null);
+		}
+
+		Assert.assertSame(context, player.getContext());
+		Assert.assertNotSame(context, CloudSim.getContext());
+		Assert.assertSame(player, context.getEntity("player"));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testInitOfUnboundContext() {
+		new SimulationContext().init(1, Calendar.getInstance(), false);
+	}
+
+}
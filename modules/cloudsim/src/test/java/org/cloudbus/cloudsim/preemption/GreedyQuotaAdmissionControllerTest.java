@@ -4,6 +4,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import gnu.trove.map.hash.THashMap;
+import org.cloudbus.cloudsim.preemption.util.PriorityResources;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -37,11 +38,11 @@ public class GreedyQuotaAdmissionControllerTest {
     @Test
     public void testCalculateQuota01(){
 
-        Map<Integer, Double> admitedRequests = new THashMap<Integer, Double>();
+        PriorityResources admitedRequests = new PriorityResources(3);
 
-        admitedRequests.put(PROD, 0d);
-        admitedRequests.put(BATCH, 0d);
-        admitedRequests.put(FREE, 0d);
+        admitedRequests.set(PROD, 0d);
+        admitedRequests.set(BATCH, 0d);
+        admitedRequests.set(FREE, 0d);
 
         admController.calculateQuota(admitedRequests);
         Assert.assertEquals(100, admController.getPriorityToQuotas().get(0), ACCEPTABLE_DIFFERENCE);
@@ -53,11 +54,11 @@ public class GreedyQuotaAdmissionControllerTest {
     @Test
     public void testCalculateQuota02(){
 
-        Map<Integer, Double> admittedRequests = new THashMap<Integer, Double>();
+        PriorityResources admittedRequests = new PriorityResources(3);
 
-        admittedRequests.put(PROD, 10.0);
-        admittedRequests.put(BATCH, 10.0);
-        admittedRequests.put(FREE, 10.0);
+        admittedRequests.set(PROD, 10.0);
+        admittedRequests.set(BATCH, 10.0);
+        admittedRequests.set(FREE, 10.0);
 
         admController.calculateQuota(admittedRequests);
 
@@ -69,11 +70,11 @@ public class GreedyQuotaAdmissionControllerTest {
     @Test
     public void testCalculateQuota03(){
 
-        Map<Integer, Double> admitedRequests = new THashMap<Integer, Double>();
+        PriorityResources admitedRequests = new PriorityResources(3);
 
-        admitedRequests.put(PROD, 0d);
-        admitedRequests.put(BATCH, 20.0);
-        admitedRequests.put(FREE, 10.0);
+        admitedRequests.set(PROD, 0d);
+        admitedRequests.set(BATCH, 20.0);
+        admitedRequests.set(FREE, 10.0);
 
         admController.calculateQuota(admitedRequests);
 
@@ -81,9 +82,9 @@ public class GreedyQuotaAdmissionControllerTest {
         Assert.assertEquals(111.111111111, admController.getPriorityToQuotas().get(1), ACCEPTABLE_DIFFERENCE);
         Assert.assertEquals(160, admController.getPriorityToQuotas().get(2), ACCEPTABLE_DIFFERENCE);
 
-        admitedRequests.put(PROD, 0d);
-        admitedRequests.put(BATCH, 0d);
-        admitedRequests.put(FREE, 30.0);
+        admitedRequests.set(PROD, 0d);
+        admitedRequests.set(BATCH, 0d);
+        admitedRequests.set(FREE, 30.0);
 
         admController.calculateQuota(admitedRequests);
 
@@ -91,9 +92,9 @@ public class GreedyQuotaAdmissionControllerTest {
         Assert.assertEquals(111.11111111111, admController.getPriorityToQuotas().get(1), ACCEPTABLE_DIFFERENCE);
         Assert.assertEquals(200, admController.getPriorityToQuotas().get(2), ACCEPTABLE_DIFFERENCE);
 
-        admitedRequests.put(PROD, 30.0);
-        admitedRequests.put(BATCH, 0d);
-        admitedRequests.put(FREE, 0d);
+        admitedRequests.set(PROD, 30.0);
+        admitedRequests.set(BATCH, 0d);
+        admitedRequests.set(FREE, 0d);
 
         admController.calculateQuota(admitedRequests);
 
@@ -101,9 +102,9 @@ public class GreedyQuotaAdmissionControllerTest {
         Assert.assertEquals(77.777777778, admController.getPriorityToQuotas().get(1), ACCEPTABLE_DIFFERENCE);
         Assert.assertEquals(140, admController.getPriorityToQuotas().get(2), ACCEPTABLE_DIFFERENCE);
 
-        admitedRequests.put(PROD, 20.0);
-        admitedRequests.put(BATCH, 0d);
-        admitedRequests.put(FREE, 10.0);
+        admitedRequests.set(PROD, 20.0);
+        admitedRequests.set(BATCH, 0d);
+        admitedRequests.set(FREE, 10.0);
 
         admController.calculateQuota(admitedRequests);
 
@@ -116,11 +117,11 @@ public class GreedyQuotaAdmissionControllerTest {
     @Test
     public void calculateQuota04(){
 
-        Map<Integer, Double> admitedRequests = new THashMap<Integer, Double>();
+        PriorityResources admitedRequests = new PriorityResources(3);
 
-        admitedRequests.put(PROD, 0.5);
-        admitedRequests.put(BATCH, 20.0);
-        admitedRequests.put(FREE, 10.0);
+        admitedRequests.set(PROD, 0.5);
+        admitedRequests.set(BATCH, 20.0);
+        admitedRequests.set(FREE, 10.0);
 
         admController.calculateQuota(admitedRequests);
 
@@ -128,9 +129,9 @@ public class GreedyQuotaAdmissionControllerTest {
         Assert.assertEquals(110.555555556, admController.getPriorityToQuotas().get(1), ACCEPTABLE_DIFFERENCE);
         Assert.assertEquals(159, admController.getPriorityToQuotas().get(2), ACCEPTABLE_DIFFERENCE);
 
-        admitedRequests.put(PROD, 0.0625);
-        admitedRequests.put(BATCH, 0.03125);
-        admitedRequests.put(FREE, 0.01250);
+        admitedRequests.set(PROD, 0.0625);
+        admitedRequests.set(BATCH, 0.03125);
+        admitedRequests.set(FREE, 0.01250);
 
         admController.calculateQuota(admitedRequests);
 
@@ -138,9 +139,9 @@ public class GreedyQuotaAdmissionControllerTest {
         Assert.assertEquals(111.041666667, admController.getPriorityToQuotas().get(1), ACCEPTABLE_DIFFERENCE);
         Assert.assertEquals(199.8125, admController.getPriorityToQuotas().get(2), ACCEPTABLE_DIFFERENCE);
 
-        admitedRequests.put(PROD, 0.625);
-        admitedRequests.put(BATCH, 0.03125);
-        admitedRequests.put(FREE, 0.01250);
+        admitedRequests.set(PROD, 0.625);
+        admitedRequests.set(BATCH, 0.03125);
+        admitedRequests.set(FREE, 0.01250);
 
         admController.calculateQuota(admitedRequests);
 
@@ -160,11 +161,11 @@ public class GreedyQuotaAdmissionControllerTest {
         int priority = 0;
         double runtime = 10;
 
-        Map<Integer, Double> admittedRequests = new THashMap<Integer, Double>();
+        PriorityResources admittedRequests = new PriorityResources(3);
 
-        admittedRequests.put(PROD, 0d);
-        admittedRequests.put(BATCH, 0d);
-        admittedRequests.put(FREE, 0d);
+        admittedRequests.set(PROD, 0d);
+        admittedRequests.set(BATCH, 0d);
+        admittedRequests.set(FREE, 0d);
 
         PreemptableVm vm = new PreemptableVm(id, userId, cpuReq, memReq, submitTime, priority, runtime);
         Assert.assertTrue(admController.accept(vm, admittedRequests));
@@ -175,9 +176,9 @@ public class GreedyQuotaAdmissionControllerTest {
         Assert.assertEquals(200, admController.getPriorityToQuotas().get(FREE), ACCEPTABLE_DIFFERENCE);
 
         // updating admitted requests
-        admittedRequests.put(PROD, 99d);
-        admittedRequests.put(BATCH, 0d);
-        admittedRequests.put(FREE, 0d);
+        admittedRequests.set(PROD, 99d);
+        admittedRequests.set(BATCH, 0d);
+        admittedRequests.set(FREE, 0d);
         
         priority = 1;
         cpuReq = 111.111112111;
@@ -201,9 +202,9 @@ public class GreedyQuotaAdmissionControllerTest {
         Assert.assertEquals(200, admController.getPriorityToQuotas().get(FREE), ACCEPTABLE_DIFFERENCE);
 
         // updating admitted requests
-        admittedRequests.put(PROD, 99d);
-        admittedRequests.put(BATCH, 111.111111111);
-        admittedRequests.put(FREE, 0d);
+        admittedRequests.set(PROD, 99d);
+        admittedRequests.set(BATCH, 111.111111111);
+        admittedRequests.set(FREE, 0d);
 
         
         priority = 2;
@@ -243,12 +244,12 @@ public class GreedyQuotaAdmissionControllerTest {
         int priority = 0;
         double runtime = 10;
 
-        Map<Integer, Double> admittedRequests = new THashMap<Integer, Double>();
+        PriorityResources admittedRequests = new PriorityResources(3);
 
         // updating admitted requests
-        admittedRequests.put(PROD, 50d);
-        admittedRequests.put(BATCH, 20d);
-        admittedRequests.put(FREE, 10d);
+        admittedRequests.set(PROD, 50d);
+        admittedRequests.set(BATCH, 20d);
+        admittedRequests.set(FREE, 10d);
 
         admController.calculateQuota(admittedRequests);
 
@@ -14,18 +14,23 @@ import org.cloudbus.cloudsim.Storage;
 import org.cloudbus.cloudsim.Vm;
 import org.cloudbus.cloudsim.core.CloudSim;
 import org.cloudbus.cloudsim.core.CloudSimTags;
+import org.cloudbus.cloudsim.core.SimEntity;
 import org.cloudbus.cloudsim.core.SimEvent;
+import org.cloudbus.cloudsim.preemption.datastore.DatacenterSnapshot;
 import org.cloudbus.cloudsim.preemption.datastore.DatacenterUsageDataStore;
+import org.cloudbus.cloudsim.preemption.datastore.HostUsageBuffer;
 import org.cloudbus.cloudsim.preemption.datastore.HostUsageDataStore;
 import org.cloudbus.cloudsim.preemption.datastore.PreemptableVmDataStore;
 import org.cloudbus.cloudsim.preemption.policies.hostselection.HostSelectionPolicy;
 import org.cloudbus.cloudsim.preemption.policies.preemption.FCFSBasedPreemptionPolicy;
 import org.cloudbus.cloudsim.preemption.policies.vmallocation.WorstFitPriorityBasedVmAllocationPolicy;
+import org.cloudbus.cloudsim.preemption.util.PriorityResources;
 import org.cloudbus.cloudsim.provisioners.PeProvisionerSimple;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
 public class PreemptiveDatacenterTest {
@@ -158,6 +163,17 @@ public class PreemptiveDatacenterTest {
         validateAdmitedRequests();
     }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void testAllocateVmWithInvalidPriority() {
+        // the datacenter has 3 priorities
+        PreemptableVm vm0 = new PreemptableVm(1, 1, 5, 1, 0, 3, 10);
+
+        Mockito.when(event.getTag()).thenReturn(CloudSimTags.VM_CREATE);
+        Mockito.when(event.getData()).thenReturn(vm0);
+
+        datacenter.processEvent(event);
+    }
+
     private void setGreedyAdmController() {
         Map<Integer, Double> sloTargets = new THashMap<>();
         sloTargets.put(PROD, 1.0);
@@ -2212,13 +2228,11 @@ public class PreemptiveDatacenterTest {
         Mockito.when(event.getTag()).thenReturn(PreemptiveDatacenter.STORE_HOST_UTILIZATION_EVENT);
 
         datacenter.processEvent(event);
+        datacenter.getDataStoreWriter().flush();
 
-        UsageInfo info = new UsageInfo(host.getId(), 0, 0, 0, 0, 0, 0, 0, 0);
-        List<UsageEntry> list = new ArrayList<>();
-        list.addAll(info.getUsageEntries());
-
-        Mockito.verify(hostUsage, times(0)).addUsageEntries(list);
-        Mockito.verify(hostUsage, times(1)).addUsageEntries(new ArrayList<UsageEntry>());
+        ArgumentCaptor<HostUsageBuffer> usage = ArgumentCaptor.forClass(HostUsageBuffer.class);
+        Mockito.verify(hostUsage, times(1)).addUsage(usage.capture());
+        Assert.assertTrue(usage.getValue().isEmpty());
 
     }
 
@@ -2232,14 +2246,16 @@ public class PreemptiveDatacenterTest {
         List<UsageEntry> list = new ArrayList<>();
         list.addAll(info.getUsageEntries());
 
-        host.getUsageMap().put(1.0, info);
+        host.putUsageInfo(info);
 
         Mockito.when(timeUtil.clock()).thenReturn(2.0);
 
         datacenter.processEvent(event);
+        datacenter.getDataStoreWriter().flush();
 
-        Mockito.verify(hostUsage, times(1)).addUsageEntries(list);
-        Mockito.verify(hostUsage, times(0)).addUsageEntries(new ArrayList<UsageEntry>());
+        ArgumentCaptor<HostUsageBuffer> usage = ArgumentCaptor.forClass(HostUsageBuffer.class);
+        Mockito.verify(hostUsage, times(1)).addUsage(usage.capture());
+        Assert.assertEquals(list, usage.getValue().toList());
 
     }
 
@@ -2269,15 +2285,17 @@ public class PreemptiveDatacenterTest {
         list.addAll(info.getUsageEntries());
         list.addAll(info2.getUsageEntries());
 
-        host.getUsageMap().put(1.0, info);
-        host2.getUsageMap().put(1.0, info2);
+        host.putUsageInfo(info);
+        host2.putUsageInfo(info2);
 
         Mockito.when(timeUtil.clock()).thenReturn(2.0);
 
         datacenter.processEvent(event);
+        datacenter.getDataStoreWriter().flush();
 
-        Mockito.verify(hostUsage, times(1)).addUsageEntries(list);
-        Mockito.verify(hostUsage, times(0)).addUsageEntries(new ArrayList<UsageEntry>());
+        ArgumentCaptor<HostUsageBuffer> usage = ArgumentCaptor.forClass(HostUsageBuffer.class);
+        Mockito.verify(hostUsage, times(1)).addUsage(usage.capture());
+        Assert.assertEquals(list, usage.getValue().toList());
     }
 
     @Test
@@ -2305,6 +2323,83 @@ public class PreemptiveDatacenterTest {
 
     }
 
+    @Test
+    public void testDatacenterInfoNotStoredIsTriedAgain(){
+        DatacenterUsageDataStore datacenterUsage = Mockito.mock(DatacenterUsageDataStore.class);
+        Mockito.when(datacenterUsage.addDatacenterInfo(Mockito.anyList())).thenReturn(false, true);
+        datacenter.setDatacenterUsageDataStore(datacenterUsage);
+
+        // the first write fails
+        Mockito.when(event.getTag()).thenReturn(PreemptiveDatacenter.COLLECT_DATACENTER_INFO_EVENT);
+        Mockito.when(timeUtil.clock()).thenReturn(1.0);
+        datacenter.processEvent(event);
+        Mockito.when(event.getTag()).thenReturn(PreemptiveDatacenter.STORE_DATACENTER_INFO_EVENT);
+        datacenter.processEvent(event);
+        datacenter.getDataStoreWriter().flush();
+        Assert.assertEquals(0, datacenter.getDatacenterInfo().size());
+
+        // the next write has the info of both times
+        Mockito.when(event.getTag()).thenReturn(PreemptiveDatacenter.COLLECT_DATACENTER_INFO_EVENT);
+        Mockito.when(timeUtil.clock()).thenReturn(2.0);
+        datacenter.processEvent(event);
+        Mockito.when(event.getTag()).thenReturn(PreemptiveDatacenter.STORE_DATACENTER_INFO_EVENT);
+        datacenter.processEvent(event);
+        datacenter.getDataStoreWriter().flush();
+
+        ArgumentCaptor<List> stored = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(datacenterUsage, times(2)).addDatacenterInfo(stored.capture());
+        List<?> retried = stored.getAllValues().get(1);
+        Assert.assertEquals(2, retried.size());
+        Assert.assertEquals(1.0, ((DatacenterInfo) retried.get(0)).getTime(), 0);
+        Assert.assertEquals(2.0, ((DatacenterInfo) retried.get(1)).getTime(), 0);
+    }
+
+    @Test
+    public void testDatacenterInfoNotStoredAtTheEndIsTriedAgain(){
+        DatacenterUsageDataStore datacenterUsage = Mockito.mock(DatacenterUsageDataStore.class);
+        Mockito.when(datacenterUsage.addDatacenterInfo(Mockito.anyList())).thenReturn(false, true);
+        datacenter.setDatacenterUsageDataStore(datacenterUsage);
+
+        Mockito.when(event.getTag()).thenReturn(PreemptiveDatacenter.COLLECT_DATACENTER_INFO_EVENT);
+        Mockito.when(timeUtil.clock()).thenReturn(1.0);
+        datacenter.processEvent(event);
+
+        // the last write fails, and there is no later store
+        Mockito.when(event.getTag()).thenReturn(CloudSimTags.END_OF_SIMULATION);
+        Mockito.when(timeUtil.clock()).thenReturn(2.0);
+        datacenter.processEvent(event);
+
+        ArgumentCaptor<List> stored = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(datacenterUsage, times(2)).addDatacenterInfo(stored.capture());
+        Assert.assertEquals(stored.getAllValues().get(0), stored.getAllValues().get(1));
+        List<?> retried = stored.getAllValues().get(1);
+        Assert.assertEquals(2, retried.size());
+        Assert.assertEquals(1.0, ((DatacenterInfo) retried.get(0)).getTime(), 0);
+        Assert.assertEquals(2.0, ((DatacenterInfo) retried.get(1)).getTime(), 0);
+    }
+
+    @Test
+    public void testCollectDatacenterInfoByPriority(){
+        datacenter.getVmsRunning().add(new PreemptableVm(1, 1, 0.5, 0, 0, 0, 10));
+        datacenter.getVmsRunning().add(new PreemptableVm(2, 1, 0.25, 0, 0, 2, 10));
+        datacenter.getVmsRunning().add(new PreemptableVm(3, 1, 0.25, 0, 0, 2, 10));
+        datacenter.getVmsForScheduling().add(new PreemptableVm(4, 1, 1, 0, 0, 1, 10));
+        datacenter.getVmsRunning().remove(new PreemptableVm(1, 1, 0.5, 0, 0, 0, 10));
+
+        Mockito.when(event.getTag()).thenReturn(PreemptiveDatacenter.COLLECT_DATACENTER_INFO_EVENT);
+        datacenter.processEvent(event);
+
+        DatacenterInfo info = datacenter.getDatacenterInfo().get(0);
+        Assert.assertEquals(2, info.getVmsRunning());
+        Assert.assertEquals(0, info.getVmsRunningP0());
+        Assert.assertEquals(0, info.getResourcesRunningP0(), 0);
+        Assert.assertEquals(2, info.getVmsRunningP2());
+        Assert.assertEquals(0.5, info.getResourcesRunningP2(), 0);
+        Assert.assertEquals(1, info.getVmsForScheduling());
+        Assert.assertEquals(1, info.getVmsForSchedulingP1());
+        Assert.assertEquals(1, info.getResourcesWaitingP1(), 0);
+    }
+
     @Test
     public void testEndOfSimulation(){
         Mockito.when(event.getTag()).thenReturn(CloudSimTags.END_OF_SIMULATION);
@@ -2348,6 +2443,32 @@ public class PreemptiveDatacenterTest {
 
     }
 
+    @Test
+    public void testEndOfSimulationWithoutVms() {
+        final List<Integer> received = new ArrayList<Integer>();
+        new SimEntity("requester") {
+
+            @Override
+            public void startEntity() {
+                send(datacenter.getId(), 10, CloudSimTags.END_OF_SIMULATION);
+            }
+
+            @Override
+            public void processEvent(SimEvent ev) {
+                received.add(ev.getTag());
+            }
+
+            @Override
+            public void shutdownEntity() {
+            }
+        };
+
+        CloudSim.startSimulation();
+
+        // the entity asking for the end is told even though it has no VMs in the datacenter
+        Assert.assertEquals(Arrays.asList(CloudSimTags.END_OF_SIMULATION), received);
+    }
+
     @Test
     public void testInitFromCheckpoint(){
         int priority = 0;
@@ -2528,6 +2649,160 @@ public class PreemptiveDatacenterTest {
 
         Mockito.verify(host2, times(3)).updateUsage(0d);
     }
+
+    @Test
+    public void testInitFromSnapshot() {
+        double cpuReq = 0.6;
+
+        PreemptableVm vm1 = new PreemptableVm(1, 0, cpuReq, 0, 0, PROD, 10);
+        PreemptableVm vm2 = new PreemptableVm(2, 0, cpuReq, 0, 0, BATCH, 10);
+        PreemptableVm vm3 = new PreemptableVm(3, 0, cpuReq, 0, 0, FREE, 10);
+        vm1.setLastHostId(host.getId());
+        vm2.setLastHostId(host.getId());
+        vm2.setActualRuntime(4);
+        vm2.setNumberOfPreemptions(1);
+
+        // the VMs as they were at the checkpoint, on another datacenter
+        host.vmCreate(vm1);
+        vm1.setStartExec(0);
+        DatacenterSnapshot snapshot = new DatacenterSnapshot(0, 3);
+        snapshot.addRunningVms(Arrays.asList(vm1));
+        snapshot.addWaitingVms(Arrays.asList(vm2, vm3));
+        PriorityResources admitted = new PriorityResources(3);
+        admitted.set(PROD, cpuReq);
+        admitted.set(BATCH, cpuReq);
+        admitted.set(FREE, cpuReq);
+        snapshot.setAdmittedRequests(admitted);
+        host.vmDestroy(vm1);
+
+        datacenter.initializeFromSnapshot(snapshot);
+
+        Assert.assertEquals(1, datacenter.getVmsRunning().size());
+        PreemptableVm running = datacenter.getVmsRunning().first();
+        Assert.assertEquals(vm1.getId(), running.getId());
+        Assert.assertEquals(host, running.getHost());
+        Assert.assertEquals(0, running.getNumberOfMigrations());
+        Assert.assertEquals(10 - cpuReq, host.getAvailableMipsByPriority(PROD), ACCEPTABLE_DIFFERENCE);
+
+        Assert.assertEquals(2, datacenter.getVmsForScheduling().size());
+        Assert.assertEquals(datacenter.getVmsForScheduling().first(), vm2);
+        Assert.assertEquals(4, datacenter.getVmsForScheduling().first().getActualRuntime(0), ACCEPTABLE_DIFFERENCE);
+        Assert.assertEquals(1, datacenter.getVmsForScheduling().first().getNumberOfPreemptions());
+        Assert.assertNull(datacenter.getVmsForScheduling().first().getHost());
+
+        admittedRequests.put(PROD, cpuReq);
+        admittedRequests.put(BATCH, cpuReq);
+        admittedRequests.put(FREE, cpuReq);
+        validateAdmitedRequests();
+    }
+
+    @Test(expected = SimulationException.class)
+    public void testInitFromSnapshotWithUnknownHost() {
+        PreemptableVm vm = new PreemptableVm(1, 0, 1, 0, 0, PROD, 10);
+        vm.setLastHostId(host.getId());
+        host.vmCreate(vm);
+
+        DatacenterSnapshot snapshot = new DatacenterSnapshot(0, 3);
+        snapshot.addRunningVms(Arrays.asList(vm));
+        host.vmDestroy(vm);
+        datacenter.getHostList().clear();
+
+        datacenter.initializeFromSnapshot(snapshot);
+    }
+
+    @Test
+    public void testInitFromSnapshotSameAsUninterruptedRun() throws Exception {
+        // the batch VM ends when the production VM that would preempt it arrives
+        SnapshotUser uninterrupted = runWithSnapshot(null);
+        Assert.assertEquals(Arrays.asList("1@10.0#0", "2@15.0#0"), uninterrupted.destroyed);
+
+        SnapshotUser restored = runWithSnapshot(uninterrupted.snapshot);
+        Assert.assertEquals(uninterrupted.destroyed, restored.destroyed);
+    }
+
+    private SnapshotUser runWithSnapshot(DatacenterSnapshot restoreFrom) throws Exception {
+        CloudSim.init(1, Calendar.getInstance(), false);
+
+        Properties runProperties = new Properties();
+        runProperties.setProperty(HostUsageDataStore.DATABASE_URL_PROP, datacenterUrl);
+        runProperties.setProperty(DatacenterUsageDataStore.DATABASE_URL_PROP, datacenterUrl);
+        runProperties.setProperty("number_of_priorities", "3");
+
+        List<Pe> peList = new ArrayList<Pe>();
+        peList.add(new Pe(0, new PeProvisionerSimple(10)));
+        List<Host> hostList = new ArrayList<Host>();
+        hostList.add(new PreemptiveHost(1, peList, new VmSchedulerMipsBased(peList),
+                new FCFSBasedPreemptionPolicy(runProperties)));
+        DatacenterCharacteristics characteristics = Mockito.mock(DatacenterCharacteristics.class);
+        Mockito.when(characteristics.getHostList()).thenReturn(hostList);
+        Mockito.when(characteristics.getNumberOfPes()).thenReturn(1);
+
+        List<PreemptiveHost> preemptiveHosts = new ArrayList<PreemptiveHost>();
+        preemptiveHosts.add((PreemptiveHost) hostList.get(0));
+        PreemptiveDatacenter runDatacenter = new PreemptiveDatacenter("datacenter", characteristics,
+                new WorstFitPriorityBasedVmAllocationPolicy(preemptiveHosts), new LinkedList<Storage>(), 0,
+                runProperties);
+
+        SnapshotUser user = new SnapshotUser(runDatacenter, restoreFrom);
+        CloudSim.startSimulation();
+        return user;
+    }
+
+    /**
+     * Submits a batch VM running from 0 to 10 and a production VM arriving at 10, either taking a
+     * snapshot at 5 or restoring the datacenter from one then, and records the VMs destroyed.
+     */
+    private static class SnapshotUser extends SimEntity {
+
+        private static final double SNAPSHOT_TIME = 5;
+
+        private static final int SNAPSHOT_EVENT = 999001;
+
+        final List<String> destroyed = new ArrayList<String>();
+
+        DatacenterSnapshot snapshot;
+
+        private final PreemptiveDatacenter datacenter;
+
+        private final DatacenterSnapshot restoreFrom;
+
+        SnapshotUser(PreemptiveDatacenter datacenter, DatacenterSnapshot restoreFrom) {
+            super("user");
+            this.datacenter = datacenter;
+            this.restoreFrom = restoreFrom;
+        }
+
+        @Override
+        public void startEntity() {
+            if (restoreFrom == null) {
+                sendNow(datacenter.getId(), PreemptiveDatacenter.SCHEDULE_DATACENTER_EVENTS_EVENT);
+                sendNow(datacenter.getId(), CloudSimTags.VM_CREATE,
+                        new PreemptableVm(1, getId(), 10, 0, 0, BATCH, 10));
+                send(getId(), SNAPSHOT_TIME, SNAPSHOT_EVENT);
+            } else {
+                send(datacenter.getId(), SNAPSHOT_TIME, PreemptiveDatacenter.INITIALIZE_FROM_CHECKPOINT_EVENT,
+                        restoreFrom);
+            }
+            send(datacenter.getId(), 10, CloudSimTags.VM_CREATE, new PreemptableVm(2, getId(), 10, 0, 10, PROD, 5));
+        }
+
+        @Override
+        public void processEvent(SimEvent ev) {
+            if (ev.getTag() == SNAPSHOT_EVENT) {
+                snapshot = new DatacenterSnapshot(CloudSim.clock(), 3);
+                snapshot.setAdmittedRequests(datacenter.getAdmittedRequests());
+                snapshot.addRunningVms(datacenter.getVmsRunning());
+                snapshot.addWaitingVms(datacenter.getVmsForScheduling());
+            } else if (ev.getTag() == CloudSimTags.VM_DESTROY_ACK) {
+                PreemptableVm vm = (PreemptableVm) ev.getData();
+                destroyed.add(vm.getId() + "@" + CloudSim.clock() + "#" + vm.getNumberOfPreemptions());
+            }
+        }
+
+        @Override
+        public void shutdownEntity() {
+        }
+    }
     
 	@Test
 	public void testGetMigrationsOfVm() {
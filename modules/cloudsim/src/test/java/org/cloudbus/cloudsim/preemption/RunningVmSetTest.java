@@ -0,0 +1,138 @@
+package org.cloudbus.cloudsim.preemption;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.cloudbus.cloudsim.preemption.util.ResourceUnits;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RunningVmSetTest {
+
+	private RunningVmSet vms;
+
+	@Before
+	public void setUp() {
+		vms = new RunningVmSet();
+	}
+
+	@Test
+	public void testCountsAsTreeSet() {
+		Random random = new Random(0);
+		TreeSet<PreemptableVm> expected = new TreeSet<PreemptableVm>();
+		List<PreemptableVm> added = new ArrayList<PreemptableVm>();
+
+		for (int id = 0; id < 2000; id++) {
+			PreemptableVm vm = createVm(id, random);
+			added.add(vm);
+			Assert.assertEquals(expected.add(vm), vms.add(vm));
+			Assert.assertFalse(vms.add(vm));
+
+			if (random.nextInt(3) == 0) {
+				PreemptableVm toRemove = added.get(random.nextInt(added.size()));
+				Assert.assertEquals(expected.remove(toRemove), vms.remove(toRemove));
+			}
+		}
+
+		Assert.assertEquals(expected.size(), vms.size());
+		Assert.assertEquals(expected.first(), vms.first());
+		Assert.assertEquals(expected.last(), vms.last());
+		Assert.assertEquals(new ArrayList<PreemptableVm>(expected), new ArrayList<PreemptableVm>(vms));
+		assertCounts(expected);
+	}
+
+	@Test
+	public void testRemoveByIterator() {
+		Random random = new Random(1);
+		TreeSet<PreemptableVm> expected = new TreeSet<PreemptableVm>();
+		for (int id = 0; id < 100; id++) {
+			PreemptableVm vm = createVm(id, random);
+			vms.add(vm);
+			expected.add(vm);
+		}
+
+		Iterator<PreemptableVm> iterator = vms.iterator();
+		while (iterator.hasNext()) {
+			PreemptableVm vm = iterator.next();
+			if (vm.getPriority() != 1) {
+				iterator.remove();
+				expected.remove(vm);
+				Assert.assertFalse(vms.contains(vm));
+			}
+		}
+
+		Assert.assertEquals(vms.size(1), vms.size());
+		assertCounts(expected);
+
+		vms.clear();
+		Assert.assertTrue(vms.isEmpty());
+		Assert.assertEquals(0, vms.size(1));
+		Assert.assertEquals(0, vms.getMips(1), 0);
+	}
+
+	@Test
+	public void testPrioritiesNotSeen() {
+		vms.add(new PreemptableVm(1, 1, 0.5, 0, 0, 4, 10));
+
+		Assert.assertEquals(5, vms.getNumberOfPriorities());
+		Assert.assertEquals(1, vms.size(4));
+		Assert.assertEquals(0.5, vms.getMips(4), 0);
+		Assert.assertEquals(0, vms.size(2));
+		Assert.assertEquals(0, vms.size(7));
+		Assert.assertEquals(0, vms.getMips(7), 0);
+	}
+
+	@Test
+	public void testRemoveByIteratorBeforeNext() {
+		vms.add(new PreemptableVm(1, 1, 0.5, 0, 0, 1, 10));
+		Iterator<PreemptableVm> iterator = vms.iterator();
+		try {
+			iterator.remove();
+			Assert.fail();
+		} catch (IllegalStateException e) {
+			// expected, and nothing was removed
+		}
+		Assert.assertEquals(1, vms.size(1));
+
+		iterator.next();
+		iterator.remove();
+		try {
+			iterator.remove();
+			Assert.fail();
+		} catch (IllegalStateException e) {
+			// expected, the VM was already removed
+		}
+		Assert.assertEquals(0, vms.size(1));
+		Assert.assertEquals(0, vms.getMips(1), 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativePriority() {
+		vms.add(new PreemptableVm(1, 1, 1, 0, 0, -1, 10));
+	}
+
+	private void assertCounts(TreeSet<PreemptableVm> expected) {
+		for (int priority = 0; priority < 3; priority++) {
+			// the MIPS are summed exactly, as units
+			long mipsUnits = 0;
+			int size = 0;
+			for (PreemptableVm vm : expected) {
+				if (vm.getPriority() == priority) {
+					mipsUnits += ResourceUnits.toUnits(vm.getMips());
+					size++;
+				}
+			}
+			Assert.assertEquals(size, vms.size(priority));
+			Assert.assertEquals(ResourceUnits.toMips(mipsUnits), vms.getMips(priority), 0);
+		}
+	}
+
+	private static PreemptableVm createVm(int id, Random random) {
+		return new PreemptableVm(id, 1, random.nextInt(5) / 4.0 + random.nextDouble() / 100, 0,
+				random.nextInt(20), random.nextInt(3), 10);
+	}
+}
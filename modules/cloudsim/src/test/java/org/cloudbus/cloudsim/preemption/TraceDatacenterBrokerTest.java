@@ -22,6 +22,7 @@ import org.cloudbus.cloudsim.core.SimEvent;
 import org.cloudbus.cloudsim.preemption.policies.hostselection.WorstFitMipsBasedHostSelectionPolicy;
 import org.cloudbus.cloudsim.preemption.policies.preemption.FCFSBasedPreemptionPolicy;
 import org.cloudbus.cloudsim.preemption.policies.preemption.PreemptionPolicy;
+import org.cloudbus.cloudsim.preemption.policies.routing.CellRoutingPolicy;
 import org.cloudbus.cloudsim.preemption.policies.vmallocation.PreemptableVmAllocationPolicy;
 import org.cloudbus.cloudsim.preemption.policies.vmallocation.WorstFitPriorityBasedVmAllocationPolicy;
 import org.cloudbus.cloudsim.provisioners.PeProvisionerSimple;
@@ -347,6 +348,74 @@ public class TraceDatacenterBrokerTest {
         Assert.assertEquals(0, broker.getFinishedTasks().size());
     }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void testRoutingToMoreCellsThanDatacenters() {
+        broker.setCellRoutingPolicy(createParityRoutingPolicy());
+        DatacenterCharacteristics characteristics = mockCharacteristics(datacenter.getId());
+
+        Mockito.when(event.getTag()).thenReturn(CloudSimTags.RESOURCE_CHARACTERISTICS);
+        Mockito.when(event.getData()).thenReturn(characteristics);
+        broker.processEvent(event);
+    }
+
+    @Test
+    public void testEndOfSimulationWithCells() {
+        properties.setProperty("end_of_simulation_time", "5000");
+        broker.setCellRoutingPolicy(createParityRoutingPolicy());
+        int otherCellId = datacenter.getId() + 100;
+        broker.getDatacenterIdsList().add(otherCellId);
+        DatacenterCharacteristics firstCell = mockCharacteristics(datacenter.getId());
+        DatacenterCharacteristics otherCell = mockCharacteristics(otherCellId);
+
+        Mockito.when(event.getTag()).thenReturn(CloudSimTags.RESOURCE_CHARACTERISTICS);
+        Mockito.when(event.getData()).thenReturn(firstCell);
+        broker.processEvent(event);
+        Mockito.when(event.getData()).thenReturn(otherCell);
+        broker.processEvent(event);
+        Assert.assertEquals(50, broker.getSubmittedTasks());
+
+        List<TaskState> taskStates = new ArrayList<>();
+        populateListOfTaskStates(taskStates);
+        for (TaskState taskState : taskStates) {
+            PreemptableVm vm = new PreemptableVm(taskState.getTaskId(), 0, taskState.getCpuReq(), 0.24,
+                    taskState.getSubmitTime(), taskState.getPriority(), taskState.getPriority());
+
+            Mockito.when(event.getTag()).thenReturn(CloudSimTags.VM_DESTROY_ACK);
+            Mockito.when(event.getData()).thenReturn(vm);
+            broker.processEvent(event);
+        }
+
+        // the finished tasks are only stored when every cell ended
+        Mockito.when(event.getTag()).thenReturn(CloudSimTags.END_OF_SIMULATION);
+        broker.processEvent(event);
+        Assert.assertEquals(50, broker.getFinishedTasks().size());
+
+        broker.processEvent(event);
+        Assert.assertEquals(50, broker.getConcludedTasks());
+        Assert.assertEquals(0, broker.getFinishedTasks().size());
+    }
+
+    private static CellRoutingPolicy createParityRoutingPolicy() {
+        return new CellRoutingPolicy() {
+
+            @Override
+            public int route(Task task) {
+                return task.getId() % 2;
+            }
+
+            @Override
+            public int getNumberOfCells() {
+                return 2;
+            }
+        };
+    }
+
+    private static DatacenterCharacteristics mockCharacteristics(int datacenterId) {
+        DatacenterCharacteristics characteristics = Mockito.mock(DatacenterCharacteristics.class);
+        Mockito.when(characteristics.getId()).thenReturn(datacenterId);
+        return characteristics;
+    }
+
     public void populateListOfTaskStates(List<TaskState> taskStates) {
 
         int id = 0;
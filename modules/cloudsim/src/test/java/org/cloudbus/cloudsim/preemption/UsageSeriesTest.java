@@ -0,0 +1,145 @@
+package org.cloudbus.cloudsim.preemption;
+
+import java.util.Properties;
+
+import org.cloudbus.cloudsim.preemption.datastore.HostUsageBuffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UsageSeriesTest {
+
+	private static final double ACCEPTABLE_DIFFERENCE = 0.00000001;
+	private static final int HOST_ID = 7;
+
+	private static UsageInfo usage(double time, double p0Usage, int p0Vms) {
+		return new UsageInfo(HOST_ID, time, p0Usage, 0, 0, p0Vms, 0, 0, 100 - p0Usage);
+	}
+
+	private static HostUsageBuffer drain(UsageSeries series, double clock, boolean end, boolean withStats) {
+		HostUsageBuffer buffer = new HostUsageBuffer(0, withStats);
+		series.drain(HOST_ID, clock, end, buffer);
+		return buffer;
+	}
+
+	@Test
+	public void testEveryChange() {
+		UsageSeries series = new UsageSeries(3);
+		series.add(usage(1, 10, 1));
+		series.add(usage(2, 20, 2));
+		// the last usage at a time is kept
+		series.add(usage(2, 30, 3));
+		series.add(usage(5, 40, 4));
+
+		HostUsageBuffer buffer = drain(series, 5, false, false);
+		Assert.assertEquals(6, buffer.size());
+		Assert.assertEquals(usage(1, 10, 1).getUsageEntries(), buffer.toList().subList(0, 3));
+		Assert.assertEquals(usage(2, 30, 3).getUsageEntries(), buffer.toList().subList(3, 6));
+
+		// there may be other changes at time 5
+		Assert.assertEquals(1, series.size());
+		Assert.assertEquals(usage(5, 40, 4).getUsageEntries(), drain(series, 6, false, false).toList());
+		Assert.assertEquals(0, series.size());
+	}
+
+	@Test
+	public void testRingGrows() {
+		UsageSeries series = new UsageSeries(3);
+		for (int time = 0; time < 6; time++) {
+			series.add(usage(time, time, time));
+		}
+		// the oldest entries are drained, so the newest wrap around
+		Assert.assertEquals(15, drain(series, 5, false, false).size());
+		for (int time = 6; time < 40; time++) {
+			series.add(usage(time, time, time));
+		}
+
+		HostUsageBuffer buffer = drain(series, 40, false, false);
+		Assert.assertEquals(35 * 3, buffer.size());
+		for (int i = 0; i < 35; i++) {
+			Assert.assertEquals(5 + i, buffer.getTime(3 * i), ACCEPTABLE_DIFFERENCE);
+			Assert.assertEquals(5 + i, buffer.getUsage(3 * i), ACCEPTABLE_DIFFERENCE);
+			Assert.assertEquals(5 + i, buffer.getNumberOfVms(3 * i));
+		}
+	}
+
+	@Test
+	public void testLastPerBucket() {
+		UsageSeries series = new UsageSeries(3, UsageSeries.Resolution.LAST, 10);
+		series.add(usage(1, 10, 1));
+		series.add(usage(4, 20, 2));
+		series.add(usage(12, 30, 3));
+		series.add(usage(15, 40, 4));
+		series.add(usage(31, 50, 5));
+
+		// the bucket [10, 20) is not over yet
+		HostUsageBuffer buffer = drain(series, 19, false, false);
+		Assert.assertEquals(usage(4, 20, 2).getUsageEntries(), buffer.toList());
+
+		buffer = drain(series, 20, false, false);
+		Assert.assertEquals(usage(15, 40, 4).getUsageEntries(), buffer.toList());
+
+		// the simulation is over
+		buffer = drain(series, 32, true, false);
+		Assert.assertEquals(usage(31, 50, 5).getUsageEntries(), buffer.toList());
+		Assert.assertEquals(0, series.size());
+	}
+
+	@Test
+	public void testStatsPerBucket() {
+		UsageSeries series = new UsageSeries(3, UsageSeries.Resolution.STATS, 10);
+		series.add(usage(0, 10, 1));
+		series.add(usage(5, 30, 2));
+		series.add(usage(12, 20, 3));
+
+		// [0, 10): 10 for 5 time units and 30 for 5
+		HostUsageBuffer buffer = drain(series, 10, false, true);
+		Assert.assertEquals(3, buffer.size());
+		Assert.assertEquals(0, buffer.getTime(0), ACCEPTABLE_DIFFERENCE);
+		Assert.assertEquals(20, buffer.getUsage(0), ACCEPTABLE_DIFFERENCE);
+		Assert.assertEquals(10, buffer.getMinUsage(0), ACCEPTABLE_DIFFERENCE);
+		Assert.assertEquals(30, buffer.getMaxUsage(0), ACCEPTABLE_DIFFERENCE);
+		Assert.assertEquals(2, buffer.getNumberOfVms(0));
+		Assert.assertEquals(70, buffer.getAvailableMips(0), ACCEPTABLE_DIFFERENCE);
+
+		// [10, 20): 30 carried for 2 time units and 20 for 8
+		buffer = drain(series, 20, false, true);
+		Assert.assertEquals(10, buffer.getTime(0), ACCEPTABLE_DIFFERENCE);
+		Assert.assertEquals(22, buffer.getUsage(0), ACCEPTABLE_DIFFERENCE);
+		Assert.assertEquals(20, buffer.getMinUsage(0), ACCEPTABLE_DIFFERENCE);
+		Assert.assertEquals(30, buffer.getMaxUsage(0), ACCEPTABLE_DIFFERENCE);
+		Assert.assertEquals(3, buffer.getNumberOfVms(0));
+		Assert.assertEquals(0, series.size());
+
+		// [40, 50) up to the end of the simulation: 20 carried for 2 time units and 40 for 2
+		series.add(usage(42, 40, 4));
+		Assert.assertEquals(0, drain(series, 45, false, true).size());
+		buffer = drain(series, 44, true, true);
+		Assert.assertEquals(40, buffer.getTime(0), ACCEPTABLE_DIFFERENCE);
+		Assert.assertEquals(30, buffer.getUsage(0), ACCEPTABLE_DIFFERENCE);
+		Assert.assertEquals(20, buffer.getMinUsage(0), ACCEPTABLE_DIFFERENCE);
+		Assert.assertEquals(40, buffer.getMaxUsage(0), ACCEPTABLE_DIFFERENCE);
+	}
+
+	@Test
+	public void testResolutionFromProperties() {
+		Properties properties = new Properties();
+		Assert.assertEquals(UsageSeries.Resolution.CHANGE, UsageSeries.getResolution(properties));
+
+		properties.setProperty(UsageSeries.RESOLUTION_PROP, "stats");
+		properties.setProperty(UsageSeries.RESOLUTION_INTERVAL_PROP, "300");
+		Assert.assertEquals(UsageSeries.Resolution.STATS, UsageSeries.getResolution(properties));
+		Assert.assertEquals(300, UsageSeries.getResolutionInterval(properties), ACCEPTABLE_DIFFERENCE);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidResolution() {
+		Properties properties = new Properties();
+		properties.setProperty(UsageSeries.RESOLUTION_PROP, "hourly");
+		UsageSeries.getResolution(properties);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBucketsNeedInterval() {
+		new UsageSeries(3, UsageSeries.Resolution.LAST, 0);
+	}
+}
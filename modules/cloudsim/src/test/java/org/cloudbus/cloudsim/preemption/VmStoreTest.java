@@ -0,0 +1,66 @@
+package org.cloudbus.cloudsim.preemption;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class VmStoreTest {
+
+	private VmStore store;
+
+	@Before
+	public void setUp() {
+		store = new VmStore(2);
+	}
+
+	@Test
+	public void testTaskToVm() {
+		Task task = new Task(7, 10, 300, 0.25, 0.5, 1);
+		int handle = store.addTask(task);
+		Assert.assertEquals(7, store.getId(handle));
+		Assert.assertEquals(1, store.getPriority(handle));
+		Assert.assertEquals(10, store.getSubmitTime(handle), 0);
+
+		PreemptableVm vm = store.createVm(handle, 3);
+		store.release(handle);
+		Assert.assertEquals(0, store.size());
+		Assert.assertEquals(7, vm.getId());
+		Assert.assertEquals(3, vm.getUserId());
+		Assert.assertEquals(0.25, vm.getMips(), 0);
+		Assert.assertEquals(10, vm.getSubmitTime(), 0);
+		Assert.assertEquals(300, vm.getRuntime(), 0);
+		Assert.assertEquals(1, vm.getPriority());
+	}
+
+	@Test
+	public void testHandlesReusedAndGrowth() {
+		List<Integer> handles = new ArrayList<Integer>();
+		for (int id = 0; id < 10; id++) {
+			handles.add(store.addTask(new Task(id, id, 1, 0.1, 0.1, 0)));
+		}
+		Assert.assertEquals(10, store.size());
+		Assert.assertTrue(store.getCapacity() >= 10);
+		for (int id = 0; id < 10; id++) {
+			Assert.assertEquals(id, store.getId(handles.get(id)));
+		}
+
+		int capacity = store.getCapacity();
+		store.release(handles.get(3));
+		store.release(handles.get(5));
+		int reused = store.addTask(new Task(20, 20, 1, 0.1, 0.1, 2));
+		Assert.assertEquals(handles.get(5).intValue(), reused);
+		Assert.assertEquals(20, store.getId(reused));
+		Assert.assertEquals(2, store.getPriority(reused));
+		Assert.assertEquals(9, store.size());
+		Assert.assertEquals(capacity, store.getCapacity());
+		Assert.assertEquals(4, store.getId(handles.get(4)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidCapacity() {
+		new VmStore(0);
+	}
+}
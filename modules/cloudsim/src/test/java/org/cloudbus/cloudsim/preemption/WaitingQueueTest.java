@@ -0,0 +1,275 @@
+package org.cloudbus.cloudsim.preemption;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.cloudbus.cloudsim.preemption.util.PriorityAndAvailabilityBasedVmComparator;
+import org.cloudbus.cloudsim.preemption.util.PriorityAndTTVBasedPreemptableVmComparator;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WaitingQueueTest {
+
+	private WaitingQueue queue;
+
+	@Before
+	public void setUp() {
+		queue = new WaitingQueue();
+	}
+
+	@Test
+	public void testSameOrderAsTreeSet() {
+		Random random = new Random(0);
+		TreeSet<PreemptableVm> expected = new TreeSet<PreemptableVm>();
+		List<PreemptableVm> vms = new ArrayList<PreemptableVm>();
+
+		for (int id = 0; id < 2000; id++) {
+			PreemptableVm vm = createVm(id, random);
+			vms.add(vm);
+			Assert.assertEquals(expected.add(vm), queue.add(vm));
+
+			if (random.nextInt(3) == 0) {
+				PreemptableVm toRemove = vms.get(random.nextInt(vms.size()));
+				Assert.assertEquals(expected.remove(toRemove), queue.remove(toRemove));
+			}
+		}
+
+		Assert.assertEquals(expected.size(), queue.size());
+		Assert.assertEquals(expected.first(), queue.first());
+		Assert.assertEquals(expected.last(), queue.last());
+		Assert.assertEquals(new ArrayList<PreemptableVm>(expected), new ArrayList<PreemptableVm>(queue));
+
+		for (int priority = 0; priority < 3; priority++) {
+			double minMips = Double.POSITIVE_INFINITY;
+			double mips = 0;
+			int size = 0;
+			for (PreemptableVm vm : expected) {
+				if (vm.getPriority() == priority) {
+					minMips = Math.min(minMips, vm.getMips());
+					mips += vm.getMips();
+					size++;
+				}
+			}
+			Assert.assertEquals(size, queue.size(priority));
+			Assert.assertEquals(minMips, queue.getMinMips(priority), 0);
+			Assert.assertEquals(mips, queue.getMips(priority), 0.000000001);
+		}
+	}
+
+	@Test
+	public void testRemoveByIterator() {
+		Random random = new Random(1);
+		for (int id = 0; id < 100; id++) {
+			queue.add(createVm(id, random));
+		}
+
+		Iterator<PreemptableVm> iterator = queue.iterator();
+		while (iterator.hasNext()) {
+			PreemptableVm vm = iterator.next();
+			if (vm.getPriority() != 1) {
+				iterator.remove();
+				Assert.assertFalse(queue.contains(vm));
+			}
+		}
+
+		Assert.assertEquals(queue.size(1), queue.size());
+		Assert.assertEquals(0, queue.size(0));
+		Assert.assertEquals(Double.POSITIVE_INFINITY, queue.getMinMips(2), 0);
+		Assert.assertEquals(0, queue.getMips(2), 0);
+
+		queue.clear();
+		Assert.assertTrue(queue.isEmpty());
+		Assert.assertEquals(Double.POSITIVE_INFINITY, queue.getMinMips(1), 0);
+		Assert.assertEquals(0, queue.getMips(1), 0);
+	}
+
+	@Test
+	public void testIteratorByOrder() {
+		Random random = new Random(2);
+		final double time = 100;
+		for (int id = 0; id < 300; id++) {
+			PreemptableVm vm = createVm(id, random);
+			vm.setActualRuntime(random.nextInt(10));
+			queue.add(vm);
+		}
+		WaitingQueue.Order order = new WaitingQueue.Order() {
+
+			@Override
+			public double getKey(PreemptableVm vm, double time) {
+				return vm.getCurrentAvailability(time);
+			}
+
+			@Override
+			public double getTieKey(PreemptableVm vm) {
+				return vm.getSubmitTime();
+			}
+
+			@Override
+			public boolean isTimeInvariant() {
+				return false;
+			}
+		};
+
+		List<PreemptableVm> expected = new ArrayList<PreemptableVm>(queue);
+		SimulationTimeUtil timeUtil = new SimulationTimeUtil() {
+
+			@Override
+			public double clock() {
+				return time;
+			}
+		};
+		Collections.sort(expected, new PriorityAndAvailabilityBasedVmComparator(timeUtil));
+
+		List<PreemptableVm> actual = new ArrayList<PreemptableVm>();
+		for (int priority = 0; priority < queue.getNumberOfPriorities(); priority++) {
+			Iterator<PreemptableVm> iterator = queue.iterator(priority, order, time, queue.getInsertionMark());
+			while (iterator.hasNext()) {
+				actual.add(iterator.next());
+			}
+		}
+		Assert.assertEquals(expected, actual);
+	}
+
+	@Test
+	public void testIteratorByTimeInvariantOrder() {
+		Random random = new Random(6);
+		// a target exact in binary, so the keys are exact and the ties of TTV are kept
+		final double sloTarget = 0.5;
+		WaitingQueue.Order order = new WaitingQueue.Order() {
+
+			@Override
+			public double getKey(PreemptableVm vm, double time) {
+				return vm.getActualRuntime(vm.getStartExec()) + vm.getSubmitTime() * sloTarget;
+			}
+
+			@Override
+			public double getTieKey(PreemptableVm vm) {
+				return 0;
+			}
+
+			@Override
+			public boolean isTimeInvariant() {
+				return true;
+			}
+		};
+		List<PreemptableVm> vms = new ArrayList<PreemptableVm>();
+		for (int id = 0; id < 300; id++) {
+			PreemptableVm vm = createVm(id, random);
+			vm.setActualRuntime(random.nextInt(10));
+			vms.add(vm);
+			queue.add(vm);
+			// the VMs are kept by the order from the first pass on
+			if (id == 100) {
+				queue.iterator(0, order, 0, queue.getInsertionMark());
+			}
+			if (random.nextInt(4) == 0) {
+				queue.remove(vms.get(random.nextInt(vms.size())));
+			}
+		}
+
+		// the TTV of the VMs at a later time, as the datacenter sorted them before
+		final double time = 1000;
+		Map<Integer, Double> sloTargets = new HashMap<Integer, Double>();
+		for (int priority = 0; priority < 3; priority++) {
+			sloTargets.put(priority, sloTarget);
+		}
+		SimulationTimeUtil timeUtil = new SimulationTimeUtil() {
+
+			@Override
+			public double clock() {
+				return time;
+			}
+		};
+		List<PreemptableVm> expected = new ArrayList<PreemptableVm>(queue);
+		Collections.sort(expected, new PriorityAndTTVBasedPreemptableVmComparator(sloTargets, timeUtil));
+
+		List<PreemptableVm> actual = new ArrayList<PreemptableVm>();
+		for (int priority = 0; priority < queue.getNumberOfPriorities(); priority++) {
+			Iterator<PreemptableVm> iterator = queue.iterator(priority, order, time, queue.getInsertionMark());
+			while (iterator.hasNext()) {
+				actual.add(iterator.next());
+			}
+		}
+		Assert.assertEquals(expected, actual);
+	}
+
+	@Test
+	public void testIteratorLeavesOutVmsAddedAfterMark() {
+		Random random = new Random(3);
+		for (int id = 0; id < 10; id++) {
+			queue.add(createVm(id, 0, random));
+		}
+		long mark = queue.getInsertionMark();
+		PreemptableVm removed = queue.first();
+		queue.remove(removed);
+		for (int id = 10; id < 20; id++) {
+			queue.add(createVm(id, 0, random));
+		}
+		// a VM added again after the mark
+		queue.add(removed);
+
+		List<Integer> ids = new ArrayList<Integer>();
+		Iterator<PreemptableVm> iterator = queue.iterator(0, null, 0, mark);
+		while (iterator.hasNext()) {
+			ids.add(iterator.next().getId());
+		}
+
+		Assert.assertEquals(9, ids.size());
+		Assert.assertFalse(ids.contains(removed.getId()));
+		Assert.assertTrue(Collections.max(ids) < 10);
+	}
+
+	@Test
+	public void testQueueChangedDuringPass() {
+		Random random = new Random(4);
+		for (int id = 0; id < 20; id++) {
+			queue.add(createVm(id, 0, random));
+		}
+		List<PreemptableVm> expected = new ArrayList<PreemptableVm>(queue);
+		long mark = queue.getInsertionMark();
+
+		// the visited VMs are removed as when allocated, and a VM not visited yet goes away
+		Iterator<PreemptableVm> iterator = queue.iterator(0, null, 0, mark);
+		Assert.assertEquals(expected.get(0), iterator.next());
+		iterator.remove();
+		Assert.assertFalse(queue.contains(expected.get(0)));
+		queue.remove(expected.get(1));
+		queue.add(createVm(20, 0, random));
+
+		List<PreemptableVm> visited = new ArrayList<PreemptableVm>();
+		while (iterator.hasNext()) {
+			visited.add(iterator.next());
+			iterator.remove();
+		}
+		Assert.assertEquals(expected.subList(2, expected.size()), visited);
+		Assert.assertEquals(1, queue.size());
+		Assert.assertEquals(20, queue.first().getId());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testPassRemoveBeforeNext() {
+		queue.add(createVm(1, 0, new Random(5)));
+		queue.iterator(0, null, 0, queue.getInsertionMark()).remove();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativePriority() {
+		queue.add(new PreemptableVm(1, 1, 1, 0, 0, -1, 10));
+	}
+
+	private static PreemptableVm createVm(int id, Random random) {
+		return createVm(id, random.nextInt(3), random);
+	}
+
+	/** Creates a VM with many ties of submit time and MIPS. */
+	private static PreemptableVm createVm(int id, int priority, Random random) {
+		return new PreemptableVm(id, 1, random.nextInt(5) / 4.0, 0, random.nextInt(20), priority, 10);
+	}
+}
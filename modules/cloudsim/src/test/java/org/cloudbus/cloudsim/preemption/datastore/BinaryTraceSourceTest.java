@@ -0,0 +1,173 @@
+package org.cloudbus.cloudsim.preemption.datastore;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Properties;
+
+import org.cloudbus.cloudsim.preemption.Task;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks that a {@link BinaryTraceSource} serves the same intervals as the
+ * {@link InputTraceDataStore} of the database it was converted from.
+ */
+public class BinaryTraceSourceTest {
+
+	private static final int NUMBER_OF_TASKS = 200;
+
+	private static final String databaseFile = "binaryTraceSourceTest.sqlite3";
+	private static final String databaseURL = "jdbc:sqlite:" + databaseFile;
+
+	private static final File binaryFile = new File("binaryTraceSourceTest.bin");
+	private static final File swfBinaryFile = new File("binaryTraceSourceTest.swf.bin");
+
+	private Properties properties;
+
+	@BeforeClass
+	public static void setUp() throws ClassNotFoundException, SQLException, IOException {
+		Class.forName(DataStore.DATASTORE_SQLITE_DRIVER);
+		Connection connection = DriverManager.getConnection(databaseURL);
+		Statement statement = connection.createStatement();
+		statement.execute("CREATE TABLE IF NOT EXISTS tasks(submitTime REAL, priority INTEGER, "
+				+ "runtime REAL, cpuReq REAL, memReq REAL)");
+		statement.close();
+
+		PreparedStatement insertStatement = connection
+				.prepareStatement("INSERT INTO tasks VALUES(?, ?, ?, ?, ?)");
+		for (int i = 0; i < NUMBER_OF_TASKS; i++) {
+			// a few tasks per minute, some of them with no resources or runtime
+			insertStatement.setDouble(1, getTimeInMicro(i / 3));
+			insertStatement.setInt(2, i % 12);
+			insertStatement.setDouble(3, i % 17 == 0 ? 0 : 1000 + i);
+			insertStatement.setDouble(4, i % 19 == 0 ? 0 : 0.001 * i);
+			insertStatement.setDouble(5, 0.0001 * (i + 1));
+			insertStatement.execute();
+		}
+		insertStatement.close();
+		connection.close();
+
+		BinaryTraceConverter.convertDatabase(databaseURL, binaryFile);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		new File(databaseFile).delete();
+		binaryFile.delete();
+		swfBinaryFile.delete();
+	}
+
+	@Before
+	public void init() {
+		properties = new Properties();
+		properties.setProperty(InputTraceDataStore.DATABASE_URL_PROP, databaseURL);
+		properties.setProperty(BinaryTraceSource.BINARY_FILE_PROP, binaryFile.getPath());
+	}
+
+	@Test
+	public void testSameIntervalsAsDatabase() throws Exception {
+		// intervals smaller, equal and larger than the index buckets of 5 minutes
+		double[] intervalSizes = { 1, getTimeInMicro(1), getTimeInMicro(5), getTimeInMicro(7),
+				getTimeInMicro(100) };
+		for (double intervalSize : intervalSizes) {
+			assertSameIntervals(new InputTraceDataStore(properties), new BinaryTraceSource(properties),
+					intervalSize, 400);
+		}
+	}
+
+	@Test
+	public void testInterestedTimes() throws Exception {
+		properties.setProperty(InputTraceDataStore.MIN_INTERESTED_TIME_PROP, String.valueOf(getTimeInMicro(11)));
+		properties.setProperty(InputTraceDataStore.MAX_INTERESTED_TIME_PROP, String.valueOf(getTimeInMicro(40)));
+		InputTraceDataStore database = new InputTraceDataStore(properties);
+		BinaryTraceSource binary = new BinaryTraceSource(properties);
+
+		Assert.assertEquals(database.getMinInterestedTime(), binary.getMinInterestedTime(), 0);
+		Assert.assertEquals(database.getMaxInterestedTime(), binary.getMaxInterestedTime(), 0);
+		assertSameIntervals(database, binary, getTimeInMicro(3), 100);
+	}
+
+	@Test
+	public void testDefaultInterestedTimes() throws Exception {
+		InputTraceDataStore database = new InputTraceDataStore(properties);
+		BinaryTraceSource binary = new BinaryTraceSource(properties);
+
+		Assert.assertEquals(database.getMaxTraceTime(), binary.getMaxTraceTime(), 0);
+		Assert.assertEquals(database.getMaxInterestedTime(), binary.getMaxInterestedTime(), 0);
+		Assert.assertEquals(0, binary.getMinInterestedTime(), 0);
+	}
+
+	@Test
+	public void testSwfConversion() throws Exception {
+		BinaryTraceConverter.convertSwf("src" + File.separator + "test" + File.separator + "LCG.swf.gz",
+				swfBinaryFile, 0.01, 0.02, 1);
+		BinaryTraceSource binary = new BinaryTraceSource(new Properties(), swfBinaryFile);
+
+		// the same number of jobs read by WorkloadFileReaderTest
+		Assert.assertEquals(188041, binary.size());
+
+		List<Task> tasks = binary.getGoogleTaskInterval(0, binary.getMaxInterestedTime() + 1);
+		Assert.assertEquals(188041, tasks.size());
+		Assert.assertEquals(0, tasks.get(0).getSubmitTime(), 0);
+		Assert.assertEquals(83 * BinaryTraceConverter.SWF_TIME_SCALE, tasks.get(0).getRuntime(), 0);
+		Assert.assertEquals(binary.getMaxTraceTime(), tasks.get(tasks.size() - 1).getSubmitTime(), 0);
+		for (int i = 1; i < tasks.size(); i++) {
+			Task task = tasks.get(i);
+			Assert.assertTrue(tasks.get(i - 1).getSubmitTime() <= task.getSubmitTime());
+			Assert.assertEquals(2 * task.getCpuReq(), task.getMemReq(), 0.0000001);
+			Assert.assertEquals(1, task.getPriority());
+			Assert.assertEquals(i + 1, task.getId());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNotABinaryTrace() throws Exception {
+		File file = new File("binaryTraceSourceTest.invalid");
+		FileOutputStream output = new FileOutputStream(file);
+		output.write(new byte[64]);
+		output.close();
+		try {
+			new BinaryTraceSource(properties, file);
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMissingFileProperty() throws Exception {
+		new BinaryTraceSource(new Properties());
+	}
+
+	private static void assertSameIntervals(TraceSource expected, TraceSource actual,
+			double intervalSize, int maxIntervals) {
+		int tasks = 0;
+		int interval = 0;
+		for (; expected.hasMoreEvents(interval, intervalSize) && interval < maxIntervals; interval++) {
+			Assert.assertTrue(actual.hasMoreEvents(interval, intervalSize));
+			List<Task> expectedTasks = expected.getGoogleTaskInterval(interval, intervalSize);
+			Assert.assertEquals(expectedTasks, actual.getGoogleTaskInterval(interval, intervalSize));
+			tasks += expectedTasks.size();
+		}
+		Assert.assertEquals(expected.getNextTaskId(), actual.getNextTaskId());
+		Assert.assertEquals(tasks, actual.getNextTaskId());
+		if (interval < maxIntervals) {
+			Assert.assertFalse(actual.hasMoreEvents(interval, intervalSize));
+			Assert.assertNull(actual.getGoogleTaskInterval(interval, intervalSize));
+		}
+	}
+
+	private static double getTimeInMicro(double timeInMinutes) {
+		return timeInMinutes * 60 * 1000000;
+	}
+
+}
@@ -0,0 +1,131 @@
+package org.cloudbus.cloudsim.preemption.datastore;
+
+import java.io.File;
+import java.util.Properties;
+
+import org.cloudbus.cloudsim.preemption.TaskState;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class BufferedTaskResultSinkTest {
+
+	private static String databaseFile = "BufferedTaskResultSinkTest.sqlite3";
+	private static String databaseURL = "jdbc:sqlite:" + databaseFile;
+
+	private TaskDataStore dataStore;
+
+	@Before
+	public void setUp() {
+		Properties properties = new Properties();
+		properties.setProperty(TaskDataStore.DATABASE_URL_PROP, databaseURL);
+		dataStore = new TaskDataStore(properties);
+	}
+
+	@After
+	public void tearDown() {
+		new File(databaseFile).delete();
+	}
+
+	private static void addTask(TaskResultSink sink, int id) {
+		sink.addTask(id, 0.02, id, id + 5, 5, id % 3, 1, 2, 3, id + 1);
+	}
+
+	private static TaskState taskState(int id) {
+		return new TaskState(id, 0.02, id, id + 5, 5, id % 3, 1, 2, 3, id + 1);
+	}
+
+	@Test
+	public void testFlush() {
+		BufferedTaskResultSink sink = new BufferedTaskResultSink(dataStore, 0);
+		for (int id = 0; id < 10; id++) {
+			addTask(sink, id);
+		}
+		Assert.assertEquals(10, sink.getBufferedTasks().size());
+		Assert.assertEquals(taskState(4), sink.getBufferedTasks().get(4));
+		sink.awaitFlushes();
+		Assert.assertEquals(0, dataStore.getAllTasks().size());
+
+		sink.flush();
+		Assert.assertTrue(sink.getBufferedTasks().isEmpty());
+		sink.awaitFlushes();
+		Assert.assertEquals(10, dataStore.getAllTasks().size());
+		Assert.assertEquals(1, sink.getFlushes());
+
+		// nothing to flush
+		sink.flush();
+		Assert.assertEquals(1, sink.getFlushes());
+		sink.close();
+	}
+
+	@Test
+	public void testBatchSize() {
+		BufferedTaskResultSink sink = new BufferedTaskResultSink(dataStore, 4);
+		for (int id = 0; id < 10; id++) {
+			addTask(sink, id);
+			sink.awaitFlushes();
+		}
+		Assert.assertEquals(2, sink.getFlushes());
+		Assert.assertEquals(2, sink.getBufferedTasks().size());
+		Assert.assertEquals(8, dataStore.getAllTasks().size());
+
+		// the written buffers are reused
+		Assert.assertEquals(2, sink.getAllocatedBuffers());
+
+		sink.close();
+		Assert.assertEquals(10, dataStore.getAllTasks().size());
+		for (TaskState taskState : dataStore.getAllTasks()) {
+			Assert.assertEquals(taskState(taskState.getTaskId()), taskState);
+			Assert.assertEquals(2, taskState.getNumberOfBackfillingChoices());
+			Assert.assertEquals(3, taskState.getNumberOfMigrations());
+		}
+	}
+
+	@Test
+	public void testFailedWriteIsRetried() {
+		TaskDataStore failingStore = Mockito.mock(TaskDataStore.class);
+		Mockito.when(failingStore.addTasks(Mockito.any(TaskResultBuffer.class))).thenReturn(false, true);
+
+		BufferedTaskResultSink sink = new BufferedTaskResultSink(failingStore, 0);
+		addTask(sink, 0);
+		sink.flush();
+		sink.awaitFlushes();
+		Mockito.verify(failingStore, Mockito.times(1)).addTasks(Mockito.any(TaskResultBuffer.class));
+
+		addTask(sink, 1);
+		sink.close();
+		Mockito.verify(failingStore, Mockito.times(3)).addTasks(Mockito.any(TaskResultBuffer.class));
+	}
+
+	@Test
+	public void testStoredAfterClose() {
+		BufferedTaskResultSink sink = new BufferedTaskResultSink(dataStore, 0);
+		addTask(sink, 7);
+		sink.close();
+		sink.awaitFlushes();
+		Assert.assertEquals(1, dataStore.getAllTasks().size());
+		Assert.assertEquals(taskState(7), dataStore.getAllTasks().get(0));
+	}
+
+	@Test
+	public void testBufferGrows() {
+		TaskResultBuffer buffer = new TaskResultBuffer(0);
+		for (int id = 0; id < 5; id++) {
+			buffer.add(taskState(id));
+		}
+		Assert.assertEquals(5, buffer.size());
+		Assert.assertEquals(taskState(3), buffer.get(3));
+		Assert.assertEquals(4, buffer.getPriority(2) + buffer.getTaskId(2));
+
+		buffer.clear();
+		Assert.assertTrue(buffer.isEmpty());
+		Assert.assertTrue(buffer.toList().isEmpty());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeBatchSize() {
+		new BufferedTaskResultSink(dataStore, -1);
+	}
+}
@@ -0,0 +1,135 @@
+package org.cloudbus.cloudsim.preemption.datastore;
+
+import java.io.File;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.cloudbus.cloudsim.preemption.TaskState;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DataStoreTest {
+
+	private static String databaseFile = "DataStoreTest.sqlite3";
+	private static String databaseURL = "jdbc:sqlite:" + databaseFile;
+
+	private static final DataStore.RowMapper<String> STRING_MAPPER = new DataStore.RowMapper<String>() {
+
+		@Override
+		public String map(ResultSet rs) throws SQLException {
+			return rs.getString(1);
+		}
+	};
+
+	private Properties properties;
+
+	@Before
+	public void setUp() {
+		properties = new Properties();
+		properties.setProperty(TaskDataStore.DATABASE_URL_PROP, databaseURL);
+	}
+
+	@After
+	public void tearDown() {
+		new File(databaseFile).delete();
+		new File(databaseFile + "-wal").delete();
+		new File(databaseFile + "-shm").delete();
+	}
+
+	@Test
+	public void testPragmas() throws SQLException {
+		properties.setProperty(DataStore.JOURNAL_MODE_PROP, "WAL");
+		properties.setProperty(DataStore.SYNCHRONOUS_PROP, "NORMAL");
+		properties.setProperty(DataStore.PAGE_SIZE_PROP, "8192");
+		properties.setProperty(DataStore.CACHE_SIZE_PROP, "-4000");
+		TaskDataStore dataStore = new TaskDataStore(properties);
+
+		Assert.assertEquals("wal", dataStore.query("PRAGMA journal_mode", STRING_MAPPER).get(0));
+		// NORMAL
+		Assert.assertEquals("1", dataStore.query("PRAGMA synchronous", STRING_MAPPER).get(0));
+		Assert.assertEquals("8192", dataStore.query("PRAGMA page_size", STRING_MAPPER).get(0));
+		Assert.assertEquals("-4000", dataStore.query("PRAGMA cache_size", STRING_MAPPER).get(0));
+
+		// the pragmas are applied again when the connection is reopened
+		dataStore.close();
+		Assert.assertEquals("1", dataStore.query("PRAGMA synchronous", STRING_MAPPER).get(0));
+		dataStore.close();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidPragma() {
+		properties.setProperty(DataStore.SYNCHRONOUS_PROP, "OFF; DROP TABLE googletasks");
+		new TaskDataStore(properties);
+	}
+
+	@Test
+	public void testStatementsAreCached() throws SQLException {
+		TaskDataStore dataStore = new TaskDataStore(properties);
+		PreparedStatement statement = dataStore.prepare("SELECT * FROM googletasks");
+		Assert.assertSame(statement, dataStore.prepare("SELECT * FROM googletasks"));
+
+		dataStore.close();
+		Assert.assertNotSame(statement, dataStore.prepare("SELECT * FROM googletasks"));
+		dataStore.close();
+	}
+
+	@Test
+	public void testUsedAfterClose() {
+		TaskDataStore dataStore = new TaskDataStore(properties);
+		Assert.assertTrue(dataStore.addTaskList(Arrays.asList(new TaskState(1, 0.5, 0, 10, 10, 0, 0, 0, 0, 0))));
+		dataStore.close();
+
+		Assert.assertTrue(dataStore.addTaskList(Arrays.asList(new TaskState(2, 0.5, 0, 20, 20, 0, 0, 0, 0, 0))));
+		Assert.assertEquals(2, dataStore.getAllTasks().size());
+		Assert.assertEquals(1, dataStore.getTasksFinishedBefore(10).size());
+		dataStore.close();
+	}
+
+	@Test
+	public void testFailedBatchIsRolledBack() {
+		TaskDataStore dataStore = new TaskDataStore(properties);
+		TaskState task = new TaskState(1, 0.5, 0, 10, 10, 0, 0, 0, 0, 0);
+		Assert.assertTrue(dataStore.addTaskList(Arrays.asList(task)));
+
+		// the second task has the same id as a stored one
+		TaskState otherTask = new TaskState(2, 0.5, 0, 10, 10, 0, 0, 0, 0, 0);
+		Assert.assertFalse(dataStore.addTaskList(Arrays.asList(otherTask, task)));
+		Assert.assertEquals(1, dataStore.getAllTasks().size());
+
+		// the connection is back to auto-commit
+		Assert.assertTrue(dataStore.addTaskList(Arrays.asList(otherTask)));
+		Assert.assertEquals(2, dataStore.getAllTasks().size());
+		dataStore.close();
+	}
+
+	@Test
+	public void testIndexes() throws SQLException {
+		TaskDataStore taskDataStore = new TaskDataStore(properties);
+		properties.setProperty(HostUsageDataStore.DATABASE_URL_PROP, databaseURL);
+		HostUsageDataStore hostUsageDataStore = new HostUsageDataStore(properties);
+
+		List<String> indexes = taskDataStore.query(
+				"SELECT name FROM sqlite_master WHERE type = 'index' AND tbl_name = ?", STRING_MAPPER,
+				"googletasks");
+		Assert.assertTrue(indexes.contains("googletasks_finishTime"));
+
+		List<String> plan = taskDataStore.query(
+				"EXPLAIN QUERY PLAN SELECT * FROM usage WHERE time < ?", new DataStore.RowMapper<String>() {
+
+					@Override
+					public String map(ResultSet rs) throws SQLException {
+						return rs.getString("detail");
+					}
+				}, 10.0);
+		Assert.assertTrue(plan.toString(), plan.get(0).contains("usage_time"));
+
+		taskDataStore.close();
+		hostUsageDataStore.close();
+	}
+}
@@ -0,0 +1,143 @@
+package org.cloudbus.cloudsim.preemption.datastore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DataStoreWriterTest {
+
+	private DataStoreWriter writer;
+
+	@Before
+	public void setUp() {
+		writer = new DataStoreWriter("test-writer", 2);
+	}
+
+	@After
+	public void tearDown() {
+		writer.close();
+	}
+
+	private static Runnable append(final List<Integer> written, final int value) {
+		return new Runnable() {
+
+			@Override
+			public void run() {
+				written.add(value);
+			}
+		};
+	}
+
+	@Test
+	public void testWritesInOrderAndFlush() {
+		List<Integer> written = Collections.synchronizedList(new ArrayList<Integer>());
+		for (int i = 0; i < 10; i++) {
+			writer.submit(append(written, i));
+		}
+		writer.flush();
+
+		Assert.assertEquals(10, written.size());
+		for (int i = 0; i < 10; i++) {
+			Assert.assertEquals(i, written.get(i).intValue());
+		}
+		Assert.assertEquals(10, writer.getSubmittedWrites());
+		Assert.assertEquals(10, writer.getWrites());
+		Assert.assertTrue(writer.getMaxQueueDepth() <= 2);
+	}
+
+	@Test
+	public void testFullQueueBlocks() throws InterruptedException {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		writer.submit(new Runnable() {
+
+			@Override
+			public void run() {
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		started.await();
+
+		List<Integer> written = Collections.synchronizedList(new ArrayList<Integer>());
+		writer.submit(append(written, 1));
+		writer.submit(append(written, 2));
+		Assert.assertEquals(2, writer.getMaxQueueDepth());
+		Assert.assertEquals(0, writer.getBlockedSubmits());
+
+		Thread releaser = new Thread() {
+
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException e) {
+					return;
+				}
+				release.countDown();
+			}
+		};
+		releaser.start();
+		writer.submit(append(written, 3));
+		Assert.assertEquals(1, writer.getBlockedSubmits());
+		Assert.assertTrue(writer.getBlockedTime() > 0);
+
+		writer.close();
+		Assert.assertEquals(3, written.size());
+		Assert.assertEquals(4, writer.getWrites());
+		Assert.assertTrue(writer.getMaxWriteTime() > 0);
+		Assert.assertTrue(writer.getWriteTime() >= writer.getMaxWriteTime());
+	}
+
+	@Test
+	public void testFailedWriteDoesNotStopWriter() {
+		List<Integer> written = Collections.synchronizedList(new ArrayList<Integer>());
+		writer.submit(new Runnable() {
+
+			@Override
+			public void run() {
+				throw new IllegalStateException("failing write");
+			}
+		});
+		writer.submit(append(written, 1));
+		writer.flush();
+
+		Assert.assertEquals(1, written.size());
+		Assert.assertEquals(1, writer.getFailedWrites());
+		Assert.assertEquals(2, writer.getWrites());
+	}
+
+	@Test
+	public void testClose() {
+		List<Integer> written = Collections.synchronizedList(new ArrayList<Integer>());
+		writer.submit(append(written, 1));
+		writer.close();
+		Assert.assertTrue(writer.isClosed());
+		Assert.assertEquals(1, written.size());
+
+		// nothing else to be done
+		writer.flush();
+		writer.close();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testSubmitAfterClose() {
+		writer.close();
+		writer.submit(append(new ArrayList<Integer>(), 1));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidCapacity() {
+		new DataStoreWriter("invalid-writer", 0);
+	}
+}
@@ -0,0 +1,175 @@
+package org.cloudbus.cloudsim.preemption.datastore;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.cloudbus.cloudsim.Host;
+import org.cloudbus.cloudsim.preemption.PreemptableVm;
+import org.cloudbus.cloudsim.preemption.Task;
+import org.cloudbus.cloudsim.preemption.TaskState;
+import org.cloudbus.cloudsim.preemption.util.PriorityResources;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class DatacenterSnapshotTest {
+
+	private static final double ACCEPTABLE_DIFFERENCE = 0.00000001;
+
+	private static final File snapshotFile = new File("datacenterSnapshotTest.bin");
+
+	@After
+	public void tearDown() {
+		snapshotFile.delete();
+	}
+
+	private static PreemptableVm runningVm(int id, int hostId, double startExec) {
+		Host host = Mockito.mock(Host.class);
+		Mockito.when(host.getId()).thenReturn(hostId);
+
+		PreemptableVm vm = new PreemptableVm(id, 3, 0.5, 0.25, 10, id % 3, 100);
+		vm.setHost(host);
+		vm.setStartExec(startExec);
+		vm.setActualRuntime(5);
+		vm.setNumberOfPreemptions(1);
+		vm.setNumberOfMigrations(2);
+		vm.setFirstTimeAllocated(12);
+		return vm;
+	}
+
+	@Test
+	public void testWriteAndRead() throws IOException {
+		DatacenterSnapshot snapshot = new DatacenterSnapshot(50, 3);
+
+		PriorityResources admitted = new PriorityResources(3);
+		admitted.set(0, 1.5);
+		admitted.set(2, 0.25);
+		snapshot.setAdmittedRequests(admitted);
+		PriorityResources quotas = new PriorityResources(3);
+		quotas.set(1, 2.5);
+		snapshot.setQuotas(quotas);
+
+		// more VMs than the write buffer holds
+		List<PreemptableVm> running = new ArrayList<PreemptableVm>();
+		for (int id = 0; id < 2000; id++) {
+			running.add(runningVm(id, id % 7, 40));
+		}
+		snapshot.addRunningVms(running);
+
+		PreemptableVm waiting = new PreemptableVm(5000, 3, 0.75, 0.5, 20, 1, 60);
+		waiting.setActualRuntime(8);
+		waiting.setLastHostId(4);
+		waiting.setNumberOfBackfillingChoice(3);
+		snapshot.addWaitingVms(Arrays.asList(waiting));
+
+		snapshot.setBrokerState(10, 6000, 5500, 400, 60);
+		snapshot.addPendingTask(new Task(5001, 55, 30, 0.125, 0.0625, 2));
+		snapshot.addPendingResults(Arrays.asList(new TaskState(7, 0.5, 1, 45, 30, 0, 1, 2, 3, 5)));
+
+		snapshot.write(snapshotFile);
+		DatacenterSnapshot read = DatacenterSnapshot.read(snapshotFile);
+
+		Assert.assertEquals(50, read.getTime(), ACCEPTABLE_DIFFERENCE);
+		Assert.assertEquals(3, read.getNumberOfPriorities());
+		Assert.assertEquals(admitted, read.getAdmittedRequests());
+		Assert.assertEquals(quotas, read.getQuotas());
+
+		List<PreemptableVm> runningVms = read.getRunningVms();
+		Assert.assertEquals(2000, runningVms.size());
+		for (int id = 0; id < 2000; id++) {
+			PreemptableVm vm = runningVms.get(id);
+			Assert.assertEquals(id, vm.getId());
+			Assert.assertEquals(3, vm.getUserId());
+			Assert.assertEquals(id % 3, vm.getPriority());
+			Assert.assertEquals(id % 7, vm.getLastHostId());
+			Assert.assertEquals(0.5, vm.getMips(), ACCEPTABLE_DIFFERENCE);
+			Assert.assertEquals(100, vm.getRuntime(), ACCEPTABLE_DIFFERENCE);
+			// the runtime reached at the checkpoint
+			Assert.assertEquals(15, vm.getActualRuntime(50), ACCEPTABLE_DIFFERENCE);
+			Assert.assertEquals(1, vm.getNumberOfPreemptions());
+			Assert.assertEquals(2, vm.getNumberOfMigrations());
+			Assert.assertEquals(12, vm.getFirstTimeAllocated(), ACCEPTABLE_DIFFERENCE);
+			Assert.assertNull(vm.getHost());
+		}
+
+		List<PreemptableVm> waitingVms = read.getWaitingVms();
+		Assert.assertEquals(1, waitingVms.size());
+		Assert.assertEquals(waiting, waitingVms.get(0));
+		Assert.assertEquals(8, waitingVms.get(0).getActualRuntime(50), ACCEPTABLE_DIFFERENCE);
+		Assert.assertEquals(4, waitingVms.get(0).getLastHostId());
+		Assert.assertEquals(3, waitingVms.get(0).getNumberOfBackfillingChoice());
+
+		Assert.assertTrue(read.hasBrokerState());
+		Assert.assertEquals(10, read.getIntervalIndex());
+		Assert.assertEquals(6000, read.getLastTaskId());
+		Assert.assertEquals(5500, read.getSubmittedTasks());
+		Assert.assertEquals(400, read.getConcludedTasks());
+		Assert.assertEquals(60, read.getNextLoadingTime(), ACCEPTABLE_DIFFERENCE);
+
+		Assert.assertEquals(1, read.getPendingTasks().size());
+		Task task = read.getPendingTasks().get(0);
+		Assert.assertEquals(5001, task.getId());
+		Assert.assertEquals(55, task.getSubmitTime(), ACCEPTABLE_DIFFERENCE);
+		Assert.assertEquals(30, task.getRuntime(), ACCEPTABLE_DIFFERENCE);
+		Assert.assertEquals(0.125, task.getCpuReq(), ACCEPTABLE_DIFFERENCE);
+		Assert.assertEquals(0.0625, task.getMemReq(), ACCEPTABLE_DIFFERENCE);
+		Assert.assertEquals(2, task.getPriority());
+
+		Assert.assertEquals(Arrays.asList(new TaskState(7, 0.5, 1, 45, 30, 0, 1, 2, 3, 5)),
+				read.getPendingResults());
+	}
+
+	@Test
+	public void testWithoutQuotasNorBroker() throws IOException {
+		new DatacenterSnapshot(0, 1).write(snapshotFile);
+
+		DatacenterSnapshot read = DatacenterSnapshot.read(snapshotFile);
+		Assert.assertNull(read.getQuotas());
+		Assert.assertFalse(read.hasBrokerState());
+		Assert.assertTrue(read.getRunningVms().isEmpty());
+		Assert.assertTrue(read.getPendingTasks().isEmpty());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNotASnapshot() throws IOException {
+		FileOutputStream output = new FileOutputStream(snapshotFile);
+		output.write(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+		output.close();
+
+		DatacenterSnapshot.read(snapshotFile);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTruncated() throws IOException {
+		DatacenterSnapshot snapshot = new DatacenterSnapshot(0, 3);
+		snapshot.addRunningVms(Arrays.asList(runningVm(1, 1, 0)));
+		snapshot.write(snapshotFile);
+
+		FileOutputStream output = new FileOutputStream(snapshotFile, true);
+		output.getChannel().truncate(snapshotFile.length() - 20);
+		output.close();
+
+		DatacenterSnapshot.read(snapshotFile);
+	}
+
+	@Test
+	public void testFormat() {
+		Properties properties = new Properties();
+		Assert.assertFalse(DatacenterSnapshot.isBinaryFormat(properties));
+		properties.setProperty(DatacenterSnapshot.CHECKPOINT_FORMAT_PROP, "binary");
+		Assert.assertTrue(DatacenterSnapshot.isBinaryFormat(properties));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownFormat() {
+		Properties properties = new Properties();
+		properties.setProperty(DatacenterSnapshot.CHECKPOINT_FORMAT_PROP, "json");
+		DatacenterSnapshot.isBinaryFormat(properties);
+	}
+}
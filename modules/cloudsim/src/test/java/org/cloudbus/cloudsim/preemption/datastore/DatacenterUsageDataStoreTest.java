@@ -16,6 +16,7 @@ import java.util.Properties;
 public class DatacenterUsageDataStoreTest {
     private static String databaseFile = "datacenterTest.sqlite3";
     private static String databaseURL = "jdbc:sqlite:" + databaseFile;
+    private static final String FIVE_PRIORITIES_DATABASE_FILE = "datacenterFivePrioritiesTest.sqlite3";
 
     private static double DEFAULT_TIME = 1000.5;
     private static Properties properties;
@@ -77,6 +78,7 @@ public class DatacenterUsageDataStoreTest {
     @After
     public void tearDown() {
         new File(databaseFile).delete();
+        new File(FIVE_PRIORITIES_DATABASE_FILE).delete();
     }
 
     @Test
@@ -194,4 +196,37 @@ public class DatacenterUsageDataStoreTest {
         Assert.assertEquals(expectedInfo, datacenterDataStore.getAllDatacenterInfo());
 		
 	}
+
+    @Test
+    public void testMorePriorities() {
+        properties.setProperty("number_of_priorities", "5");
+        properties.setProperty(DatacenterUsageDataStore.DATABASE_URL_PROP, "jdbc:sqlite:" + FIVE_PRIORITIES_DATABASE_FILE);
+        datacenterDataStore = new DatacenterUsageDataStore(properties);
+        Assert.assertEquals(5, datacenterDataStore.getNumberOfPriorities());
+
+        DatacenterInfo info = new DatacenterInfo(TIME, 15, new int[] { 1, 2, 3, 4, 5 },
+                new double[] { 0.1, 0.2, 0.3, 0.4, 0.5 }, 4, new int[] { 0, 0, 1, 0, 3 },
+                new double[] { 0, 0, 0.7, 0, 1.5 });
+        List<DatacenterInfo> infoList = new ArrayList<DatacenterInfo>();
+        infoList.add(info);
+
+        Assert.assertTrue(datacenterDataStore.addDatacenterInfo(infoList));
+        Assert.assertEquals(infoList, datacenterDataStore.getAllDatacenterInfo());
+
+        DatacenterInfo stored = datacenterDataStore.getAllDatacenterInfo().get(0);
+        Assert.assertEquals(5, stored.getVmsRunning(4));
+        Assert.assertEquals(1.5, stored.getResourcesWaiting(4), 0);
+        Assert.assertEquals(3, stored.getVmsRunningP2());
+    }
+
+    @Test
+    public void testMorePrioritiesThanTheStore() {
+        DatacenterInfo info = new DatacenterInfo(TIME, 4, new int[] { 1, 1, 1, 1 }, new double[4], 0,
+                new int[4], new double[4]);
+        List<DatacenterInfo> infoList = new ArrayList<DatacenterInfo>();
+        infoList.add(info);
+
+        Assert.assertFalse(datacenterDataStore.addDatacenterInfo(infoList));
+        Assert.assertTrue(datacenterDataStore.getAllDatacenterInfo().isEmpty());
+    }
 }
@@ -1,6 +1,8 @@
 package org.cloudbus.cloudsim.preemption.datastore;
 
 import java.io.File;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
@@ -157,4 +159,24 @@ public class HostUsageDataStoreTest {
 		Assert.assertEquals(21, UDataStore.getAllUsageEntries().size());
 	}
 
+	@Test
+	public void testAddUsageWithStats() throws Exception {
+		HostUsageBuffer usage = new HostUsageBuffer(1, true);
+		usage.add(0, TIME, P0_USAGE, P0_VMS, 0, AVAILABLE_MIPS, P0_USAGE - 1, P0_USAGE + 1);
+		usage.add(0, TIME, P1_USAGE, P1_VMS, 1, AVAILABLE_MIPS, P1_USAGE, P1_USAGE + 2);
+
+		Assert.assertTrue(UDataStore.addUsage(usage));
+		Assert.assertEquals(usage.toList(), UDataStore.getAllUsageEntries());
+
+		List<Double> bounds = UDataStore.query("SELECT minUsage, maxUsage FROM usagestats WHERE priority = ?",
+				new DataStore.RowMapper<Double>() {
+
+					@Override
+					public Double map(ResultSet rs) throws SQLException {
+						return rs.getDouble("maxUsage") - rs.getDouble("minUsage");
+					}
+				}, 1);
+		Assert.assertEquals(1, bounds.size());
+		Assert.assertEquals(2, bounds.get(0), 0.0000001);
+	}
 }
@@ -471,6 +471,43 @@ public class InputTraceDataStoreTest {
 
 	}
 
+	@Test
+	public void testPreloadedTraceGivesSameIntervals() throws Exception {
+		properties.setProperty(InputTraceDataStore.MIN_INTERESTED_TIME_PROP, String.valueOf(getTimeInMicro(10)));
+		InputTraceDataStore inputTrace = new InputTraceDataStore(properties);
+
+		Properties preloadProperties = new Properties();
+		preloadProperties.putAll(properties);
+		preloadProperties.setProperty(InputTraceDataStore.PRELOAD_PROP, "yes");
+		InputTraceDataStore preloadedTrace = new InputTraceDataStore(preloadProperties);
+
+		Assert.assertEquals(inputTrace.getMinInterestedTime(), preloadedTrace.getMinInterestedTime(), ACCEPTABLE_DIFFERENCE);
+		Assert.assertEquals(inputTrace.getMaxInterestedTime(), preloadedTrace.getMaxInterestedTime(), ACCEPTABLE_DIFFERENCE);
+
+		double intervalSize = getTimeInMicro(7);
+		for (int i = 0; inputTrace.hasMoreEvents(i, intervalSize); i++) {
+			Assert.assertTrue(preloadedTrace.hasMoreEvents(i, intervalSize));
+			Assert.assertEquals(inputTrace.getGoogleTaskInterval(i, intervalSize),
+					preloadedTrace.getGoogleTaskInterval(i, intervalSize));
+		}
+		Assert.assertEquals(inputTrace.getNextTaskId(), preloadedTrace.getNextTaskId());
+		Assert.assertEquals(NUMBER_OF_TASKS - 9, preloadedTrace.getNextTaskId());
+	}
+
+	@Test
+	public void testSharedPreloadedTrace() throws Exception {
+		PreloadedInputTrace trace = PreloadedInputTrace.load(databaseURL);
+		InputTraceDataStore first = new InputTraceDataStore(properties, trace);
+		InputTraceDataStore second = new InputTraceDataStore(properties, trace);
+
+		Assert.assertEquals(generateListOfGoogleTasks(1, (NUMBER_OF_TASKS / 2) - 1),
+				first.getGoogleTaskInterval(0, getTimeInMicro(NUMBER_OF_TASKS / 2)));
+		// each data store numbers its own tasks
+		Assert.assertEquals(generateListOfGoogleTasks(1, (NUMBER_OF_TASKS / 2) - 1),
+				second.getGoogleTaskInterval(0, getTimeInMicro(NUMBER_OF_TASKS / 2)));
+		Assert.assertEquals(getTimeInMicro(NUMBER_OF_TASKS) + 1, second.getMaxInterestedTime(), ACCEPTABLE_DIFFERENCE);
+	}
+
 	private static double getTimeInMicro(double timeInMinutes) {
 		return timeInMinutes * 60 * 1000000;
 	}
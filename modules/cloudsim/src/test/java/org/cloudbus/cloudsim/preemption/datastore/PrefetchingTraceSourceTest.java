@@ -0,0 +1,270 @@
+package org.cloudbus.cloudsim.preemption.datastore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.cloudbus.cloudsim.Log;
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.SimulationContext;
+import org.cloudbus.cloudsim.preemption.Task;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that a {@link PrefetchingTraceSource} gives the same tasks as the source it reads ahead,
+ * whatever its depth.
+ */
+public class PrefetchingTraceSourceTest {
+
+	private static final double INTERVAL_SIZE = 10;
+
+	private static final int NUMBER_OF_INTERVALS = 50;
+
+	/** A trace with a varying number of tasks per interval, which may be slowed down. */
+	private static class FakeTraceSource implements TraceSource {
+
+		final AtomicInteger reads = new AtomicInteger();
+
+		/** When set, each read waits for a permit. */
+		Semaphore permits;
+
+		int failingInterval = -1;
+
+		/** When set, thrown instead of an exception when reading the failing interval. */
+		Error failingError;
+
+		/** The context bound to the thread of the last read. */
+		volatile SimulationContext readContext;
+
+		private int nextTaskId;
+
+		@Override
+		public List<Task> getGoogleTaskInterval(int intervalIndex, double intervalSize) {
+			reads.incrementAndGet();
+			readContext = CloudSim.getContext();
+			if (permits != null) {
+				permits.acquireUninterruptibly();
+			}
+			if (intervalIndex == failingInterval && failingError != null) {
+				throw failingError;
+			}
+			if (intervalIndex == failingInterval) {
+				throw new IllegalStateException("broken trace");
+			}
+			if (!hasMoreEvents(intervalIndex, intervalSize)) {
+				return null;
+			}
+			List<Task> tasks = new ArrayList<Task>();
+			for (int i = 0; i < intervalIndex % 4; i++) {
+				nextTaskId++;
+				tasks.add(new Task(nextTaskId, intervalIndex * intervalSize + i, 100 + i, 0.1, 0.2,
+						i % 3));
+			}
+			return tasks;
+		}
+
+		@Override
+		public boolean hasMoreEvents(int intervalIndex, double intervalSize) {
+			return intervalIndex >= 0 && intervalIndex * intervalSize <= getMaxInterestedTime();
+		}
+
+		@Override
+		public double getMinInterestedTime() {
+			return 0;
+		}
+
+		@Override
+		public double getMaxInterestedTime() {
+			return (NUMBER_OF_INTERVALS - 1) * INTERVAL_SIZE;
+		}
+
+		@Override
+		public int getNextTaskId() {
+			return nextTaskId;
+		}
+
+		@Override
+		public void setNextTaskId(int nextTaskId) {
+			this.nextTaskId = nextTaskId;
+		}
+	}
+
+	@Before
+	public void setUp() {
+		Log.disable();
+	}
+
+	@Test
+	public void testSameTasksWhateverTheDepth() {
+		List<List<Task>> expected = readAll(new FakeTraceSource());
+
+		for (int depth : new int[] { 1, 3, 64 }) {
+			PrefetchingTraceSource prefetching = new PrefetchingTraceSource(new FakeTraceSource(), depth);
+			Assert.assertEquals(expected, readAll(prefetching));
+			Assert.assertEquals(NUMBER_OF_INTERVALS + 1, prefetching.getRequestedIntervals());
+		}
+	}
+
+	@Test
+	public void testIdsDoNotDependOnReadOrder() {
+		FakeTraceSource source = new FakeTraceSource();
+		PrefetchingTraceSource prefetching = new PrefetchingTraceSource(source, 8);
+
+		// the source numbers the tasks from the id set on the prefetching source
+		source.setNextTaskId(1000);
+		prefetching.setNextTaskId(40);
+		List<Task> tasks = prefetching.getGoogleTaskInterval(3, INTERVAL_SIZE);
+		Assert.assertEquals(3, tasks.size());
+		Assert.assertEquals(41, tasks.get(0).getId());
+		Assert.assertEquals(43, prefetching.getNextTaskId());
+
+		// starting again from another interval, as from a checkpoint
+		tasks = prefetching.getGoogleTaskInterval(10, INTERVAL_SIZE);
+		Assert.assertEquals(2, tasks.size());
+		Assert.assertEquals(44, tasks.get(0).getId());
+		Assert.assertEquals(100, tasks.get(0).getSubmitTime(), 0);
+		tasks = prefetching.getGoogleTaskInterval(11, INTERVAL_SIZE);
+		Assert.assertEquals(3, tasks.size());
+		Assert.assertEquals(46, tasks.get(0).getId());
+		prefetching.close();
+	}
+
+	@Test
+	public void testIntervalsReadAheadDroppedWhenTheIdIsSet() {
+		FakeTraceSource source = new FakeTraceSource();
+		PrefetchingTraceSource prefetching = new PrefetchingTraceSource(source, 8);
+		Assert.assertEquals(1, prefetching.getGoogleTaskInterval(1, INTERVAL_SIZE).get(0).getId());
+
+		// the next intervals were read ahead with ids following the first one
+		prefetching.setNextTaskId(100);
+		List<Task> tasks = prefetching.getGoogleTaskInterval(2, INTERVAL_SIZE);
+		Assert.assertEquals(2, tasks.size());
+		Assert.assertEquals(101, tasks.get(0).getId());
+		Assert.assertEquals(20, tasks.get(0).getSubmitTime(), 0);
+		Assert.assertEquals(102, prefetching.getNextTaskId());
+
+		// setting the same id keeps the intervals read ahead
+		prefetching.setNextTaskId(102);
+		Assert.assertEquals(103, prefetching.getGoogleTaskInterval(3, INTERVAL_SIZE).get(0).getId());
+		prefetching.close();
+	}
+
+	@Test
+	public void testBackpressure() throws Exception {
+		FakeTraceSource source = new FakeTraceSource();
+		source.permits = new Semaphore(Integer.MAX_VALUE);
+		PrefetchingTraceSource prefetching = new PrefetchingTraceSource(source, 2);
+		prefetching.prefetch(0, INTERVAL_SIZE);
+
+		// two intervals in the queue and the third one waiting for room
+		waitForReads(source, 3);
+		Thread.sleep(100);
+		Assert.assertEquals(3, source.reads.get());
+
+		prefetching.getGoogleTaskInterval(0, INTERVAL_SIZE);
+		waitForReads(source, 4);
+		Thread.sleep(100);
+		Assert.assertEquals(4, source.reads.get());
+		Assert.assertEquals(0, prefetching.getBlockedRequests());
+		prefetching.close();
+	}
+
+	@Test
+	public void testBlockedRequests() throws Exception {
+		final FakeTraceSource source = new FakeTraceSource();
+		source.permits = new Semaphore(0);
+		PrefetchingTraceSource prefetching = new PrefetchingTraceSource(source, 4);
+
+		// the source is released only after the simulation started waiting for it
+		new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+				}
+				source.permits.release(Integer.MAX_VALUE / 2);
+			}
+		}.start();
+		Assert.assertNotNull(prefetching.getGoogleTaskInterval(0, INTERVAL_SIZE));
+		Assert.assertEquals(1, prefetching.getBlockedRequests());
+		Assert.assertTrue(prefetching.getBlockedTime() > 0);
+
+		// the third read starts after the second interval is in the queue
+		waitForReads(source, 3);
+		Assert.assertNotNull(prefetching.getGoogleTaskInterval(1, INTERVAL_SIZE));
+		Assert.assertEquals(2, prefetching.getRequestedIntervals());
+		Assert.assertEquals(1, prefetching.getBlockedRequests());
+		prefetching.close();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testSourceErrorsReachTheSimulation() {
+		FakeTraceSource source = new FakeTraceSource();
+		source.failingInterval = 2;
+		PrefetchingTraceSource prefetching = new PrefetchingTraceSource(source, 4);
+		try {
+			prefetching.getGoogleTaskInterval(0, INTERVAL_SIZE);
+			prefetching.getGoogleTaskInterval(1, INTERVAL_SIZE);
+			prefetching.getGoogleTaskInterval(2, INTERVAL_SIZE);
+		} finally {
+			prefetching.close();
+		}
+	}
+
+	@Test(expected = OutOfMemoryError.class)
+	public void testSourceErrorsOtherThanExceptionsReachTheSimulation() {
+		FakeTraceSource source = new FakeTraceSource();
+		source.failingInterval = 1;
+		source.failingError = new OutOfMemoryError("broken trace");
+		PrefetchingTraceSource prefetching = new PrefetchingTraceSource(source, 4);
+		try {
+			prefetching.getGoogleTaskInterval(0, INTERVAL_SIZE);
+			prefetching.getGoogleTaskInterval(1, INTERVAL_SIZE);
+		} finally {
+			prefetching.close();
+		}
+	}
+
+	@Test
+	public void testSourceReadInTheContextOfTheSimulation() {
+		SimulationContext context = new SimulationContext();
+		CloudSim.setContext(context);
+		try {
+			FakeTraceSource source = new FakeTraceSource();
+			PrefetchingTraceSource prefetching = new PrefetchingTraceSource(source, 4);
+			prefetching.getGoogleTaskInterval(0, INTERVAL_SIZE);
+			prefetching.close();
+			Assert.assertSame(context, source.readContext);
+		} finally {
+			CloudSim.setContext(null);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidDepth() {
+		new PrefetchingTraceSource(new FakeTraceSource(), 0);
+	}
+
+	private static List<List<Task>> readAll(TraceSource source) {
+		List<List<Task>> intervals = new ArrayList<List<Task>>();
+		for (int i = 0; source.hasMoreEvents(i, INTERVAL_SIZE); i++) {
+			intervals.add(source.getGoogleTaskInterval(i, INTERVAL_SIZE));
+		}
+		Assert.assertNull(source.getGoogleTaskInterval(NUMBER_OF_INTERVALS, INTERVAL_SIZE));
+		Assert.assertEquals(NUMBER_OF_INTERVALS, intervals.size());
+		return intervals;
+	}
+
+	private static void waitForReads(FakeTraceSource source, int reads) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (source.reads.get() < reads && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+	}
+
+}
@@ -0,0 +1,87 @@
+package org.cloudbus.cloudsim.preemption.datastore;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks that a {@link PreloadedInputTrace} of a table not sorted by submit time serves its
+ * intervals as the SQL interval query does.
+ */
+public class PreloadedInputTraceTest {
+
+	private static final String databaseFile = "preloadedInputTraceTest.sqlite3";
+	private static final String databaseURL = "jdbc:sqlite:" + databaseFile;
+
+	/** The submit times of the table rows, in table order; the task of row 3 is filtered out. */
+	private static final double[] SUBMIT_TIMES = { 30, 10, 20, 10, 40, 20, 10 };
+
+	@BeforeClass
+	public static void setUp() throws ClassNotFoundException, SQLException {
+		Class.forName(DataStore.DATASTORE_SQLITE_DRIVER);
+		Connection connection = DriverManager.getConnection(databaseURL);
+		Statement statement = connection.createStatement();
+		statement.execute("CREATE TABLE IF NOT EXISTS tasks(submitTime REAL, priority INTEGER, "
+				+ "runtime REAL, cpuReq REAL, memReq REAL)");
+		statement.close();
+
+		PreparedStatement insertStatement = connection
+				.prepareStatement("INSERT INTO tasks VALUES(?, ?, ?, ?, ?)");
+		for (int i = 0; i < SUBMIT_TIMES.length; i++) {
+			insertStatement.setDouble(1, SUBMIT_TIMES[i]);
+			insertStatement.setInt(2, i); // priorities 0 and 1 are class 2, the others class 1
+			insertStatement.setDouble(3, i == 3 ? 0 : i + 1); // the row position plus one
+			insertStatement.setDouble(4, 0.5);
+			insertStatement.setDouble(5, 0.25);
+			insertStatement.execute();
+		}
+		insertStatement.close();
+		connection.close();
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		new File(databaseFile).delete();
+	}
+
+	@Test
+	public void testUnsortedTable() throws Exception {
+		PreloadedInputTrace trace = PreloadedInputTrace.load(databaseURL);
+
+		Assert.assertEquals(6, trace.size());
+		Assert.assertEquals(40, trace.getMaxTraceTime(), 0);
+		for (int i = 1; i < trace.size(); i++) {
+			Assert.assertTrue(trace.getSubmitTime(i - 1) <= trace.getSubmitTime(i));
+		}
+
+		// the tasks of an interval come in table order
+		assertRows(trace, trace.getInterval(0, 25), 1, 2, 5, 6);
+		assertRows(trace, trace.getInterval(20, 35), 0, 2, 5);
+		assertRows(trace, trace.getInterval(40, 100), 4);
+		assertRows(trace, trace.getInterval(50, 100));
+		assertRows(trace, trace.getInterval(30, 20));
+
+		Assert.assertEquals(2, trace.getPriority(trace.getInterval(0, 15)[0]));
+		Assert.assertEquals(1, trace.getPriority(trace.getInterval(40, 45)[0]));
+		Assert.assertEquals(0.5, trace.getCpuReq(0), 0);
+		Assert.assertEquals(0.25, trace.getMemReq(0), 0);
+		Assert.assertEquals(6 * (4 * 8 + 1 + 4), trace.getMemoryEstimate());
+	}
+
+	private static void assertRows(PreloadedInputTrace trace, int[] indexes, int... rows) {
+		Assert.assertEquals(rows.length, indexes.length);
+		for (int i = 0; i < rows.length; i++) {
+			Assert.assertEquals(rows[i] + 1, trace.getRuntime(indexes[i]), 0);
+			Assert.assertEquals(SUBMIT_TIMES[rows[i]], trace.getSubmitTime(indexes[i]), 0);
+		}
+	}
+
+}
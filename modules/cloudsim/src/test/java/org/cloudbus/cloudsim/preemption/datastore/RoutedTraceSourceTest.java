@@ -0,0 +1,271 @@
+package org.cloudbus.cloudsim.preemption.datastore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.cloudbus.cloudsim.Log;
+import org.cloudbus.cloudsim.preemption.Task;
+import org.cloudbus.cloudsim.preemption.policies.routing.RoundRobinCellRoutingPolicy;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that a {@link RoutedTraceSource} gives each cell the tasks routed to it, in the order a
+ * broker routing the tasks of a single simulation would, whatever the order the cells read them.
+ */
+public class RoutedTraceSourceTest {
+
+	private static final double INTERVAL_SIZE = 10;
+
+	private static final int NUMBER_OF_INTERVALS = 20;
+
+	/** A trace whose tasks are not in submit time order within an interval. */
+	private static class FakeTraceSource implements TraceSource {
+
+		int reads;
+
+		private int nextTaskId;
+
+		@Override
+		public List<Task> getGoogleTaskInterval(int intervalIndex, double intervalSize) {
+			reads++;
+			if (!hasMoreEvents(intervalIndex, intervalSize)) {
+				return null;
+			}
+			List<Task> tasks = new ArrayList<Task>();
+			for (int i = 0; i < intervalIndex % 5; i++) {
+				nextTaskId++;
+				tasks.add(new Task(nextTaskId, intervalIndex * intervalSize + 5 - i, 100, 0.1, 0.2, i % 3));
+			}
+			return tasks;
+		}
+
+		@Override
+		public boolean hasMoreEvents(int intervalIndex, double intervalSize) {
+			return intervalIndex >= 0 && intervalIndex * intervalSize <= getMaxInterestedTime();
+		}
+
+		@Override
+		public double getMinInterestedTime() {
+			return 0;
+		}
+
+		@Override
+		public double getMaxInterestedTime() {
+			return (NUMBER_OF_INTERVALS - 1) * INTERVAL_SIZE;
+		}
+
+		@Override
+		public int getNextTaskId() {
+			return nextTaskId;
+		}
+
+		@Override
+		public void setNextTaskId(int nextTaskId) {
+			this.nextTaskId = nextTaskId;
+		}
+	}
+
+	@Before
+	public void setUp() {
+		Log.disable();
+	}
+
+	/** Creates a source keeping the whole trace, so the cells can be read one after the other. */
+	private static RoutedTraceSource createRoutedSource(TraceSource source, int cells) {
+		return createRoutedSource(source, cells, NUMBER_OF_INTERVALS);
+	}
+
+	private static RoutedTraceSource createRoutedSource(TraceSource source, int cells, int maxIntervals) {
+		double[] capacities = new double[cells];
+		for (int cell = 0; cell < cells; cell++) {
+			capacities[cell] = 1;
+		}
+		return new RoutedTraceSource(source, new RoundRobinCellRoutingPolicy(capacities), maxIntervals);
+	}
+
+	@Test
+	public void testTasksRoutedInSubmitOrder() {
+		FakeTraceSource source = new FakeTraceSource();
+		RoutedTraceSource routed = createRoutedSource(source, 2);
+
+		// the cells take turns over the tasks of the source, sorted as a broker submits them
+		RoundRobinCellRoutingPolicy policy = new RoundRobinCellRoutingPolicy(new double[] { 1, 1 });
+		FakeTraceSource expectedSource = new FakeTraceSource();
+		List<List<Task>> cell0 = readAll(routed.getCellSource(0));
+		List<List<Task>> cell1 = readAll(routed.getCellSource(1));
+		for (int i = 0; i < NUMBER_OF_INTERVALS; i++) {
+			List<Task> tasks = expectedSource.getGoogleTaskInterval(i, INTERVAL_SIZE);
+			Collections.sort(tasks);
+			List<Task> expected0 = new ArrayList<Task>();
+			List<Task> expected1 = new ArrayList<Task>();
+			for (Task task : tasks) {
+				(policy.route(task) == 0 ? expected0 : expected1).add(task);
+			}
+			Assert.assertEquals(expected0, cell0.get(i));
+			Assert.assertEquals(expected1, cell1.get(i));
+		}
+
+		// each interval is read once, and the end of the trace too
+		Assert.assertEquals(NUMBER_OF_INTERVALS + 1, source.reads);
+		Assert.assertEquals(source.getNextTaskId(), routed.getCellSource(0).getNextTaskId());
+		Assert.assertEquals(routed.getRoutedTasks(0) + routed.getRoutedTasks(1), source.getNextTaskId());
+	}
+
+	@Test
+	public void testIntervalsKeptForSlowerCells() {
+		RoutedTraceSource routed = createRoutedSource(new FakeTraceSource(), 3);
+		for (int i = 0; i < NUMBER_OF_INTERVALS; i++) {
+			for (int cell = 0; cell < 3; cell++) {
+				routed.getCellSource(cell).getGoogleTaskInterval(i, INTERVAL_SIZE);
+			}
+		}
+		Assert.assertEquals(1, routed.getMaxKeptIntervals());
+
+		routed = createRoutedSource(new FakeTraceSource(), 3);
+		readAll(routed.getCellSource(2));
+		Assert.assertEquals(NUMBER_OF_INTERVALS, routed.getMaxKeptIntervals());
+		readAll(routed.getCellSource(0));
+		readAll(routed.getCellSource(1));
+	}
+
+	@Test
+	public void testCellsOnDifferentThreads() throws Exception {
+		final int cells = 4;
+		RoutedTraceSource sequential = createRoutedSource(new FakeTraceSource(), cells);
+		List<List<List<Task>>> expected = new ArrayList<List<List<Task>>>();
+		for (int cell = 0; cell < cells; cell++) {
+			expected.add(readAll(sequential.getCellSource(cell)));
+		}
+
+		final RoutedTraceSource concurrent = createRoutedSource(new FakeTraceSource(), cells, 2);
+		ExecutorService executor = Executors.newFixedThreadPool(cells);
+		try {
+			List<Future<List<List<Task>>>> reads = new ArrayList<Future<List<List<Task>>>>();
+			for (int cell = 0; cell < cells; cell++) {
+				final int readCell = cell;
+				reads.add(executor.submit(new Callable<List<List<Task>>>() {
+
+					@Override
+					public List<List<Task>> call() {
+						return readAll(concurrent.getCellSource(readCell));
+					}
+				}));
+			}
+			for (int cell = 0; cell < cells; cell++) {
+				Assert.assertEquals(expected.get(cell), reads.get(cell).get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testLeadingCellWaitsForSlowerCells() throws Exception {
+		final int maxIntervals = 3;
+		final RoutedTraceSource routed = createRoutedSource(new FakeTraceSource(), 2, maxIntervals);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<List<List<Task>>> leading = executor.submit(new Callable<List<List<Task>>>() {
+
+				@Override
+				public List<List<Task>> call() {
+					return readAll(routed.getCellSource(1));
+				}
+			});
+
+			// the leading cell stops once it is the most intervals kept ahead
+			while (routed.getMaxKeptIntervals() < maxIntervals) {
+				Thread.sleep(1);
+			}
+			Thread.sleep(50);
+			Assert.assertFalse(leading.isDone());
+			Assert.assertEquals(maxIntervals, routed.getMaxKeptIntervals());
+
+			readAll(routed.getCellSource(0));
+			Assert.assertEquals(NUMBER_OF_INTERVALS, leading.get().size());
+			Assert.assertEquals(maxIntervals, routed.getMaxKeptIntervals());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testFinishedCellIsNotWaitedFor() throws Exception {
+		final RoutedTraceSource routed = createRoutedSource(new FakeTraceSource(), 2, 3);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<List<List<Task>>> leading = executor.submit(new Callable<List<List<Task>>>() {
+
+				@Override
+				public List<List<Task>> call() {
+					return readAll(routed.getCellSource(1));
+				}
+			});
+
+			routed.getCellSource(0).getGoogleTaskInterval(0, INTERVAL_SIZE);
+			routed.finish(0);
+			Assert.assertEquals(NUMBER_OF_INTERVALS, leading.get().size());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testFinishedCellIsNotRead() {
+		RoutedTraceSource routed = createRoutedSource(new FakeTraceSource(), 2);
+		routed.finish(0);
+		routed.getCellSource(0).getGoogleTaskInterval(0, INTERVAL_SIZE);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidMaxIntervals() {
+		createRoutedSource(new FakeTraceSource(), 2, 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testIntervalsOutOfOrder() {
+		RoutedTraceSource routed = createRoutedSource(new FakeTraceSource(), 2);
+		routed.getCellSource(0).getGoogleTaskInterval(0, INTERVAL_SIZE);
+		routed.getCellSource(0).getGoogleTaskInterval(2, INTERVAL_SIZE);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testIntervalsOfAnotherSize() {
+		RoutedTraceSource routed = createRoutedSource(new FakeTraceSource(), 2);
+		routed.getCellSource(0).getGoogleTaskInterval(0, INTERVAL_SIZE);
+		routed.getCellSource(1).getGoogleTaskInterval(0, 2 * INTERVAL_SIZE);
+	}
+
+	@Test
+	public void testCellTaskIdSetToItsOwn() {
+		RoutedTraceSource routed = createRoutedSource(new FakeTraceSource(), 2);
+		routed.getCellSource(0).getGoogleTaskInterval(0, INTERVAL_SIZE);
+		routed.getCellSource(0).getGoogleTaskInterval(1, INTERVAL_SIZE);
+
+		TraceSource cell = routed.getCellSource(0);
+		cell.setNextTaskId(cell.getNextTaskId());
+		Assert.assertEquals(1, cell.getNextTaskId());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCellTaskIdsAreNotRenumbered() {
+		createRoutedSource(new FakeTraceSource(), 2).getCellSource(0).setNextTaskId(10);
+	}
+
+	private static List<List<Task>> readAll(TraceSource source) {
+		List<List<Task>> intervals = new ArrayList<List<Task>>();
+		for (int i = 0; source.hasMoreEvents(i, INTERVAL_SIZE); i++) {
+			intervals.add(source.getGoogleTaskInterval(i, INTERVAL_SIZE));
+		}
+		Assert.assertNull(source.getGoogleTaskInterval(NUMBER_OF_INTERVALS, INTERVAL_SIZE));
+		Assert.assertEquals(NUMBER_OF_INTERVALS, intervals.size());
+		return intervals;
+	}
+}
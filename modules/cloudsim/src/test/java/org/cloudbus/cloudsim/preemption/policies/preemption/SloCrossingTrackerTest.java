@@ -0,0 +1,101 @@
+package org.cloudbus.cloudsim.preemption.policies.preemption;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.cloudbus.cloudsim.preemption.PreemptableVm;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SloCrossingTrackerTest {
+
+	@Test
+	public void testSameMipsAsScanning() {
+		for (double sloTarget : new double[] { 0, 0.5, 0.9, 0.999, 1 }) {
+			assertSameMipsAsScanning(sloTarget, new Random(7));
+		}
+	}
+
+	@Test
+	public void testCrossingTarget() {
+		SloCrossingTracker tracker = new SloCrossingTracker(0.5);
+		List<PreemptableVm> running = new ArrayList<PreemptableVm>();
+
+		// submitted at 0 and waiting until 100, so above 0.5 after 200
+		PreemptableVm vm = new PreemptableVm(0, 1, 0.25, 0, 0, 0, 0);
+		vm.setStartExec(100);
+		running.add(vm);
+		tracker.add(vm, 100);
+
+		Assert.assertEquals(0, tracker.getMipsAboveTarget(running, 100), 0);
+		Assert.assertEquals(0, tracker.getMipsAboveTarget(running, 200), 0);
+		Assert.assertEquals(0.25, tracker.getMipsAboveTarget(running, 201), 0);
+
+		// going back in time, as a test may do
+		Assert.assertEquals(0, tracker.getMipsAboveTarget(running, 150), 0);
+		Assert.assertEquals(0.25, tracker.getMipsAboveTarget(running, 300), 0);
+
+		running.remove(vm);
+		tracker.remove(vm);
+		Assert.assertEquals(0, tracker.getMipsAboveTarget(running, 400), 0);
+	}
+
+	@Test
+	public void testVmAddedWithoutStartTime() {
+		SloCrossingTracker tracker = new SloCrossingTracker(0.5);
+		List<PreemptableVm> running = new ArrayList<PreemptableVm>();
+
+		// its availability decreases, as it is not running
+		PreemptableVm vm = new PreemptableVm(0, 1, 0.25, 0, 0, 0, 0);
+		vm.setActualRuntime(100);
+		running.add(vm);
+		tracker.add(vm, 100);
+
+		Assert.assertEquals(0.25, tracker.getMipsAboveTarget(running, 150), 0);
+		Assert.assertEquals(0, tracker.getMipsAboveTarget(running, 300), 0);
+		tracker.remove(vm);
+		Assert.assertEquals(0, tracker.getMipsAboveTarget(running, 300), 0);
+	}
+
+	/**
+	 * Starts, preempts and finishes VMs at increasing times, checking the MIPS above the target
+	 * against summing the ones of all running VMs above it.
+	 */
+	private static void assertSameMipsAsScanning(double sloTarget, Random random) {
+		SloCrossingTracker tracker = new SloCrossingTracker(sloTarget);
+		List<PreemptableVm> running = new ArrayList<PreemptableVm>();
+		List<PreemptableVm> waiting = new ArrayList<PreemptableVm>();
+		int nextId = 0;
+
+		for (int step = 1; step <= 2000; step++) {
+			double now = step * 1000000.0 + random.nextInt(1000);
+
+			if (random.nextInt(3) == 0) {
+				waiting.add(new PreemptableVm(nextId++, 1, random.nextInt(1000) / 1000.0, 0, now, 0, 0));
+			}
+			if (!waiting.isEmpty() && random.nextBoolean()) {
+				PreemptableVm vm = waiting.remove(random.nextInt(waiting.size()));
+				vm.setStartExec(now);
+				tracker.add(vm, now);
+				running.add(vm);
+			}
+			if (!running.isEmpty() && random.nextInt(4) == 0) {
+				PreemptableVm vm = running.remove(random.nextInt(running.size()));
+				vm.preempt(now);
+				tracker.remove(vm);
+				if (random.nextBoolean()) {
+					waiting.add(vm);
+				}
+			}
+
+			double expected = 0;
+			for (PreemptableVm vm : running) {
+				if (vm.getCurrentAvailability(now) > sloTarget) {
+					expected += vm.getMips();
+				}
+			}
+			Assert.assertEquals(expected, tracker.getMipsAboveTarget(running, now), 0.000000001);
+		}
+	}
+}
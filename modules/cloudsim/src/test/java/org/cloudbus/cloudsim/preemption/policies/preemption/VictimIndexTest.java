@@ -0,0 +1,226 @@
+package org.cloudbus.cloudsim.preemption.policies.preemption;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.cloudbus.cloudsim.preemption.PreemptableVm;
+import org.cloudbus.cloudsim.preemption.SimulationTimeUtil;
+import org.cloudbus.cloudsim.preemption.util.PriorityAndTTVBasedPreemptableVmComparator;
+import org.cloudbus.cloudsim.preemption.util.VmAvailabilityBasedPreemptableVmComparator;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class VictimIndexTest {
+
+	private static final int NUMBER_OF_PRIORITIES = 3;
+
+	private Properties properties;
+	private SimulationTimeUtil timeUtil;
+
+	@Before
+	public void setUp() {
+		properties = new Properties();
+		properties.setProperty(PreemptionPolicy.NUMBER_OF_PRIORITIES_PROP, String.valueOf(NUMBER_OF_PRIORITIES));
+		properties.setProperty(VmAvailabilityBasedPreemptionPolicy.SLO_TARGET_PREFIX_PROP + "0", "1");
+		properties.setProperty(VmAvailabilityBasedPreemptionPolicy.SLO_TARGET_PREFIX_PROP + "1", "0.9");
+		properties.setProperty(VmAvailabilityBasedPreemptionPolicy.SLO_TARGET_PREFIX_PROP + "2", "0.5");
+
+		timeUtil = Mockito.mock(SimulationTimeUtil.class);
+	}
+
+	@Test
+	public void testSameVictimsAsAvailabilityComparator() {
+		final VmAvailabilityBasedPreemptionPolicy policy = new VmAvailabilityBasedPreemptionPolicy(properties, timeUtil);
+
+		assertSameVictims(policy, new ComparatorFactory() {
+
+			@Override
+			public Comparator<PreemptableVm> create(int priority) {
+				return new VmAvailabilityBasedPreemptableVmComparator(policy.getPriorityToSLOTarget().get(priority),
+						timeUtil);
+			}
+		});
+	}
+
+	@Test
+	public void testSameVictimsAsTTVComparator() {
+		final TTVBasedPreemptionPolicy policy = new TTVBasedPreemptionPolicy(properties);
+		policy.setSimulationTimeUtil(timeUtil);
+
+		assertSameVictims(policy, new ComparatorFactory() {
+
+			@Override
+			public Comparator<PreemptableVm> create(int priority) {
+				return new PriorityAndTTVBasedPreemptableVmComparator(policy.getPriorityToSLOTarget(), timeUtil);
+			}
+		});
+	}
+
+	@Test
+	public void testRemovingPreemptedVm() {
+		VictimIndex index = new VictimIndex(new VictimIndex.SortKeys() {
+
+			@Override
+			public double getKey(PreemptableVm vm, double time) {
+				return vm.getActualRuntime(time);
+			}
+
+			@Override
+			public double getTieKey(PreemptableVm vm) {
+				return 0;
+			}
+
+			@Override
+			public boolean isTimeInvariant() {
+				return false;
+			}
+		});
+
+		List<PreemptableVm> running = new ArrayList<PreemptableVm>();
+		PreemptableVm vm0 = new PreemptableVm(0, 1, 1, 0, 0, 0, 0);
+		PreemptableVm vm1 = new PreemptableVm(1, 1, 1, 0, 0, 0, 0);
+		vm0.setStartExec(0);
+		vm1.setStartExec(5);
+		running.add(vm0);
+		running.add(vm1);
+
+		Assert.assertNull(index.last(new ArrayList<PreemptableVm>(), 10));
+		Assert.assertEquals(vm0, index.last(running, 10));
+
+		// the state of a preempted VM changes before it is removed
+		vm0.preempt(10);
+		running.remove(vm0);
+		index.remove(vm0);
+		Assert.assertEquals(vm1, index.last(running, 10));
+
+		// allocated again at the same time
+		vm0.setStartExec(10);
+		running.add(vm0);
+		index.add(vm0, 10);
+		Assert.assertEquals(vm0, index.last(running, 10));
+
+		// at a later time
+		Assert.assertEquals(vm0, index.last(running, 20));
+		running.remove(vm1);
+		index.remove(vm1);
+		Assert.assertEquals(vm0, index.last(running, 20));
+	}
+
+	@Test
+	public void testTimeInvariantKeysKeptAcrossTimes() {
+		final int[] computedKeys = new int[1];
+		VictimIndex index = new VictimIndex(new VictimIndex.SortKeys() {
+
+			@Override
+			public double getKey(PreemptableVm vm, double time) {
+				computedKeys[0]++;
+				return -vm.getStartExec();
+			}
+
+			@Override
+			public double getTieKey(PreemptableVm vm) {
+				return 0;
+			}
+
+			@Override
+			public boolean isTimeInvariant() {
+				return true;
+			}
+		});
+
+		List<PreemptableVm> running = new ArrayList<PreemptableVm>();
+		for (int id = 0; id < 3; id++) {
+			PreemptableVm vm = new PreemptableVm(id, 1, 1, 0, 0, 0, 0);
+			vm.setStartExec(id);
+			running.add(vm);
+		}
+		Assert.assertEquals(running.get(0), index.last(running, 5));
+		Assert.assertEquals(3, computedKeys[0]);
+
+		// the VMs are kept at later times, and only the ones allocated get their keys
+		PreemptableVm allocated = new PreemptableVm(3, 1, 1, 0, 0, 0, 0);
+		allocated.setStartExec(-10);
+		running.add(allocated);
+		index.add(allocated, 10);
+		Assert.assertEquals(allocated, index.last(running, 20));
+		running.remove(allocated);
+		index.remove(allocated);
+		Assert.assertEquals(running.get(0), index.last(running, 30));
+		Assert.assertEquals(4, computedKeys[0]);
+	}
+
+	private interface ComparatorFactory {
+		Comparator<PreemptableVm> create(int priority);
+	}
+
+	/**
+	 * Allocates, preempts and deallocates VMs at several times, checking each victim against the
+	 * one given by sorting all running VMs.
+	 */
+	private void assertSameVictims(VmAvailabilityBasedPreemptionPolicy policy, ComparatorFactory comparators) {
+		Random random = new Random(0);
+		List<PreemptableVm> running = new ArrayList<PreemptableVm>();
+		List<PreemptableVm> waiting = new ArrayList<PreemptableVm>();
+		int nextId = 0;
+		int victims = 0;
+
+		for (int step = 1; step <= 200; step++) {
+			double now = step * 10;
+			Mockito.when(timeUtil.clock()).thenReturn(now);
+
+			// new VMs, some of them submitted now
+			for (int i = random.nextInt(5); i > 0; i--) {
+				double submitTime = random.nextBoolean() ? now : now - random.nextInt(step) * 10;
+				waiting.add(new PreemptableVm(nextId++, 1, 0.1, 0, submitTime, random.nextInt(NUMBER_OF_PRIORITIES),
+						0));
+			}
+			while (!waiting.isEmpty() && random.nextInt(4) > 0) {
+				PreemptableVm vm = waiting.remove(random.nextInt(waiting.size()));
+				vm.setStartExec(now);
+				policy.allocating(vm);
+				running.add(vm);
+			}
+
+			// preempting one VM after another, as a host does for an arriving VM
+			for (int i = random.nextInt(4); i > 0; i--) {
+				PreemptableVm expected = lastBySorting(running, comparators);
+				Assert.assertEquals(expected, policy.nextVmForPreempting());
+				if (expected == null) {
+					break;
+				}
+				expected.preempt(now);
+				policy.deallocating(expected);
+				running.remove(expected);
+				waiting.add(expected);
+				victims++;
+			}
+
+			// finishing VMs
+			for (int i = random.nextInt(3); i > 0 && !running.isEmpty(); i--) {
+				policy.deallocating(running.remove(random.nextInt(running.size())));
+			}
+		}
+		Assert.assertTrue(victims > 100);
+	}
+
+	private static PreemptableVm lastBySorting(List<PreemptableVm> running, ComparatorFactory comparators) {
+		for (int priority = NUMBER_OF_PRIORITIES - 1; priority >= 0; priority--) {
+			TreeSet<PreemptableVm> sorted = new TreeSet<PreemptableVm>(comparators.create(priority));
+			for (PreemptableVm vm : running) {
+				if (vm.getPriority() == priority) {
+					sorted.add(vm);
+				}
+			}
+			if (!sorted.isEmpty()) {
+				return sorted.last();
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,60 @@
+package org.cloudbus.cloudsim.preemption.policies.routing;
+
+import org.cloudbus.cloudsim.preemption.Task;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RoundRobinCellRoutingPolicyTest {
+
+	private static Task task(int id) {
+		return new Task(id, id, 10, 0.1, 0.1, 0);
+	}
+
+	@Test
+	public void testEqualCapacities() {
+		RoundRobinCellRoutingPolicy policy = new RoundRobinCellRoutingPolicy(new double[] { 2, 2, 2 });
+		Assert.assertEquals(3, policy.getNumberOfCells());
+
+		for (int id = 0; id < 9; id++) {
+			Assert.assertEquals(id % 3, policy.route(task(id)));
+		}
+	}
+
+	@Test
+	public void testShareProportionalToCapacity() {
+		RoundRobinCellRoutingPolicy policy = new RoundRobinCellRoutingPolicy(new double[] { 1, 3 });
+
+		int[] routed = new int[2];
+		for (int id = 0; id < 4; id++) {
+			routed[policy.route(task(id))]++;
+		}
+		// every four tasks, and spread among them
+		Assert.assertArrayEquals(new int[] { 1, 3 }, routed);
+
+		for (int id = 4; id < 400; id++) {
+			routed[policy.route(task(id))]++;
+		}
+		Assert.assertArrayEquals(new int[] { 100, 300 }, routed);
+	}
+
+	@Test
+	public void testSpreadTurns() {
+		RoundRobinCellRoutingPolicy policy = new RoundRobinCellRoutingPolicy(new double[] { 1, 1, 2 });
+
+		// the largest cell does not get its tasks in a row
+		int[] expected = { 2, 0, 1, 2 };
+		for (int id = 0; id < 8; id++) {
+			Assert.assertEquals(expected[id % 4], policy.route(task(id)));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNoCells() {
+		new RoundRobinCellRoutingPolicy(new double[0]);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCellWithoutCapacity() {
+		new RoundRobinCellRoutingPolicy(new double[] { 1, 0 });
+	}
+}
@@ -0,0 +1,215 @@
+package org.cloudbus.cloudsim.preemption.policies.vmallocation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import gnu.trove.map.hash.TIntObjectHashMap;
+import org.cloudbus.cloudsim.Pe;
+import org.cloudbus.cloudsim.preemption.PreemptiveHost;
+import org.cloudbus.cloudsim.preemption.VmSchedulerMipsBased;
+import org.cloudbus.cloudsim.preemption.policies.preemption.FCFSBasedPreemptionPolicy;
+import org.cloudbus.cloudsim.preemption.policies.preemption.PreemptionPolicy;
+import org.cloudbus.cloudsim.provisioners.PeProvisionerSimple;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HostCapacityIndexTest {
+
+	private static final int NUMBER_OF_PRIORITIES = 3;
+
+	private TIntObjectHashMap<double[]> capacities;
+
+	private HostCapacityIndex.Capacity capacity;
+
+	private Properties properties;
+
+	@Before
+	public void setUp() {
+		properties = new Properties();
+		properties.setProperty(PreemptionPolicy.NUMBER_OF_PRIORITIES_PROP, String.valueOf(NUMBER_OF_PRIORITIES));
+
+		capacities = new TIntObjectHashMap<double[]>();
+		capacity = new HostCapacityIndex.Capacity() {
+
+			@Override
+			public double get(PreemptiveHost host, int priority) {
+				return capacities.get(host.getId())[priority];
+			}
+		};
+	}
+
+	@Test
+	public void testSameHostsAsScanning() {
+		Random random = new Random(0);
+		List<PreemptiveHost> hosts = new ArrayList<PreemptiveHost>();
+		for (int id = 0; id < 100; id++) {
+			hosts.add(createHost(3 * id, random));
+		}
+		Collections.shuffle(hosts, random);
+
+		HostCapacityIndex index = new HostCapacityIndex(hosts, NUMBER_OF_PRIORITIES, capacity);
+		List<PreemptiveHost> indexed = new ArrayList<PreemptiveHost>(hosts);
+
+		for (int step = 0; step < 5000; step++) {
+			int operation = random.nextInt(10);
+			if (operation < 6) {
+				PreemptiveHost host = hosts.get(random.nextInt(hosts.size()));
+				setCapacities(host, random);
+				index.update(host);
+				if (!indexed.contains(host)) {
+					indexed.add(host);
+				}
+			} else if (operation < 9) {
+				PreemptiveHost host = hosts.get(random.nextInt(hosts.size()));
+				index.remove(host);
+				indexed.remove(host);
+			} else if (hosts.size() < 150) {
+				// a host with an id between the others
+				int id = 3 * random.nextInt(100) + 1 + random.nextInt(2);
+				if (!containsId(hosts, id)) {
+					PreemptiveHost host = createHost(id, random);
+					hosts.add(host);
+					index.update(host);
+					indexed.add(host);
+				}
+			}
+
+			Assert.assertEquals(indexed.size(), index.size());
+			for (int priority = 0; priority < NUMBER_OF_PRIORITIES; priority++) {
+				double mips = random.nextInt(12) / 4.0;
+				Assert.assertEquals(worstFitByScanning(indexed, priority), index.worstFit(priority));
+				Assert.assertEquals(firstFitByScanning(indexed, priority, mips), index.firstFit(priority, mips));
+				Assert.assertEquals(bestFitByScanning(indexed, priority, mips), index.bestFit(priority, mips));
+			}
+		}
+	}
+
+	@Test
+	public void testRebuild() {
+		Random random = new Random(1);
+		List<PreemptiveHost> hosts = new ArrayList<PreemptiveHost>();
+		for (int id = 0; id < 4; id++) {
+			hosts.add(createHost(id, random));
+		}
+		HostCapacityIndex index = new HostCapacityIndex(hosts, NUMBER_OF_PRIORITIES, capacity);
+
+		// the capacities change without updating the index
+		capacities.put(2, new double[] { 10, 10, 10 });
+		Assert.assertFalse(hosts.get(2).equals(index.worstFit(0)));
+
+		index.updateAll();
+		Assert.assertEquals(hosts.get(2), index.worstFit(0));
+		Assert.assertEquals(10, index.getCapacity(hosts.get(2), 1), 0);
+
+		// keeping only some of the hosts, with a new one
+		PreemptiveHost newHost = createHost(7, random);
+		capacities.put(7, new double[] { 5, 5, 5 });
+		List<PreemptiveHost> someHosts = new ArrayList<PreemptiveHost>();
+		someHosts.add(hosts.get(0));
+		someHosts.add(newHost);
+		index.rebuild(someHosts);
+
+		Assert.assertEquals(2, index.size());
+		Assert.assertFalse(index.contains(hosts.get(2)));
+		Assert.assertTrue(index.contains(newHost));
+		Assert.assertEquals(newHost, index.worstFit(0));
+	}
+
+	@Test
+	public void testEmptyIndex() {
+		HostCapacityIndex index = new HostCapacityIndex(new ArrayList<PreemptiveHost>(), NUMBER_OF_PRIORITIES,
+				capacity);
+
+		Assert.assertEquals(0, index.size());
+		Assert.assertNull(index.worstFit(0));
+		Assert.assertNull(index.firstFit(0, 0));
+		Assert.assertNull(index.bestFit(0, 0));
+
+		PreemptiveHost host = createHost(5, new Random(2));
+		index.update(host);
+		Assert.assertEquals(host, index.worstFit(1));
+		index.remove(host);
+		Assert.assertNull(index.worstFit(1));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testHostsWithSameId() {
+		Random random = new Random(3);
+		List<PreemptiveHost> hosts = new ArrayList<PreemptiveHost>();
+		hosts.add(createHost(1, random));
+		hosts.add(createHost(1, random));
+		new HostCapacityIndex(hosts, NUMBER_OF_PRIORITIES, capacity);
+	}
+
+	private PreemptiveHost createHost(int id, Random random) {
+		List<Pe> peList = new ArrayList<Pe>();
+		peList.add(new Pe(0, new PeProvisionerSimple(10)));
+		PreemptiveHost host = new PreemptiveHost(id, peList, new VmSchedulerMipsBased(peList),
+				new FCFSBasedPreemptionPolicy(properties));
+		setCapacities(host, random);
+		return host;
+	}
+
+	/** Sets capacities with many ties, growing with the priority as the available MIPS do. */
+	private void setCapacities(PreemptiveHost host, Random random) {
+		double[] values = new double[NUMBER_OF_PRIORITIES];
+		values[0] = random.nextInt(8) / 4.0;
+		for (int priority = 1; priority < NUMBER_OF_PRIORITIES; priority++) {
+			values[priority] = values[priority - 1] + random.nextInt(3) / 4.0;
+		}
+		capacities.put(host.getId(), values);
+	}
+
+	private static boolean containsId(List<PreemptiveHost> hosts, int id) {
+		for (PreemptiveHost host : hosts) {
+			if (host.getId() == id) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private PreemptiveHost worstFitByScanning(List<PreemptiveHost> hosts, int priority) {
+		PreemptiveHost best = null;
+		for (PreemptiveHost host : hosts) {
+			if (best == null || isBefore(host, best, capacity.get(host, priority), capacity.get(best, priority), -1)) {
+				best = host;
+			}
+		}
+		return best;
+	}
+
+	private PreemptiveHost firstFitByScanning(List<PreemptiveHost> hosts, int priority, double mips) {
+		PreemptiveHost first = null;
+		for (PreemptiveHost host : hosts) {
+			if (capacity.get(host, priority) >= mips && (first == null || host.getId() < first.getId())) {
+				first = host;
+			}
+		}
+		return first;
+	}
+
+	private PreemptiveHost bestFitByScanning(List<PreemptiveHost> hosts, int priority, double mips) {
+		PreemptiveHost best = null;
+		for (PreemptiveHost host : hosts) {
+			if (capacity.get(host, priority) >= mips && (best == null
+					|| isBefore(host, best, capacity.get(host, priority), capacity.get(best, priority), 1))) {
+				best = host;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Checks if a host comes before another one, by capacity in the given order and then by id.
+	 */
+	private static boolean isBefore(PreemptiveHost host, PreemptiveHost other, double value, double otherValue,
+			int order) {
+		int result = order * Double.compare(value, otherValue);
+		return result < 0 || (result == 0 && host.getId() < other.getId());
+	}
+}
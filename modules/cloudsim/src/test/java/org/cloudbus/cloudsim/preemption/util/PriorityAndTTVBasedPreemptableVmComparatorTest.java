@@ -2,7 +2,6 @@ package org.cloudbus.cloudsim.preemption.util;
 
 import java.util.*;
 
-import com.sun.xml.internal.ws.policy.AssertionSet;
 import gnu.trove.map.hash.THashMap;
 import junit.framework.Assert;
 
@@ -0,0 +1,70 @@
+package org.cloudbus.cloudsim.preemption.util;
+
+import java.util.Map;
+import java.util.Random;
+
+import gnu.trove.map.hash.THashMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PriorityResourcesTest {
+
+	@Test
+	public void testSumsUpToPriority() {
+		Random random = new Random(0);
+		PriorityResources resources = new PriorityResources(4);
+		long[] expected = new long[4];
+
+		for (int i = 0; i < 10000; i++) {
+			int priority = random.nextInt(4);
+			double amount = DecimalUtil.format(random.nextDouble());
+			if (random.nextBoolean()) {
+				resources.add(priority, amount);
+				expected[priority] += ResourceUnits.toUnits(amount);
+			} else {
+				resources.set(priority, amount);
+				expected[priority] = ResourceUnits.toUnits(amount);
+			}
+
+			long sum = 0;
+			for (int p = 0; p < expected.length; p++) {
+				sum += expected[p];
+				Assert.assertEquals(expected[p], resources.getUnits(p));
+				Assert.assertEquals(ResourceUnits.toMips(expected[p]), resources.get(p), 0);
+				Assert.assertEquals(sum, resources.getUnitsUpTo(p));
+				Assert.assertEquals(ResourceUnits.toMips(sum), resources.getUpTo(p), 0);
+			}
+			Assert.assertEquals(ResourceUnits.toMips(sum), resources.getTotal(), 0);
+		}
+		Assert.assertEquals(0, resources.getUnitsUpTo(-1));
+
+		resources.clear();
+		Assert.assertEquals(0, resources.getTotal(), 0);
+	}
+
+	@Test
+	public void testMapAndCopy() {
+		Map<Integer, Double> priorityToAmount = new THashMap<Integer, Double>();
+		priorityToAmount.put(0, 1.5);
+		priorityToAmount.put(2, 0.25);
+
+		PriorityResources resources = new PriorityResources(3, priorityToAmount);
+		Assert.assertEquals(1.5, resources.get(0), 0);
+		Assert.assertEquals(0, resources.get(1), 0);
+		Assert.assertEquals(1.75, resources.getUpTo(2), 0);
+
+		priorityToAmount.put(1, 0d);
+		Assert.assertEquals(priorityToAmount, resources.toMap());
+
+		PriorityResources copy = new PriorityResources(resources);
+		Assert.assertEquals(resources, copy);
+		copy.add(1, 1);
+		Assert.assertEquals(0, resources.get(1), 0);
+		Assert.assertFalse(resources.equals(copy));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNoPriorities() {
+		new PriorityResources(0);
+	}
+}
@@ -0,0 +1,70 @@
+package org.cloudbus.cloudsim.preemption.util;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ResourceUnitsTest {
+
+	@Test
+	public void testRoundAsDecimalUtil() {
+		double[] values = { 0, 1, 100, 0.53999999710999999999999999999, 0.539999999701010,
+				0.5399999995701010, 0.5399999994701010, 0.0625, 1.0 / 3, 2.0 / 3, 1e-10, 123456.123456789 };
+		for (double value : values) {
+			Assert.assertEquals(DecimalUtil.format(value), ResourceUnits.round(value), 0);
+		}
+
+		Random random = new Random(0);
+		for (int i = 0; i < 10000; i++) {
+			double value = random.nextDouble() * Math.pow(10, random.nextInt(4));
+			Assert.assertEquals(DecimalUtil.format(value), ResourceUnits.round(value), 0);
+		}
+	}
+
+	@Test
+	public void testRoundingAtHalfUnits() {
+		// exactly half a unit: rounded up, while DecimalUtil rounds it to even
+		Assert.assertEquals(976563, ResourceUnits.toUnits(1.0 / 1024));
+		Assert.assertEquals(0.000976563, ResourceUnits.round(1.0 / 1024), 0);
+		Assert.assertEquals(0.000976562, DecimalUtil.format(1.0 / 1024), 0);
+
+		// just below 1.5 units, but 1.5 units once scaled
+		Assert.assertEquals(2, ResourceUnits.toUnits(0.0000000015));
+		Assert.assertEquals(0.000000001, DecimalUtil.format(0.0000000015), 0);
+
+		// exactly half a unit below an even one: both round up
+		Assert.assertEquals(0.002929688, ResourceUnits.round(3.0 / 1024), 0);
+		Assert.assertEquals(0.002929688, DecimalUtil.format(3.0 / 1024), 0);
+	}
+
+	@Test
+	public void testAccumulatingUnits() {
+		// adding 9 decimal values as the policies did, rounding after each operation
+		Random random = new Random(1);
+		double[] requests = new double[1000];
+		double formattedSum = 0;
+		long units = 0;
+		for (int i = 0; i < requests.length; i++) {
+			requests[i] = DecimalUtil.format(random.nextDouble() * 0.1);
+			formattedSum = DecimalUtil.format(formattedSum + requests[i]);
+			units += ResourceUnits.toUnits(requests[i]);
+			Assert.assertEquals(formattedSum, ResourceUnits.toMips(units), 0);
+		}
+
+		// releasing everything gives back exactly zero
+		for (double request : requests) {
+			units -= ResourceUnits.toUnits(request);
+		}
+		Assert.assertEquals(0, units);
+	}
+
+	@Test
+	public void testConversions() {
+		Assert.assertEquals(ResourceUnits.UNITS_PER_MIPS, ResourceUnits.toUnits(1));
+		Assert.assertEquals(1, ResourceUnits.toUnits(0.000000001));
+		Assert.assertEquals(-1500000000L, ResourceUnits.toUnits(-1.5));
+		Assert.assertEquals(0.000000001, ResourceUnits.toMips(1), 0);
+		Assert.assertEquals(-1.5, ResourceUnits.toMips(-1500000000L), 0);
+	}
+}